@@ -74,6 +74,9 @@ android {
             res.srcDirs("res")
             resources.srcDirs("res")
         }
+        getByName("test") {
+            java.srcDirs("tests/src")
+        }
     }
 
     buildFeatures {
@@ -99,6 +102,8 @@ dependencies {
     implementation("androidx.recyclerview:recyclerview:1.3.1")
     implementation("androidx.constraintlayout:constraintlayout:2.1.4")
     implementation("com.google.android.material:material:1.9.0")
+
+    testImplementation("junit:junit:4.13.2")
 }
 
 configure<GenerateBpPluginExtension> {
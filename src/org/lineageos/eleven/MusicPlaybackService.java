@@ -28,7 +28,6 @@ import android.appwidget.AppWidgetManager;
 import android.content.BroadcastReceiver;
 import android.content.ComponentName;
 import android.content.ContentResolver;
-import android.content.ContentUris;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
@@ -44,7 +43,6 @@ import android.hardware.SensorManager;
 import android.media.AudioAttributes;
 import android.media.AudioFocusRequest;
 import android.media.AudioManager;
-import android.media.MediaDescription;
 import android.media.MediaMetadata;
 import android.media.MediaPlayer;
 import android.media.audiofx.AudioEffect;
@@ -77,32 +75,52 @@ import org.lineageos.eleven.Config.IdType;
 import org.lineageos.eleven.appwidgets.AppWidgetLarge;
 import org.lineageos.eleven.appwidgets.AppWidgetLargeAlternate;
 import org.lineageos.eleven.appwidgets.AppWidgetSmall;
+import org.lineageos.eleven.appwidgets.AppWidgetUpdateScheduler;
 import org.lineageos.eleven.cache.ImageCache;
 import org.lineageos.eleven.cache.ImageFetcher;
+import org.lineageos.eleven.provider.LibraryStatsStore;
+import org.lineageos.eleven.provider.ListenHistoryStore;
 import org.lineageos.eleven.provider.MusicPlaybackState;
 import org.lineageos.eleven.provider.RecentStore;
 import org.lineageos.eleven.provider.SongPlayCount;
+import org.lineageos.eleven.service.AutoShuffleSampler;
+import org.lineageos.eleven.service.CurrentArtwork;
+import org.lineageos.eleven.service.LatencyHistogram;
+import org.lineageos.eleven.service.MediaBrowserTree;
 import org.lineageos.eleven.service.MusicPlaybackTrack;
+import org.lineageos.eleven.service.MediaSessionQueue;
+import org.lineageos.eleven.service.PlaybackSnapshot;
+import org.lineageos.eleven.service.TrackDescriptionCache;
+import org.lineageos.eleven.service.TrackPrefetcher;
+import org.lineageos.eleven.service.WeightedSampler;
 import org.lineageos.eleven.utils.Lists;
+import org.lineageos.eleven.utils.MusicUtils;
 import org.lineageos.eleven.utils.PreferenceUtils;
 import org.lineageos.eleven.utils.ShakeDetector;
+import org.lineageos.eleven.utils.SortOrder;
 import org.lineageos.eleven.utils.SrtManager;
+import org.lineageos.eleven.utils.StartupTrace;
 import org.lineageos.eleven.utils.colors.BitmapWithColors;
 
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
-import java.util.Objects;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.TreeSet;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * A background {@link Service} used to keep music playing between activities
@@ -277,6 +295,11 @@ public class MusicPlaybackService extends MediaBrowserService
      */
     public static final int SHUFFLE_AUTO = 2;
 
+    /**
+     * Shuffles the queue, favoring songs played often and holding back recently played ones
+     */
+    public static final int SHUFFLE_SMART = 3;
+
     /**
      * Turns repeat off
      */
@@ -332,11 +355,31 @@ public class MusicPlaybackService extends MediaBrowserService
      */
     private static final int HEADSET_HOOK_MULTI_CLICK_TIMEOUT = 9;
 
+    /**
+     * Indicates the current track finished preparing
+     */
+    private static final int TRACK_PREPARED = 10;
+
+    /**
+     * Indicates the current track could not be prepared
+     */
+    private static final int TRACK_PREPARE_FAILED = 11;
+
     /**
      * Idle time before stopping the foreground notfication (5 minutes)
      */
     private static final int IDLE_DELAY = 5 * 60 * 1000;
 
+    /**
+     * Time given to the media store to catch up when the restored track isn't known to it yet
+     */
+    private static final long MEDIA_STORE_RETRY_DELAY = 3000;
+
+    /**
+     * Number of upcoming tracks, including the next one, that are warmed ahead of time
+     */
+    private static final int PREFETCH_COUNT = 3;
+
     /**
      * Song play time used as threshold for rewinding to the beginning of the
      * track instead of skipping to the previous track when getting the PREVIOUS
@@ -360,16 +403,6 @@ public class MusicPlaybackService extends MediaBrowserService
     private static final String CONTENT_STYLE_PLAYABLE_HINT =
             "android.media.browse.CONTENT_STYLE_PLAYABLE_HINT";
 
-    private static final String CONTENT_BROWSER_ROOT = "root";
-
-    private static final String CONTENT_BROWSER_ALBUMS = "eleven_albums";
-
-    private static final String CONTENT_BROWSER_ARTISTS = "eleven_artists";
-
-    private static final String CONTENT_BROWSER_PLAYLISTS = "eleven_playlists";
-
-    private static final String CONTENT_BROWSER_SONGS = "eleven_songs";
-
     private final int CONTENT_STYLE_GRID_ITEM = 2;
 
     private final int CONTENT_STYLE_LIST_ITEM = 1;
@@ -409,6 +442,17 @@ public class MusicPlaybackService extends MediaBrowserService
      */
     private static final Shuffler mShuffler = new Shuffler();
 
+    /**
+     * How much less likely smart shuffle picks a track again each time it was played
+     */
+    private static final double SMART_SHUFFLE_PLAYED_FACTOR = 0.1;
+
+    /**
+     * Weight multiplier of the most recently played track, tracks further back in the
+     * recent history get closer to 1
+     */
+    private static final double SMART_SHUFFLE_RECENT_FACTOR = 0.25;
+
     /**
      * Service stub
      */
@@ -430,6 +474,11 @@ public class MusicPlaybackService extends MediaBrowserService
     private final AppWidgetLargeAlternate mAppWidgetLargeAlternate = AppWidgetLargeAlternate
             .getInstance();
 
+    /**
+     * Coalesces app-widget updates
+     */
+    private AppWidgetUpdateScheduler mAppWidgetUpdateScheduler;
+
     /**
      * The media player
      */
@@ -502,7 +551,13 @@ public class MusicPlaybackService extends MediaBrowserService
     /**
      * Used to indicate if the queue can be saved
      */
-    private boolean mQueueIsSaveable = true;
+    private volatile boolean mQueueIsSaveable = true;
+
+    /**
+     * Incremented whenever a queue restore starts or the storage goes away, so the part of
+     * the restore that runs in the background can tell whether it still applies
+     */
+    private int mQueueRestoreGeneration;
 
     /**
      * Used to track what type of audio focus loss caused the playback to pause
@@ -518,6 +573,16 @@ public class MusicPlaybackService extends MediaBrowserService
     // playlists
     private int mCardId;
 
+    /**
+     * The playback state as of the last change, read by binder calls without locking
+     */
+    private volatile PlaybackSnapshot mSnapshot = PlaybackSnapshot.EMPTY;
+
+    /**
+     * Incremented whenever the queue changes
+     */
+    private int mQueueVersion;
+
     private int mPlayPos = -1;
 
     private int mNextPlayPos = -1;
@@ -536,24 +601,62 @@ public class MusicPlaybackService extends MediaBrowserService
 
     private ArrayList<MusicPlaybackTrack> mPlaylist = new ArrayList<>(100);
 
-    private long[] mAutoShuffleList = null;
+    /**
+     * Draws the tracks for party mode, empty unless it is on
+     */
+    private final AutoShuffleSampler mAutoShuffleSampler = new AutoShuffleSampler();
+
+    /**
+     * Weighted sampler over the queue for smart shuffle, rebuilt lazily when the queue changes.
+     * It starts out from the queue history alone, the play counts and recents are folded in
+     * on the player thread, after which mSmartShuffleScored is set.
+     */
+    private WeightedSampler mSmartShuffle;
+    private int mSmartShuffleQueueVersion;
+    private boolean mSmartShuffleScored;
+    private final Random mSmartShuffleRandom = new Random();
 
     private MusicPlayerHandler mPlayerHandler;
     private HandlerThread mHandlerThread;
 
     private BroadcastReceiver mUnmountReceiver = null;
 
-    // to improve perf, instead of hitting the disk cache or file cache, store the bitmaps in memory
-    private String mCachedKey;
-    private final BitmapWithColors[] mCachedBitmapWithColors = new BitmapWithColors[2];
+    /**
+     * Artwork of the current album, kept in memory so the session, notification and widgets
+     * don't hit the disk cache or file for it
+     */
+    private CurrentArtwork mCurrentArtwork;
+
+    /**
+     * The track the media session artwork was last looked up for
+     */
+    private long mSessionMetadataAudioId = -1;
+
+    /**
+     * The artwork last sent to the media session, reused when only the queue changes
+     */
+    private Bitmap mSessionBitmap;
+
+    /**
+     * Title and artist of queued tracks, shared by everything publishing the queue
+     */
+    private TrackDescriptionCache mDescriptionCache;
 
-    private QueueUpdateTask mQueueUpdateTask;
+    /**
+     * Publishes the part of the queue around the current track to the media session
+     */
+    private MediaSessionQueue mSessionQueue;
 
     /**
      * Image cache
      */
     private ImageFetcher mImageFetcher;
 
+    /**
+     * Warms artwork and file headers of upcoming tracks
+     */
+    private TrackPrefetcher mPrefetcher;
+
     /**
      * Recently listened database
      */
@@ -564,6 +667,24 @@ public class MusicPlaybackService extends MediaBrowserService
      */
     private SongPlayCount mSongPlayCountCache;
 
+    /**
+     * Log of how much of each song was listened to
+     */
+    private ListenHistoryStore mListenHistory;
+
+    /**
+     * Precomputed library data, used for the genre of the current song. Set on the player
+     * thread once the service is created
+     */
+    private volatile LibraryStatsStore mLibraryStats;
+
+    /**
+     * The song currently listened to, or -1, with where listening started and its duration
+     */
+    private long mListenSongId = -1;
+    private long mListenStartPosition;
+    private long mListenDuration;
+
     /**
      * Stores the playback state
      */
@@ -579,17 +700,10 @@ public class MusicPlaybackService extends MediaBrowserService
     private PowerManager.WakeLock mHeadsetHookWakeLock;
 
     /**
-     * Resource URI for the application
+     * Only used for Android Auto, as it can only access this service. Created the first time
+     * a browser asks for it, see {@link #getBrowserTree()}
      */
-    private final String mResourceUri = "android.resource://" + PKG_NAME + "/drawable/";
-
-    /**
-     * Only used for Android Auto, as it can only access this service
-     */
-    private HashMap<String, List<MediaBrowser.MediaItem>> mMediaIdToChildren = new HashMap<>();
-    private ArrayList<Long> mSongs = new ArrayList<>(100);
-
-    private boolean mDidSetupSongRoot;
+    private volatile MediaBrowserTree mBrowserTree;
 
     @Override
     public IBinder onBind(final Intent intent) {
@@ -601,6 +715,13 @@ public class MusicPlaybackService extends MediaBrowserService
         return mBinder;
     }
 
+    @Override
+    protected void dump(final FileDescriptor fd, final PrintWriter writer, final String[] args) {
+        if (mPlayer != null) {
+            mPlayer.dump(writer);
+        }
+    }
+
     @Nullable
     @Override
     public BrowserRoot onGetRoot(@NonNull String clientPackageName, int clientUid,
@@ -608,31 +729,20 @@ public class MusicPlaybackService extends MediaBrowserService
         Bundle extras = new Bundle();
         extras.putInt(CONTENT_STYLE_BROWSABLE_HINT, CONTENT_STYLE_GRID_ITEM);
         extras.putInt(CONTENT_STYLE_PLAYABLE_HINT, CONTENT_STYLE_LIST_ITEM);
-        return new BrowserRoot(CONTENT_BROWSER_ROOT, extras);
+        return new BrowserRoot(MediaBrowserTree.ROOT, extras);
     }
 
     @Override
     public void onLoadChildren(@NonNull String parentId,
                                @NonNull Result<List<MediaBrowser.MediaItem>> result) {
-        List<MediaBrowser.MediaItem> mediaItems = new ArrayList<>();
-        switch (parentId) {
-            case CONTENT_BROWSER_ROOT:
-                result.sendResult(mMediaIdToChildren.get(CONTENT_BROWSER_ROOT));
-                return;
-            case CONTENT_BROWSER_ALBUMS:
-                result.sendResult(setupAlbumRoot());
-                return;
-            case CONTENT_BROWSER_ARTISTS:
-                result.sendResult(setupArtistRoot());
-                return;
-            case CONTENT_BROWSER_PLAYLISTS:
-                // TODO: Build playlist root
-                break;
-            default:
-                result.sendResult(mMediaIdToChildren.get(parentId));
-                return;
-        }
-        result.sendResult(mediaItems);
+        onLoadChildren(parentId, result, null);
+    }
+
+    @Override
+    public void onLoadChildren(@NonNull String parentId,
+                               @NonNull Result<List<MediaBrowser.MediaItem>> result,
+                               @Nullable Bundle options) {
+        getBrowserTree().loadChildren(parentId, result, options);
     }
 
     @Override
@@ -678,6 +788,8 @@ public class MusicPlaybackService extends MediaBrowserService
             mReadGranted = true;
         }
 
+        final StartupTrace trace = new StartupTrace("MusicPlaybackService");
+        trace.phase("stores");
         mNotificationManager = getSystemService(NotificationManager.class);
 
         // Initialize the favorites and recents databases
@@ -686,14 +798,21 @@ public class MusicPlaybackService extends MediaBrowserService
         // gets the song play count cache
         mSongPlayCountCache = SongPlayCount.getInstance(this);
 
+        // gets the listen history, used to tell full listens from skips
+        mListenHistory = ListenHistoryStore.getInstance(this);
+
         // gets a pointer to the playback state store
         mPlaybackStateStore = MusicPlaybackState.getInstance(this);
 
+        trace.phase("imageCache");
         // Initialize the image fetcher
         mImageFetcher = ImageFetcher.getInstance(this);
         // Initialize the image cache
         mImageFetcher.setImageCache(ImageCache.getInstance(this));
+        mPrefetcher = new TrackPrefetcher(this, mImageFetcher);
+        mCurrentArtwork = new CurrentArtwork(mImageFetcher);
 
+        trace.phase("playerThread");
         // Start up the thread running the service. Note that we create a
         // separate thread because the service normally runs in the process's
         // main thread, which we don't want to block. We also make it
@@ -704,14 +823,28 @@ public class MusicPlaybackService extends MediaBrowserService
 
         // Initialize the handler
         mPlayerHandler = new MusicPlayerHandler(this, mHandlerThread.getLooper());
+        mAppWidgetUpdateScheduler = new AppWidgetUpdateScheduler(this, mPlayerHandler);
+
+        // Load the genres off the main thread, so the session metadata can include them.
+        // Whatever was published before they were loaded went out without a genre.
+        mPlayerHandler.post(() -> {
+            mLibraryStats = LibraryStatsStore.getInstance(this);
+            mLibraryStats.preloadGenres(() -> mPlayerHandler.post(() -> {
+                if (getAudioId() >= 0) {
+                    updateMediaSession(META_CHANGED);
+                }
+            }));
+        });
 
         // Initialize the audio manager and register any headset controls for
         // playback
         mAudioManager = getSystemService(AudioManager.class);
 
+        trace.phase("mediaSession");
         // Use the remote control APIs to set the playback state
         setUpMediaSession();
 
+        trace.phase("preferences");
         // Initialize the preferences
         mPreferences = getSharedPreferences("Service", 0);
         mCardId = getCardId();
@@ -723,9 +856,11 @@ public class MusicPlaybackService extends MediaBrowserService
 
         registerExternalStorageListener();
 
+        trace.phase("player");
         // Initialize the media player
         mPlayer = new MultiPlayer(this, mPlayerHandler, mAudioAttributes);
 
+        trace.phase("receivers");
         // Initialize the intent filter and each action
         final IntentFilter filter = new IntentFilter();
         filter.addAction(SERVICECMD);
@@ -758,8 +893,25 @@ public class MusicPlaybackService extends MediaBrowserService
         mShutdownIntent = PendingIntent.getService(this, 0, shutdownIntent,
                 PendingIntent.FLAG_IMMUTABLE);
 
-        // Initialize the media tree. Only used for Android Auto
-        setupRootMediaItems();
+        trace.finish(this);
+    }
+
+    private synchronized MediaBrowserTree getBrowserTree() {
+        if (mBrowserTree == null) {
+            mBrowserTree = new MediaBrowserTree(this, new MediaBrowserTree.Callback() {
+                @Override
+                public void onChildrenChanged(String parentId) {
+                    notifyChildrenChanged(parentId);
+                }
+
+                @Override
+                public void onPlayListResolved(long[] list, int position) {
+                    open(list, position, -1, IdType.NA);
+                    play();
+                }
+            });
+        }
+        return mBrowserTree;
     }
 
     private void setUpMediaSession() {
@@ -774,6 +926,8 @@ public class MusicPlaybackService extends MediaBrowserService
 
         mSession = new MediaSession(this, "Eleven");
         mSession.setPlaybackToLocal(mAudioAttributes);
+        mDescriptionCache = new TrackDescriptionCache(this);
+        mSessionQueue = new MediaSessionQueue(mSession, mDescriptionCache);
         mSession.setCallback(new MediaSession.Callback() {
             @Override
             public void onPause() {
@@ -828,10 +982,7 @@ public class MusicPlaybackService extends MediaBrowserService
 
             @Override
             public void onPlayFromMediaId(String mediaId, Bundle extras) {
-                int position = mSongs.indexOf(Long.parseLong(mediaId));
-                // TODO: Detect when played from playlist, album, or artist
-                open(mSongs.stream().mapToLong(i -> i).toArray(), position, -1, IdType.NA);
-                onPlay();
+                getBrowserTree().resolvePlayList(mediaId);
             }
 
             @Override
@@ -876,13 +1027,21 @@ public class MusicPlaybackService extends MediaBrowserService
         // Release the player
         mPlayer.release();
         mPlayer = null;
+        mPrefetcher.release();
+        mListenHistory.flush();
+        mRecentsCache.flush();
 
         // Remove the audio focus listener and lock screen controls
         mAudioManager.abandonAudioFocusRequest(mAudioFocusRequest);
+        mSessionQueue.release();
         mSession.release();
 
         // remove the media store observer
         getContentResolver().unregisterContentObserver(mMediaStoreObserver);
+        if (mBrowserTree != null) {
+            mBrowserTree.release();
+        }
+        mAppWidgetUpdateScheduler.release();
 
         // Close the cursor
         closeCursor();
@@ -1071,18 +1230,20 @@ public class MusicPlaybackService extends MediaBrowserService
                     final String action = intent.getAction();
                     if (Intent.ACTION_MEDIA_EJECT.equals(action)) {
                         saveQueue(true);
+                        synchronized (MusicPlaybackService.this) {
+                            mQueueRestoreGeneration++;
+                        }
                         mQueueIsSaveable = false;
                         closeExternalStorageFiles();
                     } else if (action.equals(Intent.ACTION_MEDIA_MOUNTED)) {
                         mMediaMountedCount++;
                         mCardId = getCardId();
+                        mDescriptionCache.invalidate(Collections.emptyList());
+                        // notifies the restored track, the rest of the queue follows
                         reloadQueue();
-                        mQueueIsSaveable = true;
-                        notifyChange(QUEUE_CHANGED);
-                        notifyChange(META_CHANGED);
 
-                        if (!mDidSetupSongRoot) {
-                            setupSongRoot();
+                        if (mBrowserTree != null) {
+                            mBrowserTree.onMediaStoreChanged(Collections.emptyList());
                         }
                     }
                 }
@@ -1120,6 +1281,8 @@ public class MusicPlaybackService extends MediaBrowserService
      */
     private void stop(final boolean goToIdle) {
         if (D) Log.d(TAG, "Stopping playback, goToIdle = " + goToIdle);
+        finishListenEvent(goToIdle
+                ? ListenHistoryStore.REASON_STOPPED : ListenHistoryStore.REASON_SKIPPED);
         if (mPlayer.isInitialized()) {
             mPlayer.stop();
         }
@@ -1141,7 +1304,27 @@ public class MusicPlaybackService extends MediaBrowserService
      * @param last  The last file to be removed
      * @return the number of tracks deleted
      */
-    private int removeTracksInternal(int first, int last) {
+    private int removeTracksInternal(final int first, final int last) {
+        synchronized (this) {
+            final boolean gotonext = first <= mPlayPos && mPlayPos <= last;
+            final int numremoved = dropTracks(first, last);
+            if (gotonext && numremoved > 0) {
+                moveOnFromRemovedTrack();
+            }
+            return numremoved;
+        }
+    }
+
+    /**
+     * Takes the range of tracks out of the play list, without moving on if the
+     * current track was one of them. {@link #mPlayPos} is left at the track after
+     * the range in that case.
+     *
+     * @param first The first file to be removed
+     * @param last  The last file to be removed
+     * @return the number of tracks deleted
+     */
+    private int dropTracks(int first, int last) {
         synchronized (this) {
             if (last < first) {
                 return 0;
@@ -1151,10 +1334,8 @@ public class MusicPlaybackService extends MediaBrowserService
                 last = mPlaylist.size() - 1;
             }
 
-            boolean gotonext = false;
             if (first <= mPlayPos && mPlayPos <= last) {
                 mPlayPos = first;
-                gotonext = true;
             } else if (mPlayPos > last) {
                 mPlayPos -= last - first + 1;
             }
@@ -1184,28 +1365,34 @@ public class MusicPlaybackService extends MediaBrowserService
                     }
                 }
             }
-            if (gotonext) {
-                if (mPlaylist.size() == 0) {
-                    stop(true);
-                    mPlayPos = -1;
-                    closeCursor();
-                } else {
-                    if (mShuffleMode != SHUFFLE_NONE) {
-                        mPlayPos = getNextPosition(true);
-                    } else if (mPlayPos >= mPlaylist.size()) {
-                        mPlayPos = 0;
-                    }
-                    final boolean wasPlaying = isPlaying();
-                    stop(false);
-                    openCurrentAndNext();
-                    if (wasPlaying) {
-                        play();
-                    }
+            return numToRemove;
+        }
+    }
+
+    /**
+     * Opens the track that takes the place of a removed current track
+     */
+    private void moveOnFromRemovedTrack() {
+        synchronized (this) {
+            if (mPlaylist.size() == 0) {
+                stop(true);
+                mPlayPos = -1;
+                closeCursor();
+            } else {
+                if (mShuffleMode != SHUFFLE_NONE) {
+                    mPlayPos = getNextPosition(true);
+                } else if (mPlayPos >= mPlaylist.size()) {
+                    mPlayPos = 0;
+                }
+                final boolean wasPlaying = isPlaying();
+                stop(false);
+                openCurrentAndNext();
+                if (wasPlaying) {
+                    play();
                 }
-                notifyChange(META_CHANGED);
             }
-            return last - first + 1;
         }
+        notifyChange(META_CHANGED);
     }
 
     /**
@@ -1363,18 +1550,84 @@ public class MusicPlaybackService extends MediaBrowserService
                     mIsSupposedToBePlaying = false;
                     notifyChange(PLAYSTATE_CHANGED);
                 }
-            } else if (openNext) {
-                setNextTrack();
+            } else {
+                startListenEvent();
+                if (openNext) {
+                    setNextTrack();
+                }
             }
         }
     }
 
+    /**
+     * Starts tracking how much of the current track gets listened to
+     */
+    private void startListenEvent() {
+        mListenSongId = getAudioId();
+        mListenStartPosition = Math.max(position(), 0);
+        mListenDuration = mPlayer.isPrepared() ? duration() : 0;
+    }
+
+    /**
+     * Logs how much of the track was listened to, if one is tracked
+     *
+     * @param reason why listening ended, one of the ListenHistoryStore REASON constants
+     */
+    private void finishListenEvent(final int reason) {
+        if (mListenSongId < 0) {
+            return;
+        }
+        final long endPosition = reason == ListenHistoryStore.REASON_COMPLETED
+                ? mListenDuration : Math.max(position(), 0);
+        mListenHistory.addEvent(mListenSongId, mListenStartPosition, endPosition,
+                mListenDuration, reason);
+        mListenSongId = -1;
+    }
+
     private void sendErrorMessage(final String trackName) {
         final Intent i = new Intent(TRACK_ERROR);
         i.putExtra(TrackErrorExtra.TRACK_NAME, trackName);
         sendBroadcast(i);
     }
 
+    /**
+     * Called when the current track was opened but failed to prepare. Moves on to the next
+     * track the same way {@link #openCurrentAndMaybeNext(boolean)} does for tracks that
+     * cannot be opened at all.
+     */
+    private void onPrepareFailed() {
+        synchronized (this) {
+            String trackName = getTrackName();
+            if (TextUtils.isEmpty(trackName)) {
+                trackName = mFileToPlay;
+            }
+            sendErrorMessage(trackName);
+
+            if (mOpenFailedCounter++ < 10 && mPlaylist.size() > 1) {
+                final int pos = getNextPosition(false);
+                if (pos >= 0) {
+                    final boolean wasPlaying = mIsSupposedToBePlaying;
+                    mPlayPos = pos;
+                    openCurrentAndNext();
+                    if (wasPlaying) {
+                        play();
+                    }
+                    notifyChange(META_CHANGED);
+                    return;
+                }
+            }
+
+            mOpenFailedCounter = 0;
+            Log.w(TAG, "Failed to prepare file for playback");
+            stop(false);
+            scheduleDelayedShutdown();
+            if (mIsSupposedToBePlaying) {
+                mIsSupposedToBePlaying = false;
+                notifyChange(PLAYSTATE_CHANGED);
+            }
+        }
+    }
+
     /**
      * @param force True to force the player onto the track next, false
      *              otherwise.
@@ -1457,6 +1710,23 @@ public class MusicPlaybackService extends MediaBrowserService
         } else if (mShuffleMode == SHUFFLE_AUTO) {
             doAutoShuffleUpdate();
             return mPlayPos + 1;
+        } else if (mShuffleMode == SHUFFLE_SMART) {
+            if (mPlaylist.size() == 1) {
+                return mRepeatMode == REPEAT_ALL || force ? 0 : -1;
+            }
+
+            // never pick the current track again right away
+            final WeightedSampler sampler = getSmartShuffleSampler();
+            final boolean hasCurrent = mPlayPos >= 0 && mPlayPos < sampler.size();
+            final double currentWeight = hasCurrent ? sampler.getWeight(mPlayPos) : 0;
+            if (hasCurrent) {
+                sampler.setWeight(mPlayPos, 0);
+            }
+            final int next = sampler.sample();
+            if (hasCurrent) {
+                sampler.setWeight(mPlayPos, currentWeight);
+            }
+            return next;
         } else {
             if (mPlayPos >= mPlaylist.size() - 1) {
                 if (mRepeatMode == REPEAT_NONE && !force) {
@@ -1471,6 +1741,96 @@ public class MusicPlaybackService extends MediaBrowserService
         }
     }
 
+    /**
+     * @return The smart shuffle sampler for the current queue, built if needed. Only the
+     * queue history is taken into account right away, the rest is read off the lock.
+     */
+    private WeightedSampler getSmartShuffleSampler() {
+        if (mSmartShuffle != null && mSmartShuffle.size() == mPlaylist.size()
+                && mSmartShuffleQueueVersion == mQueueVersion) {
+            return mSmartShuffle;
+        }
+
+        final int numTracks = mPlaylist.size();
+        final double[] weights = new double[numTracks];
+        Arrays.fill(weights, 1);
+
+        // hold back what was already played from this queue
+        for (int idx : mHistory) {
+            if (idx >= 0 && idx < numTracks) {
+                weights[idx] *= SMART_SHUFFLE_PLAYED_FACTOR;
+            }
+        }
+
+        mSmartShuffle = new WeightedSampler(weights, mSmartShuffleRandom);
+        mSmartShuffleQueueVersion = mQueueVersion;
+        mSmartShuffleScored = false;
+
+        final WeightedSampler sampler = mSmartShuffle;
+        mPlayerHandler.post(() -> scoreSmartShuffle(sampler));
+        return mSmartShuffle;
+    }
+
+    /**
+     * Folds the play counts and the recently played songs into the weights of a smart shuffle
+     * sampler. The database reads happen without holding the service lock.
+     *
+     * @param sampler the sampler to update, nothing happens if it was replaced meanwhile
+     */
+    private void scoreSmartShuffle(final WeightedSampler sampler) {
+        final long[] ids;
+        synchronized (this) {
+            if (mSmartShuffle != sampler || mSmartShuffleScored) {
+                return;
+            }
+            ids = new long[mPlaylist.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = mPlaylist.get(i).mId;
+            }
+        }
+
+        // play count scores make favorites up to twice as likely as unplayed songs
+        final float[] scores = mSongPlayCountCache.getScores(ids);
+        float maxScore = 0;
+        for (float score : scores) {
+            maxScore = Math.max(maxScore, score);
+        }
+        final double[] factors = new double[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            factors[i] = 1 + (maxScore > 0 ? scores[i] / maxScore : 0);
+        }
+
+        // hold back what was played recently, the more recent the less likely
+        final long[] recentIds = mRecentsCache.getRecentIds();
+        final LongSparseArray<Integer> recentRanks = new LongSparseArray<>(recentIds.length);
+        for (int i = 0; i < recentIds.length; i++) {
+            recentRanks.put(recentIds[i], i);
+        }
+        final int numRecents = recentRanks.size();
+        if (numRecents > 0) {
+            for (int i = 0; i < ids.length; i++) {
+                final Integer rank = recentRanks.get(ids[i]);
+                if (rank != null) {
+                    factors[i] *= SMART_SHUFFLE_RECENT_FACTOR
+                            + (1 - SMART_SHUFFLE_RECENT_FACTOR) * rank / numRecents;
+                }
+            }
+        }
+
+        synchronized (this) {
+            // the queue may have changed while we were reading
+            if (mSmartShuffle != sampler || mSmartShuffleScored
+                    || sampler.size() != ids.length) {
+                return;
+            }
+            // keeps what was played from the queue since the sampler was built
+            for (int i = 0; i < ids.length; i++) {
+                sampler.setWeight(i, sampler.getWeight(i) * factors[i]);
+            }
+            mSmartShuffleScored = true;
+        }
+    }
+
     /**
      * Sets the track to be played
      */
@@ -1493,33 +1853,52 @@ public class MusicPlaybackService extends MediaBrowserService
         } else {
             mPlayer.setNextDataSource(null);
         }
+        prefetchUpcomingTracks();
     }
 
     /**
-     * Creates a shuffled playlist used for party mode
-     */
-    private boolean makeAutoShuffleList() {
-        try (Cursor cursor = getContentResolver().query(
-                MediaStore.Audio.Media.getContentUri(MediaStore.VOLUME_EXTERNAL),
-                new String[]{MediaStore.Audio.Media._ID},
-                MediaStore.Audio.Media.IS_MUSIC + "= 1",
-                null,
-                null
-        )) {
-            if (cursor == null || cursor.getCount() == 0) {
-                return false;
-            }
-            final int len = cursor.getCount();
-            final long[] list = new long[len];
-            for (int i = 0; i < len; i++) {
-                cursor.moveToNext();
-                list[i] = cursor.getLong(0);
+     * Warms the tracks coming up after the current one and keeps players opened for the ones
+     * after the next. Shuffle picks the track after the next one only when it gets there, so
+     * with shuffle on only the next track is known.
+     */
+    private void prefetchUpcomingTracks() {
+        final long[] ids = new long[PREFETCH_COUNT];
+        final List<String> paths = new ArrayList<>(PREFETCH_COUNT);
+        int count = 0;
+
+        if (mPlaylist != null) {
+            final int size = mPlaylist.size();
+            int position = mNextPlayPos;
+            while (position >= 0 && position < size && count < PREFETCH_COUNT) {
+                final long id = mPlaylist.get(position).mId;
+                ids[count++] = id;
+                if (count > 1) {
+                    paths.add(MediaStore.Audio.Media.getContentUri(MediaStore.VOLUME_EXTERNAL)
+                            + "/" + id);
+                }
+
+                if (mShuffleMode != SHUFFLE_NONE || mRepeatMode == REPEAT_CURRENT) {
+                    break;
+                }
+                position++;
+                if (position >= size && mRepeatMode == REPEAT_ALL) {
+                    position = 0;
+                }
+                if (position == mPlayPos || position == mNextPlayPos) {
+                    break;
+                }
             }
-            mAutoShuffleList = list;
-            return true;
-        } catch (final RuntimeException ignored) {
         }
-        return false;
+
+        mPrefetcher.prefetch(Arrays.copyOf(ids, count));
+        mPlayer.setPreparedPaths(paths);
+    }
+
+    /**
+     * Loads the library for party mode
+     */
+    private boolean makeAutoShuffleList() {
+        return mAutoShuffleSampler.load(getContentResolver());
     }
 
     /**
@@ -1533,19 +1912,11 @@ public class MusicPlaybackService extends MediaBrowserService
         }
         final int toAdd = 7 - (mPlaylist.size() - (mPlayPos < 0 ? -1 : mPlayPos));
         for (int i = 0; i < toAdd; i++) {
-            int idx, lookback = mHistory.size();
-            while (true) {
-                idx = mShuffler.nextInt(mAutoShuffleList.length);
-                if (!wasRecentlyUsed(idx, lookback)) {
-                    break;
-                }
-                lookback /= 2;
-            }
-            mHistory.add(idx);
-            if (mHistory.size() > MAX_HISTORY_SIZE) {
-                mHistory.remove(0);
+            final long id = mAutoShuffleSampler.next();
+            if (id < 0) {
+                break;
             }
-            mPlaylist.add(new MusicPlaybackTrack(mAutoShuffleList[idx], -1, IdType.NA, -1));
+            mPlaylist.add(new MusicPlaybackTrack(id, -1, IdType.NA, -1));
             notify = true;
         }
         if (notify) {
@@ -1553,43 +1924,30 @@ public class MusicPlaybackService extends MediaBrowserService
         }
     }
 
-    private boolean wasRecentlyUsed(final int idx, int lookbacksize) {
-        if (lookbacksize == 0) {
-            return false;
-        }
-        final int histsize = mHistory.size();
-        if (histsize < lookbacksize) {
-            lookbacksize = histsize;
-        }
-        final int maxidx = histsize - 1;
-        for (int i = 0; i < lookbacksize; i++) {
-            final long entry = mHistory.get(maxidx - i);
-            if (entry == idx) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     /**
      * Notify the change-receivers that something has changed.
      */
     private void notifyChange(final String what) {
         if (D) Log.d(TAG, "notifyChange: what = " + what);
 
+        final PlaybackSnapshot snapshot = publishSnapshot(
+                QUEUE_CHANGED.equals(what) || QUEUE_MOVED.equals(what));
+
         // Update the lockscreen controls
         updateMediaSession(what);
 
         if (what.equals(POSITION_CHANGED)) {
+            // clients extrapolate the position, let them pick up the new anchor
+            sendBroadcast(new Intent(POSITION_CHANGED));
             return;
         }
 
         final Intent intent = new Intent(what);
-        intent.putExtra("id", getAudioId());
-        intent.putExtra("artist", getArtistName());
-        intent.putExtra("album", getAlbumName());
-        intent.putExtra("track", getTrackName());
-        intent.putExtra("playing", isPlaying());
+        intent.putExtra("id", snapshot.mAudioId);
+        intent.putExtra("artist", snapshot.mArtistName);
+        intent.putExtra("album", snapshot.mAlbumName);
+        intent.putExtra("track", snapshot.mTrackName);
+        intent.putExtra("playing", snapshot.mIsPlaying);
 
         if (NEW_LYRICS.equals(what)) {
             intent.putExtra("lyrics", mLyrics);
@@ -1628,9 +1986,38 @@ public class MusicPlaybackService extends MediaBrowserService
         }
 
         // Update the app-widgets
-        mAppWidgetSmall.notifyChange(this, what);
-        mAppWidgetLarge.notifyChange(this, what);
-        mAppWidgetLargeAlternate.notifyChange(this, what);
+        mAppWidgetUpdateScheduler.notifyChange(what);
+    }
+
+    /**
+     * Captures the current state into a new {@link PlaybackSnapshot}
+     *
+     * @param queueChanged whether the queue changed since the last snapshot
+     * @return the published snapshot
+     */
+    private PlaybackSnapshot publishSnapshot(final boolean queueChanged) {
+        synchronized (this) {
+            if (queueChanged) {
+                mQueueVersion++;
+            }
+            // the position only moves once the track is prepared, and the playback speed is
+            // never changed from the default
+            final float speed = mIsSupposedToBePlaying && mPlayer.isPrepared() ? 1.0f : 0f;
+            final PlaybackSnapshot snapshot = new PlaybackSnapshot(getAudioId(), getAlbumId(),
+                    getArtistId(), getTrackName(), getArtistName(), getAlbumName(),
+                    mIsSupposedToBePlaying, duration(), position(),
+                    SystemClock.elapsedRealtime(), speed, mPlayPos, mPlaylist.size(),
+                    mHistory.size(), mQueueVersion, mShuffleMode, mRepeatMode);
+            mSnapshot = snapshot;
+            return snapshot;
+        }
+    }
+
+    /**
+     * @return the playback state as of the last change
+     */
+    public PlaybackSnapshot getPlaybackSnapshot() {
+        return mSnapshot;
     }
 
     private void updateMediaSession(final String what) {
@@ -1647,10 +2034,12 @@ public class MusicPlaybackService extends MediaBrowserService
                 PlaybackState.ACTION_SKIP_TO_PREVIOUS |
                 PlaybackState.ACTION_STOP;
 
+        final PlaybackSnapshot snapshot = mSnapshot;
         PlaybackState.Builder stateBuilder = new PlaybackState.Builder()
                 .setActions(playBackStateActions)
-                .setActiveQueueItemId(getAudioId())
-                .setState(playState, position(), 1.0f);
+                .setActiveQueueItemId(snapshot.mAudioId)
+                .setState(playState, snapshot.mPosition, snapshot.mPlaybackSpeed,
+                        snapshot.mPositionTime);
 
         // create custom action
         stateBuilder.addCustomAction(new PlaybackState.CustomAction.Builder(
@@ -1666,17 +2055,12 @@ public class MusicPlaybackService extends MediaBrowserService
             mSession.setPlaybackState(stateBuilder.build());
         } else if (what.equals(META_CHANGED) || what.equals(QUEUE_CHANGED)
                 || QUEUE_MOVED.equals(what)) {
-            Bitmap albumArt = getAlbumArt(false).getBitmap();
-            if (albumArt != null) {
-                // RemoteControlClient wants to recycle the bitmaps thrown at it, so we need
-                // to make sure not to hand out our cache copy
-                Bitmap.Config config = albumArt.getConfig();
-                if (config == null) {
-                    config = Bitmap.Config.ARGB_8888;
-                }
-                albumArt = albumArt.copy(config, false);
+            // a queue edit changes the track number and count but not the artwork, so
+            // only look the bitmap up again when the track changed
+            if (what.equals(META_CHANGED) || snapshot.mAudioId != mSessionMetadataAudioId) {
+                mSessionMetadataAudioId = snapshot.mAudioId;
+                mSessionBitmap = getCurrentArtwork().getSessionBitmap();
             }
-
             mSession.setMetadata(new MediaMetadata.Builder()
                     .putString(MediaMetadata.METADATA_KEY_ARTIST, getArtistName())
                     .putString(MediaMetadata.METADATA_KEY_ALBUM_ARTIST, getAlbumArtistName())
@@ -1684,25 +2068,22 @@ public class MusicPlaybackService extends MediaBrowserService
                     .putString(MediaMetadata.METADATA_KEY_TITLE, getTrackName())
                     .putLong(MediaMetadata.METADATA_KEY_DURATION, duration())
                     .putLong(MediaMetadata.METADATA_KEY_TRACK_NUMBER, getQueuePosition() + 1)
-                    .putLong(MediaMetadata.METADATA_KEY_NUM_TRACKS, getQueue().length)
+                    .putLong(MediaMetadata.METADATA_KEY_NUM_TRACKS, snapshot.mQueueSize)
                     .putString(MediaMetadata.METADATA_KEY_GENRE, getGenreName())
-                    .putBitmap(MediaMetadata.METADATA_KEY_ALBUM_ART, albumArt)
+                    .putBitmap(MediaMetadata.METADATA_KEY_ALBUM_ART, mSessionBitmap)
                     .build());
 
-            if (what.equals(QUEUE_CHANGED) || what.equals(QUEUE_MOVED)) {
-                updateMediaSessionQueue();
-            }
+            updateMediaSessionQueue(what.equals(QUEUE_CHANGED) || what.equals(QUEUE_MOVED));
 
             mSession.setPlaybackState(stateBuilder.build());
         }
     }
 
-    private synchronized void updateMediaSessionQueue() {
-        if (mQueueUpdateTask != null) {
-            mQueueUpdateTask.cancel();
-        }
-        mQueueUpdateTask = new QueueUpdateTask(getQueue());
-        mQueueUpdateTask.execute();
+    /**
+     * @param queueChanged true if the queue itself changed, false if only the position moved
+     */
+    private synchronized void updateMediaSessionQueue(final boolean queueChanged) {
+        mSessionQueue.update(mPlaylist, mPlayPos, queueChanged);
     }
 
     private Notification buildNotification() {
@@ -1811,66 +2192,209 @@ public class MusicPlaybackService extends MediaBrowserService
 
     /**
      * Reloads the queue as the user left it the last time they stopped using
-     * Eleven
+     * Eleven. Only the current track is read and opened here, so the notification
+     * and the widgets can show it right away. The rest of the queue and the shuffle
+     * history are read on the player thread and swapped in afterwards.
      */
     private void reloadQueue() {
+        final int generation;
+        synchronized (this) {
+            generation = ++mQueueRestoreGeneration;
+        }
+        // the queue only holds the current track until the rest is read, don't save that
+        mQueueIsSaveable = false;
+
+        final StartupTrace trace = new StartupTrace("reloadQueue");
+        trace.phase("readCurrent");
+        final int pos = restoreCurrentTrack(trace);
+
+        trace.phase("notify");
+        notifyChange(QUEUE_CHANGED);
+        notifyChange(META_CHANGED);
+        trace.finish(this);
+
+        if (pos < 0) {
+            mQueueIsSaveable = true;
+            return;
+        }
+
+        final int queueVersion;
+        synchronized (this) {
+            queueVersion = mQueueVersion;
+        }
+        mPlayerHandler.post(() -> hydrateQueue(generation, queueVersion, pos));
+    }
+
+    /**
+     * Restores the current track of the saved queue as a queue of its own, along with the
+     * repeat and shuffle modes
+     *
+     * @return the position of the track in the saved queue, or -1 if nothing was restored
+     */
+    private int restoreCurrentTrack(final StartupTrace trace) {
         int id = mCardId;
         if (mPreferences.contains("cardid")) {
             id = mPreferences.getInt("cardid", ~mCardId);
         }
-        if (id == mCardId) {
-            mPlaylist = mPlaybackStateStore.getQueue();
+        if (id != mCardId) {
+            return -1;
         }
-        if (mPlaylist.size() > 0) {
-            final int pos = mPreferences.getInt("curpos", 0);
-            if (pos < 0 || pos >= mPlaylist.size()) {
-                mPlaylist.clear();
-                return;
-            }
-            mPlayPos = pos;
-            updateCursor(mPlaylist.get(mPlayPos).mId);
-            if (mCursor == null) {
-                SystemClock.sleep(3000);
-                updateCursor(mPlaylist.get(mPlayPos).mId);
+
+        final int pos = mPreferences.getInt("curpos", 0);
+        final MusicPlaybackTrack current = mPlaybackStateStore.getQueueItem(pos);
+        synchronized (this) {
+            mPlaylist = new ArrayList<>(1);
+            if (current == null) {
+                return -1;
             }
+            mPlaylist.add(current);
+            mPlayPos = 0;
+            // the history holds positions in the whole queue
+            mHistory.clear();
+        }
+
+        int repmode = mPreferences.getInt("repeatmode", REPEAT_NONE);
+        if (repmode != REPEAT_ALL && repmode != REPEAT_CURRENT) {
+            repmode = REPEAT_NONE;
+        }
+        mRepeatMode = repmode;
+
+        int shufmode = mPreferences.getInt("shufflemode", SHUFFLE_NONE);
+        if (shufmode != SHUFFLE_AUTO && shufmode != SHUFFLE_NORMAL
+                && shufmode != SHUFFLE_SMART) {
+            shufmode = SHUFFLE_NONE;
+        }
+        mShuffleMode = shufmode;
+
+        // if the media store isn't ready yet, the track is opened once the queue is read
+        trace.phase("openCurrent");
+        updateCursor(current.mId);
+        if (mCursor != null && !openRestoredTrack()) {
             synchronized (this) {
-                closeCursor();
-                mOpenFailedCounter = 20;
-                openCurrentAndNext();
-            }
-            if (!mPlayer.isInitialized()) {
                 mPlaylist.clear();
-                return;
             }
+            return -1;
+        }
+        return pos;
+    }
 
-            final long seekpos = mPreferences.getLong("seekpos", 0);
-            seek(seekpos >= 0 && seekpos < duration() ? seekpos : 0);
+    /**
+     * Opens the restored current track and moves to where it was left
+     *
+     * @return false if the track couldn't be opened
+     */
+    private boolean openRestoredTrack() {
+        synchronized (this) {
+            closeCursor();
+            mOpenFailedCounter = 20;
+            openCurrentAndNext();
+        }
+        if (!mPlayer.isInitialized()) {
+            return false;
+        }
 
-            if (D) {
-                Log.d(TAG, "restored queue, currently at position "
-                        + position() + "/" + duration()
-                        + " (requested " + seekpos + ")");
-            }
+        // the player checks the position against the duration once it is prepared
+        final long seekpos = mPreferences.getLong("seekpos", 0);
+        seek(Math.max(seekpos, 0));
 
-            int repmode = mPreferences.getInt("repeatmode", REPEAT_NONE);
-            if (repmode != REPEAT_ALL && repmode != REPEAT_CURRENT) {
-                repmode = REPEAT_NONE;
-            }
-            mRepeatMode = repmode;
+        if (D) {
+            Log.d(TAG, "restored queue, currently at position "
+                    + position() + "/" + duration()
+                    + " (requested " + seekpos + ")");
+        }
+        return true;
+    }
 
-            int shufmode = mPreferences.getInt("shufflemode", SHUFFLE_NONE);
-            if (shufmode != SHUFFLE_AUTO && shufmode != SHUFFLE_NORMAL) {
-                shufmode = SHUFFLE_NONE;
+    /**
+     * Reads the rest of the saved queue and the shuffle history, and swaps them in for the
+     * restored current track. Runs on the player thread. If the queue was changed meanwhile
+     * the saved one is dropped and the new one is saved instead.
+     *
+     * @param generation   the restore this belongs to
+     * @param queueVersion the version of the queue once the current track was restored
+     * @param pos          the position of the current track in the saved queue
+     */
+    private void hydrateQueue(final int generation, final int queueVersion, final int pos) {
+        final StartupTrace trace = new StartupTrace("hydrateQueue");
+        trace.phase("readQueue");
+        final ArrayList<MusicPlaybackTrack> queue = mPlaybackStateStore.getQueue();
+
+        trace.phase("readHistory");
+        final int shuffleMode;
+        synchronized (this) {
+            shuffleMode = mShuffleMode;
+        }
+        final LinkedList<Integer> history = shuffleMode != SHUFFLE_NONE
+                ? mPlaybackStateStore.getHistory(queue.size()) : null;
+        // only read the library here, the sampler is loaded along with the queue
+        final long[] library = shuffleMode == SHUFFLE_AUTO
+                ? AutoShuffleSampler.queryLibrary(getContentResolver()) : null;
+
+        trace.phase("apply");
+        final boolean applied;
+        synchronized (this) {
+            if (generation != mQueueRestoreGeneration) {
+                // the storage went away or a newer restore started
+                trace.finish(this);
+                return;
             }
-            if (shufmode != SHUFFLE_NONE) {
-                mHistory = mPlaybackStateStore.getHistory(mPlaylist.size());
+            applied = queueVersion == mQueueVersion && pos < queue.size()
+                    && queue.get(pos).mId == mPlaylist.get(0).mId;
+            if (applied) {
+                mPlaylist = queue;
+                mPlayPos = pos;
+                // the shuffle mode may have been changed while the queue was read
+                if (history != null && mShuffleMode != SHUFFLE_NONE) {
+                    mHistory = history;
+                }
+                if (mShuffleMode == SHUFFLE_AUTO && !mAutoShuffleSampler.load(library)) {
+                    mShuffleMode = SHUFFLE_NONE;
+                }
             }
-            if (shufmode == SHUFFLE_AUTO) {
-                if (!makeAutoShuffleList()) {
-                    shufmode = SHUFFLE_NONE;
+        }
+
+        if (applied) {
+            // this is what the database already holds, so only allow saving afterwards
+            notifyChange(QUEUE_CHANGED);
+            mQueueIsSaveable = true;
+            if (mPlayer.isInitialized()) {
+                setNextTrack();
+            } else {
+                final int version;
+                synchronized (this) {
+                    version = mQueueVersion;
                 }
+                // give the media store some time before opening the track again
+                mPlayerHandler.postDelayed(() -> retryRestoredTrack(generation, version),
+                        MEDIA_STORE_RETRY_DELAY);
+            }
+        } else {
+            mQueueIsSaveable = true;
+            saveQueue(true);
+        }
+        trace.finish(this);
+    }
+
+    /**
+     * Opens the restored current track once more, if the media store didn't know it the
+     * first time and nothing changed since
+     */
+    private void retryRestoredTrack(final int generation, final int queueVersion) {
+        synchronized (this) {
+            if (generation != mQueueRestoreGeneration || queueVersion != mQueueVersion
+                    || mPlayer.isInitialized()) {
+                return;
             }
-            mShuffleMode = shufmode;
+        }
+
+        if (openRestoredTrack()) {
+            notifyChange(META_CHANGED);
+        } else {
+            synchronized (this) {
+                mPlaylist.clear();
+            }
+            notifyChange(QUEUE_CHANGED);
+            notifyChange(META_CHANGED);
         }
     }
 
@@ -1952,7 +2476,7 @@ public class MusicPlaybackService extends MediaBrowserService
             mFileToPlay = path;
             mPlayer.setDataSource(mFileToPlay);
             if (mPlayer.isInitialized()) {
-                mOpenFailedCounter = 0;
+                // mOpenFailedCounter is reset once the track is prepared
                 return true;
             }
 
@@ -2084,6 +2608,46 @@ public class MusicPlaybackService extends MediaBrowserService
         return numremoved;
     }
 
+    /**
+     * Removes all instances of the tracks with the given IDs from the playlist, taking
+     * out each run of neighbouring tracks at once.
+     *
+     * @param ids The ids to be removed
+     * @return how many tracks were removed
+     */
+    public int removeTracksById(final long[] ids) {
+        final long[] sortedIds = ids.clone();
+        Arrays.sort(sortedIds);
+
+        int numremoved = 0;
+        synchronized (this) {
+            // walk backwards so removing a run doesn't shift the runs still to come
+            boolean gotonext = false;
+            int last = -1;
+            for (int i = mPlaylist.size() - 1; i >= -1; i--) {
+                final boolean remove = i >= 0
+                        && Arrays.binarySearch(sortedIds, mPlaylist.get(i).mId) >= 0;
+                if (remove && last < 0) {
+                    last = i;
+                } else if (!remove && last >= 0) {
+                    gotonext |= i + 1 <= mPlayPos && mPlayPos <= last;
+                    numremoved += dropTracks(i + 1, last);
+                    last = -1;
+                }
+            }
+
+            // only pick the track to move on to once every removed track is gone, shuffle
+            // and repeat could otherwise land on one that is about to be removed
+            if (gotonext) {
+                moveOnFromRemovedTrack();
+            }
+        }
+        if (numremoved > 0) {
+            notifyChange(QUEUE_CHANGED);
+        }
+        return numremoved;
+    }
+
     /**
      * Removes a song from the playlist at the specified position.
      *
@@ -2219,22 +2783,9 @@ public class MusicPlaybackService extends MediaBrowserService
             if (mCursor == null || mPlayPos < 0 || mPlayPos >= mPlaylist.size()) {
                 return null;
             }
-            String[] genreProjection = {MediaStore.Audio.Genres.NAME};
-            Uri genreUri = MediaStore.Audio.Genres.getContentUriForAudioId("external",
-                    (int) mPlaylist.get(mPlayPos).mId);
-            Cursor genreCursor = getContentResolver().query(genreUri, genreProjection,
-                    null, null, null);
-            if (genreCursor != null) {
-                try {
-                    if (genreCursor.moveToFirst()) {
-                        return genreCursor.getString(
-                                genreCursor.getColumnIndexOrThrow(MediaStore.Audio.Genres.NAME));
-                    }
-                } finally {
-                    genreCursor.close();
-                }
-            }
-            return null;
+            final LibraryStatsStore libraryStats = mLibraryStats;
+            return libraryStats != null
+                    ? libraryStats.getGenreName(mPlaylist.get(mPlayPos).mId) : null;
         }
     }
 
@@ -2368,7 +2919,7 @@ public class MusicPlaybackService extends MediaBrowserService
         if (mPlayer.isInitialized()) {
             if (position < 0) {
                 position = 0;
-            } else if (position > mPlayer.duration()) {
+            } else if (mPlayer.isPrepared() && position > mPlayer.duration()) {
                 position = mPlayer.duration();
             }
             long result = mPlayer.seek(position);
@@ -2387,7 +2938,7 @@ public class MusicPlaybackService extends MediaBrowserService
      */
     public void seekRelative(long deltaInMs) {
         synchronized (this) {
-            if (mPlayer.isInitialized()) {
+            if (mPlayer.isPrepared()) {
                 final long newPos = position() + deltaInMs;
                 final long duration = duration();
                 if (newPos < 0) {
@@ -2522,6 +3073,7 @@ public class MusicPlaybackService extends MediaBrowserService
         synchronized (this) {
             if (mShuffleMode == SHUFFLE_AUTO) {
                 mShuffleMode = SHUFFLE_NORMAL;
+                mAutoShuffleSampler.clear();
             }
             final long oldId = getAudioId();
             final int listlength = list.length;
@@ -2551,6 +3103,82 @@ public class MusicPlaybackService extends MediaBrowserService
         }
     }
 
+    /**
+     * Replaces the queue with all songs of an artist, album, playlist or the whole library and
+     * starts playing. The songs are read here straight from the cursor, so the caller only
+     * sends the source over binder and the queue is saved once no matter how long it is.
+     *
+     * @param sourceType The kind of source, {@link IdType#NA} for all songs
+     * @param sourceId   The ID of the artist, album or playlist
+     * @param sortOrder  The sort order the caller shows the songs in. This process can't read
+     *                   it from the preferences, they are cached per process
+     * @param position   The position to start at, ignored when shuffling
+     * @param shuffle    True to switch to normal shuffle and start at a random song
+     */
+    public void openSource(final IdType sourceType, final long sourceId, final String sortOrder,
+                           final int position, final boolean shuffle) {
+        // only known orders end up in the query, anything else falls back to the default
+        final String order;
+        if (SortOrder.isSongSortOrder(sortOrder)) {
+            order = sortOrder;
+        } else if (sourceType == IdType.Album) {
+            order = SortOrder.AlbumSongSortOrder.SONG_TRACK_LIST;
+        } else {
+            order = SortOrder.SongSortOrder.SONG_A_Z;
+        }
+
+        final ArrayList<MusicPlaybackTrack> tracks;
+        try (Cursor cursor = MusicUtils.makeSourceSongCursor(this, sourceType, sourceId,
+                order)) {
+            if (cursor == null || !cursor.moveToFirst()) {
+                return;
+            }
+            tracks = MusicPlaybackTrack.fromCursor(cursor,
+                    MusicUtils.getSongIdColumnIndex(cursor), sourceId, sourceType);
+        }
+
+        synchronized (this) {
+            final int oldShuffleMode = mShuffleMode;
+            if (shuffle) {
+                mShuffleMode = SHUFFLE_NORMAL;
+            } else if (mShuffleMode == SHUFFLE_AUTO) {
+                mShuffleMode = SHUFFLE_NORMAL;
+            }
+            if (mShuffleMode != oldShuffleMode) {
+                mSmartShuffle = null;
+                mAutoShuffleSampler.clear();
+            }
+
+            final long oldId = getAudioId();
+            boolean newlist = mPlaylist.size() != tracks.size();
+            for (int i = 0; !newlist && i < tracks.size(); i++) {
+                newlist = tracks.get(i).mId != mPlaylist.get(i).mId;
+            }
+            if (newlist) {
+                mPlaylist = tracks;
+            }
+
+            mPlayPos = shuffle ? mShuffler.nextInt(mPlaylist.size())
+                    : Math.min(Math.max(position, 0), mPlaylist.size() - 1);
+            mHistory.clear();
+            openCurrentAndNext();
+
+            // a single queue change also takes care of saving the queue and shuffle mode
+            if (newlist) {
+                notifyChange(QUEUE_CHANGED);
+            } else {
+                saveQueue(false);
+            }
+            if (oldId != getAudioId()) {
+                notifyChange(META_CHANGED);
+            }
+            if (mShuffleMode != oldShuffleMode) {
+                notifyChange(SHUFFLEMODE_CHANGED);
+            }
+        }
+        play();
+    }
+
     /**
      * Stops playback.
      */
@@ -2715,6 +3343,13 @@ public class MusicPlaybackService extends MediaBrowserService
             }
 
             mPlayPos = nextPos;
+
+            // make the track less likely to come up again
+            if (mShuffleMode == SHUFFLE_SMART && mSmartShuffle != null
+                    && nextPos >= 0 && nextPos < mSmartShuffle.size()) {
+                mSmartShuffle.setWeight(nextPos,
+                        mSmartShuffle.getWeight(nextPos) * SMART_SHUFFLE_PLAYED_FACTOR);
+            }
         }
     }
 
@@ -2751,7 +3386,7 @@ public class MusicPlaybackService extends MediaBrowserService
 
     public int getPreviousPlayPosition(boolean removeFromHistory) {
         synchronized (this) {
-            if (mShuffleMode == SHUFFLE_NORMAL) {
+            if (mShuffleMode == SHUFFLE_NORMAL || mShuffleMode == SHUFFLE_SMART) {
                 // Go to previously-played track and remove it from the history
                 final int histsize = mHistory.size();
                 if (histsize == 0) {
@@ -2845,6 +3480,7 @@ public class MusicPlaybackService extends MediaBrowserService
             }
 
             mShuffleMode = shufflemode;
+            mSmartShuffle = null;
             if (mShuffleMode == SHUFFLE_AUTO) {
                 if (makeAutoShuffleList()) {
                     mPlaylist.clear();
@@ -2858,6 +3494,7 @@ public class MusicPlaybackService extends MediaBrowserService
                     mShuffleMode = SHUFFLE_NONE;
                 }
             } else {
+                mAutoShuffleSampler.clear();
                 setNextTrack();
             }
             saveQueue(false);
@@ -2932,7 +3569,7 @@ public class MusicPlaybackService extends MediaBrowserService
             if (mRepeatMode == REPEAT_CURRENT) {
                 setRepeatMode(REPEAT_ALL);
             }
-        } else if (mShuffleMode == SHUFFLE_NORMAL || mShuffleMode == SHUFFLE_AUTO) {
+        } else {
             setShuffleMode(SHUFFLE_NONE);
         }
     }
@@ -2943,30 +3580,21 @@ public class MusicPlaybackService extends MediaBrowserService
      * @return The album art for the current album.
      */
     public BitmapWithColors getAlbumArt(boolean smallBitmap) {
-        final String albumName = getAlbumName();
-        final String artistName = getArtistName();
-        final long albumId = getAlbumId();
-        final String key = albumName + "_" + artistName + "_" + albumId;
-        final int targetIndex = smallBitmap ? 0 : 1;
-
-        // if the cached key matches and we have the bitmap, return it
-        if (key.equals(mCachedKey) && mCachedBitmapWithColors[targetIndex] != null) {
-            return mCachedBitmapWithColors[targetIndex];
-        }
-
-        // otherwise get the artwork (or default artwork if none found)
-        final BitmapWithColors bitmap = mImageFetcher.getArtwork(albumName, albumId, smallBitmap);
+        return getCurrentArtwork().get(smallBitmap);
+    }
 
-        // if the key is different, clear the bitmaps first
-        if (!key.equals(mCachedKey)) {
-            mCachedBitmapWithColors[0] = null;
-            mCachedBitmapWithColors[1] = null;
-        }
+    /**
+     * @param size the longest edge the artwork may have, in pixels
+     * @return The small album art for the current album scaled to fit size, shared by
+     * everyone asking for the same size
+     */
+    public Bitmap getScaledAlbumArt(final int size) {
+        return getCurrentArtwork().getScaledBitmap(size);
+    }
 
-        // store the new key and bitmap
-        mCachedKey = key;
-        mCachedBitmapWithColors[targetIndex] = bitmap;
-        return bitmap;
+    private CurrentArtwork getCurrentArtwork() {
+        mCurrentArtwork.setAlbum(getAlbumName(), getArtistName(), getAlbumId());
+        return mCurrentArtwork;
     }
 
     /**
@@ -3030,167 +3658,6 @@ public class MusicPlaybackService extends MediaBrowserService
         }
     }
 
-    /**
-     * Setup root menu items for Android Auto to use
-     */
-    private void setupRootMediaItems() {
-        List<MediaBrowser.MediaItem> result = new ArrayList<>();
-        MediaDescription albums = new MediaDescription.Builder()
-                .setMediaId(CONTENT_BROWSER_ALBUMS)
-                .setTitle("Albums")
-                .setIconUri(Uri.parse(mResourceUri + getApplicationContext().getResources()
-                        .getResourceEntryName(R.drawable.ic_album)))
-                .build();
-        result.add(new MediaBrowser.MediaItem(albums, MediaBrowser.MediaItem.FLAG_BROWSABLE));
-        MediaDescription artists = new MediaDescription.Builder()
-                .setMediaId(CONTENT_BROWSER_ARTISTS)
-                .setTitle("Artists")
-                .setIconUri(Uri.parse(mResourceUri + getApplicationContext().getResources()
-                        .getResourceEntryName(R.drawable.ic_artist)))
-                .build();
-        result.add(new MediaBrowser.MediaItem(artists, MediaBrowser.MediaItem.FLAG_BROWSABLE));
-        MediaDescription playlists = new MediaDescription.Builder()
-                .setMediaId(CONTENT_BROWSER_PLAYLISTS)
-                .setTitle("Playlists")
-                .setIconUri(Uri.parse(mResourceUri + getApplicationContext().getResources()
-                        .getResourceEntryName(R.drawable.ic_playlist)))
-                .build();
-        result.add(new MediaBrowser.MediaItem(playlists, MediaBrowser.MediaItem.FLAG_BROWSABLE));
-        MediaDescription songs = new MediaDescription.Builder()
-                .setMediaId(CONTENT_BROWSER_SONGS)
-                .setTitle("Songs")
-                .setIconUri(Uri.parse(mResourceUri + getApplicationContext().getResources()
-                        .getResourceEntryName(R.drawable.ic_playlist)))
-                .build();
-        result.add(new MediaBrowser.MediaItem(songs, MediaBrowser.MediaItem.FLAG_BROWSABLE));
-        mMediaIdToChildren.put(CONTENT_BROWSER_ROOT, result);
-    }
-
-    private List<MediaBrowser.MediaItem> setupAlbumRoot() {
-        List<MediaBrowser.MediaItem> result = new ArrayList<>();
-        ArrayList<Long> mediaIds = new ArrayList<>();
-        try (Cursor c = getContentResolver().query(
-                MediaStore.Audio.Media.getContentUri(MediaStore.VOLUME_EXTERNAL),
-                new String[]{ AlbumColumns.ALBUM, AlbumColumns.ALBUM_ID },
-                "(" + MediaStore.Audio.Media.IS_MUSIC + " !=0 )", null,
-                MediaStore.Audio.Albums.DEFAULT_SORT_ORDER)) {
-            while (c.moveToNext()) {
-                String albumName = c.getString(
-                        c.getColumnIndexOrThrow(MediaStore.Audio.Media.ALBUM));
-                long albumId = c.getLong(c.getColumnIndexOrThrow(MediaStore.Audio.Media.ALBUM_ID));
-                if (!mediaIds.contains(albumId)) {
-                    mediaIds.add(albumId);
-                }
-                else {
-                    continue;
-                }
-                Bitmap bitmap = mImageFetcher.getArtwork(albumName, albumId, true)
-                        .getBitmap();
-                MediaMetadata data = new MediaMetadata.Builder()
-                        .putString(MediaMetadata.METADATA_KEY_TITLE, albumName)
-                        .putString(MediaMetadata.METADATA_KEY_MEDIA_ID, "album_" + albumId)
-                        .putString(MediaMetadata.METADATA_KEY_ALBUM_ART_URI,
-                                ContentUris.withAppendedId(Uri.parse(
-                                                "content://media/external/audio/albumart"),
-                                        albumId).toString())
-                        .putBitmap(MediaMetadata.METADATA_KEY_DISPLAY_ICON, bitmap)
-                        .build();
-                result.add(new MediaBrowser.MediaItem(data.getDescription(),
-                        MediaBrowser.MediaItem.FLAG_BROWSABLE));
-            }
-        }
-        return result;
-    }
-
-    private List<MediaBrowser.MediaItem> setupArtistRoot() {
-        List<MediaBrowser.MediaItem> result = new ArrayList<>();
-        ArrayList<String> mediaIds = new ArrayList<>();
-        try (Cursor c = getContentResolver().query(
-                MediaStore.Audio.Media.getContentUri(MediaStore.VOLUME_EXTERNAL),
-                new String[]{ MediaStore.Audio.ArtistColumns.ARTIST },
-                "(" + MediaStore.Audio.Media.IS_MUSIC + " !=0 )", null,
-                MediaStore.Audio.Artists.DEFAULT_SORT_ORDER)) {
-            while (c.moveToNext()) {
-                String artistName = c.getString(
-                        c.getColumnIndexOrThrow(MediaStore.Audio.Media.ARTIST));
-                if (!mediaIds.contains(artistName)) {
-                    mediaIds.add(artistName);
-                }
-                else {
-                    continue;
-                }
-                // TODO: Get artist bitmap
-                //Bitmap bitmap = mImageFetcher.getArtwork(artistName, albumId, true)
-                        //.getBitmap();
-                MediaMetadata data = new MediaMetadata.Builder()
-                        .putString(MediaMetadata.METADATA_KEY_TITLE, artistName)
-                        .putString(MediaMetadata.METADATA_KEY_MEDIA_ID, "artist_" + artistName)
-                        /*.putString(MediaMetadata.METADATA_KEY_ALBUM_ART_URI,
-                                ContentUris.withAppendedId(Uri.parse(
-                                                "content://media/external/audio/albumart"),
-                                        albumId).toString())
-                        .putBitmap(MediaMetadata.METADATA_KEY_DISPLAY_ICON, bitmap)*/
-                        .build();
-                result.add(new MediaBrowser.MediaItem(data.getDescription(),
-                        MediaBrowser.MediaItem.FLAG_BROWSABLE));
-            }
-        }
-        return result;
-    }
-
-    private List<MediaBrowser.MediaItem> setupPlaylistRoot() {
-        // TODO: Get available playlists
-        return null;
-    }
-
-    private void setupSongRoot() {
-        List<MediaBrowser.MediaItem> result = new ArrayList<>();
-        try (Cursor c = getContentResolver().query(
-             MediaStore.Audio.Media.getContentUri(MediaStore.VOLUME_EXTERNAL),
-                PROJECTION, "(" + MediaStore.Audio.Media.IS_MUSIC + " !=0 )",
-                null, MediaStore.Audio.Media.DEFAULT_SORT_ORDER)) {
-            while (c.moveToNext()) {
-                String albumName = c.getString(
-                        c.getColumnIndexOrThrow(MediaStore.Audio.Media.ALBUM));
-                long albumId = c.getLong(c.getColumnIndexOrThrow(MediaStore.Audio.Media.ALBUM_ID));
-                String artistName = c.getString(
-                        c.getColumnIndexOrThrow(MediaStore.Audio.Media.ARTIST));
-                if (!mMediaIdToChildren.containsKey("album_" + albumId)) {
-                    mMediaIdToChildren.put("album_" + albumId, new ArrayList<>());
-                }
-                if (!mMediaIdToChildren.containsKey("artist_" + artistName)) {
-                    mMediaIdToChildren.put("artist_" + artistName, new ArrayList<>());
-                }
-                Bitmap bitmap = mImageFetcher.getArtwork(albumName, albumId, true)
-                        .getBitmap();
-                long mediaId = c.getLong(c.getColumnIndexOrThrow(MediaStore.Audio.Media._ID));
-                MediaMetadata data = new MediaMetadata.Builder()
-                        .putString(MediaMetadata.METADATA_KEY_ALBUM, albumName)
-                        .putString(MediaMetadata.METADATA_KEY_MEDIA_ID, String.valueOf(mediaId))
-                        .putString(MediaMetadata.METADATA_KEY_TITLE, c.getString(
-                                c.getColumnIndexOrThrow(MediaStore.Audio.Media.TITLE)))
-                        .putString(MediaMetadata.METADATA_KEY_MEDIA_URI,
-                                ContentUris.withAppendedId(
-                                        MediaStore.Audio.Media.getContentUri(
-                                                MediaStore.VOLUME_EXTERNAL), mediaId).toString())
-                        .putString(MediaMetadata.METADATA_KEY_ALBUM_ART_URI,
-                                ContentUris.withAppendedId(Uri.parse(
-                                        "content://media/external/audio/albumart"),
-                                        albumId).toString())
-                        .putBitmap(MediaMetadata.METADATA_KEY_DISPLAY_ICON, bitmap)
-                        .build();
-                MediaBrowser.MediaItem item = new MediaBrowser.MediaItem(data.getDescription(),
-                        MediaBrowser.MediaItem.FLAG_PLAYABLE);
-                Objects.requireNonNull(mMediaIdToChildren.get("album_" + albumId)).add(item);
-                Objects.requireNonNull(mMediaIdToChildren.get("artist_" + artistName)).add(item);
-                result.add(item);
-                mSongs.add(mediaId);
-            }
-        }
-        mMediaIdToChildren.put(CONTENT_BROWSER_SONGS, result);
-        mDidSetupSongRoot = true;
-    }
-
     private final BroadcastReceiver mIntentReceiver = new BroadcastReceiver() {
         @Override
         public void onReceive(final Context context, final Intent intent) {
@@ -3198,14 +3665,14 @@ public class MusicPlaybackService extends MediaBrowserService
 
             if (AppWidgetSmall.APP_WIDGET_UPDATE.equals(command)) {
                 final int[] small = intent.getIntArrayExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS);
-                mAppWidgetSmall.performUpdate(MusicPlaybackService.this, small);
+                mAppWidgetUpdateScheduler.update(mAppWidgetSmall, small);
             } else if (AppWidgetLarge.APP_WIDGET_UPDATE.equals(command)) {
                 final int[] large = intent.getIntArrayExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS);
-                mAppWidgetLarge.performUpdate(MusicPlaybackService.this, large);
+                mAppWidgetUpdateScheduler.update(mAppWidgetLarge, large);
             } else if (AppWidgetLargeAlternate.APP_WIDGET_UPDATE.equals(command)) {
                 final int[] largeAlt = intent
                         .getIntArrayExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS);
-                mAppWidgetLargeAlternate.performUpdate(MusicPlaybackService.this, largeAlt);
+                mAppWidgetUpdateScheduler.update(mAppWidgetLargeAlternate, largeAlt);
             } else {
                 handleCommandIntent(intent);
             }
@@ -3218,12 +3685,26 @@ public class MusicPlaybackService extends MediaBrowserService
         // milliseconds to delay before calling refresh to aggregate events
         private static final long REFRESH_DELAY = 500;
         private final Handler mHandler;
+        // uris changed since the last refresh, only touched on mHandler
+        private final Set<Uri> mChangedUris = new HashSet<>();
+        // set when a change came without a uri, so anything may have changed
+        private boolean mInvalidateAll;
 
         public MediaStoreObserver(Handler handler) {
             super(handler);
             mHandler = handler;
         }
 
+        @Override
+        public void onChange(boolean selfChange, @Nullable Uri uri) {
+            if (uri != null) {
+                mChangedUris.add(uri);
+            } else {
+                mInvalidateAll = true;
+            }
+            onChange(selfChange);
+        }
+
         @Override
         public void onChange(boolean selfChange) {
             // if a change is detected, remove any scheduled callback
@@ -3238,6 +3719,31 @@ public class MusicPlaybackService extends MediaBrowserService
             // actually call refresh when the delayed callback fires
             Log.e("ELEVEN", "calling refresh!");
             refresh();
+
+            // an empty collection means everything changed
+            final Collection<Uri> changedUris = mInvalidateAll
+                    ? Collections.emptySet() : mChangedUris;
+            if (mBrowserTree != null) {
+                mBrowserTree.onMediaStoreChanged(changedUris);
+            }
+            mDescriptionCache.invalidate(changedUris);
+            final boolean autoShuffle;
+            synchronized (MusicPlaybackService.this) {
+                autoShuffle = mShuffleMode == SHUFFLE_AUTO && !mAutoShuffleSampler.isEmpty();
+            }
+            if (autoShuffle) {
+                // query without the lock, the player thread needs it for every track change
+                final AutoShuffleSampler.Changes changes =
+                        AutoShuffleSampler.queryChanges(getContentResolver(), changedUris);
+                synchronized (MusicPlaybackService.this) {
+                    if (mShuffleMode == SHUFFLE_AUTO) {
+                        mAutoShuffleSampler.applyChanges(changes);
+                    }
+                }
+            }
+            updateMediaSessionQueue(true);
+            mChangedUris.clear();
+            mInvalidateAll = false;
         }
     }
 
@@ -3299,6 +3805,7 @@ public class MusicPlaybackService extends MediaBrowserService
                         }
                         break;
                     case TRACK_WENT_TO_NEXT:
+                        service.finishListenEvent(ListenHistoryStore.REASON_COMPLETED);
                         service.setAndRecordPlayPos(service.mNextPlayPos);
                         service.setNextTrack();
                         if (service.mCursor != null) {
@@ -3306,12 +3813,27 @@ public class MusicPlaybackService extends MediaBrowserService
                             service.mCursor = null;
                         }
                         service.updateCursor(service.mPlaylist.get(service.mPlayPos).mId);
+                        service.startListenEvent();
                         service.notifyChange(META_CHANGED);
                         break;
+                    case TRACK_PREPARED:
+                        service.mOpenFailedCounter = 0;
+                        if (service.mListenDuration <= 0) {
+                            service.mListenDuration = service.duration();
+                        }
+                        // the duration and any restored position are known now
+                        service.updateMediaSession(META_CHANGED);
+                        service.notifyChange(POSITION_CHANGED);
+                        break;
+                    case TRACK_PREPARE_FAILED:
+                        service.onPrepareFailed();
+                        break;
                     case TRACK_ENDED:
+                        service.finishListenEvent(ListenHistoryStore.REASON_COMPLETED);
                         if (service.mRepeatMode == REPEAT_CURRENT) {
                             service.seek(0);
                             service.play();
+                            service.startListenEvent();
                         } else {
                             service.gotoNext(false);
                         }
@@ -3415,7 +3937,27 @@ public class MusicPlaybackService extends MediaBrowserService
     }
 
     private static final class MultiPlayer implements MediaPlayer.OnErrorListener,
-            MediaPlayer.OnCompletionListener {
+            MediaPlayer.OnCompletionListener, MediaPlayer.OnPreparedListener {
+
+        /**
+         * No data source, or the last one could not be opened
+         */
+        private static final int STATE_IDLE = 0;
+
+        /**
+         * The current data source is being prepared in the background
+         */
+        private static final int STATE_PREPARING = 1;
+
+        /**
+         * The current data source is ready to play
+         */
+        private static final int STATE_PREPARED = 2;
+
+        /**
+         * How many tracks past the next one are kept opened
+         */
+        private static final int MAX_PREPARED_PLAYERS = 2;
 
         private final WeakReference<MusicPlaybackService> mService;
 
@@ -3426,12 +3968,51 @@ public class MusicPlaybackService extends MediaBrowserService
         private final Handler mHandler;
         private final AudioAttributes mAudioAttributes;
 
-        private boolean mIsInitialized = false;
+        /**
+         * Written under the lock of this player, but read without it so callers never wait
+         * for a pending preparation
+         */
+        private volatile int mState = STATE_IDLE;
 
         private SrtManager mSrtManager;
 
         private String mNextMediaPath;
 
+        private boolean mNextPrepared;
+
+        /**
+         * Requests that came in while the current track was still preparing
+         */
+        private boolean mPlayWhenPrepared;
+        private long mPendingSeek = -1;
+
+        /**
+         * When the current data source was set, or 0 once playback started or the track was
+         * prepared without anyone waiting to play it
+         */
+        private long mOpenTime;
+
+        /**
+         * Time from setting the last data source to the start of playback, or -1
+         */
+        private volatile long mTimeToFirstAudio = -1;
+
+        /**
+         * Whether the current data source came from an already prepared player
+         */
+        private boolean mWarmOpen;
+
+        /**
+         * Players opened ahead of time for the tracks after the next one, keyed by path
+         */
+        private final LinkedHashMap<String, PreparedPlayer> mPreparedPlayers =
+                new LinkedHashMap<>();
+
+        private final LatencyHistogram mWarmStartLatency =
+                new LatencyHistogram("Time to first audio, prepared ahead");
+        private final LatencyHistogram mColdStartLatency =
+                new LatencyHistogram("Time to first audio, opened on demand");
+
         /**
          * Constructor of <code>MultiPlayer</code>
          */
@@ -3449,17 +4030,99 @@ public class MusicPlaybackService extends MediaBrowserService
         }
 
         /**
+         * Opens the given source and starts preparing it. This returns as soon as the source
+         * is open, {@link #isPrepared()} tells when it is ready.
+         *
          * @param path The path of the file, or the http/rtsp URL of the stream
          *             you want to play
          */
-        public void setDataSource(final String path) {
-            mIsInitialized = setDataSourceImpl(mCurrentMediaPlayer, path);
-            if (mIsInitialized) {
+        public synchronized void setDataSource(final String path) {
+            mPlayWhenPrepared = false;
+            mPendingSeek = -1;
+            mOpenTime = SystemClock.elapsedRealtime();
+
+            final PreparedPlayer prepared = takePreparedPlayer(path);
+            mWarmOpen = prepared != null;
+            if (prepared != null) {
+                mCurrentMediaPlayer.release();
+                mCurrentMediaPlayer = prepared.mPlayer;
+                mState = prepared.mPrepared ? STATE_PREPARED : STATE_PREPARING;
+            } else {
+                mState = setDataSourceImpl(mCurrentMediaPlayer, path)
+                        ? STATE_PREPARING : STATE_IDLE;
+            }
+            if (mState != STATE_IDLE) {
                 loadSrt(path);
                 setNextDataSource(null);
+                if (mState == STATE_PREPARED) {
+                    mHandler.sendEmptyMessage(TRACK_PREPARED);
+                }
             }
         }
 
+        /**
+         * Takes the player already opened for the given path, either the next one or one
+         * from the prepared pool
+         *
+         * @return The player or null if there is none for this path
+         */
+        private PreparedPlayer takePreparedPlayer(final String path) {
+            if (mNextMediaPlayer != null && path.equals(mNextMediaPath)) {
+                final PreparedPlayer player = new PreparedPlayer(mNextMediaPlayer);
+                player.mPrepared = mNextPrepared;
+                mNextMediaPlayer = null;
+                mNextMediaPath = null;
+                mNextPrepared = false;
+                return player;
+            }
+            return mPreparedPlayers.remove(path);
+        }
+
+        /**
+         * Opens players ahead of time for the given upcoming tracks so skipping to them
+         * doesn't have to wait for a preparation. Players for paths no longer in the list
+         * are released.
+         *
+         * @param paths The paths of the tracks after the next one, in playback order
+         */
+        public synchronized void setPreparedPaths(final List<String> paths) {
+            final Iterator<Map.Entry<String, PreparedPlayer>> iterator =
+                    mPreparedPlayers.entrySet().iterator();
+            while (iterator.hasNext()) {
+                final Map.Entry<String, PreparedPlayer> entry = iterator.next();
+                if (!paths.contains(entry.getKey())) {
+                    entry.getValue().mPlayer.release();
+                    iterator.remove();
+                }
+            }
+
+            if (mState == STATE_IDLE) {
+                return;
+            }
+            for (final String path : paths) {
+                if (mPreparedPlayers.size() >= MAX_PREPARED_PLAYERS) {
+                    break;
+                }
+                if (path.equals(mNextMediaPath) || mPreparedPlayers.containsKey(path)) {
+                    continue;
+                }
+                final MediaPlayer player = new MediaPlayer();
+                player.setAudioSessionId(getAudioSessionId());
+                if (setDataSourceImpl(player, path)) {
+                    mPreparedPlayers.put(path, new PreparedPlayer(player));
+                } else {
+                    player.release();
+                }
+            }
+        }
+
+        private void releasePreparedPlayers() {
+            for (final PreparedPlayer prepared : mPreparedPlayers.values()) {
+                prepared.mPlayer.release();
+            }
+            mPreparedPlayers.clear();
+        }
+
         private void loadSrt(final String path) {
             mSrtManager.reset();
 
@@ -3500,42 +4163,54 @@ public class MusicPlaybackService extends MediaBrowserService
          * @param player The {@link MediaPlayer} to use
          * @param path   The path of the file, or the http/rtsp URL of the stream
          *               you want to play
-         * @return True if the <code>player</code> has been prepared and is
-         * ready to play, false otherwise
+         * @return True if the <code>player</code> has been opened and is preparing,
+         * false otherwise
          */
         private boolean setDataSourceImpl(final MediaPlayer player, final String path) {
             try {
                 player.reset();
-                player.setOnPreparedListener(null);
                 if (path.startsWith("content://")) {
                     player.setDataSource(mService.get(), Uri.parse(path));
                 } else {
                     player.setDataSource(path);
                 }
                 player.setAudioAttributes(mAudioAttributes);
-                player.prepare();
-            } catch (final IOException | IllegalArgumentException todo) {
+                player.setOnPreparedListener(this);
+                player.setOnCompletionListener(this);
+                player.setOnErrorListener(this);
+                player.prepareAsync();
+            } catch (final IOException | IllegalArgumentException | IllegalStateException todo) {
                 // TODO: notify the user why the file couldn't be opened
                 return false;
             }
-            player.setOnCompletionListener(this);
-            player.setOnErrorListener(this);
             return true;
         }
 
         /**
-         * Set the MediaPlayer to start when this MediaPlayer finishes playback.
+         * Set the MediaPlayer to start when this MediaPlayer finishes playback. The players
+         * are chained once both of them are prepared.
          *
          * @param path The path of the file, or the http/rtsp URL of the stream
          *             you want to play
          */
-        public void setNextDataSource(final String path) {
+        public synchronized void setNextDataSource(final String path) {
+            if (path != null && mNextMediaPlayer != null && path.equals(mNextMediaPath)) {
+                // already opened, only make sure it is chained to the current one
+                chainNextPlayer();
+                return;
+            }
             mNextMediaPath = null;
-            try {
-                mCurrentMediaPlayer.setNextMediaPlayer(null);
-            } catch (IllegalArgumentException e) {
-                Log.i(TAG, "Next media player is current one, continuing");
-            } catch (IllegalStateException e) {
+            mNextPrepared = false;
+            if (mState == STATE_PREPARED) {
+                try {
+                    mCurrentMediaPlayer.setNextMediaPlayer(null);
+                } catch (IllegalArgumentException e) {
+                    Log.i(TAG, "Next media player is current one, continuing");
+                } catch (IllegalStateException e) {
+                    Log.e(TAG, "Media player not initialized!");
+                    return;
+                }
+            } else if (mState == STATE_IDLE) {
                 Log.e(TAG, "Media player not initialized!");
                 return;
             }
@@ -3546,11 +4221,18 @@ public class MusicPlaybackService extends MediaBrowserService
             if (path == null) {
                 return;
             }
+            final PreparedPlayer prepared = mPreparedPlayers.remove(path);
+            if (prepared != null) {
+                mNextMediaPlayer = prepared.mPlayer;
+                mNextMediaPath = path;
+                mNextPrepared = prepared.mPrepared;
+                chainNextPlayer();
+                return;
+            }
             mNextMediaPlayer = new MediaPlayer();
             mNextMediaPlayer.setAudioSessionId(getAudioSessionId());
             if (setDataSourceImpl(mNextMediaPlayer, path)) {
                 mNextMediaPath = path;
-                mCurrentMediaPlayer.setNextMediaPlayer(mNextMediaPlayer);
             } else {
                 if (mNextMediaPlayer != null) {
                     mNextMediaPlayer.release();
@@ -3560,42 +4242,112 @@ public class MusicPlaybackService extends MediaBrowserService
         }
 
         /**
-         * @return True if the player is ready to go, false otherwise
+         * Hands the next player to the current one once both are ready
+         */
+        private void chainNextPlayer() {
+            if (mState != STATE_PREPARED || mNextMediaPlayer == null || !mNextPrepared) {
+                return;
+            }
+            try {
+                mCurrentMediaPlayer.setNextMediaPlayer(mNextMediaPlayer);
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                Log.e(TAG, "Could not set the next media player", e);
+            }
+        }
+
+        /**
+         * @return True if a data source is set, it may still be preparing
          */
         public boolean isInitialized() {
-            return mIsInitialized;
+            return mState != STATE_IDLE;
+        }
+
+        /**
+         * @return True if the player is ready to go, false otherwise
+         */
+        public boolean isPrepared() {
+            return mState == STATE_PREPARED;
+        }
+
+        /**
+         * @return The time it took from opening the last track to hearing it, in milliseconds,
+         * or -1 if playback didn't start right after opening it
+         */
+        public long getTimeToFirstAudio() {
+            return mTimeToFirstAudio;
         }
 
         /**
-         * Starts or resumes playback.
+         * Starts or resumes playback. If the track is still preparing, playback starts as
+         * soon as it is ready.
          */
-        public void start() {
+        public synchronized void start() {
+            if (mState == STATE_PREPARING) {
+                mPlayWhenPrepared = true;
+                return;
+            }
+            startInternal();
+        }
+
+        private void startInternal() {
+            mPlayWhenPrepared = false;
             mCurrentMediaPlayer.start();
             mSrtManager.play();
+
+            if (mOpenTime > 0) {
+                mTimeToFirstAudio = SystemClock.elapsedRealtime() - mOpenTime;
+                mOpenTime = 0;
+                (mWarmOpen ? mWarmStartLatency : mColdStartLatency).record(mTimeToFirstAudio);
+                if (D) Log.d(TAG, "Time to first audio: " + mTimeToFirstAudio + "ms");
+            }
+        }
+
+        /**
+         * Prints the time to first audio histograms and the prepared players
+         */
+        public void dump(final PrintWriter writer) {
+            mWarmStartLatency.dump(writer);
+            mColdStartLatency.dump(writer);
+            synchronized (this) {
+                writer.println("Prepared players: " + mPreparedPlayers.keySet());
+            }
         }
 
         /**
          * Resets the MediaPlayer to its uninitialized state.
          */
-        public void stop() {
+        public synchronized void stop() {
             mCurrentMediaPlayer.reset();
             mSrtManager.reset();
-            mIsInitialized = false;
+            mState = STATE_IDLE;
+            mPlayWhenPrepared = false;
+            mPendingSeek = -1;
+            mOpenTime = 0;
         }
 
         /**
          * Releases resources associated with this MediaPlayer object.
          */
-        public void release() {
+        public synchronized void release() {
             mCurrentMediaPlayer.release();
+            if (mNextMediaPlayer != null) {
+                mNextMediaPlayer.release();
+                mNextMediaPlayer = null;
+            }
+            releasePreparedPlayers();
             mSrtManager.release();
             mSrtManager = null;
+            mState = STATE_IDLE;
         }
 
         /**
          * Pauses playback. Call start() to resume.
          */
-        public void pause() {
+        public synchronized void pause() {
+            if (mState == STATE_PREPARING) {
+                mPlayWhenPrepared = false;
+                return;
+            }
             mCurrentMediaPlayer.pause();
             mSrtManager.pause();
         }
@@ -3603,9 +4355,12 @@ public class MusicPlaybackService extends MediaBrowserService
         /**
          * Gets the duration of the file.
          *
-         * @return The duration in milliseconds
+         * @return The duration in milliseconds, 0 while the track is preparing
          */
-        public long duration() {
+        public synchronized long duration() {
+            if (mState == STATE_PREPARING) {
+                return 0L;
+            }
             try {
                 return mCurrentMediaPlayer.getDuration();
             } catch (IllegalStateException exc) {
@@ -3619,7 +4374,10 @@ public class MusicPlaybackService extends MediaBrowserService
          *
          * @return The current position in milliseconds
          */
-        public long position() {
+        public synchronized long position() {
+            if (mState == STATE_PREPARING) {
+                return Math.max(mPendingSeek, 0L);
+            }
             try {
                 return mCurrentMediaPlayer.getCurrentPosition();
             } catch (IllegalStateException exc) {
@@ -3634,7 +4392,11 @@ public class MusicPlaybackService extends MediaBrowserService
          * @param whereto The offset in milliseconds from the start to seek to
          * @return The offset in milliseconds from the start to seek to
          */
-        public long seek(final long whereto) {
+        public synchronized long seek(final long whereto) {
+            if (mState == STATE_PREPARING) {
+                mPendingSeek = whereto;
+                return whereto;
+            }
             mCurrentMediaPlayer.seekTo((int) whereto);
             mSrtManager.seekTo(whereto);
             return whereto;
@@ -3645,7 +4407,7 @@ public class MusicPlaybackService extends MediaBrowserService
          *
          * @param vol Left and right volume scalar
          */
-        public void setVolume(final float vol) {
+        public synchronized void setVolume(final float vol) {
             mCurrentMediaPlayer.setVolume(vol, vol);
         }
 
@@ -3654,10 +4416,43 @@ public class MusicPlaybackService extends MediaBrowserService
          *
          * @return The current audio session ID.
          */
-        public int getAudioSessionId() {
+        public synchronized int getAudioSessionId() {
             return mCurrentMediaPlayer.getAudioSessionId();
         }
 
+        @Override
+        public void onPrepared(final MediaPlayer mp) {
+            synchronized (this) {
+                if (mp == mCurrentMediaPlayer && mState == STATE_PREPARING) {
+                    mState = STATE_PREPARED;
+                    if (mPendingSeek >= 0) {
+                        // the restored position may be stale if the file changed
+                        final long whereto = mPendingSeek < mp.getDuration() ? mPendingSeek : 0;
+                        mPendingSeek = -1;
+                        mp.seekTo((int) whereto);
+                        mSrtManager.seekTo(whereto);
+                    }
+                    if (mPlayWhenPrepared) {
+                        startInternal();
+                    } else {
+                        mOpenTime = 0;
+                    }
+                    chainNextPlayer();
+                    mHandler.sendEmptyMessage(TRACK_PREPARED);
+                } else if (mp == mNextMediaPlayer) {
+                    mNextPrepared = true;
+                    chainNextPlayer();
+                } else {
+                    for (final PreparedPlayer prepared : mPreparedPlayers.values()) {
+                        if (prepared.mPlayer == mp) {
+                            prepared.mPrepared = true;
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+
         @Override
         public boolean onError(final MediaPlayer mp, final int what, final int extra) {
             Log.w(TAG, "Music Server Error what: " + what + " extra: " + extra);
@@ -3669,27 +4464,70 @@ public class MusicPlaybackService extends MediaBrowserService
                 final TrackErrorInfo errorInfo = new TrackErrorInfo(service.getAudioId(),
                         service.getTrackName());
 
-                mIsInitialized = false;
-                mCurrentMediaPlayer.release();
-                mCurrentMediaPlayer = new MediaPlayer();
+                synchronized (this) {
+                    mState = STATE_IDLE;
+                    mCurrentMediaPlayer.release();
+                    mCurrentMediaPlayer = new MediaPlayer();
+                    releasePreparedPlayers();
+                }
                 Message msg = mHandler.obtainMessage(SERVER_DIED, errorInfo);
                 mHandler.sendMessageDelayed(msg, 2000);
                 return true;
             }
+
+            synchronized (this) {
+                if (mp == mNextMediaPlayer) {
+                    // drop the next track, it gets opened again when playback reaches it
+                    mNextMediaPlayer.release();
+                    mNextMediaPlayer = null;
+                    mNextMediaPath = null;
+                    mNextPrepared = false;
+                    return true;
+                }
+                if (mp == mCurrentMediaPlayer && mState == STATE_PREPARING) {
+                    mState = STATE_IDLE;
+                    mPlayWhenPrepared = false;
+                    mPendingSeek = -1;
+                    mOpenTime = 0;
+                    mHandler.sendEmptyMessage(TRACK_PREPARE_FAILED);
+                    return true;
+                }
+                final Iterator<PreparedPlayer> iterator = mPreparedPlayers.values().iterator();
+                while (iterator.hasNext()) {
+                    final PreparedPlayer prepared = iterator.next();
+                    if (prepared.mPlayer == mp) {
+                        prepared.mPlayer.release();
+                        iterator.remove();
+                        return true;
+                    }
+                }
+            }
             return false;
         }
 
         @Override
         public void onCompletion(final MediaPlayer mp) {
-            if (mp == mCurrentMediaPlayer && mNextMediaPlayer != null) {
-                mCurrentMediaPlayer.release();
-                mCurrentMediaPlayer = mNextMediaPlayer;
-                loadSrt(mNextMediaPath);
-                mNextMediaPath = null;
-                mNextMediaPlayer = null;
-                mHandler.sendEmptyMessage(TRACK_WENT_TO_NEXT);
-            } else {
-                mHandler.sendEmptyMessage(TRACK_ENDED);
+            synchronized (this) {
+                if (mp == mCurrentMediaPlayer && mNextMediaPlayer != null && mNextPrepared) {
+                    mCurrentMediaPlayer.release();
+                    mCurrentMediaPlayer = mNextMediaPlayer;
+                    loadSrt(mNextMediaPath);
+                    mNextMediaPath = null;
+                    mNextMediaPlayer = null;
+                    mNextPrepared = false;
+                    mHandler.sendEmptyMessage(TRACK_WENT_TO_NEXT);
+                    return;
+                }
+            }
+            mHandler.sendEmptyMessage(TRACK_ENDED);
+        }
+
+        private static final class PreparedPlayer {
+            final MediaPlayer mPlayer;
+            boolean mPrepared;
+
+            PreparedPlayer(final MediaPlayer player) {
+                mPlayer = player;
             }
         }
     }
@@ -3713,6 +4551,14 @@ public class MusicPlaybackService extends MediaBrowserService
             mService.get().open(list, position, sourceId, IdType.getTypeById(sourceType));
         }
 
+        @Override
+        public void openSource(final int sourceType, final long sourceId,
+                               final String sortOrder, final int position,
+                               final boolean shuffle) {
+            mService.get().openSource(IdType.getTypeById(sourceType), sourceId, sortOrder,
+                    position, shuffle);
+        }
+
         @Override
         public void stop() {
             mService.get().stop();
@@ -3790,7 +4636,7 @@ public class MusicPlaybackService extends MediaBrowserService
 
         @Override
         public int getQueueSize() {
-            return mService.get().getQueueSize();
+            return mService.get().getPlaybackSnapshot().mQueueSize;
         }
 
         @Override
@@ -3800,7 +4646,7 @@ public class MusicPlaybackService extends MediaBrowserService
 
         @Override
         public int getQueueHistorySize() {
-            return mService.get().getQueueHistorySize();
+            return mService.get().getPlaybackSnapshot().mQueueHistorySize;
         }
 
         @Override
@@ -3830,7 +4676,7 @@ public class MusicPlaybackService extends MediaBrowserService
 
         @Override
         public long getAudioId() {
-            return mService.get().getAudioId();
+            return mService.get().getPlaybackSnapshot().mAudioId;
         }
 
         @Override
@@ -3843,6 +4689,11 @@ public class MusicPlaybackService extends MediaBrowserService
             return mService.get().getTrack(index);
         }
 
+        @Override
+        public PlaybackSnapshot getPlaybackSnapshot() {
+            return mService.get().getPlaybackSnapshot();
+        }
+
         @Override
         public long getNextAudioId() {
             return mService.get().getNextAudioId();
@@ -3855,27 +4706,27 @@ public class MusicPlaybackService extends MediaBrowserService
 
         @Override
         public long getArtistId() {
-            return mService.get().getArtistId();
+            return mService.get().getPlaybackSnapshot().mArtistId;
         }
 
         @Override
         public long getAlbumId() {
-            return mService.get().getAlbumId();
+            return mService.get().getPlaybackSnapshot().mAlbumId;
         }
 
         @Override
         public String getArtistName() {
-            return mService.get().getArtistName();
+            return mService.get().getPlaybackSnapshot().mArtistName;
         }
 
         @Override
         public String getTrackName() {
-            return mService.get().getTrackName();
+            return mService.get().getPlaybackSnapshot().mTrackName;
         }
 
         @Override
         public String getAlbumName() {
-            return mService.get().getAlbumName();
+            return mService.get().getPlaybackSnapshot().mAlbumName;
         }
 
         @Override
@@ -3885,17 +4736,17 @@ public class MusicPlaybackService extends MediaBrowserService
 
         @Override
         public int getQueuePosition() {
-            return mService.get().getQueuePosition();
+            return mService.get().getPlaybackSnapshot().mQueuePosition;
         }
 
         @Override
         public int getShuffleMode() {
-            return mService.get().getShuffleMode();
+            return mService.get().getPlaybackSnapshot().mShuffleMode;
         }
 
         @Override
         public int getRepeatMode() {
-            return mService.get().getRepeatMode();
+            return mService.get().getPlaybackSnapshot().mRepeatMode;
         }
 
         @Override
@@ -3908,6 +4759,11 @@ public class MusicPlaybackService extends MediaBrowserService
             return mService.get().removeTrack(id);
         }
 
+        @Override
+        public int removeTracksById(final long[] ids) {
+            return mService.get().removeTracksById(ids);
+        }
+
         @Override
         public boolean removeTrackAtPosition(final long id, final int position) {
             return mService.get().removeTrackAtPosition(id, position);
@@ -3928,84 +4784,4 @@ public class MusicPlaybackService extends MediaBrowserService
             mService.get().setShakeToPlayEnabled(enabled);
         }
     }
-
-    private class QueueUpdateTask {
-        private final long[] mQueue;
-
-        private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
-
-        public QueueUpdateTask(long[] queue) {
-            mQueue = queue != null ? Arrays.copyOf(queue, queue.length) : null;
-        }
-
-        public void execute() {
-            Handler handler = new Handler(Looper.getMainLooper());
-
-            mExecutor.execute(() -> {
-                List<MediaSession.QueueItem> items = getQueuedItems();
-
-                handler.post(() -> {
-                    mSession.setQueue(items);
-                });
-            });
-        }
-
-        public void cancel() {
-            mExecutor.shutdownNow();
-        }
-
-        private List<MediaSession.QueueItem> getQueuedItems() {
-            if (mQueue == null || mQueue.length == 0) {
-                return null;
-            }
-
-            final StringBuilder selection = new StringBuilder();
-            selection.append(MediaStore.Audio.Media._ID).append(" IN (");
-            for (int i = 0; i < mQueue.length; i++) {
-                if (i != 0) {
-                    selection.append(",");
-                }
-                selection.append(mQueue[i]);
-            }
-            selection.append(")");
-
-            Cursor c = getContentResolver().query(
-                    MediaStore.Audio.Media.getContentUri(MediaStore.VOLUME_EXTERNAL),
-                    new String[]{AudioColumns._ID, AudioColumns.TITLE, AudioColumns.ARTIST},
-                    selection.toString(), null, null);
-            if (c == null) {
-                return null;
-            }
-
-            try {
-                LongSparseArray<MediaDescription> descsById = new LongSparseArray<>();
-                final int idColumnIndex = c.getColumnIndexOrThrow(AudioColumns._ID);
-                final int titleColumnIndex = c.getColumnIndexOrThrow(AudioColumns.TITLE);
-                final int artistColumnIndex = c.getColumnIndexOrThrow(AudioColumns.ARTIST);
-
-                while (c.moveToNext()) {
-                    final MediaDescription desc = new MediaDescription.Builder()
-                            .setTitle(c.getString(titleColumnIndex))
-                            .setSubtitle(c.getString(artistColumnIndex))
-                            .build();
-                    final long id = c.getLong(idColumnIndex);
-                    descsById.put(id, desc);
-                }
-
-                List<MediaSession.QueueItem> items = new ArrayList<>();
-                for (int i = 0; i < mQueue.length; i++) {
-                    MediaDescription desc = descsById.get(mQueue[i]);
-                    if (desc == null) {
-                        // shouldn't happen except in corner cases like
-                        // music being deleted while we were processing
-                        desc = new MediaDescription.Builder().build();
-                    }
-                    items.add(new MediaSession.QueueItem(desc, i));
-                }
-                return items;
-            } finally {
-                c.close();
-            }
-        }
-    }
 }
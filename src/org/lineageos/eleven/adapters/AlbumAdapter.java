@@ -24,6 +24,7 @@ import android.widget.ArrayAdapter;
 
 import androidx.annotation.NonNull;
 import androidx.fragment.app.FragmentActivity;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import org.lineageos.eleven.cache.ImageFetcher;
@@ -142,6 +143,16 @@ public class AlbumAdapter extends RecyclerView.Adapter<MusicHolder> implements I
         }
     }
 
+    /**
+     * Replaces the data with a list whose differences from the current one are described
+     * by the diff, so only the changed items are updated
+     */
+    public void setData(List<Album> albums, DiffUtil.DiffResult diff) {
+        mAlbums = albums;
+        buildCache();
+        diff.dispatchUpdatesTo(this);
+    }
+
     public void setData(List<Album> albums) {
         int oldSize = mAlbums == null ? 0 : mAlbums.size();
         int newSize = albums.size();
@@ -24,6 +24,7 @@ import android.widget.ArrayAdapter;
 
 import androidx.annotation.NonNull;
 import androidx.fragment.app.FragmentActivity;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import org.lineageos.eleven.R;
@@ -145,6 +146,15 @@ public class ArtistAdapter extends RecyclerView.Adapter<MusicHolder> implements
         return mArtists.get(position);
     }
 
+    /**
+     * Replaces the data with a list whose differences from the current one are described
+     * by the diff, so only the changed items are updated
+     */
+    public void setData(List<Artist> artists, DiffUtil.DiffResult diff) {
+        mArtists = artists;
+        diff.dispatchUpdatesTo(this);
+    }
+
     public void setData(List<Artist> artists) {
         int oldSize = mArtists == null ? 0 : mArtists.size();
         int newSize = artists.size();
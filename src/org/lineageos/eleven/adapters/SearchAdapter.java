@@ -0,0 +1,175 @@
+/*
+ * SPDX-FileCopyrightText: 2026 The LineageOS Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.lineageos.eleven.adapters;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.fragment.app.FragmentActivity;
+import androidx.recyclerview.widget.RecyclerView;
+
+import org.lineageos.eleven.R;
+import org.lineageos.eleven.cache.ImageFetcher;
+import org.lineageos.eleven.loaders.LibrarySearcher;
+import org.lineageos.eleven.model.Album;
+import org.lineageos.eleven.model.Artist;
+import org.lineageos.eleven.model.Song;
+import org.lineageos.eleven.ui.MusicHolder;
+import org.lineageos.eleven.utils.ElevenUtils;
+import org.lineageos.eleven.utils.MusicUtils;
+import org.lineageos.eleven.utils.SectionCreatorUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * This {@link RecyclerView.Adapter} shows the results of a library search, the matching
+ * artists first, then the albums and then the songs.
+ */
+public class SearchAdapter extends RecyclerView.Adapter<MusicHolder> {
+
+    private static final int TYPE_ARTIST = 0;
+    private static final int TYPE_ALBUM = 1;
+    private static final int TYPE_SONG = 2;
+
+    private final Context mContext;
+    private final ImageFetcher mImageFetcher;
+    private final Consumer<Object> mOnItemClickListener;
+
+    /**
+     * Artists, albums and songs, in the order they are shown
+     */
+    private final List<Object> mItems = new ArrayList<>();
+
+    /**
+     * Songs only, in the order they are shown
+     */
+    private long[] mSongIds = new long[0];
+
+    /**
+     * @param context             The {@link FragmentActivity} to use
+     * @param onItemClickListener Called with the {@link Artist}, {@link Album} or
+     *                            {@link Song} that was clicked
+     */
+    public SearchAdapter(final FragmentActivity context,
+                         final Consumer<Object> onItemClickListener) {
+        mContext = context;
+        mImageFetcher = ElevenUtils.getImageFetcher(context);
+        mOnItemClickListener = onItemClickListener;
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        final Object item = mItems.get(position);
+        if (item instanceof Artist) {
+            return TYPE_ARTIST;
+        } else if (item instanceof Album) {
+            return TYPE_ALBUM;
+        }
+        return TYPE_SONG;
+    }
+
+    @NonNull
+    @Override
+    public MusicHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        final MusicHolder holder = new MusicHolder(LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.list_item_normal, parent, false));
+        holder.mPopupMenuButton.get().setVisibility(View.GONE);
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull MusicHolder holder, int position) {
+        final Object item = mItems.get(position);
+        holder.itemView.setOnClickListener(v -> mOnItemClickListener.accept(item));
+        holder.mLineOneRight.get().setText(null);
+
+        // artwork of search results is likely to be thrown away a keystroke later, so keep
+        // it from holding up anything else
+        if (item instanceof Artist) {
+            final Artist artist = (Artist) item;
+            holder.mLineOne.get().setText(artist.mArtistName);
+            holder.mLineTwo.get().setText(MusicUtils.makeLabel(mContext, R.plurals.Nsongs,
+                    artist.mSongNumber));
+            mImageFetcher.loadArtistImageLowPriority(artist.mArtistName, holder.mImage.get());
+        } else if (item instanceof Album) {
+            final Album album = (Album) item;
+            holder.mLineOne.get().setText(album.mAlbumName);
+            holder.mLineTwo.get().setText(album.mArtistName);
+            mImageFetcher.loadAlbumImageLowPriority(album.mArtistName, album.mAlbumName,
+                    album.mAlbumId, holder.mImage.get());
+        } else {
+            final Song song = (Song) item;
+            holder.mLineOne.get().setText(song.mSongName);
+            holder.mLineOneRight.get().setText(MusicUtils.makeShortTimeString(mContext,
+                    song.mDuration));
+            holder.mLineTwo.get().setText(MusicUtils.makeCombinedString(mContext,
+                    song.mArtistName, song.mAlbumName));
+            mImageFetcher.loadAlbumImageLowPriority(song.mArtistName, song.mAlbumName,
+                    song.mAlbumId, holder.mImage.get());
+        }
+    }
+
+    @Override
+    public int getItemCount() {
+        return mItems.size();
+    }
+
+    /**
+     * Replaces the shown results
+     *
+     * @return the positions where each group starts, with its label
+     */
+    public TreeMap<Integer, SectionCreatorUtils.Section> setResults(
+            final LibrarySearcher.Results results) {
+        final TreeMap<Integer, SectionCreatorUtils.Section> sections = new TreeMap<>();
+        mItems.clear();
+        addGroup(sections, results.mArtists, R.string.page_artists);
+        addGroup(sections, results.mAlbums, R.string.page_albums);
+        addGroup(sections, results.mSongs, R.string.page_songs);
+
+        mSongIds = new long[results.mSongs.size()];
+        for (int i = 0; i < mSongIds.length; i++) {
+            mSongIds[i] = results.mSongs.get(i).mSongId;
+        }
+
+        notifyDataSetChanged();
+        return sections;
+    }
+
+    private void addGroup(final TreeMap<Integer, SectionCreatorUtils.Section> sections,
+                          final List<?> items, final int labelId) {
+        if (items.isEmpty()) {
+            return;
+        }
+        sections.put(mItems.size(), new SectionCreatorUtils.Section(
+                SectionCreatorUtils.SectionType.Header, mContext.getString(labelId)));
+        mItems.addAll(items);
+    }
+
+    /**
+     * @return the ids of all songs in the results, in the order they are shown
+     */
+    public long[] getSongIds() {
+        return mSongIds;
+    }
+
+    /**
+     * @return the position of the song among the songs of the results
+     */
+    public int getSongPosition(final Song song) {
+        for (int i = 0; i < mSongIds.length; i++) {
+            if (mSongIds[i] == song.mSongId) {
+                return i;
+            }
+        }
+        return 0;
+    }
+}
@@ -22,6 +22,7 @@ import android.view.ViewGroup;
 
 import androidx.annotation.NonNull;
 import androidx.fragment.app.FragmentActivity;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import org.lineageos.eleven.Config;
@@ -258,6 +259,16 @@ public class SongListAdapter extends RecyclerView.Adapter<MusicHolder> implement
         return mSongs.get(position);
     }
 
+    /**
+     * Replaces the data with a list whose differences from the current one are described
+     * by the diff, so only the changed items are updated
+     */
+    public void setData(List<Song> songs, DiffUtil.DiffResult diff) {
+        mSongs = songs;
+        buildCache();
+        diff.dispatchUpdatesTo(this);
+    }
+
     public void setData(List<Song> songs) {
         int oldSize = mSongs == null ? 0 : mSongs.size();
         int newSize = songs.size();
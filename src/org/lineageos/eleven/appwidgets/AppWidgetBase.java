@@ -18,20 +18,98 @@
 package org.lineageos.eleven.appwidgets;
 
 import android.app.PendingIntent;
+import android.appwidget.AppWidgetManager;
 import android.appwidget.AppWidgetProvider;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
 import android.widget.RemoteViews;
 
+import androidx.annotation.DimenRes;
+
+import org.lineageos.eleven.MusicPlaybackService;
 import org.lineageos.eleven.R;
 import org.lineageos.eleven.cache.ImageCache;
 import org.lineageos.eleven.cache.ImageFetcher;
+import org.lineageos.eleven.service.PlaybackSnapshot;
 
 public abstract class AppWidgetBase extends AppWidgetProvider {
 
+    /**
+     * What the last pushed update showed, used to skip pushes that change nothing
+     */
+    private WidgetState mLastState;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Update all active widget instances by pushing changes. Called on the thread of
+     * {@link AppWidgetUpdateScheduler}, as building the state scales the artwork.
+     *
+     * @param appWidgetIds the widgets to update, or null to update every instance
+     */
+    public abstract void performUpdate(MusicPlaybackService service, int[] appWidgetIds);
+
+    /**
+     * Handle a change notification coming over from
+     * {@link MusicPlaybackService}
+     */
+    public void notifyChange(final MusicPlaybackService service) {
+        if (hasInstances(service)) {
+            performUpdate(service, null);
+        }
+    }
+
+    /**
+     * Check against {@link AppWidgetManager} if there are any instances of this
+     * widget.
+     */
+    protected boolean hasInstances(final Context context) {
+        final AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
+        final int[] mAppWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(context,
+                getClass()));
+        return mAppWidgetIds.length > 0;
+    }
+
+    /**
+     * Records the state about to be pushed and tells whether it differs from the last one
+     *
+     * @param state        what the widget is about to show
+     * @param appWidgetIds the widgets being updated. Explicit ids come from onUpdate, where
+     *                     the widgets were just reset to their defaults, so they always update
+     * @return true if the update should be pushed
+     */
+    protected boolean shouldPushUpdate(final WidgetState state, final int[] appWidgetIds) {
+        if (appWidgetIds == null && state.equals(mLastState)) {
+            return false;
+        }
+        mLastState = state;
+        return true;
+    }
+
+    protected void pushUpdate(final Context context, final int[] appWidgetIds,
+                              final RemoteViews views) {
+        final AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
+        if (appWidgetIds != null) {
+            appWidgetManager.updateAppWidget(appWidgetIds, views);
+        } else {
+            appWidgetManager.updateAppWidget(new ComponentName(context, getClass()), views);
+        }
+    }
+
+    /**
+     * Pushes the views built by {@link #performUpdate} from the main thread
+     */
+    protected void postUpdate(final Context context, final int[] appWidgetIds,
+                              final RemoteViews views) {
+        mMainHandler.post(() -> pushUpdate(context, appWidgetIds, views));
+    }
+
     protected PendingIntent buildPendingIntent(Context context, final String action,
                                                final ComponentName serviceName) {
         Intent intent = new Intent(action);
@@ -54,4 +132,95 @@ public abstract class AppWidgetBase extends AppWidgetProvider {
         appWidgetView.setTextViewText(R.id.app_widget_line_three, albumName);
         appWidgetView.setImageViewBitmap(R.id.app_widget_image, bitmap);
     }
+
+    /**
+     * Everything a widget shows that depends on the playback state
+     */
+    protected static final class WidgetState {
+        private final String mTrackName;
+        private final String mArtistName;
+        private final String mAlbumName;
+        private final Bitmap mArtwork;
+        private final boolean mIsPlaying;
+        private final int mRepeatMode;
+        private final int mShuffleMode;
+
+        /**
+         * @param withModes      whether the widget shows the repeat and shuffle modes
+         * @param artworkSizeRes the size of the image view in the layout, the artwork is
+         *                       scaled down to it so the {@link RemoteViews} don't carry a
+         *                       bigger bitmap than the widget can show
+         */
+        public WidgetState(final MusicPlaybackService service, final boolean withModes,
+                           @DimenRes final int artworkSizeRes) {
+            final PlaybackSnapshot snapshot = service.getPlaybackSnapshot();
+            mTrackName = snapshot.mTrackName;
+            mArtistName = snapshot.mArtistName;
+            mAlbumName = snapshot.mAlbumName;
+            mArtwork = service.getScaledAlbumArt(
+                    service.getResources().getDimensionPixelSize(artworkSizeRes));
+            mIsPlaying = snapshot.mIsPlaying;
+            mRepeatMode = withModes ? snapshot.mRepeatMode : 0;
+            mShuffleMode = withModes ? snapshot.mShuffleMode : 0;
+        }
+
+        public String getTrackName() {
+            return mTrackName;
+        }
+
+        public String getArtistName() {
+            return mArtistName;
+        }
+
+        public String getAlbumName() {
+            return mAlbumName;
+        }
+
+        public Bitmap getArtwork() {
+            return mArtwork;
+        }
+
+        public boolean isPlaying() {
+            return mIsPlaying;
+        }
+
+        public int getRepeatMode() {
+            return mRepeatMode;
+        }
+
+        public int getShuffleMode() {
+            return mShuffleMode;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof WidgetState)) {
+                return false;
+            }
+            final WidgetState other = (WidgetState) o;
+            // the service caches the current artwork, so the same bitmap means the same image
+            return mArtwork == other.mArtwork
+                    && mIsPlaying == other.mIsPlaying
+                    && mRepeatMode == other.mRepeatMode
+                    && mShuffleMode == other.mShuffleMode
+                    && TextUtils.equals(mTrackName, other.mTrackName)
+                    && TextUtils.equals(mArtistName, other.mArtistName)
+                    && TextUtils.equals(mAlbumName, other.mAlbumName);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mTrackName != null ? mTrackName.hashCode() : 0;
+            result = 31 * result + (mArtistName != null ? mArtistName.hashCode() : 0);
+            result = 31 * result + (mAlbumName != null ? mAlbumName.hashCode() : 0);
+            result = 31 * result + System.identityHashCode(mArtwork);
+            result = 31 * result + (mIsPlaying ? 1 : 0);
+            result = 31 * result + mRepeatMode;
+            result = 31 * result + mShuffleMode;
+            return result;
+        }
+    }
 }
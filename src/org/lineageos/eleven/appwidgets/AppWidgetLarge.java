@@ -72,51 +72,21 @@ public class AppWidgetLarge extends AppWidgetBase {
         pushUpdate(context, appWidgetIds, appWidgetViews);
     }
 
-    private void pushUpdate(final Context context, final int[] appWidgetIds,
-                            final RemoteViews views) {
-        final AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
-        if (appWidgetIds != null) {
-            appWidgetManager.updateAppWidget(appWidgetIds, views);
-        } else {
-            appWidgetManager.updateAppWidget(new ComponentName(context, getClass()), views);
-        }
-    }
-
-    /**
-     * Check against {@link AppWidgetManager} if there are any instances of this
-     * widget.
-     */
-    private boolean hasInstances(final Context context) {
-        final AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
-        final int[] mAppWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(context,
-                getClass()));
-        return mAppWidgetIds.length > 0;
-    }
-
-    /**
-     * Handle a change notification coming over from
-     * {@link MusicPlaybackService}
-     */
-    public void notifyChange(final MusicPlaybackService service, final String what) {
-        if (hasInstances(service)) {
-            if (MusicPlaybackService.META_CHANGED.equals(what)
-                    || MusicPlaybackService.PLAYSTATE_CHANGED.equals(what)) {
-                performUpdate(service, null);
-            }
+    @Override
+    public void performUpdate(final MusicPlaybackService service, final int[] appWidgetIds) {
+        final WidgetState state = new WidgetState(service, false,
+                R.dimen.app_widget_large_alternate_artwork_size);
+        if (!shouldPushUpdate(state, appWidgetIds)) {
+            return;
         }
-    }
 
-    /**
-     * Update all active widget instances by pushing changes
-     */
-    public void performUpdate(final MusicPlaybackService service, final int[] appWidgetIds) {
         final RemoteViews appWidgetView = new RemoteViews(service.getPackageName(),
                 R.layout.app_widget_large);
 
-        final CharSequence trackName = service.getTrackName();
-        final CharSequence artistName = service.getArtistName();
-        final CharSequence albumName = service.getAlbumName();
-        final Bitmap bitmap = service.getAlbumArt(true).getBitmap();
+        final CharSequence trackName = state.getTrackName();
+        final CharSequence artistName = state.getArtistName();
+        final CharSequence albumName = state.getAlbumName();
+        final Bitmap bitmap = state.getArtwork();
 
         // Set the titles and artwork
         appWidgetView.setTextViewText(R.id.app_widget_line_one, trackName);
@@ -125,7 +95,7 @@ public class AppWidgetLarge extends AppWidgetBase {
         appWidgetView.setImageViewBitmap(R.id.app_widget_image, bitmap);
 
         // Set correct drawable for pause state
-        final boolean isPlaying = service.isPlaying();
+        final boolean isPlaying = state.isPlaying();
         if (isPlaying) {
             appWidgetView.setImageViewResource(R.id.app_widget_large_play,
                     R.drawable.btn_playback_pause);
@@ -142,7 +112,7 @@ public class AppWidgetLarge extends AppWidgetBase {
         linkButtons(service, appWidgetView);
 
         // Update the app-widget
-        pushUpdate(service, appWidgetIds, appWidgetView);
+        postUpdate(service, appWidgetIds, appWidgetView);
     }
 
     /**
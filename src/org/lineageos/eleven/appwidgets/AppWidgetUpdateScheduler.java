@@ -0,0 +1,94 @@
+/*
+ * SPDX-FileCopyrightText: 2026 The LineageOS Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.lineageos.eleven.appwidgets;
+
+import android.os.Handler;
+
+import org.lineageos.eleven.MusicPlaybackService;
+
+/**
+ * Coalesces the change notifications of {@link MusicPlaybackService} into at most one
+ * app-widget update per frame window. Bursts such as rapid skips or queue edits only cost a
+ * single rebuild, and each widget then skips the push if what it shows didn't change.
+ * <p>
+ * Widgets are rebuilt on the given background handler, since that scales the artwork, and
+ * only the finished views are pushed from the main thread.
+ */
+public class AppWidgetUpdateScheduler {
+
+    /**
+     * How long to wait for more changes before updating the widgets
+     */
+    private static final long UPDATE_WINDOW_MS = 16;
+
+    private final MusicPlaybackService mService;
+
+    private final Handler mHandler;
+
+    private final AppWidgetBase[] mWidgets = {
+            AppWidgetSmall.getInstance(),
+            AppWidgetLarge.getInstance(),
+            AppWidgetLargeAlternate.getInstance(),
+    };
+
+    private final Runnable mUpdateRunnable = this::performUpdate;
+
+    private boolean mUpdatePending;
+
+    /**
+     * @param handler the background handler to rebuild the widgets on
+     */
+    public AppWidgetUpdateScheduler(final MusicPlaybackService service, final Handler handler) {
+        mService = service;
+        mHandler = handler;
+    }
+
+    /**
+     * Updates the given instances of a widget right away, for widgets that were just added
+     */
+    public void update(final AppWidgetBase widget, final int[] appWidgetIds) {
+        mHandler.post(() -> widget.performUpdate(mService, appWidgetIds));
+    }
+
+    /**
+     * Schedules an update of all widgets if the change is one they care about
+     */
+    public void notifyChange(final String what) {
+        if (!MusicPlaybackService.META_CHANGED.equals(what)
+                && !MusicPlaybackService.PLAYSTATE_CHANGED.equals(what)
+                && !MusicPlaybackService.REPEATMODE_CHANGED.equals(what)
+                && !MusicPlaybackService.SHUFFLEMODE_CHANGED.equals(what)) {
+            return;
+        }
+
+        synchronized (this) {
+            if (mUpdatePending) {
+                return;
+            }
+            mUpdatePending = true;
+        }
+        mHandler.postDelayed(mUpdateRunnable, UPDATE_WINDOW_MS);
+    }
+
+    /**
+     * Drops any pending update
+     */
+    public void release() {
+        mHandler.removeCallbacks(mUpdateRunnable);
+        synchronized (this) {
+            mUpdatePending = false;
+        }
+    }
+
+    private void performUpdate() {
+        synchronized (this) {
+            mUpdatePending = false;
+        }
+
+        for (final AppWidgetBase widget : mWidgets) {
+            widget.notifyChange(mService);
+        }
+    }
+}
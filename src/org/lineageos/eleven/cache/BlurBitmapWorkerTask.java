@@ -23,6 +23,7 @@ import android.graphics.drawable.TransitionDrawable;
 import android.widget.ImageView;
 
 import org.lineageos.eleven.cache.ImageWorker.ImageType;
+import org.lineageos.eleven.utils.BitmapBlur;
 import org.lineageos.eleven.widgets.AlbumScrimImage;
 
 import java.lang.ref.WeakReference;
@@ -36,6 +37,11 @@ public class BlurBitmapWorkerTask extends BitmapWorkerTask<String, Void,
 
     private static final String TAG = BlurBitmapWorkerTask.class.getSimpleName();
 
+    /**
+     * Appended to the album cache key to store the blurred version of the artwork
+     */
+    private static final String BLUR_SUFFIX = "blur";
+
     // container for the result
     public static class ResultContainer {
         public TransitionDrawable mImageViewBitmapDrawable;
@@ -75,14 +81,16 @@ public class BlurBitmapWorkerTask extends BitmapWorkerTask<String, Void,
         }
 
         final ResultContainer result = new ResultContainer();
-        final Bitmap bitmap = getBitmapInBackground(params);
+        final Bitmap bitmap = getBlurredBitmapInBackground(params);
         if (bitmap != null) {
             // Set the scrim color to be 50% gray
             result.mPaletteColor = 0x7f000000;
 
-            // create the bitmap transition drawable
-            result.mImageViewBitmapDrawable = createImageTransitionDrawable(bitmap,
-                    ImageWorker.FADE_IN_TIME_SLOW, true);
+            // create the bitmap transition drawable, the blurred bitmap is small so let it
+            // be filtered when scaled up to the view bounds
+            result.mImageViewBitmapDrawable = ImageWorker.createImageTransitionDrawable(
+                    mResources, mFromDrawable, bitmap, ImageWorker.FADE_IN_TIME_SLOW, true,
+                    true);
 
             return result;
         }
@@ -90,6 +98,37 @@ public class BlurBitmapWorkerTask extends BitmapWorkerTask<String, Void,
         return null;
     }
 
+    /**
+     * Gets the blurred artwork, either from the caches or by blurring the album artwork
+     * and storing the result so that the next track from the same album costs nothing
+     *
+     * @param params artistName, albumName, albumId
+     * @return the blurred bitmap, or null if there is no artwork
+     */
+    private Bitmap getBlurredBitmapInBackground(final String... params) {
+        final String blurKey = getBlurCacheKey(mKey);
+        if (blurKey != null && mImageCache != null) {
+            final Bitmap cached = mImageCache.getCachedBitmap(blurKey);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        final Bitmap blurred = BitmapBlur.blur(getBitmapInBackground(params));
+        if (blurred != null && blurKey != null && mImageCache != null) {
+            mImageCache.addBitmapToCache(blurKey, blurred);
+        }
+        return blurred;
+    }
+
+    /**
+     * @param key the album cache key
+     * @return the key used to cache the blurred version of the album artwork
+     */
+    public static String getBlurCacheKey(final String key) {
+        return key == null ? null : key + "_" + BLUR_SUFFIX;
+    }
+
     @Override
     protected void onPostExecute(ResultContainer resultContainer) {
         AlbumScrimImage albumScrimImage = mBlurScrimImage.get();
@@ -106,7 +145,6 @@ public class BlurBitmapWorkerTask extends BitmapWorkerTask<String, Void,
                 // set the transition drawable
                 albumScrimImage.setTransitionDrawable(resultContainer.mImageViewBitmapDrawable,
                         paletteTransition);
-                albumScrimImage.applyBlurEffect();
             }
         }
     }
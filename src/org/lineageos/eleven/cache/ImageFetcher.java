@@ -105,6 +105,15 @@ public class ImageFetcher extends ImageWorker {
                 imageView, ImageType.ALBUM);
     }
 
+    /**
+     * Used to fetch album images for short lived lists, on the lowest priority threads.
+     */
+    public void loadAlbumImageLowPriority(final String artistName, final String albumName,
+                                          final long albumId, final ImageView imageView) {
+        loadImage(generateAlbumCacheKey(albumName, artistName), artistName, albumName, albumId,
+                imageView, ImageType.ALBUM, false, true);
+    }
+
     /**
      * Used to fetch the current artwork.
      */
@@ -158,6 +167,13 @@ public class ImageFetcher extends ImageWorker {
         loadImage(key, key, null, -1, imageView, ImageType.ARTIST, scaleImgToView);
     }
 
+    /**
+     * Used to fetch artist images for short lived lists, on the lowest priority threads.
+     */
+    public void loadArtistImageLowPriority(final String key, final ImageView imageView) {
+        loadImage(key, key, null, -1, imageView, ImageType.ARTIST, false, true);
+    }
+
     /**
      * Clears the disk and memory caches
      */
@@ -176,6 +192,8 @@ public class ImageFetcher extends ImageWorker {
     public void removeFromCache(final String key) {
         if (mImageCache != null) {
             mImageCache.removeFromCache(key);
+            // drop the blurred version as well so it gets recreated from the new artwork
+            mImageCache.removeFromCache(BlurBitmapWorkerTask.getBlurCacheKey(key));
         }
     }
 
@@ -201,19 +219,48 @@ public class ImageFetcher extends ImageWorker {
     }
 
     public Bitmap getArtworkBitmap(final String albumName, final long albumId) {
+        if (mImageCache == null) {
+            return null;
+        }
+
         final String key = String.valueOf(albumId);
-        Bitmap artwork = null;
+        // filled by prefetchArtwork() for the tracks coming up
+        Bitmap artwork = mImageCache.getBitmapFromMemCache(key);
+        if (artwork != null) {
+            return artwork;
+        }
 
-        if (albumName != null && mImageCache != null) {
+        if (albumName != null) {
             artwork = mImageCache.getBitmapFromDiskCache(key);
         }
-        if (artwork == null && albumId >= 0 && mImageCache != null) {
+        if (artwork == null && albumId >= 0) {
             artwork = mImageCache.getArtworkFromFile(mContext, albumId);
         }
 
         return artwork;
     }
 
+    /**
+     * Decodes the artwork of an album into the memory cache ahead of time, so a later
+     * {@link #getArtwork(String, long, boolean)} for it doesn't have to go to the disk
+     *
+     * @param albumName The name of the album
+     * @param albumId   The ID of the album
+     */
+    public void prefetchArtwork(final String albumName, final long albumId) {
+        if (mImageCache == null) {
+            return;
+        }
+        final String key = String.valueOf(albumId);
+        if (mImageCache.getBitmapFromMemCache(key) != null) {
+            return;
+        }
+        final Bitmap artwork = getArtworkBitmap(albumName, albumId);
+        if (artwork != null) {
+            mImageCache.addBitmapToMemCache(key, artwork);
+        }
+    }
+
     /**
      * Generates key used by album art cache. It needs both album name and artist name
      * to let to select correct image for the case when there are two albums with the
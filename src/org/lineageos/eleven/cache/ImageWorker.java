@@ -208,6 +208,27 @@ public abstract class ImageWorker {
                                                                    final Bitmap bitmap,
                                                                    final int fadeTime,
                                                                    final boolean force) {
+        return createImageTransitionDrawable(resources, fromDrawable, bitmap, fadeTime, force,
+                false);
+    }
+
+    /**
+     * Creates a transition drawable to Bitmap with params
+     *
+     * @param resources    Android Resources!
+     * @param fromDrawable the drawable to transition from
+     * @param bitmap       the bitmap to transition to
+     * @param fadeTime     the fade time in MS to fade in
+     * @param force        force create a transition even if bitmap == null (fade to transparent)
+     * @param filterBitmap whether to filter the bitmap when it gets scaled up
+     * @return the drawable if created, null otherwise
+     */
+    public static TransitionDrawable createImageTransitionDrawable(final Resources resources,
+                                                                   final Drawable fromDrawable,
+                                                                   final Bitmap bitmap,
+                                                                   final int fadeTime,
+                                                                   final boolean force,
+                                                                   final boolean filterBitmap) {
         if (bitmap != null || force) {
             final Drawable[] arrayDrawable = new Drawable[2];
             arrayDrawable[0] = getTopDrawable(fromDrawable);
@@ -216,7 +237,7 @@ public abstract class ImageWorker {
             Drawable layerTwo;
             if (bitmap != null) {
                 layerTwo = new BitmapDrawable(resources, bitmap);
-                layerTwo.setFilterBitmap(false);
+                layerTwo.setFilterBitmap(filterBitmap);
             } else {
                 // if no bitmap (forced) then transition to transparent
                 layerTwo = new ColorDrawable(Color.TRANSPARENT);
@@ -424,6 +445,27 @@ public abstract class ImageWorker {
     protected void loadImage(final String key, final String artistName, final String albumName,
                              final long albumId, final ImageView imageView,
                              final ImageType imageType, final boolean scaleImgToView) {
+        loadImage(key, artistName, albumName, albumId, imageView, imageType, scaleImgToView,
+                false);
+    }
+
+    /**
+     * Called to fetch the artist or album art.
+     *
+     * @param key            The unique identifier for the image.
+     * @param artistName     The artist name for the Last.fm API.
+     * @param albumName      The album name for the Last.fm API.
+     * @param albumId        The album art index, to check for missing artwork.
+     * @param imageView      The {@link ImageView} used to set the cached
+     *                       {@link Bitmap}.
+     * @param imageType      The type of image URL to fetch for.
+     * @param scaleImgToView config option to scale the image to the image view's dimensions
+     * @param lowPriority    true to load the image on the lowest priority threads
+     */
+    protected void loadImage(final String key, final String artistName, final String albumName,
+                             final long albumId, final ImageView imageView,
+                             final ImageType imageType, final boolean scaleImgToView,
+                             final boolean lowPriority) {
         if (key == null || mImageCache == null || imageView == null) {
             return;
         }
@@ -464,8 +506,13 @@ public abstract class ImageWorker {
                         new AsyncTaskContainer(bitmapWorkerTask);
                 imageView.setTag(asyncTaskContainer);
                 try {
-                    ElevenUtils.execute(bitmapWorkerTask,
-                            artistName, albumName, String.valueOf(albumId));
+                    if (lowPriority) {
+                        ElevenUtils.executeLowPriority(bitmapWorkerTask,
+                                artistName, albumName, String.valueOf(albumId));
+                    } else {
+                        ElevenUtils.execute(bitmapWorkerTask,
+                                artistName, albumName, String.valueOf(albumId));
+                    }
                 } catch (RejectedExecutionException e) {
                     // Executor has exhausted queue space
                 }
@@ -22,8 +22,10 @@ import android.database.Cursor;
 import android.net.Uri;
 import android.provider.MediaStore;
 import android.provider.MediaStore.Audio.AlbumColumns;
+import android.util.LongSparseArray;
 
 import org.lineageos.eleven.model.Album;
+import org.lineageos.eleven.provider.LibraryStatsStore;
 import org.lineageos.eleven.provider.LocalizedStore;
 import org.lineageos.eleven.provider.LocalizedStore.SortParameter;
 import org.lineageos.eleven.sectionadapter.SectionCreator;
@@ -75,6 +77,9 @@ public class AlbumLoader extends SectionCreator.SimpleListLoader<Album> {
     public List<Album> loadInBackground() {
         // Create the Cursor
         Cursor cursor = makeAlbumCursor(getContext(), mArtistId);
+        // The counts and years come from the precomputed stats rather than the media store views
+        final LongSparseArray<LibraryStatsStore.Stats> stats =
+                LibraryStatsStore.getInstance(getContext()).getAlbumStats();
         // Gather the data
         if (cursor != null && cursor.moveToFirst()) {
             do {
@@ -87,11 +92,11 @@ public class AlbumLoader extends SectionCreator.SimpleListLoader<Album> {
                 // Copy the artist name
                 final String artist = cursor.getString(2);
 
-                // Copy the number of songs
-                final int songCount = cursor.getInt(3);
-
-                // Copy the release year
-                final String year = cursor.getString(4);
+                // Copy the number of songs and the release year
+                final LibraryStatsStore.Stats albumStats = stats.get(id);
+                final int songCount = albumStats != null ? albumStats.mTrackCount : 0;
+                final String year = albumStats != null && albumStats.mFirstYear > 0
+                        ? String.valueOf(albumStats.mFirstYear) : null;
 
                 // as per designer's request, don't show unknown albums
                 if (MediaStore.UNKNOWN_STRING.equals(albumName)) {
@@ -153,16 +158,26 @@ public class AlbumLoader extends SectionCreator.SimpleListLoader<Album> {
                         /* 1 */
                         AlbumColumns.ALBUM,
                         /* 2 */
-                        AlbumColumns.ARTIST,
-                        /* 3 */
-                        AlbumColumns.NUMBER_OF_SONGS,
-                        /* 4 */
-                        AlbumColumns.FIRST_YEAR
-                }, null, null, albumSortOrder);
+                        AlbumColumns.ARTIST
+                }, null, null, null);
+        if (cursor == null) {
+            return null;
+        }
+
+        // count and year sorts are ordered by the precomputed stats
+        if (albumSortOrder.equals(SortOrder.AlbumSortOrder.ALBUM_NUMBER_OF_SONGS)) {
+            return SortedCursor.keepingUnordered(cursor,
+                    LibraryStatsStore.getInstance(context).getAlbumIdsByTrackCount(),
+                    AlbumColumns.ALBUM_ID);
+        } else if (albumSortOrder.equals(SortOrder.AlbumSortOrder.ALBUM_YEAR)) {
+            return SortedCursor.keepingUnordered(cursor,
+                    LibraryStatsStore.getInstance(context).getAlbumIdsByYear(),
+                    AlbumColumns.ALBUM_ID);
+        }
 
         // if our sort is a localized-based sort, grab localized data from the store
         final SortParameter sortParameter = getSortParameter(albumSortOrder);
-        if (sortParameter != null && cursor != null) {
+        if (sortParameter != null) {
             final boolean descending = MusicUtils.isSortOrderDesending(albumSortOrder);
             return LocalizedStore.getInstance(context).getLocalizedSort(cursor,
                     AlbumColumns.ALBUM_ID, SortParameter.Album, sortParameter,
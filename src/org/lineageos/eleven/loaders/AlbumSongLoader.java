@@ -107,6 +107,18 @@ public class AlbumSongLoader extends WrappedAsyncTaskLoader<List<Song>> {
      * @return The {@link Cursor} used to run the query.
      */
     public static Cursor makeAlbumSongCursor(final Context context, final Long albumId) {
+        return makeAlbumSongCursor(context, albumId,
+                PreferenceUtils.getInstance(context).getAlbumSongSortOrder());
+    }
+
+    /**
+     * @param context   The {@link Context} to use.
+     * @param albumId   The Id of the album the songs belong to.
+     * @param sortOrder The sort order to use instead of the one in the preferences
+     * @return The {@link Cursor} used to run the query.
+     */
+    public static Cursor makeAlbumSongCursor(final Context context, final Long albumId,
+                                             final String sortOrder) {
         // Match the songs up with the artist
         String selection = (AudioColumns.IS_MUSIC + "=1") +
                 " AND " + AudioColumns.TITLE + " != ''" +
@@ -126,8 +138,7 @@ public class AlbumSongLoader extends WrappedAsyncTaskLoader<List<Song>> {
                         AudioColumns.DURATION,
                         /* 5 */
                         AudioColumns.YEAR,
-                }, selection, null,
-                PreferenceUtils.getInstance(context).getAlbumSongSortOrder());
+                }, selection, null, sortOrder);
     }
 
 }
@@ -21,8 +21,10 @@ import android.content.Context;
 import android.database.Cursor;
 import android.provider.MediaStore;
 import android.provider.MediaStore.Audio.Artists;
+import android.util.LongSparseArray;
 
 import org.lineageos.eleven.model.Artist;
+import org.lineageos.eleven.provider.LibraryStatsStore;
 import org.lineageos.eleven.provider.LocalizedStore;
 import org.lineageos.eleven.provider.LocalizedStore.SortParameter;
 import org.lineageos.eleven.sectionadapter.SectionCreator;
@@ -60,6 +62,9 @@ public class ArtistLoader extends SectionCreator.SimpleListLoader<Artist> {
     public List<Artist> loadInBackground() {
         // Create the Cursor
         Cursor cursor = makeArtistCursor(getContext());
+        // The counts come from the precomputed stats rather than the media store views
+        final LongSparseArray<LibraryStatsStore.Stats> stats =
+                LibraryStatsStore.getInstance(getContext()).getArtistStats();
         // Gather the data
         if (cursor != null && cursor.moveToFirst()) {
             do {
@@ -69,11 +74,10 @@ public class ArtistLoader extends SectionCreator.SimpleListLoader<Artist> {
                 // Copy the artist name
                 final String artistName = cursor.getString(1);
 
-                // Copy the number of albums
-                final int albumCount = cursor.getInt(2);
-
-                // Copy the number of songs
-                final int songCount = cursor.getInt(3);
+                // Copy the number of albums and songs
+                final LibraryStatsStore.Stats artistStats = stats.get(id);
+                final int albumCount = artistStats != null ? artistStats.mAlbumCount : 0;
+                final int songCount = artistStats != null ? artistStats.mTrackCount : 0;
 
                 // as per designer's request, don't show unknown artist
                 if (MediaStore.UNKNOWN_STRING.equals(artistName)) {
@@ -126,16 +130,26 @@ public class ArtistLoader extends SectionCreator.SimpleListLoader<Artist> {
                         /* 0 */
                         Artists._ID,
                         /* 1 */
-                        Artists.ARTIST,
-                        /* 2 */
-                        Artists.NUMBER_OF_ALBUMS,
-                        /* 3 */
-                        Artists.NUMBER_OF_TRACKS
-                }, null, null, artistSortOrder);
+                        Artists.ARTIST
+                }, null, null, null);
+        if (cursor == null) {
+            return null;
+        }
+
+        // count-based sorts are ordered by the precomputed stats
+        if (artistSortOrder.equals(SortOrder.ArtistSortOrder.ARTIST_NUMBER_OF_SONGS)) {
+            return SortedCursor.keepingUnordered(cursor,
+                    LibraryStatsStore.getInstance(context).getArtistIdsByTrackCount(),
+                    Artists._ID);
+        } else if (artistSortOrder.equals(SortOrder.ArtistSortOrder.ARTIST_NUMBER_OF_ALBUMS)) {
+            return SortedCursor.keepingUnordered(cursor,
+                    LibraryStatsStore.getInstance(context).getArtistIdsByAlbumCount(),
+                    Artists._ID);
+        }
 
         // if our sort is a localized-based sort, grab localized data from the store
         final SortParameter sortParameter = getSortParameter(artistSortOrder);
-        if (sortParameter != null && cursor != null) {
+        if (sortParameter != null) {
             final boolean descending = MusicUtils.isSortOrderDesending(artistSortOrder);
             return LocalizedStore.getInstance(context).getLocalizedSort(cursor, Artists._ID,
                     SortParameter.Artist, sortParameter, descending, true);
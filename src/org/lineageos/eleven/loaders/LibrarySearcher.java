@@ -0,0 +1,309 @@
+/*
+ * SPDX-FileCopyrightText: 2026 The LineageOS Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.lineageos.eleven.loaders;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.provider.BaseColumns;
+import android.provider.MediaStore;
+import android.provider.MediaStore.Audio.AudioColumns;
+import android.util.Log;
+import android.util.LongSparseArray;
+
+import org.lineageos.eleven.model.Album;
+import org.lineageos.eleven.model.Artist;
+import org.lineageos.eleven.model.Song;
+import org.lineageos.eleven.provider.LibraryStatsStore;
+import org.lineageos.eleven.provider.LocalizedStore;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs library searches as the user types. Every new query makes the ones still running
+ * stale, and they stop at their next checkpoint. The songs found by the search index are
+ * loaded in chunks and each chunk is handed out right away, together with the artists and
+ * albums whose names match the query. Their song and album counts come from
+ * {@link LibraryStatsStore}, since the songs found are only a part of theirs.
+ */
+public class LibrarySearcher {
+    private static final String TAG = LibrarySearcher.class.getSimpleName();
+    private static final boolean DEBUG = false;
+
+    /**
+     * Maximum number of songs returned for a query
+     */
+    private static final int MAX_SONGS = 200;
+
+    /**
+     * Number of songs loaded from the media store before results are handed out
+     */
+    private static final int CHUNK_SIZE = 50;
+
+    private static final String[] PROJECTION = new String[]{
+            /* 0 */
+            BaseColumns._ID,
+            /* 1 */
+            AudioColumns.TITLE,
+            /* 2 */
+            AudioColumns.ARTIST_ID,
+            /* 3 */
+            AudioColumns.ARTIST,
+            /* 4 */
+            AudioColumns.ALBUM_ID,
+            /* 5 */
+            AudioColumns.ALBUM,
+            /* 6 */
+            AudioColumns.DURATION,
+            /* 7 */
+            AudioColumns.YEAR,
+    };
+
+    public interface Callback {
+        /**
+         * Called on the main thread each time more results of the latest query are in
+         */
+        void onSearchResults(Results results);
+    }
+
+    public static final class Results {
+        public final String mQuery;
+        public final List<Artist> mArtists;
+        public final List<Album> mAlbums;
+        public final List<Song> mSongs;
+
+        /**
+         * true once every chunk of the query is in
+         */
+        public final boolean mComplete;
+
+        Results(final String query, final List<Artist> artists, final List<Album> albums,
+                final List<Song> songs, final boolean complete) {
+            mQuery = query;
+            mArtists = artists;
+            mAlbums = albums;
+            mSongs = songs;
+            mComplete = complete;
+        }
+
+        public boolean isEmpty() {
+            return mArtists.isEmpty() && mAlbums.isEmpty() && mSongs.isEmpty();
+        }
+    }
+
+    private final Context mContext;
+    private final Callback mCallback;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(r -> {
+        final Thread thread = new Thread(r, TAG);
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+
+    /**
+     * Bumped for every query, anything started for an older value is stale
+     */
+    private final AtomicInteger mGeneration = new AtomicInteger();
+
+    public LibrarySearcher(final Context context, final Callback callback) {
+        mContext = context.getApplicationContext();
+        mCallback = callback;
+    }
+
+    /**
+     * Starts searching for the query, dropping whatever the previous one is still doing
+     */
+    public void search(final String query) {
+        final long requestTime = SystemClock.elapsedRealtime();
+        final int generation = mGeneration.incrementAndGet();
+        mExecutor.execute(() -> runSearch(query, generation, requestTime));
+    }
+
+    /**
+     * Drops the query in flight, if any
+     */
+    public void cancel() {
+        mGeneration.incrementAndGet();
+    }
+
+    public void release() {
+        cancel();
+        mExecutor.shutdown();
+    }
+
+    private boolean isStale(final int generation) {
+        return generation != mGeneration.get();
+    }
+
+    private void runSearch(final String query, final int generation, final long requestTime) {
+        if (isStale(generation)) {
+            return;
+        }
+
+        final long[] ids = LocalizedStore.getInstance(mContext).searchSongs(query, MAX_SONGS);
+        if (ids.length == 0) {
+            publish(new Results(query, new ArrayList<>(0), new ArrayList<>(0),
+                    new ArrayList<>(0), true), generation, requestTime, true);
+            return;
+        }
+
+        final String[] words = normalize(query).split("[^\\p{L}\\p{N}]+");
+        final List<Song> songs = new ArrayList<>(ids.length);
+        final Map<Long, Artist> artists = new LinkedHashMap<>();
+        final Map<Long, Album> albums = new LinkedHashMap<>();
+        final LibraryStatsStore statsStore = LibraryStatsStore.getInstance(mContext);
+
+        for (int start = 0; start < ids.length; start += CHUNK_SIZE) {
+            if (isStale(generation)) {
+                return;
+            }
+
+            final int end = Math.min(ids.length, start + CHUNK_SIZE);
+            final LongSparseArray<Object[]> rows = loadRows(ids, start, end);
+            final Map<Long, Object[]> newArtists = new LinkedHashMap<>();
+            final Map<Long, Object[]> newAlbums = new LinkedHashMap<>();
+            for (int i = start; i < end; i++) {
+                final Object[] row = rows.get(ids[i]);
+                if (row == null) {
+                    continue;
+                }
+
+                final long artistId = (Long) row[2];
+                final String artistName = (String) row[3];
+                final long albumId = (Long) row[4];
+                final String albumName = (String) row[5];
+                songs.add(new Song(ids[i], (String) row[1], artistName, albumName, albumId,
+                        (int) ((Long) row[6] / 1000), (Integer) row[7]));
+
+                if (!artists.containsKey(artistId) && !newArtists.containsKey(artistId)
+                        && matchesAllWords(artistName, words)) {
+                    newArtists.put(artistId, row);
+                }
+                if (!albums.containsKey(albumId) && !newAlbums.containsKey(albumId)
+                        && matchesAllWords(albumName, words)) {
+                    newAlbums.put(albumId, row);
+                }
+            }
+
+            if (!newArtists.isEmpty()) {
+                final LongSparseArray<LibraryStatsStore.Stats> stats =
+                        statsStore.getArtistStats(newArtists.keySet());
+                for (Map.Entry<Long, Object[]> artist : newArtists.entrySet()) {
+                    final LibraryStatsStore.Stats artistStats = stats.get(artist.getKey());
+                    artists.put(artist.getKey(), new Artist(artist.getKey(),
+                            (String) artist.getValue()[3],
+                            artistStats != null ? artistStats.mTrackCount : 0,
+                            artistStats != null ? artistStats.mAlbumCount : 0));
+                }
+            }
+            if (!newAlbums.isEmpty()) {
+                final LongSparseArray<LibraryStatsStore.Stats> stats =
+                        statsStore.getAlbumStats(newAlbums.keySet());
+                for (Map.Entry<Long, Object[]> album : newAlbums.entrySet()) {
+                    final LibraryStatsStore.Stats albumStats = stats.get(album.getKey());
+                    albums.put(album.getKey(), new Album(album.getKey(),
+                            (String) album.getValue()[5], (String) album.getValue()[3],
+                            albumStats != null ? albumStats.mTrackCount : 0,
+                            String.valueOf(album.getValue()[7])));
+                }
+            }
+
+            final boolean complete = end == ids.length;
+            publish(new Results(query, new ArrayList<>(artists.values()),
+                    new ArrayList<>(albums.values()), new ArrayList<>(songs), complete),
+                    generation, requestTime, start == 0);
+        }
+    }
+
+    /**
+     * Loads the media store rows of the ids in [start, end)
+     */
+    private LongSparseArray<Object[]> loadRows(final long[] ids, final int start,
+                                               final int end) {
+        final StringBuilder selection = new StringBuilder(BaseColumns._ID + " IN (");
+        for (int i = start; i < end; i++) {
+            if (i > start) {
+                selection.append(',');
+            }
+            selection.append(ids[i]);
+        }
+        selection.append(')');
+
+        final LongSparseArray<Object[]> rows = new LongSparseArray<>(end - start);
+        try (Cursor c = mContext.getContentResolver().query(
+                MediaStore.Audio.Media.getContentUri(MediaStore.VOLUME_EXTERNAL), PROJECTION,
+                selection.toString(), null, null)) {
+            if (c != null && c.moveToFirst()) {
+                do {
+                    rows.put(c.getLong(0), new Object[]{
+                            c.getLong(0), c.getString(1), c.getLong(2), c.getString(3),
+                            c.getLong(4), c.getString(5), c.getLong(6), c.getInt(7),
+                    });
+                } while (c.moveToNext());
+            }
+        }
+        return rows;
+    }
+
+    private void publish(final Results results, final int generation, final long requestTime,
+                         final boolean first) {
+        mMainHandler.post(() -> {
+            if (isStale(generation)) {
+                return;
+            }
+            if (DEBUG && (first || results.mComplete)) {
+                Log.d(TAG, (first ? "First" : "All") + " results for \"" + results.mQuery
+                        + "\" after " + (SystemClock.elapsedRealtime() - requestTime) + "ms");
+            }
+            mCallback.onSearchResults(results);
+        });
+    }
+
+    /**
+     * Lower cases the text and strips diacritics, the same way the search index does
+     */
+    private static String normalize(final String text) {
+        return Normalizer.normalize(text, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}+", "")
+                .toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return true if every word is the start of a word of the text
+     */
+    private static boolean matchesAllWords(final String text, final String[] words) {
+        if (text == null) {
+            return false;
+        }
+
+        final String[] textWords = normalize(text).split("[^\\p{L}\\p{N}]+");
+        for (final String word : words) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            boolean found = false;
+            for (final String textWord : textWords) {
+                if (textWord.startsWith(word)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
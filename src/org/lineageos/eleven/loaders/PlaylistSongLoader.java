@@ -26,13 +26,16 @@ import android.os.RemoteException;
 import android.provider.MediaStore;
 import android.provider.MediaStore.Audio.AudioColumns;
 import android.provider.MediaStore.Audio.Playlists;
+import android.text.TextUtils;
 import android.util.Log;
 
 import org.lineageos.eleven.model.Song;
 import org.lineageos.eleven.utils.Lists;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Used to query MediaStore.Audio.Playlists.EXTERNAL_CONTENT_URI and
@@ -43,6 +46,11 @@ import java.util.List;
 public class PlaylistSongLoader extends WrappedAsyncTaskLoader<List<Song>> {
     private static final String TAG = PlaylistSongLoader.class.getSimpleName();
 
+    /**
+     * Number of member ids put in a single IN clause
+     */
+    private static final int MAX_IDS_PER_STATEMENT = 500;
+
     /**
      * The result
      */
@@ -72,40 +80,31 @@ public class PlaylistSongLoader extends WrappedAsyncTaskLoader<List<Song>> {
         Cursor cursor = makePlaylistSongCursor(getContext(), mPlaylistID);
 
         if (cursor != null) {
-            boolean runCleanup = false;
+            boolean repaired = false;
 
             // if the raw playlist count differs from the mapped playlist count (ie the raw mapping
             // table vs the mapping table join the audio table) that means the playlist mapping
-            // table is messed up
+            // table has rows for songs that are gone
             if (cursor.getCount() != playlistCount) {
                 Log.w(TAG, "Count Differs - raw is: " + playlistCount + " while cursor is " +
                         cursor.getCount());
 
-                runCleanup = true;
+                removeMissingMembers(getContext(), mPlaylistID, cursor);
+                repaired = true;
             }
 
-            // check if the play order is already messed up by duplicates
-            if (!runCleanup && cursor.moveToFirst()) {
-                final int playOrderCol = cursor.getColumnIndexOrThrow(Playlists.Members.PLAY_ORDER);
+            // check if the play order is messed up by duplicates, only the part of the
+            // playlist from the first duplicate on needs to be rewritten
+            final int flawedPosition = findFirstDuplicatePlayOrder(cursor);
+            if (flawedPosition >= 0) {
+                Log.w(TAG, "Playlist order has flaws from position " + flawedPosition
+                        + " - rewriting the rest of the playlist");
 
-                int lastPlayOrder = -1;
-                do {
-                    int playOrder = cursor.getInt(playOrderCol);
-                    // if we have duplicate play orders, we need to recreate the playlist
-                    if (playOrder == lastPlayOrder) {
-                        runCleanup = true;
-                        break;
-                    }
-                    lastPlayOrder = playOrder;
-                } while (cursor.moveToNext());
+                rewritePlaylistFrom(getContext(), mPlaylistID, cursor, flawedPosition);
+                repaired = true;
             }
 
-            if (runCleanup) {
-                Log.w(TAG, "Playlist order has flaws - recreating playlist");
-
-                // cleanup the playlist
-                cleanupPlaylist(getContext(), mPlaylistID, cursor);
-
+            if (repaired) {
                 // create a new cursor
                 cursor.close();
                 cursor = makePlaylistSongCursor(getContext(), mPlaylistID);
@@ -165,30 +164,108 @@ public class PlaylistSongLoader extends WrappedAsyncTaskLoader<List<Song>> {
     }
 
     /**
-     * Cleans up the playlist based on the passed in cursor's data
+     * @param cursor playlist cursor sorted by play order
+     * @return the position of the first row that shares its play order with the row before
+     * it, or -1 if the play order is fine
+     */
+    private static int findFirstDuplicatePlayOrder(final Cursor cursor) {
+        if (!cursor.moveToFirst()) {
+            return -1;
+        }
+
+        final int playOrderCol = cursor.getColumnIndexOrThrow(Playlists.Members.PLAY_ORDER);
+        int lastPlayOrder = cursor.getInt(playOrderCol);
+        while (cursor.moveToNext()) {
+            final int playOrder = cursor.getInt(playOrderCol);
+            if (playOrder == lastPlayOrder) {
+                return cursor.getPosition() - 1;
+            }
+            lastPlayOrder = playOrder;
+        }
+        return -1;
+    }
+
+    /**
+     * Removes the rows of the raw playlist mapping table that point to songs that no longer
+     * show up in the passed in cursor
+     *
+     * @param context    The {@link Context} to use
+     * @param playlistId playlistId to clean up
+     * @param cursor     the mapped playlist rows
+     */
+    private static void removeMissingMembers(final Context context, final long playlistId,
+                                             final Cursor cursor) {
+        final int memberIdCol = cursor.getColumnIndexOrThrow(Playlists.Members._ID);
+        final Set<Long> mapped = new HashSet<>(cursor.getCount());
+        if (cursor.moveToFirst()) {
+            do {
+                mapped.add(cursor.getLong(memberIdCol));
+            } while (cursor.moveToNext());
+        }
+
+        final Uri uri = Playlists.Members.getContentUri(MediaStore.VOLUME_EXTERNAL, playlistId);
+        final List<Long> missing = new ArrayList<>();
+        try (Cursor c = context.getContentResolver().query(uri,
+                new String[]{Playlists.Members._ID, Playlists.Members.AUDIO_ID},
+                null, null, null)) {
+            if (c != null && c.moveToFirst()) {
+                do {
+                    if (!mapped.contains(c.getLong(0))) {
+                        missing.add(c.getLong(0));
+                    }
+                } while (c.moveToNext());
+            }
+        }
+
+        for (int start = 0; start < missing.size(); start += MAX_IDS_PER_STATEMENT) {
+            final List<Long> chunk = missing.subList(start,
+                    Math.min(missing.size(), start + MAX_IDS_PER_STATEMENT));
+            context.getContentResolver().delete(uri,
+                    Playlists.Members._ID + " IN (" + TextUtils.join(",", chunk) + ")", null);
+        }
+    }
+
+    /**
+     * Rewrites the playlist from the given position on based on the passed in cursor's data,
+     * the rows before that position are left alone
      *
      * @param context    The {@link Context} to use
      * @param playlistId playlistId to clean up
      * @param cursor     data to repopulate the playlist with
+     * @param first      position of the first row to rewrite
      */
-    private static void cleanupPlaylist(final Context context, final long playlistId,
-                                        final Cursor cursor) {
+    private static void rewritePlaylistFrom(final Context context, final long playlistId,
+                                            final Cursor cursor, final int first) {
         Log.w(TAG, "Cleaning up playlist: " + playlistId);
 
+        final int memberIdCol = cursor.getColumnIndexOrThrow(Playlists.Members._ID);
         final int idCol = cursor.getColumnIndexOrThrow(MediaStore.Audio.Playlists.Members.AUDIO_ID);
         final Uri uri = MediaStore.Audio.Playlists.Members.getContentUri(MediaStore.VOLUME_EXTERNAL,
                 playlistId);
 
         ArrayList<ContentProviderOperation> ops = new ArrayList<>();
 
-        // Delete all results in the playlist
-        ops.add(ContentProviderOperation.newDelete(uri).build());
+        // Delete the affected rows
+        final List<Long> memberIds = new ArrayList<>();
+        if (cursor.moveToPosition(first)) {
+            do {
+                memberIds.add(cursor.getLong(memberIdCol));
+            } while (cursor.moveToNext());
+        }
+        for (int start = 0; start < memberIds.size(); start += MAX_IDS_PER_STATEMENT) {
+            final List<Long> chunk = memberIds.subList(start,
+                    Math.min(memberIds.size(), start + MAX_IDS_PER_STATEMENT));
+            ops.add(ContentProviderOperation.newDelete(uri)
+                    .withSelection(Playlists.Members._ID + " IN ("
+                            + TextUtils.join(",", chunk) + ")", null)
+                    .build());
+        }
 
         // yield the db every 100 records to prevent ANRs
         final int YIELD_FREQUENCY = 100;
 
-        // for each item, reset the play order position
-        if (cursor.moveToFirst() && cursor.getCount() > 0) {
+        // for each affected item, reset the play order position
+        if (cursor.moveToPosition(first)) {
             do {
                 final ContentProviderOperation.Builder builder =
                         ContentProviderOperation.newInsert(uri)
@@ -196,7 +273,7 @@ public class PlaylistSongLoader extends WrappedAsyncTaskLoader<List<Song>> {
                                 .withValue(Playlists.Members.AUDIO_ID, cursor.getLong(idCol));
 
                 // yield at the end and not at 0 by incrementing by 1
-                if ((cursor.getPosition() + 1) % YIELD_FREQUENCY == 0) {
+                if ((cursor.getPosition() - first + 1) % YIELD_FREQUENCY == 0) {
                     builder.withYieldAllowed(true);
                 }
                 ops.add(builder.build());
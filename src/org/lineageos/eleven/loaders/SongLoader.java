@@ -172,13 +172,27 @@ public class SongLoader extends SectionCreator.SimpleListLoader<Song> {
      */
     public static Cursor makeSongCursor(final Context context, final String selection,
                                         final boolean runSort) {
+        return makeSongCursor(context, selection, runSort,
+                PreferenceUtils.getInstance(context).getSongSortOrder());
+    }
+
+    /**
+     * Creates the {@link Cursor} used to run the query.
+     *
+     * @param context       The {@link Context} to use.
+     * @param selection     Additional selection statement to use
+     * @param runSort       For localized sorts this can enable/disable the logic for running
+     *                      the additional localization sort
+     * @param songSortOrder The sort order to use instead of the one in the preferences
+     * @return The {@link Cursor} used to run the song query.
+     */
+    public static Cursor makeSongCursor(final Context context, final String selection,
+                                        final boolean runSort, final String songSortOrder) {
         String selectionStatement = MusicUtils.MUSIC_ONLY_SELECTION;
         if (!TextUtils.isEmpty(selection)) {
             selectionStatement += " AND " + selection;
         }
 
-        final String songSortOrder = PreferenceUtils.getInstance(context).getSongSortOrder();
-
         Cursor cursor = context.getContentResolver().query(
                 MediaStore.Audio.Media.getContentUri(MediaStore.VOLUME_EXTERNAL),
                 new String[]{
@@ -20,8 +20,10 @@ import android.database.AbstractCursor;
 import android.database.Cursor;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 
 /**
@@ -56,6 +58,35 @@ public class SortedCursor extends AbstractCursor {
         mMissingIds = buildCursorPositionMapping(order, columnName, extraData);
     }
 
+    /**
+     * Like the constructor, except the rows whose id isn't in the order are kept instead of
+     * dropped. They come after the ordered ones, in the order of the wrapped cursor.
+     *
+     * @param cursor     to wrap
+     * @param order      the list of unique ids in sorted order to display first
+     * @param columnName the column name of the id to look up in the internal cursor
+     */
+    public static SortedCursor keepingUnordered(final Cursor cursor, final long[] order,
+                                                final String columnName) {
+        final HashSet<Long> ordered = new HashSet<>(order.length);
+        for (long id : order) {
+            ordered.add(id);
+        }
+
+        final long[] fullOrder = Arrays.copyOf(order, order.length + cursor.getCount());
+        int count = order.length;
+        final int idPosition = cursor.getColumnIndex(columnName);
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            final long id = cursor.getLong(idPosition);
+            if (!ordered.contains(id)) {
+                fullOrder[count++] = id;
+            }
+        }
+
+        return new SortedCursor(cursor, Arrays.copyOf(fullOrder, count), columnName, null);
+    }
+
     /**
      * This function populates mOrderedPositions with the cursor positions in the order based
      * on the order passed in
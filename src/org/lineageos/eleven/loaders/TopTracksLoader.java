@@ -99,12 +99,8 @@ public class TopTracksLoader extends SongLoader {
      * @return sorted cursor
      */
     public static SortedCursor makeRecentTracksCursor(final Context context) {
-        // first get the top results ids from the internal database
-
-        try (Cursor songs = RecentStore.getInstance(context).queryRecentIds(null)) {
-            return makeSortedCursor(context, songs,
-                    songs.getColumnIndex(SongPlayCountColumns.ID));
-        }
+        // the recent ids are kept in memory, only the songs themselves are queried
+        return makeSortedCursor(context, RecentStore.getInstance(context).getRecentIds());
     }
 
     /**
@@ -117,35 +113,47 @@ public class TopTracksLoader extends SongLoader {
      */
     public static SortedCursor makeSortedCursor(final Context context, final Cursor cursor,
                                                 final int idColumn) {
-        if (cursor != null && cursor.moveToFirst()) {
-            // create the list of ids to select against
-            StringBuilder selection = new StringBuilder();
-            selection.append(BaseColumns._ID);
-            selection.append(" IN (");
+        if (cursor == null) {
+            return null;
+        }
 
-            // this tracks the order of the ids
-            long[] order = new long[cursor.getCount()];
+        // this tracks the order of the ids
+        final long[] order = new long[cursor.getCount()];
+        while (cursor.moveToNext()) {
+            order[cursor.getPosition()] = cursor.getLong(idColumn);
+        }
+        return makeSortedCursor(context, order);
+    }
 
-            long id = cursor.getLong(idColumn);
-            selection.append(id);
-            order[cursor.getPosition()] = id;
+    /**
+     * This creates a sorted song cursor given the ids in the order they should be in
+     *
+     * @param context Android context
+     * @param order   the ids of the songs, in order
+     * @return a Sorted Cursor of songs
+     */
+    public static SortedCursor makeSortedCursor(final Context context, final long[] order) {
+        if (order.length == 0) {
+            return null;
+        }
 
-            while (cursor.moveToNext()) {
+        // create the list of ids to select against
+        final StringBuilder selection = new StringBuilder();
+        selection.append(BaseColumns._ID);
+        selection.append(" IN (");
+        for (int i = 0; i < order.length; i++) {
+            if (i > 0) {
                 selection.append(",");
-
-                id = cursor.getLong(idColumn);
-                order[cursor.getPosition()] = id;
-                selection.append(id);
             }
+            selection.append(order[i]);
+        }
+        selection.append(")");
 
-            selection.append(")");
-
-            // get a list of songs with the data given the selection statement
-            Cursor songCursor = makeSongCursor(context, selection.toString(), false);
-            if (songCursor != null) {
-                // now return the wrapped TopTracksCursor to handle sorting given order
-                return new SortedCursor(songCursor, order, BaseColumns._ID, null);
-            }
+        // get a list of songs with the data given the selection statement
+        final Cursor songCursor = makeSongCursor(context, selection.toString(), false);
+        if (songCursor != null) {
+            // now return the wrapped TopTracksCursor to handle sorting given order
+            return new SortedCursor(songCursor, order, BaseColumns._ID, null);
         }
 
         return null;
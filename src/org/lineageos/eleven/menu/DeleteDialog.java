@@ -19,7 +19,12 @@ package org.lineageos.eleven.menu;
 
 import android.app.AlertDialog;
 import android.app.Dialog;
+import android.content.DialogInterface;
 import android.os.Bundle;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.ProgressBar;
+import android.widget.TextView;
 
 import androidx.annotation.NonNull;
 import androidx.fragment.app.DialogFragment;
@@ -29,6 +34,7 @@ import org.lineageos.eleven.R;
 import org.lineageos.eleven.cache.ImageFetcher;
 import org.lineageos.eleven.utils.ElevenUtils;
 import org.lineageos.eleven.utils.MusicUtils;
+import org.lineageos.eleven.utils.TrackDeleter;
 
 /**
  * Alert dialog used to delete tracks.
@@ -37,7 +43,7 @@ import org.lineageos.eleven.utils.MusicUtils;
  *
  * @author Andrew Neal (andrewdneal@gmail.com)
  */
-public class DeleteDialog extends DialogFragment {
+public class DeleteDialog extends DialogFragment implements TrackDeleter.Listener {
 
     public interface DeleteDialogCallback {
         void onDelete(long[] id);
@@ -53,6 +59,12 @@ public class DeleteDialog extends DialogFragment {
      */
     private ImageFetcher mFetcher;
 
+    /**
+     * Shows how many of the items are deleted already
+     */
+    private ProgressBar mProgressBar;
+    private TextView mProgressText;
+
     /**
      * Empty constructor as per the Fragment documentation
      */
@@ -90,20 +102,54 @@ public class DeleteDialog extends DialogFragment {
         final String dialogTitle = getString(R.string.delete_dialog_title, title);
         // Initialize the image cache
         mFetcher = ElevenUtils.getImageFetcher(getActivity());
+        // Progress of the deletion, shown once it started
+        final View progressView = LayoutInflater.from(getActivity())
+                .inflate(R.layout.dialog_delete_progress, null);
+        mProgressBar = progressView.findViewById(R.id.delete_progress);
+        mProgressText = progressView.findViewById(R.id.delete_progress_text);
         // Build the dialog
-        return new AlertDialog.Builder(getActivity()).setTitle(dialogTitle)
+        final AlertDialog alertDialog = new AlertDialog.Builder(getActivity())
+                .setTitle(dialogTitle)
                 .setMessage(R.string.cannot_be_undone)
-                .setPositiveButton(delete, (dialog, which) -> {
+                .setView(progressView)
+                .setPositiveButton(delete, null)
+                .setNegativeButton(R.string.cancel, (dialog, which) -> dialog.dismiss())
+                .create();
+        // Keep the dialog up while deleting instead of dismissing it on click
+        alertDialog.setOnShowListener(dialog -> alertDialog
+                .getButton(DialogInterface.BUTTON_POSITIVE)
+                .setOnClickListener(v -> {
+                    alertDialog.getButton(DialogInterface.BUTTON_POSITIVE).setEnabled(false);
+                    alertDialog.getButton(DialogInterface.BUTTON_NEGATIVE).setEnabled(false);
+                    setCancelable(false);
+                    progressView.setVisibility(View.VISIBLE);
+                    onProgress(0, mItemList.length);
                     // Remove the items from the image cache
                     mFetcher.removeFromCache(key);
                     // Delete the selected item(s)
-                    MusicUtils.deleteTracks(getActivity(), mItemList);
-                    if (getActivity() instanceof DeleteDialogCallback) {
-                        ((DeleteDialogCallback) getActivity()).onDelete(mItemList);
-                    }
-                    dialog.dismiss();
-                })
-                .setNegativeButton(R.string.cancel, (dialog, which) -> dialog.dismiss())
-                .create();
+                    MusicUtils.deleteTracks(getActivity(), mItemList, this);
+                }));
+        return alertDialog;
+    }
+
+    @Override
+    public void onProgress(final int done, final int total) {
+        if (!isAdded()) {
+            return;
+        }
+        mProgressBar.setMax(total);
+        mProgressBar.setProgress(done);
+        mProgressText.setText(getString(R.string.deleting_tracks_progress, done, total));
+    }
+
+    @Override
+    public void onFinished(final int deleted) {
+        if (!isAdded()) {
+            return;
+        }
+        if (getActivity() instanceof DeleteDialogCallback) {
+            ((DeleteDialogCallback) getActivity()).onDelete(mItemList);
+        }
+        dismissAllowingStateLoss();
     }
 }
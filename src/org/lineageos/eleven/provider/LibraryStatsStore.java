@@ -0,0 +1,771 @@
+/*
+ * SPDX-FileCopyrightText: 2026 The LineageOS Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.lineageos.eleven.provider;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.provider.MediaStore;
+import android.provider.MediaStore.Audio.AudioColumns;
+import android.util.Log;
+import android.util.LongSparseArray;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import org.lineageos.eleven.utils.MusicUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the track count, album count, total duration, year range and last added time of
+ * every artist and album, so that sorting and sectioning by them doesn't need to go through
+ * the media store views. A copy of the fields of each track is kept as well, which lets a
+ * media store change only recompute the artists and albums of the tracks that changed.
+ * The genre of each track is part of that copy and is also kept in memory, so looking up the
+ * genre of a song doesn't need a media store query.
+ */
+public class LibraryStatsStore {
+    private static final String TAG = LibraryStatsStore.class.getSimpleName();
+    private static final boolean DEBUG = false;
+
+    /**
+     * Maximum number of ids bound in one IN (...) clause
+     */
+    private static final int MAX_IDS_PER_STATEMENT = 500;
+
+    /**
+     * How long media store changes are collected before the stats are brought up to date
+     */
+    private static final long UPDATE_DELAY_MS = 500;
+
+    private static LibraryStatsStore sInstance = null;
+
+    private final MusicDB mMusicDatabase;
+    private final Context mContext;
+    private final Handler mHandler;
+    private final ContentValues mContentValues = new ContentValues(7);
+
+    /**
+     * true when the media store may have changed since the last update, guarded by this
+     */
+    private boolean mDirty = true;
+
+    /**
+     * Generation of each volume as of the last update, guarded by this
+     */
+    private final Map<String, Long> mGenerations = new HashMap<>();
+
+    /**
+     * Genre of every track, null until someone asks for it
+     */
+    private volatile GenreMap mGenreMap;
+
+    private final Runnable mUpdateRunnable = this::ensureUpToDate;
+
+    /**
+     * Precomputed values of one artist or album
+     */
+    public static final class Stats {
+        public final int mTrackCount;
+
+        /**
+         * Number of albums of an artist, 1 for an album
+         */
+        public final int mAlbumCount;
+
+        /**
+         * Total duration in milliseconds
+         */
+        public final long mDuration;
+
+        /**
+         * Release year range, 0 when unknown
+         */
+        public final int mFirstYear;
+        public final int mLastYear;
+
+        /**
+         * Time the most recent track was added, in seconds
+         */
+        public final long mLastAdded;
+
+        Stats(final int trackCount, final int albumCount, final long duration,
+              final int firstYear, final int lastYear, final long lastAdded) {
+            mTrackCount = trackCount;
+            mAlbumCount = albumCount;
+            mDuration = duration;
+            mFirstYear = firstYear;
+            mLastYear = lastYear;
+            mLastAdded = lastAdded;
+        }
+    }
+
+    /**
+     * Song id to genre name lookup. The song ids are kept sorted in a primitive array next to
+     * the index of their genre name, so a lookup is a binary search without any boxing.
+     */
+    private static final class GenreMap {
+        private final long[] mSongIds;
+        private final int[] mGenres;
+        private final String[] mNames;
+
+        GenreMap(final long[] songIds, final int[] genres, final String[] names) {
+            mSongIds = songIds;
+            mGenres = genres;
+            mNames = names;
+        }
+
+        String get(final long songId) {
+            final int index = Arrays.binarySearch(mSongIds, songId);
+            return index >= 0 ? mNames[mGenres[index]] : null;
+        }
+    }
+
+    /**
+     * @param context The {@link Context} to use
+     * @return A new instance of this class.
+     */
+    public static synchronized LibraryStatsStore getInstance(final Context context) {
+        if (sInstance == null) {
+            sInstance = new LibraryStatsStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private LibraryStatsStore(final Context context) {
+        mMusicDatabase = MusicDB.getInstance(context);
+        mContext = context;
+
+        final HandlerThread thread = new HandlerThread("LibraryStatsStoreWorker",
+                android.os.Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        mHandler = new Handler(thread.getLooper());
+
+        mContext.getContentResolver().registerContentObserver(
+                MediaStore.Audio.Media.getContentUri(MediaStore.VOLUME_EXTERNAL), true,
+                new ContentObserver(mHandler) {
+                    @Override
+                    public void onChange(boolean selfChange, @Nullable Uri uri) {
+                        synchronized (LibraryStatsStore.this) {
+                            mDirty = true;
+                        }
+                        mHandler.removeCallbacks(mUpdateRunnable);
+                        mHandler.postDelayed(mUpdateRunnable, UPDATE_DELAY_MS);
+                    }
+                });
+    }
+
+    public void onCreate(final SQLiteDatabase db) {
+        String[] tables = new String[]{
+                "CREATE TABLE IF NOT EXISTS " + TrackStatsColumns.TABLE_NAME + "(" +
+                        TrackStatsColumns.ID + " INTEGER PRIMARY KEY," +
+                        TrackStatsColumns.ARTIST_ID + " INTEGER NOT NULL," +
+                        TrackStatsColumns.ALBUM_ID + " INTEGER NOT NULL," +
+                        TrackStatsColumns.DURATION + " INTEGER NOT NULL," +
+                        TrackStatsColumns.YEAR + " INTEGER," +
+                        TrackStatsColumns.DATE_ADDED + " INTEGER NOT NULL," +
+                        TrackStatsColumns.GENRE_ID + " INTEGER NOT NULL DEFAULT 0);",
+
+                "CREATE INDEX IF NOT EXISTS " + TrackStatsColumns.TABLE_NAME + "_artist ON " +
+                        TrackStatsColumns.TABLE_NAME + "(" + TrackStatsColumns.ARTIST_ID + ");",
+
+                "CREATE INDEX IF NOT EXISTS " + TrackStatsColumns.TABLE_NAME + "_album ON " +
+                        TrackStatsColumns.TABLE_NAME + "(" + TrackStatsColumns.ALBUM_ID + ");",
+
+                GenreColumns.CREATE_TABLE,
+
+                "CREATE TABLE IF NOT EXISTS " + ArtistStatsColumns.TABLE_NAME + "(" +
+                        StatsColumns.ID + " INTEGER PRIMARY KEY," +
+                        StatsColumns.TRACK_COUNT + " INTEGER NOT NULL," +
+                        StatsColumns.ALBUM_COUNT + " INTEGER NOT NULL," +
+                        StatsColumns.DURATION + " INTEGER NOT NULL," +
+                        StatsColumns.FIRST_YEAR + " INTEGER," +
+                        StatsColumns.LAST_YEAR + " INTEGER," +
+                        StatsColumns.LAST_ADDED + " INTEGER NOT NULL);",
+
+                "CREATE TABLE IF NOT EXISTS " + AlbumStatsColumns.TABLE_NAME + "(" +
+                        StatsColumns.ID + " INTEGER PRIMARY KEY," +
+                        StatsColumns.TRACK_COUNT + " INTEGER NOT NULL," +
+                        StatsColumns.ALBUM_COUNT + " INTEGER NOT NULL," +
+                        StatsColumns.DURATION + " INTEGER NOT NULL," +
+                        StatsColumns.FIRST_YEAR + " INTEGER," +
+                        StatsColumns.LAST_YEAR + " INTEGER," +
+                        StatsColumns.LAST_ADDED + " INTEGER NOT NULL);",
+
+                "CREATE TABLE IF NOT EXISTS " + VolumeColumns.TABLE_NAME + "(" +
+                        VolumeColumns.NAME + " TEXT PRIMARY KEY," +
+                        VolumeColumns.VERSION + " TEXT NOT NULL," +
+                        VolumeColumns.GENERATION + " INTEGER NOT NULL);",
+        };
+
+        for (String table : tables) {
+            if (DEBUG) {
+                Log.d(TAG, "Creating table: " + table);
+            }
+            db.execSQL(table);
+        }
+    }
+
+    public void onUpgrade(final SQLiteDatabase db, final int oldVersion, final int newVersion) {
+        // these tables were created in version 7 so call the onCreate method if we hit that
+        // scenario
+        if (oldVersion < 7 && newVersion >= 7) {
+            onCreate(db);
+        } else if (oldVersion < 8 && newVersion >= 8) {
+            // the genres were added in version 8, forget the volume generations so that the
+            // next update reads every track again and fills them in
+            db.execSQL("ALTER TABLE " + TrackStatsColumns.TABLE_NAME + " ADD COLUMN " +
+                    TrackStatsColumns.GENRE_ID + " INTEGER NOT NULL DEFAULT 0");
+            db.execSQL(GenreColumns.CREATE_TABLE);
+            db.execSQL("DELETE FROM " + VolumeColumns.TABLE_NAME);
+        }
+    }
+
+    public void onDowngrade(SQLiteDatabase db) {
+        // If we ever have downgrade, drop the tables to be safe
+        db.execSQL("DROP TABLE IF EXISTS " + TrackStatsColumns.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + ArtistStatsColumns.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + AlbumStatsColumns.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + VolumeColumns.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + GenreColumns.TABLE_NAME);
+        onCreate(db);
+    }
+
+    /**
+     * Brings the stats up to date with the media store if it changed since the last call.
+     * Only the tracks modified since then are read back in full.
+     */
+    @WorkerThread
+    public synchronized void ensureUpToDate() {
+        // the observer only hears about a change after a short delay, a reader that comes
+        // in before that would still get the old stats
+        if (!mDirty && !hasNewGeneration()) {
+            return;
+        }
+        // cleared first, so that a change coming in while we run is picked up next time
+        mDirty = false;
+
+        final long start = SystemClock.elapsedRealtime();
+        final Set<Long> musicIds = queryMusicIds();
+        if (musicIds == null) {
+            mDirty = true;
+            return;
+        }
+
+        final SQLiteDatabase db = mMusicDatabase.getWritableDatabase();
+        final Set<Long> artistIds = new HashSet<>();
+        final Set<Long> albumIds = new HashSet<>();
+        int changed = 0;
+
+        db.beginTransaction();
+        try {
+            final LongSparseArray<long[]> tracks = loadTracks(db);
+
+            // drop the tracks that are gone or no longer count as music
+            final List<Long> removed = new ArrayList<>();
+            for (int i = 0; i < tracks.size(); i++) {
+                if (!musicIds.contains(tracks.keyAt(i))) {
+                    removed.add(tracks.keyAt(i));
+                    artistIds.add(tracks.valueAt(i)[0]);
+                    albumIds.add(tracks.valueAt(i)[1]);
+                }
+            }
+            deleteIds(db, TrackStatsColumns.TABLE_NAME, TrackStatsColumns.ID, removed);
+            changed += removed.size();
+
+            // and read back the ones modified since the last update
+            final Map<String, Long> generations = new HashMap<>();
+            for (String volume : MediaStore.getExternalVolumeNames(mContext)) {
+                changed += updateVolume(db, volume, tracks, artistIds, albumIds, generations);
+            }
+
+            updateStats(db, ArtistStatsColumns.TABLE_NAME, TrackStatsColumns.ARTIST_ID,
+                    artistIds);
+            updateStats(db, AlbumStatsColumns.TABLE_NAME, TrackStatsColumns.ALBUM_ID,
+                    albumIds);
+
+            db.setTransactionSuccessful();
+            mGenerations.clear();
+            mGenerations.putAll(generations);
+        } finally {
+            db.endTransaction();
+        }
+
+        // keep the genres current once someone uses them
+        if (changed > 0 && mGenreMap != null) {
+            mGenreMap = loadGenreMap(db);
+        }
+
+        if (DEBUG) {
+            Log.d(TAG, "Updated " + changed + " tracks, " + artistIds.size() + " artists and "
+                    + albumIds.size() + " albums in "
+                    + (SystemClock.elapsedRealtime() - start) + "ms");
+        }
+    }
+
+    /**
+     * @return true if a volume changed since the last update, or was added or removed
+     */
+    private boolean hasNewGeneration() {
+        final Set<String> volumes = MediaStore.getExternalVolumeNames(mContext);
+        if (!volumes.equals(mGenerations.keySet())) {
+            return true;
+        }
+        for (String volume : volumes) {
+            if (MediaStore.getGeneration(mContext, volume) != mGenerations.get(volume)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the ids of all music tracks in the media store, or null if it can't be queried
+     */
+    private Set<Long> queryMusicIds() {
+        try (Cursor cursor = mContext.getContentResolver().query(
+                MediaStore.Audio.Media.getContentUri(MediaStore.VOLUME_EXTERNAL),
+                new String[]{AudioColumns._ID}, MusicUtils.MUSIC_ONLY_SELECTION, null, null)) {
+            if (cursor == null) {
+                return null;
+            }
+
+            final Set<Long> ids = new HashSet<>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getLong(0));
+            }
+            return ids;
+        }
+    }
+
+    /**
+     * @return the artist and album id of every track we know of, keyed by track id
+     */
+    private static LongSparseArray<long[]> loadTracks(final SQLiteDatabase db) {
+        try (Cursor cursor = db.query(TrackStatsColumns.TABLE_NAME, new String[]{
+                TrackStatsColumns.ID, TrackStatsColumns.ARTIST_ID, TrackStatsColumns.ALBUM_ID,
+        }, null, null, null, null, null)) {
+            final LongSparseArray<long[]> tracks = new LongSparseArray<>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                tracks.put(cursor.getLong(0), new long[]{cursor.getLong(1), cursor.getLong(2)});
+            }
+            return tracks;
+        }
+    }
+
+    /**
+     * Copies the music tracks of the volume modified since its last update
+     *
+     * @param generations receives the generation the volume was copied at
+     * @return the number of tracks copied
+     */
+    private int updateVolume(final SQLiteDatabase db, final String volume,
+                             final LongSparseArray<long[]> tracks, final Set<Long> artistIds,
+                             final Set<Long> albumIds, final Map<String, Long> generations) {
+        final String version = MediaStore.getVersion(mContext, volume);
+        final long generation = MediaStore.getGeneration(mContext, volume);
+        generations.put(volume, generation);
+
+        // generations can only be compared within the same version of the volume
+        long since = -1;
+        try (Cursor cursor = db.query(VolumeColumns.TABLE_NAME,
+                new String[]{VolumeColumns.VERSION, VolumeColumns.GENERATION},
+                VolumeColumns.NAME + "=?", new String[]{volume}, null, null, null)) {
+            if (cursor.moveToFirst() && version.equals(cursor.getString(0))) {
+                since = cursor.getLong(1);
+            }
+        }
+        if (since == generation) {
+            return 0;
+        }
+
+        int count = 0;
+        try (Cursor cursor = mContext.getContentResolver().query(
+                MediaStore.Audio.Media.getContentUri(volume),
+                new String[]{
+                        /* 0 */
+                        AudioColumns._ID,
+                        /* 1 */
+                        AudioColumns.ARTIST_ID,
+                        /* 2 */
+                        AudioColumns.ALBUM_ID,
+                        /* 3 */
+                        AudioColumns.DURATION,
+                        /* 4 */
+                        AudioColumns.YEAR,
+                        /* 5 */
+                        AudioColumns.DATE_ADDED,
+                        /* 6 */
+                        AudioColumns.GENRE_ID,
+                        /* 7 */
+                        AudioColumns.GENRE,
+                }, MusicUtils.MUSIC_ONLY_SELECTION + " AND "
+                        + AudioColumns.GENERATION_MODIFIED + ">?",
+                new String[]{String.valueOf(since)}, null)) {
+            if (cursor == null) {
+                return 0;
+            }
+
+            while (cursor.moveToNext()) {
+                final long id = cursor.getLong(0);
+                final long[] previous = tracks.get(id);
+                if (previous != null) {
+                    artistIds.add(previous[0]);
+                    albumIds.add(previous[1]);
+                }
+
+                final int year = cursor.getInt(4);
+                mContentValues.clear();
+                mContentValues.put(TrackStatsColumns.ID, id);
+                mContentValues.put(TrackStatsColumns.ARTIST_ID, cursor.getLong(1));
+                mContentValues.put(TrackStatsColumns.ALBUM_ID, cursor.getLong(2));
+                mContentValues.put(TrackStatsColumns.DURATION, cursor.getLong(3));
+                if (year > 0) {
+                    mContentValues.put(TrackStatsColumns.YEAR, year);
+                } else {
+                    mContentValues.putNull(TrackStatsColumns.YEAR);
+                }
+                mContentValues.put(TrackStatsColumns.DATE_ADDED, cursor.getLong(5));
+                mContentValues.put(TrackStatsColumns.GENRE_ID, cursor.getLong(6));
+                db.replace(TrackStatsColumns.TABLE_NAME, null, mContentValues);
+
+                if (cursor.getLong(6) > 0) {
+                    mContentValues.clear();
+                    mContentValues.put(GenreColumns.ID, cursor.getLong(6));
+                    mContentValues.put(GenreColumns.NAME, cursor.getString(7));
+                    db.replace(GenreColumns.TABLE_NAME, null, mContentValues);
+                }
+
+                artistIds.add(cursor.getLong(1));
+                albumIds.add(cursor.getLong(2));
+                count++;
+            }
+        }
+
+        mContentValues.clear();
+        mContentValues.put(VolumeColumns.NAME, volume);
+        mContentValues.put(VolumeColumns.VERSION, version);
+        mContentValues.put(VolumeColumns.GENERATION, generation);
+        db.replace(VolumeColumns.TABLE_NAME, null, mContentValues);
+
+        return count;
+    }
+
+    /**
+     * Recomputes the stats of the given artists or albums from the tracks
+     *
+     * @param table   the stats table to update
+     * @param groupBy the track column the stats are grouped on
+     * @param ids     the artists or albums to update
+     */
+    private static void updateStats(final SQLiteDatabase db, final String table,
+                                    final String groupBy, final Collection<Long> ids) {
+        final Iterator<Long> iterator = ids.iterator();
+        while (iterator.hasNext()) {
+            final String inClause = makeInClause(iterator);
+            db.execSQL("DELETE FROM " + table + " WHERE " + StatsColumns.ID + inClause);
+            db.execSQL("INSERT INTO " + table + "(" + StatsColumns.ID + ","
+                    + StatsColumns.TRACK_COUNT + "," + StatsColumns.ALBUM_COUNT + ","
+                    + StatsColumns.DURATION + "," + StatsColumns.FIRST_YEAR + ","
+                    + StatsColumns.LAST_YEAR + "," + StatsColumns.LAST_ADDED + ")"
+                    + " SELECT " + groupBy + ", COUNT(*),"
+                    + " COUNT(DISTINCT " + TrackStatsColumns.ALBUM_ID + "),"
+                    + " SUM(" + TrackStatsColumns.DURATION + "),"
+                    + " MIN(" + TrackStatsColumns.YEAR + "),"
+                    + " MAX(" + TrackStatsColumns.YEAR + "),"
+                    + " MAX(" + TrackStatsColumns.DATE_ADDED + ")"
+                    + " FROM " + TrackStatsColumns.TABLE_NAME
+                    + " WHERE " + groupBy + inClause
+                    + " GROUP BY " + groupBy);
+        }
+    }
+
+    private static void deleteIds(final SQLiteDatabase db, final String table,
+                                  final String column, final Collection<Long> ids) {
+        final Iterator<Long> iterator = ids.iterator();
+        while (iterator.hasNext()) {
+            db.execSQL("DELETE FROM " + table + " WHERE " + column + makeInClause(iterator));
+        }
+    }
+
+    /**
+     * @return " IN (...)" with up to {@link #MAX_IDS_PER_STATEMENT} ids from the iterator
+     */
+    private static String makeInClause(final Iterator<Long> iterator) {
+        final StringBuilder builder = new StringBuilder(" IN (");
+        for (int i = 0; i < MAX_IDS_PER_STATEMENT && iterator.hasNext(); i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(iterator.next());
+        }
+        return builder.append(')').toString();
+    }
+
+    /**
+     * @return the stats of every artist, keyed by artist id
+     */
+    @WorkerThread
+    public LongSparseArray<Stats> getArtistStats() {
+        ensureUpToDate();
+        return getStats(ArtistStatsColumns.TABLE_NAME);
+    }
+
+    /**
+     * @return the stats of every album, keyed by album id
+     */
+    @WorkerThread
+    public LongSparseArray<Stats> getAlbumStats() {
+        ensureUpToDate();
+        return getStats(AlbumStatsColumns.TABLE_NAME);
+    }
+
+    /**
+     * @param artistIds the artists to read
+     * @return the stats of the given artists that are known, keyed by artist id
+     */
+    @WorkerThread
+    public LongSparseArray<Stats> getArtistStats(final Collection<Long> artistIds) {
+        ensureUpToDate();
+        return getStats(ArtistStatsColumns.TABLE_NAME, artistIds);
+    }
+
+    /**
+     * @param albumIds the albums to read
+     * @return the stats of the given albums that are known, keyed by album id
+     */
+    @WorkerThread
+    public LongSparseArray<Stats> getAlbumStats(final Collection<Long> albumIds) {
+        ensureUpToDate();
+        return getStats(AlbumStatsColumns.TABLE_NAME, albumIds);
+    }
+
+    /**
+     * @return the artist ids, the ones with the most tracks first
+     */
+    @WorkerThread
+    public long[] getArtistIdsByTrackCount() {
+        ensureUpToDate();
+        return getSortedIds(ArtistStatsColumns.TABLE_NAME, StatsColumns.TRACK_COUNT + " DESC");
+    }
+
+    /**
+     * @return the artist ids, the ones with the most albums first
+     */
+    @WorkerThread
+    public long[] getArtistIdsByAlbumCount() {
+        ensureUpToDate();
+        return getSortedIds(ArtistStatsColumns.TABLE_NAME, StatsColumns.ALBUM_COUNT + " DESC");
+    }
+
+    /**
+     * @return the album ids, the ones with the most tracks first
+     */
+    @WorkerThread
+    public long[] getAlbumIdsByTrackCount() {
+        ensureUpToDate();
+        return getSortedIds(AlbumStatsColumns.TABLE_NAME, StatsColumns.TRACK_COUNT + " DESC");
+    }
+
+    /**
+     * @return the album ids, the most recent release first
+     */
+    @WorkerThread
+    public long[] getAlbumIdsByYear() {
+        ensureUpToDate();
+        return getSortedIds(AlbumStatsColumns.TABLE_NAME, StatsColumns.FIRST_YEAR + " DESC");
+    }
+
+    /**
+     * Looks up the genre of a song without ever blocking. The genres are loaded in the
+     * background the first time this is called.
+     *
+     * @return the genre name, or null if the song has none or the genres aren't loaded yet
+     */
+    public String getGenreName(final long songId) {
+        final GenreMap genres = mGenreMap;
+        if (genres == null) {
+            preloadGenres();
+            return null;
+        }
+        return genres.get(songId);
+    }
+
+    /**
+     * Looks up the genre of a song, loading the genres first if needed
+     *
+     * @return the genre name, or null if the song has none
+     */
+    @WorkerThread
+    public String loadGenreName(final long songId) {
+        return ensureGenres().get(songId);
+    }
+
+    /**
+     * Starts loading the genres in the background so that {@link #getGenreName} has them
+     */
+    public void preloadGenres() {
+        preloadGenres(null);
+    }
+
+    /**
+     * Starts loading the genres in the background so that {@link #getGenreName} has them
+     *
+     * @param onLoaded run on the worker thread of the store once the genres are loaded,
+     *                 or right away if they already are
+     */
+    public void preloadGenres(@Nullable final Runnable onLoaded) {
+        if (mGenreMap != null) {
+            if (onLoaded != null) {
+                onLoaded.run();
+            }
+            return;
+        }
+        mHandler.post(() -> {
+            ensureGenres();
+            if (onLoaded != null) {
+                onLoaded.run();
+            }
+        });
+    }
+
+    private synchronized GenreMap ensureGenres() {
+        ensureUpToDate();
+        if (mGenreMap == null) {
+            mGenreMap = loadGenreMap(mMusicDatabase.getReadableDatabase());
+        }
+        return mGenreMap;
+    }
+
+    private static GenreMap loadGenreMap(final SQLiteDatabase db) {
+        try (Cursor cursor = db.rawQuery("SELECT " + TrackStatsColumns.TABLE_NAME + "."
+                + TrackStatsColumns.ID + "," + GenreColumns.TABLE_NAME + "." + GenreColumns.ID
+                + "," + GenreColumns.TABLE_NAME + "." + GenreColumns.NAME
+                + " FROM " + TrackStatsColumns.TABLE_NAME
+                + " JOIN " + GenreColumns.TABLE_NAME + " ON "
+                + TrackStatsColumns.TABLE_NAME + "." + TrackStatsColumns.GENRE_ID + "="
+                + GenreColumns.TABLE_NAME + "." + GenreColumns.ID
+                + " ORDER BY " + TrackStatsColumns.TABLE_NAME + "." + TrackStatsColumns.ID,
+                null)) {
+            final long[] songIds = new long[cursor.getCount()];
+            final int[] genres = new int[songIds.length];
+            final LongSparseArray<Integer> indices = new LongSparseArray<>();
+            final List<String> names = new ArrayList<>();
+            for (int i = 0; cursor.moveToNext(); i++) {
+                Integer index = indices.get(cursor.getLong(1));
+                if (index == null) {
+                    index = names.size();
+                    indices.put(cursor.getLong(1), index);
+                    names.add(cursor.getString(2));
+                }
+                songIds[i] = cursor.getLong(0);
+                genres[i] = index;
+            }
+            return new GenreMap(songIds, genres, names.toArray(new String[0]));
+        }
+    }
+
+    private LongSparseArray<Stats> getStats(final String table) {
+        final LongSparseArray<Stats> stats = new LongSparseArray<>();
+        readStats(table, null, stats);
+        return stats;
+    }
+
+    private LongSparseArray<Stats> getStats(final String table, final Collection<Long> ids) {
+        final LongSparseArray<Stats> stats = new LongSparseArray<>(ids.size());
+        final Iterator<Long> iterator = ids.iterator();
+        while (iterator.hasNext()) {
+            readStats(table, StatsColumns.ID + makeInClause(iterator), stats);
+        }
+        return stats;
+    }
+
+    private void readStats(final String table, final String selection,
+                           final LongSparseArray<Stats> stats) {
+        try (Cursor cursor = mMusicDatabase.getReadableDatabase().query(table, new String[]{
+                StatsColumns.ID, StatsColumns.TRACK_COUNT, StatsColumns.ALBUM_COUNT,
+                StatsColumns.DURATION, StatsColumns.FIRST_YEAR, StatsColumns.LAST_YEAR,
+                StatsColumns.LAST_ADDED,
+        }, selection, null, null, null, null)) {
+            while (cursor.moveToNext()) {
+                stats.put(cursor.getLong(0), new Stats(cursor.getInt(1), cursor.getInt(2),
+                        cursor.getLong(3), cursor.getInt(4), cursor.getInt(5),
+                        cursor.getLong(6)));
+            }
+        }
+    }
+
+    private long[] getSortedIds(final String table, final String orderBy) {
+        try (Cursor cursor = mMusicDatabase.getReadableDatabase().query(table,
+                new String[]{StatsColumns.ID}, null, null, null, null,
+                orderBy + "," + StatsColumns.ID)) {
+            final long[] ids = new long[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                ids[i] = cursor.getLong(0);
+            }
+            return ids;
+        }
+    }
+
+    private static class TrackStatsColumns {
+        public static final String TABLE_NAME = "track_stats";
+        public static final String ID = "id";
+        public static final String ARTIST_ID = "artist_id";
+        public static final String ALBUM_ID = "album_id";
+        public static final String DURATION = "duration";
+        public static final String YEAR = "year";
+        public static final String DATE_ADDED = "date_added";
+        public static final String GENRE_ID = "genre_id";
+    }
+
+    private static class StatsColumns {
+        public static final String ID = "id";
+        public static final String TRACK_COUNT = "track_count";
+        public static final String ALBUM_COUNT = "album_count";
+        public static final String DURATION = "duration";
+        public static final String FIRST_YEAR = "first_year";
+        public static final String LAST_YEAR = "last_year";
+        public static final String LAST_ADDED = "last_added";
+    }
+
+    private static final class ArtistStatsColumns extends StatsColumns {
+        public static final String TABLE_NAME = "artist_stats";
+    }
+
+    private static final class AlbumStatsColumns extends StatsColumns {
+        public static final String TABLE_NAME = "album_stats";
+    }
+
+    private static final class GenreColumns {
+        public static final String TABLE_NAME = "genre";
+        public static final String ID = "id";
+        public static final String NAME = "name";
+
+        public static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS " + TABLE_NAME +
+                "(" + ID + " INTEGER PRIMARY KEY," + NAME + " TEXT);";
+    }
+
+    private static final class VolumeColumns {
+        public static final String TABLE_NAME = "stats_volume";
+        public static final String NAME = "volume_name";
+        public static final String VERSION = "version";
+        public static final String GENERATION = "generation";
+    }
+}
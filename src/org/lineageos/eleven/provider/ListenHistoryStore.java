@@ -0,0 +1,285 @@
+/*
+ * SPDX-FileCopyrightText: 2026 The LineageOS Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.lineageos.eleven.provider;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Log of how far each song was listened to before it ended, was skipped or playback stopped.
+ * Events are buffered in memory and written in batches on a background thread, which then
+ * folds the new events into the listen ratio of {@link SongPlayCount}.
+ */
+public class ListenHistoryStore {
+    private static final String TAG = ListenHistoryStore.class.getSimpleName();
+
+    /**
+     * The song played to its end
+     */
+    public static final int REASON_COMPLETED = 0;
+
+    /**
+     * Another song was started before this one ended
+     */
+    public static final int REASON_SKIPPED = 1;
+
+    /**
+     * Playback was stopped
+     */
+    public static final int REASON_STOPPED = 2;
+
+    /**
+     * Events buffered before they are written right away
+     */
+    private static final int MAX_PENDING_EVENTS = 16;
+
+    /**
+     * How long events may stay buffered
+     */
+    private static final long FLUSH_DELAY_MS = 30 * 1000;
+
+    /**
+     * Number of events kept in the database once they are aggregated
+     */
+    private static final int MAX_ITEMS_IN_DB = 1000;
+
+    /**
+     * Weight of a new listen when it is folded into the listen ratio of a song
+     */
+    private static final float LISTEN_RATIO_WEIGHT = 0.3f;
+
+    private static ListenHistoryStore sInstance = null;
+
+    private final MusicDB mMusicDatabase;
+
+    private final ScheduledExecutorService mExecutor =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread thread = new Thread(r, TAG);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+
+    /**
+     * Events not written yet, guarded by this
+     */
+    private List<ContentValues> mPendingEvents = new ArrayList<>();
+    private boolean mFlushScheduled;
+
+    private ListenHistoryStore(final Context context) {
+        mMusicDatabase = MusicDB.getInstance(context);
+    }
+
+    /**
+     * @param context The {@link Context} to use
+     * @return A new instance of this class.
+     */
+    public static synchronized ListenHistoryStore getInstance(final Context context) {
+        if (sInstance == null) {
+            sInstance = new ListenHistoryStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    public void onCreate(final SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + ListenHistoryColumns.NAME + " ("
+                + ListenHistoryColumns._ID + " INTEGER PRIMARY KEY AUTOINCREMENT,"
+                + ListenHistoryColumns.ID + " LONG NOT NULL,"
+                + ListenHistoryColumns.START_POSITION + " LONG NOT NULL,"
+                + ListenHistoryColumns.END_POSITION + " LONG NOT NULL,"
+                + ListenHistoryColumns.DURATION + " LONG NOT NULL,"
+                + ListenHistoryColumns.REASON + " INT NOT NULL,"
+                + ListenHistoryColumns.TIME_PLAYED + " LONG NOT NULL,"
+                + ListenHistoryColumns.AGGREGATED + " INT NOT NULL DEFAULT 0);");
+    }
+
+    public void onUpgrade(final SQLiteDatabase db, final int oldVersion, final int newVersion) {
+        // this table was created in version 5 so call the onCreate method if we hit that scenario
+        if (oldVersion < 5 && newVersion >= 5) {
+            onCreate(db);
+        }
+    }
+
+    public void onDowngrade(SQLiteDatabase db) {
+        // If we ever have downgrade, drop the table to be safe
+        db.execSQL("DROP TABLE IF EXISTS " + ListenHistoryColumns.NAME);
+        onCreate(db);
+    }
+
+    /**
+     * Logs how a song was listened to. Only buffers the event, it is written and aggregated
+     * in the background.
+     *
+     * @param songId        the id of the song
+     * @param startPosition where listening started, in milliseconds
+     * @param endPosition   where listening ended, in milliseconds
+     * @param duration      the duration of the song in milliseconds, 0 if unknown
+     * @param reason        one of the REASON constants
+     */
+    public void addEvent(final long songId, final long startPosition, final long endPosition,
+                         final long duration, final int reason) {
+        if (songId < 0) {
+            return;
+        }
+
+        final ContentValues values = new ContentValues(6);
+        values.put(ListenHistoryColumns.ID, songId);
+        values.put(ListenHistoryColumns.START_POSITION, startPosition);
+        values.put(ListenHistoryColumns.END_POSITION, endPosition);
+        values.put(ListenHistoryColumns.DURATION, duration);
+        values.put(ListenHistoryColumns.REASON, reason);
+        values.put(ListenHistoryColumns.TIME_PLAYED, System.currentTimeMillis());
+
+        synchronized (this) {
+            mPendingEvents.add(values);
+            if (mPendingEvents.size() >= MAX_PENDING_EVENTS) {
+                mExecutor.execute(this::writePendingEvents);
+            } else if (!mFlushScheduled) {
+                mFlushScheduled = true;
+                mExecutor.schedule(this::writePendingEvents, FLUSH_DELAY_MS,
+                        TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Writes the buffered events soon instead of waiting for the batch to fill up
+     */
+    public void flush() {
+        mExecutor.execute(this::writePendingEvents);
+    }
+
+    public void deleteAll() {
+        synchronized (this) {
+            mPendingEvents.clear();
+        }
+        mExecutor.execute(() -> mMusicDatabase.getWritableDatabase()
+                .delete(ListenHistoryColumns.NAME, null, null));
+    }
+
+    private void writePendingEvents() {
+        final List<ContentValues> events;
+        synchronized (this) {
+            mFlushScheduled = false;
+            if (mPendingEvents.isEmpty()) {
+                return;
+            }
+            events = mPendingEvents;
+            mPendingEvents = new ArrayList<>();
+        }
+
+        try {
+            final SQLiteDatabase database = mMusicDatabase.getWritableDatabase();
+            database.beginTransaction();
+            try {
+                for (ContentValues values : events) {
+                    database.insert(ListenHistoryColumns.NAME, null, values);
+                }
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+
+            aggregate(database);
+        } catch (final RuntimeException e) {
+            Log.e(TAG, "Could not write listen events", e);
+        }
+    }
+
+    /**
+     * Folds the events not aggregated yet into the listen ratio of each song and trims the
+     * log
+     */
+    private void aggregate(final SQLiteDatabase database) {
+        database.beginTransaction();
+        try (Cursor cursor = database.query(ListenHistoryColumns.NAME, new String[]{
+                        ListenHistoryColumns.ID,
+                        ListenHistoryColumns.START_POSITION,
+                        ListenHistoryColumns.END_POSITION,
+                        ListenHistoryColumns.DURATION,
+                        ListenHistoryColumns.REASON},
+                ListenHistoryColumns.AGGREGATED + "=0", null, null, null,
+                ListenHistoryColumns._ID + " ASC")) {
+            final String update = "UPDATE " + SongPlayCount.SongPlayCountColumns.NAME
+                    + " SET " + SongPlayCount.SongPlayCountColumns.LISTEN_RATIO + "="
+                    + SongPlayCount.SongPlayCountColumns.LISTEN_RATIO + "*"
+                    + (1 - LISTEN_RATIO_WEIGHT) + "+?*" + LISTEN_RATIO_WEIGHT
+                    + " WHERE " + SongPlayCount.SongPlayCountColumns.ID + "=?";
+
+            while (cursor != null && cursor.moveToNext()) {
+                final float ratio = getListenRatio(cursor.getLong(1), cursor.getLong(2),
+                        cursor.getLong(3), cursor.getInt(4));
+                database.execSQL(update, new Object[]{ratio, cursor.getLong(0)});
+            }
+
+            final ContentValues aggregated = new ContentValues(1);
+            aggregated.put(ListenHistoryColumns.AGGREGATED, 1);
+            database.update(ListenHistoryColumns.NAME, aggregated,
+                    ListenHistoryColumns.AGGREGATED + "=0", null);
+
+            // only keep the latest events around
+            database.delete(ListenHistoryColumns.NAME, ListenHistoryColumns._ID
+                    + " <= (SELECT MAX(" + ListenHistoryColumns._ID + ") FROM "
+                    + ListenHistoryColumns.NAME + ") - " + MAX_ITEMS_IN_DB, null);
+
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    /**
+     * @return The share of the song that was listened to, between 0 and 1
+     */
+    private static float getListenRatio(final long startPosition, final long endPosition,
+                                        final long duration, final int reason) {
+        if (reason == REASON_COMPLETED) {
+            return 1f;
+        }
+        if (duration <= 0) {
+            // left before it even finished preparing
+            return 0f;
+        }
+        final float ratio = (float) (endPosition - startPosition) / duration;
+        return Math.max(0f, Math.min(1f, ratio));
+    }
+
+    public interface ListenHistoryColumns {
+        /* Table name */
+        String NAME = "listenhistory";
+
+        /* Row id */
+        String _ID = "_id";
+
+        /* Song IDs column */
+        String ID = "songid";
+
+        /* Position listening started at */
+        String START_POSITION = "startposition";
+
+        /* Position listening ended at */
+        String END_POSITION = "endposition";
+
+        /* Duration of the song */
+        String DURATION = "duration";
+
+        /* Why listening ended */
+        String REASON = "reason";
+
+        /* Time played column */
+        String TIME_PLAYED = "timeplayed";
+
+        /* Whether the event is part of the listen ratio already */
+        String AGGREGATED = "aggregated";
+    }
+}
@@ -127,6 +127,8 @@ public class LocalizedStore {
                         ArtistSortColumns.NAME + " TEXT COLLATE LOCALIZED," +
                         ArtistSortColumns.NAME_LABEL + " TEXT," +
                         ArtistSortColumns.NAME_BUCKET + " INTEGER);",
+
+                SongSearchColumns.CREATE_TABLE,
         };
 
         for (String table : tables) {
@@ -145,6 +147,14 @@ public class LocalizedStore {
             db.execSQL("DROP TABLE IF EXISTS " + SongSortColumns.TABLE_NAME);
             onCreate(db);
         }
+
+        // the search index was added in version 6, forget the stored ICU version so the next
+        // locale check rebuilds everything and fills it
+        if (oldVersion <= 5) {
+            db.execSQL(SongSearchColumns.CREATE_TABLE);
+            PropertiesStore.getInstance(mContext).removeProperty(db,
+                    PropertiesStore.DbProperties.ICU_VERSION);
+        }
     }
 
     public void onDowngrade(SQLiteDatabase db) {
@@ -152,6 +162,7 @@ public class LocalizedStore {
         db.execSQL("DROP TABLE IF EXISTS " + SongSortColumns.TABLE_NAME);
         db.execSQL("DROP TABLE IF EXISTS " + AlbumSortColumns.TABLE_NAME);
         db.execSQL("DROP TABLE IF EXISTS " + ArtistSortColumns.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + SongSearchColumns.TABLE_NAME);
         onCreate(db);
     }
 
@@ -171,6 +182,7 @@ public class LocalizedStore {
             db.execSQL("DELETE FROM " + SongSortColumns.TABLE_NAME);
             db.execSQL("DELETE FROM " + AlbumSortColumns.TABLE_NAME);
             db.execSQL("DELETE FROM " + ArtistSortColumns.TABLE_NAME);
+            db.execSQL("DELETE FROM " + SongSearchColumns.TABLE_NAME);
 
             // prep the localization classes
             mLocaleSetManager.updateLocaleSet(locales);
@@ -260,6 +272,8 @@ public class LocalizedStore {
 
                         updateSongData(db, cursor.getLong(0), cursor.getString(1), artistId,
                                 albumId);
+                        updateSongSearchData(db, cursor.getLong(0), cursor.getString(1),
+                                cursor.getString(3), cursor.getString(5));
                     } while (cursor.moveToNext());
                 }
             } finally {
@@ -329,6 +343,70 @@ public class LocalizedStore {
                 SQLiteDatabase.CONFLICT_IGNORE);
     }
 
+    private void updateSongSearchData(SQLiteDatabase db, long id, String title, String artist,
+                                      String album) {
+        mContentValues.clear();
+        mContentValues.put(SongSearchColumns.ID, id);
+        mContentValues.put(SongSearchColumns.TITLE, title);
+        mContentValues.put(SongSearchColumns.ARTIST, artist);
+        mContentValues.put(SongSearchColumns.ALBUM, album);
+
+        db.insertWithOnConflict(SongSearchColumns.TABLE_NAME, null, mContentValues,
+                SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * Finds the songs where each word of the query is the start of a word in the title, artist
+     * or album. Case and diacritics are ignored. Songs matching all the words in the title come
+     * first, then in the artist, then in the album and then across fields, each group in the
+     * localized song order.
+     *
+     * @param query what the user typed
+     * @param limit the maximum number of results
+     * @return the ids of the matching songs, best matches first
+     */
+    public long[] searchSongs(final String query, final int limit) {
+        final List<String> words = SongSearchQuery.getWords(query);
+        if (words.isEmpty()) {
+            return new long[0];
+        }
+
+        final long start = SystemClock.elapsedRealtime();
+        final String match = "SELECT " + SongSearchColumns.ID + ", %d AS rank FROM "
+                + SongSearchColumns.TABLE_NAME + " WHERE " + SongSearchColumns.TABLE_NAME
+                + " MATCH ?";
+        final String selection = "SELECT matches." + SongSearchColumns.ID
+                + " FROM (SELECT " + SongSearchColumns.ID + ", MIN(rank) AS best FROM ("
+                + String.format(match, 0) + " UNION ALL "
+                + String.format(match, 1) + " UNION ALL "
+                + String.format(match, 2) + " UNION ALL "
+                + String.format(match, 3) + ") GROUP BY " + SongSearchColumns.ID + ") matches"
+                + createJoin(SongSortColumns.TABLE_NAME, "matches." + SongSearchColumns.ID,
+                SongSortColumns.CONCRETE_ID)
+                + " ORDER BY best," + SongSortColumns.getOrderBy(false)
+                + " LIMIT " + limit;
+
+        long[] ids = new long[0];
+        try (Cursor c = mMusicDatabase.getReadableDatabase().rawQuery(selection, new String[]{
+                SongSearchQuery.makeMatch(words, SongSearchColumns.TITLE),
+                SongSearchQuery.makeMatch(words, SongSearchColumns.ARTIST),
+                SongSearchQuery.makeMatch(words, SongSearchColumns.ALBUM),
+                SongSearchQuery.makeMatch(words, null)})) {
+            if (c != null && c.moveToFirst()) {
+                ids = new long[c.getCount()];
+                do {
+                    ids[c.getPosition()] = c.getLong(0);
+                } while (c.moveToNext());
+            }
+        }
+
+        if (DEBUG) {
+            Log.d(TAG, "Search for " + query + " found " + ids.length + " songs in "
+                    + (SystemClock.elapsedRealtime() - start) + "ms");
+        }
+        return ids;
+    }
+
     /**
      * Gets the list of saved ids and labels for the itemType in localized sorted order
      *
@@ -490,6 +568,8 @@ public class LocalizedStore {
             case Song:
                 mMusicDatabase.getWritableDatabase().delete(SongSortColumns.TABLE_NAME,
                         SongSortColumns.ID + " IN " + inParams, null);
+                mMusicDatabase.getWritableDatabase().delete(SongSearchColumns.TABLE_NAME,
+                        SongSearchColumns.ID + " IN " + inParams, null);
                 break;
             case Album:
                 mMusicDatabase.getWritableDatabase().delete(AlbumSortColumns.TABLE_NAME,
@@ -562,6 +642,29 @@ public class LocalizedStore {
         }
     }
 
+    private static final class SongSearchColumns {
+        /* Table name */
+        public static final String TABLE_NAME = "song_search";
+
+        /* Song IDs, the docid of the full text table */
+        public static final String ID = "docid";
+
+        /* The Song title */
+        public static final String TITLE = "title";
+
+        /* The Artist name */
+        public static final String ARTIST = "artist";
+
+        /* The Album name */
+        public static final String ALBUM = "album";
+
+        /* unicode61 folds case and strips diacritics, the prefix indexes keep short
+           as-you-type prefixes from scanning the whole term list */
+        public static final String CREATE_TABLE = "CREATE VIRTUAL TABLE IF NOT EXISTS "
+                + TABLE_NAME + " USING fts4(" + TITLE + "," + ARTIST + "," + ALBUM + ","
+                + "tokenize=unicode61 \"remove_diacritics=1\",prefix=\"1,2,3\");";
+    }
+
     private static final class AlbumSortColumns {
 
         /* Table name */
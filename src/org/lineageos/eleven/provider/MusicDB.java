@@ -32,11 +32,15 @@ public class MusicDB extends SQLiteOpenHelper {
      * v3 Dec 4 2014    Add Sorting tables similar to Contacts to enable other languages like
      * Chinese to properly sort as they would expect
      * v4 Jan 6 2015    Missed Collate keyword on the LocalizedSongSortTable
+     * v5 Oct 19 2026   Added ListenHistoryStore and the listen ratio of SongPlayCount
+     * v6 Oct 19 2026   Added the full text song search index to LocalizedStore
+     * v7 Oct 19 2026   Added LibraryStatsStore
+     * v8 Oct 19 2026   Added the genre of each track to LibraryStatsStore
      */
 
 
     /* Version constant to increment when the database should be rebuilt */
-    private static final int VERSION = 4;
+    private static final int VERSION = 8;
 
     /* Name of database file */
     private static final String DATABASENAME = "musicdb.db";
@@ -69,6 +73,8 @@ public class MusicDB extends SQLiteOpenHelper {
         SongPlayCount.getInstance(mContext).onCreate(db);
         MusicPlaybackState.getInstance(mContext).onCreate(db);
         LocalizedStore.getInstance(mContext).onCreate(db);
+        ListenHistoryStore.getInstance(mContext).onCreate(db);
+        LibraryStatsStore.getInstance(mContext).onCreate(db);
     }
 
     @Override
@@ -76,6 +82,9 @@ public class MusicDB extends SQLiteOpenHelper {
         PropertiesStore.getInstance(mContext).onUpgrade(db, oldVersion, newVersion);
         MusicPlaybackState.getInstance(mContext).onUpgrade(db, oldVersion, newVersion);
         LocalizedStore.getInstance(mContext).onUpgrade(db, oldVersion);
+        SongPlayCount.getInstance(mContext).onUpgrade(db, oldVersion, newVersion);
+        ListenHistoryStore.getInstance(mContext).onUpgrade(db, oldVersion, newVersion);
+        LibraryStatsStore.getInstance(mContext).onUpgrade(db, oldVersion, newVersion);
     }
 
     @Override
@@ -88,5 +97,7 @@ public class MusicDB extends SQLiteOpenHelper {
         SongPlayCount.getInstance(mContext).onDowngrade(db);
         MusicPlaybackState.getInstance(mContext).onDowngrade(db);
         LocalizedStore.getInstance(mContext).onDowngrade(db);
+        ListenHistoryStore.getInstance(mContext).onDowngrade(db);
+        LibraryStatsStore.getInstance(mContext).onDowngrade(db);
     }
 }
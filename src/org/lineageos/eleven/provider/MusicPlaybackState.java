@@ -183,6 +183,29 @@ public class MusicPlaybackState {
         }
     }
 
+    /**
+     * Reads a single track of the saved queue, without loading the rest of it
+     *
+     * @param position the position of the track in the queue
+     * @return the track, or null if the queue is not that long
+     */
+    public MusicPlaybackTrack getQueueItem(final int position) {
+        if (position < 0) {
+            return null;
+        }
+
+        try (Cursor cursor = mMusicDatabase.getReadableDatabase().query(PlaybackQueueColumns.NAME,
+                null, null, null, null, null, null, position + ",1")) {
+
+            if (cursor != null && cursor.moveToFirst()) {
+                return new MusicPlaybackTrack(cursor.getLong(0), cursor.getLong(1),
+                        Config.IdType.getTypeById(cursor.getInt(2)), cursor.getInt(3));
+            }
+
+            return null;
+        }
+    }
+
     public LinkedList<Integer> getHistory(final int playlistSize) {
         LinkedList<Integer> results = Lists.newLinkedList();
 
@@ -88,6 +88,17 @@ public class PropertiesStore {
                 null, values);
     }
 
+    /**
+     * Removes a property while the database is being created or upgraded
+     *
+     * @param db  the database being opened
+     * @param key the property to remove
+     */
+    public void removeProperty(final SQLiteDatabase db, final String key) {
+        db.delete(PropertiesColumns.TABLE_NAME, PropertiesColumns.PROPERTY_KEY + "=?",
+                new String[]{key});
+    }
+
     public interface DbProperties {
         String ICU_VERSION = "icu_version";
         String LOCALE = "locale";
@@ -17,26 +17,156 @@
  */
 package org.lineageos.eleven.provider;
 
+import android.content.BroadcastReceiver;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
 
+import org.lineageos.eleven.BuildConstants;
+import org.lineageos.eleven.MusicPlaybackService;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The recently played songs. Each process keeps them in memory once they are first read, and
+ * that copy answers every read. Changes are written to the database in batches on a background
+ * thread. Songs played by the playback service reach the copy of other processes through
+ * {@link MusicPlaybackService#META_CHANGED}, removals are broadcast to the other processes.
+ * Before a process first reads the database it asks the others to write what they buffered.
+ */
 public class RecentStore {
+    private static final String TAG = RecentStore.class.getSimpleName();
+
     /* Maximum # of items in the db */
     private static final int MAX_ITEMS_IN_DB = 100;
 
+    /**
+     * Plays buffered before they are written right away
+     */
+    private static final int MAX_PENDING_CHANGES = 16;
+
+    /**
+     * How long plays may stay buffered
+     */
+    private static final long FLUSH_DELAY_MS = 10 * 1000;
+
+    /**
+     * How long a first read waits for the other processes to write their buffered plays
+     */
+    private static final long SYNC_TIMEOUT_MS = 1000;
+
+    /**
+     * Marks a pending removal
+     */
+    private static final long REMOVED = -1;
+
+    /**
+     * Asks the other processes to write their pending changes, sent as an ordered broadcast
+     * that only completes once they are written
+     */
+    private static final String ACTION_FLUSH = BuildConstants.PACKAGE_NAME + ".recents.FLUSH";
+
+    /**
+     * Tells the other processes about removed songs
+     */
+    private static final String ACTION_REMOVED =
+            BuildConstants.PACKAGE_NAME + ".recents.REMOVED";
+
+    private static final String EXTRA_PID = "pid";
+    private static final String EXTRA_IDS = "ids";
+    private static final String EXTRA_ALL = "all";
+
     private static RecentStore sInstance = null;
 
+    private final Context mContext;
+
     private final MusicDB mMusicDatabase;
 
+    private final ScheduledExecutorService mExecutor =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread thread = new Thread(r, TAG);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+
+    /**
+     * The recent song ids, least recent first, or null until they are first read. Guarded
+     * by this.
+     */
+    private LinkedHashSet<Long> mRecents;
+
+    /**
+     * Changes not written yet, from song id to the time it was played or {@link #REMOVED}.
+     * Guarded by this.
+     */
+    private LinkedHashMap<Long, Long> mPendingChanges = new LinkedHashMap<>();
+    private boolean mPendingDeleteAll;
+    private boolean mFlushScheduled;
+
+    /**
+     * Changes other processes made while the database is read, applied on top of what the
+     * read returns. Same format as mPendingChanges, guarded by this.
+     */
+    private final LinkedHashMap<Long, Long> mHeardChanges = new LinkedHashMap<>();
+    private boolean mHeardDeleteAll;
+    private boolean mListening;
+
+    private final BroadcastReceiver mMetaChangedReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(final Context context, final Intent intent) {
+            // the service wrote it down already, only catch up on what it played since
+            if (!isInitialStickyBroadcast()) {
+                played(intent.getLongExtra("id", -1));
+            }
+        }
+    };
+
+    private final BroadcastReceiver mSyncReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(final Context context, final Intent intent) {
+            if (intent.getIntExtra(EXTRA_PID, -1) == Process.myPid()) {
+                return;
+            }
+            if (ACTION_FLUSH.equals(intent.getAction())) {
+                final PendingResult result = goAsync();
+                mExecutor.execute(() -> {
+                    writePendingChanges();
+                    result.finish();
+                });
+            } else if (ACTION_REMOVED.equals(intent.getAction())) {
+                removedElsewhere(intent.getLongArrayExtra(EXTRA_IDS),
+                        intent.getBooleanExtra(EXTRA_ALL, false));
+            }
+        }
+    };
+
     /**
      * Constructor of <code>RecentStore</code>
      *
      * @param context The {@link Context} to use
      */
     public RecentStore(final Context context) {
+        mContext = context;
         mMusicDatabase = MusicDB.getInstance(context);
+
+        final IntentFilter filter = new IntentFilter(ACTION_FLUSH);
+        filter.addAction(ACTION_REMOVED);
+        mContext.registerReceiver(mSyncReceiver, filter, Context.RECEIVER_NOT_EXPORTED);
     }
 
     public void onCreate(final SQLiteDatabase db) {
@@ -63,75 +193,302 @@ public class RecentStore {
     }
 
     /**
-     * Used to store song IDs in the database.
+     * Used to store song IDs in the database. Playing a song again moves it to the front.
      *
      * @param songId The song id to store
      */
     public void addSongId(final long songId) {
-        final SQLiteDatabase database = mMusicDatabase.getWritableDatabase();
-        database.beginTransaction();
+        if (songId < 0) {
+            return;
+        }
 
-        try {
-            // see if the most recent item is the same song id, if it is then don't insert
-            try (Cursor mostRecentItem = queryRecentIds("1")) {
-                if (mostRecentItem != null && mostRecentItem.moveToFirst()) {
-                    if (songId == mostRecentItem.getLong(0)) {
-                        return;
-                    }
-                }
+        synchronized (this) {
+            played(songId);
+            mPendingChanges.remove(songId);
+            mPendingChanges.put(songId, System.currentTimeMillis());
+            if (mPendingChanges.size() >= MAX_PENDING_CHANGES) {
+                mExecutor.execute(this::writePendingChanges);
+            } else if (!mFlushScheduled) {
+                mFlushScheduled = true;
+                mExecutor.schedule(this::writePendingChanges, FLUSH_DELAY_MS,
+                        TimeUnit.MILLISECONDS);
             }
+        }
+    }
 
-            // add the entry
-            final ContentValues values = new ContentValues(2);
-            values.put(RecentStoreColumns.ID, songId);
-            values.put(RecentStoreColumns.TIME_PLAYED, System.currentTimeMillis());
-            database.insert(RecentStoreColumns.NAME, null, values);
+    /**
+     * Moves a song to the front of the copy in memory, if it is read already
+     */
+    private synchronized void played(final long songId) {
+        if (songId < 0) {
+            return;
+        }
+        if (mRecents == null) {
+            if (mListening) {
+                mHeardChanges.remove(songId);
+                mHeardChanges.put(songId, System.currentTimeMillis());
+            }
+            return;
+        }
 
-            // if our db is too large, delete the extra items
-            try (Cursor oldest = database.query(RecentStoreColumns.NAME,
-                    new String[]{RecentStoreColumns.TIME_PLAYED}, null, null, null, null,
-                    RecentStoreColumns.TIME_PLAYED + " ASC")) {
+        mRecents.remove(songId);
+        mRecents.add(songId);
+        if (mRecents.size() > MAX_ITEMS_IN_DB) {
+            final Iterator<Long> oldest = mRecents.iterator();
+            oldest.next();
+            oldest.remove();
+        }
+    }
 
-                if (oldest != null && oldest.getCount() > MAX_ITEMS_IN_DB) {
-                    oldest.moveToPosition(oldest.getCount() - MAX_ITEMS_IN_DB);
-                    long timeOfRecordToKeep = oldest.getLong(0);
+    /**
+     * @param songId to remove.
+     */
+    public void removeItem(final long songId) {
+        removeItems(new long[]{songId});
+    }
 
-                    database.delete(RecentStoreColumns.NAME,
-                            RecentStoreColumns.TIME_PLAYED + " < ?",
-                            new String[]{String.valueOf(timeOfRecordToKeep)});
+    /**
+     * Removes several songs
+     *
+     * @param songIds The song ids to remove
+     */
+    public void removeItems(final long[] songIds) {
+        synchronized (this) {
+            for (final long songId : songIds) {
+                if (mRecents != null) {
+                    mRecents.remove(songId);
                 }
+                mPendingChanges.put(songId, REMOVED);
+            }
+        }
+        // the user asked for it, don't keep it waiting for more plays
+        mExecutor.execute(this::writePendingChanges);
+        sendRemoved(songIds, false);
+    }
+
+    public void deleteAll() {
+        synchronized (this) {
+            if (mRecents != null) {
+                mRecents.clear();
             }
-        } finally {
-            database.setTransactionSuccessful();
-            database.endTransaction();
+            mPendingChanges.clear();
+            mPendingDeleteAll = true;
         }
+        mExecutor.execute(this::writePendingChanges);
+        sendRemoved(null, true);
     }
 
     /**
-     * @param songId to remove.
+     * Tells the other processes to drop songs from their copy. The database is written here,
+     * so they also drop their buffered plays of these songs instead of writing them back.
      */
-    public void removeItem(final long songId) {
-        final SQLiteDatabase database = mMusicDatabase.getWritableDatabase();
-        database.delete(RecentStoreColumns.NAME, RecentStoreColumns.ID + " = ?",
-                new String[]{String.valueOf(songId)});
+    private void sendRemoved(final long[] songIds, final boolean all) {
+        final Intent intent = new Intent(ACTION_REMOVED)
+                .setPackage(mContext.getPackageName())
+                .putExtra(EXTRA_PID, Process.myPid())
+                .putExtra(EXTRA_IDS, songIds)
+                .putExtra(EXTRA_ALL, all);
+        mContext.sendBroadcast(intent);
     }
 
-    public void deleteAll() {
-        final SQLiteDatabase database = mMusicDatabase.getWritableDatabase();
-        database.delete(RecentStoreColumns.NAME, null, null);
+    private synchronized void removedElsewhere(final long[] songIds, final boolean all) {
+        if (all) {
+            mPendingChanges.clear();
+            mHeardChanges.clear();
+            if (mRecents != null) {
+                mRecents.clear();
+            } else if (mListening) {
+                mHeardDeleteAll = true;
+            }
+            return;
+        }
+        if (songIds == null) {
+            return;
+        }
+        for (final long songId : songIds) {
+            final Long change = mPendingChanges.get(songId);
+            if (change != null && change != REMOVED) {
+                mPendingChanges.remove(songId);
+            }
+            if (mRecents != null) {
+                mRecents.remove(songId);
+            } else if (mListening) {
+                mHeardChanges.put(songId, REMOVED);
+            }
+        }
+    }
+
+    /**
+     * Writes the buffered plays soon instead of waiting for the batch to fill up
+     */
+    public void flush() {
+        mExecutor.execute(this::writePendingChanges);
     }
 
     /**
-     * Gets a cursor to the list of recently played content
+     * Gets the recently played songs. Only the first call of a process reads the database.
      *
-     * @param limit # of songs to limit the result to
-     * @return cursor
+     * @return the song ids, most recent first
+     */
+    public long[] getRecentIds() {
+        final boolean loaded;
+        synchronized (this) {
+            loaded = mRecents != null;
+        }
+        if (!loaded) {
+            // listen before reading, so nothing played or removed meanwhile is missed
+            startListening();
+            requestFlush();
+            // read on the writer thread, so nothing written meanwhile is missed
+            try {
+                mExecutor.submit(this::load).get();
+            } catch (ExecutionException | InterruptedException e) {
+                Log.e(TAG, "Could not read the recent songs", e);
+                return new long[0];
+            }
+        }
+
+        synchronized (this) {
+            final long[] ids = new long[mRecents.size()];
+            int i = ids.length;
+            for (long id : mRecents) {
+                ids[--i] = id;
+            }
+            return ids;
+        }
+    }
+
+    private void startListening() {
+        synchronized (this) {
+            if (mListening) {
+                return;
+            }
+            mListening = true;
+        }
+        mContext.registerReceiver(mMetaChangedReceiver,
+                new IntentFilter(MusicPlaybackService.META_CHANGED), Context.RECEIVER_EXPORTED);
+    }
+
+    /**
+     * Asks the other processes to write their buffered changes and waits until they did. The
+     * answer is delivered on the main thread, so there it can't be waited for.
      */
-    public Cursor queryRecentIds(final String limit) {
-        final SQLiteDatabase database = mMusicDatabase.getReadableDatabase();
-        return database.query(RecentStoreColumns.NAME,
+    private void requestFlush() {
+        final CountDownLatch flushed = new CountDownLatch(1);
+        final Intent request = new Intent(ACTION_FLUSH)
+                .setPackage(mContext.getPackageName())
+                .addFlags(Intent.FLAG_RECEIVER_FOREGROUND)
+                .putExtra(EXTRA_PID, Process.myPid());
+        mContext.sendOrderedBroadcast(request, null, new BroadcastReceiver() {
+            @Override
+            public void onReceive(final Context context, final Intent intent) {
+                flushed.countDown();
+            }
+        }, new Handler(Looper.getMainLooper()), 0, null, null);
+
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            return;
+        }
+        try {
+            if (!flushed.await(SYNC_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                Log.w(TAG, "Other processes didn't write their recent songs in time");
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void load() {
+        final LinkedHashSet<Long> recents = new LinkedHashSet<>();
+        try (Cursor cursor = mMusicDatabase.getReadableDatabase().query(RecentStoreColumns.NAME,
                 new String[]{RecentStoreColumns.ID}, null, null, null, null,
-                RecentStoreColumns.TIME_PLAYED + " DESC", limit);
+                RecentStoreColumns.TIME_PLAYED + " ASC")) {
+            while (cursor != null && cursor.moveToNext()) {
+                // older versions kept every play, the last one decides the order
+                final long id = cursor.getLong(0);
+                recents.remove(id);
+                recents.add(id);
+            }
+        }
+
+        synchronized (this) {
+            if (mRecents != null) {
+                return;
+            }
+            if (mPendingDeleteAll || mHeardDeleteAll) {
+                recents.clear();
+            }
+            mRecents = recents;
+            // what other processes did while reading, then what this one didn't write yet
+            applyChanges(mHeardChanges);
+            applyChanges(mPendingChanges);
+            mHeardChanges.clear();
+            mHeardDeleteAll = false;
+            while (mRecents.size() > MAX_ITEMS_IN_DB) {
+                final Iterator<Long> oldest = mRecents.iterator();
+                oldest.next();
+                oldest.remove();
+            }
+        }
+    }
+
+    private synchronized void applyChanges(final Map<Long, Long> changes) {
+        for (Map.Entry<Long, Long> change : changes.entrySet()) {
+            if (change.getValue() == REMOVED) {
+                mRecents.remove(change.getKey());
+            } else {
+                played(change.getKey());
+            }
+        }
+    }
+
+    private void writePendingChanges() {
+        final Map<Long, Long> changes;
+        final boolean deleteAll;
+        synchronized (this) {
+            mFlushScheduled = false;
+            if (mPendingChanges.isEmpty() && !mPendingDeleteAll) {
+                return;
+            }
+            changes = mPendingChanges;
+            deleteAll = mPendingDeleteAll;
+            mPendingChanges = new LinkedHashMap<>();
+            mPendingDeleteAll = false;
+        }
+
+        try {
+            final SQLiteDatabase database = mMusicDatabase.getWritableDatabase();
+            database.beginTransaction();
+            try {
+                if (deleteAll) {
+                    database.delete(RecentStoreColumns.NAME, null, null);
+                }
+
+                final String[] args = new String[1];
+                final ContentValues values = new ContentValues(2);
+                for (Map.Entry<Long, Long> change : changes.entrySet()) {
+                    args[0] = String.valueOf(change.getKey());
+                    database.delete(RecentStoreColumns.NAME, RecentStoreColumns.ID + " = ?",
+                            args);
+                    if (change.getValue() != REMOVED) {
+                        values.put(RecentStoreColumns.ID, change.getKey());
+                        values.put(RecentStoreColumns.TIME_PLAYED, change.getValue());
+                        database.insert(RecentStoreColumns.NAME, null, values);
+                    }
+                }
+
+                // if our db is too large, delete the extra items
+                database.delete(RecentStoreColumns.NAME, "rowid NOT IN (SELECT rowid FROM "
+                        + RecentStoreColumns.NAME + " ORDER BY " + RecentStoreColumns.TIME_PLAYED
+                        + " DESC LIMIT " + MAX_ITEMS_IN_DB + ")", null);
+
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+        } catch (final RuntimeException e) {
+            Log.e(TAG, "Could not write the recent songs", e);
+        }
     }
 
     public interface RecentStoreColumns {
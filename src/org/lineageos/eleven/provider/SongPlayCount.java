@@ -20,6 +20,7 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.util.LongSparseArray;
 import android.view.animation.AccelerateInterpolator;
 import android.view.animation.Interpolator;
 
@@ -50,6 +51,12 @@ public class SongPlayCount {
 
     private static final String WHERE_ID_EQUALS = SongPlayCountColumns.ID + "=?";
 
+    // songs that usually get skipped rank lower than ones that are listened to
+    private static final String RANKING_SCORE = SongPlayCountColumns.PLAY_COUNT_SCORE + "*"
+            + SongPlayCountColumns.LISTEN_RATIO;
+
+    private static final String RANKING_ORDER = RANKING_SCORE + " DESC";
+
     // number of weeks since epoch time
     private final int mNumberOfWeeksSinceEpoch;
 
@@ -88,11 +95,22 @@ public class SongPlayCount {
         builder.append(" INT NOT NULL,");
 
         builder.append(SongPlayCountColumns.PLAY_COUNT_SCORE);
-        builder.append(" REAL DEFAULT 0);");
+        builder.append(" REAL DEFAULT 0,");
+
+        builder.append(SongPlayCountColumns.LISTEN_RATIO);
+        builder.append(" REAL DEFAULT 1);");
 
         db.execSQL(builder.toString());
     }
 
+    public void onUpgrade(final SQLiteDatabase db, final int oldVersion, final int newVersion) {
+        // the listen ratio was added in version 5
+        if (oldVersion < 5 && newVersion >= 5) {
+            db.execSQL("ALTER TABLE " + SongPlayCountColumns.NAME + " ADD COLUMN "
+                    + SongPlayCountColumns.LISTEN_RATIO + " REAL DEFAULT 1");
+        }
+    }
+
     public void onDowngrade(SQLiteDatabase db) {
         // If we ever have downgrade, drop the table to be safe
         db.execSQL("DROP TABLE IF EXISTS " + SongPlayCountColumns.NAME);
@@ -270,7 +288,7 @@ public class SongPlayCount {
         final SQLiteDatabase database = mMusicDatabase.getReadableDatabase();
         return database.query(SongPlayCountColumns.NAME, new String[]{SongPlayCountColumns.ID},
                 null, null, null, null,
-                SongPlayCountColumns.PLAY_COUNT_SCORE + " DESC",
+                RANKING_ORDER,
                 (numResults <= 0 ? null : String.valueOf(numResults)));
     }
 
@@ -328,7 +346,7 @@ public class SongPlayCount {
         try {
             topSongsCursor = database.query(SongPlayCountColumns.NAME,
                     new String[]{SongPlayCountColumns.ID}, selection.toString(), null, null,
-                    null, SongPlayCountColumns.PLAY_COUNT_SCORE + " DESC");
+                    null, RANKING_ORDER);
 
             if (topSongsCursor != null && topSongsCursor.moveToFirst()) {
                 do {
@@ -352,6 +370,54 @@ public class SongPlayCount {
         return sortedList;
     }
 
+    /**
+     * Gets the decayed play count score of each of the given songs, scaled by how much of
+     * them is usually listened to
+     *
+     * @param ids list of song ids
+     * @return the scores in the same order as ids, 0 for songs not played recently
+     */
+    public float[] getScores(final long[] ids) {
+        final int MAX_NUMBER_SONGS_PER_QUERY = 200;
+
+        final float[] scores = new float[ids.length];
+        if (ids.length == 0) {
+            return scores;
+        }
+
+        updateResults();
+
+        final LongSparseArray<Float> scoresById = new LongSparseArray<>();
+        final SQLiteDatabase database = mMusicDatabase.getReadableDatabase();
+        for (int start = 0; start < ids.length; start += MAX_NUMBER_SONGS_PER_QUERY) {
+            final int end = Math.min(ids.length, start + MAX_NUMBER_SONGS_PER_QUERY);
+
+            final StringBuilder selection = new StringBuilder();
+            selection.append(SongPlayCountColumns.ID);
+            selection.append(" IN (");
+            for (int i = start; i < end; i++) {
+                if (i != start) {
+                    selection.append(",");
+                }
+                selection.append(ids[i]);
+            }
+            selection.append(")");
+
+            try (Cursor cursor = database.query(SongPlayCountColumns.NAME,
+                    new String[]{SongPlayCountColumns.ID, RANKING_SCORE},
+                    selection.toString(), null, null, null, null)) {
+                while (cursor != null && cursor.moveToNext()) {
+                    scoresById.put(cursor.getLong(0), cursor.getFloat(1));
+                }
+            }
+        }
+
+        for (int i = 0; i < ids.length; i++) {
+            scores[i] = scoresById.get(ids[i], 0f);
+        }
+        return scores;
+    }
+
     /**
      * This updates all the results for the getTopPlayedResults so that we can get an
      * accurate list of the top played results
@@ -397,6 +463,24 @@ public class SongPlayCount {
         deleteEntry(database, String.valueOf(songId));
     }
 
+    /**
+     * Removes several songs in a single transaction
+     *
+     * @param songIds The song ids to remove
+     */
+    public void removeItems(final long[] songIds) {
+        final SQLiteDatabase database = mMusicDatabase.getWritableDatabase();
+        database.beginTransaction();
+        try {
+            for (final long songId : songIds) {
+                deleteEntry(database, String.valueOf(songId));
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
     /**
      * Deletes the entry
      *
@@ -476,5 +560,8 @@ public class SongPlayCount {
 
         /* Play count */
         String PLAY_COUNT_SCORE = "playcountscore";
+
+        /* Moving average of the share of the song listened to */
+        String LISTEN_RATIO = "listenratio";
     }
 }
@@ -0,0 +1,56 @@
+/*
+ * SPDX-FileCopyrightText: 2026 The LineageOS Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.lineageos.eleven.provider;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns what the user typed into the full text search expressions of
+ * {@link LocalizedStore#searchSongs(String, int)}
+ */
+final class SongSearchQuery {
+
+    private SongSearchQuery() {
+    }
+
+    /**
+     * @param query what the user typed, may be null
+     * @return the words of the query. Anything that isn't a letter or a digit separates words,
+     * so nothing the full text search would read as an operator or quote is left
+     */
+    static List<String> getWords(final String query) {
+        final List<String> words = new ArrayList<>();
+        if (query == null) {
+            return words;
+        }
+        for (final String word : query.trim().split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    /**
+     * @param words  the words to look for, as returned by {@link #getWords(String)}
+     * @param column the column the words must be found in, or null for any column
+     * @return an expression matching the rows that have a word starting with each of the
+     * words, or an empty string if there are no words
+     */
+    static String makeMatch(final List<String> words, final String column) {
+        final StringBuilder match = new StringBuilder();
+        for (final String word : words) {
+            if (match.length() > 0) {
+                match.append(' ');
+            }
+            if (column != null) {
+                match.append(column).append(':');
+            }
+            match.append(word).append('*');
+        }
+        return match.toString();
+    }
+}
@@ -0,0 +1,350 @@
+/*
+ * SPDX-FileCopyrightText: 2026 The LineageOS Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.lineageos.eleven.sectionadapter;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
+
+import org.lineageos.eleven.model.Album;
+import org.lineageos.eleven.model.Artist;
+import org.lineageos.eleven.model.Song;
+import org.lineageos.eleven.utils.SectionCreatorUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Compact binary copy of the last list a browser tab loaded, with its section headers.
+ * It is read through a memory mapping when the tab is created, so the list can be shown
+ * right away while the loader queries the media store. Once the loader is done the live
+ * result replaces it through a diff, and is written back in the background.
+ *
+ * @param <T> The type of item in the list
+ */
+public final class SectionListSnapshot<T> {
+    private static final String TAG = SectionListSnapshot.class.getSimpleName();
+    private static final boolean DEBUG = false;
+
+    private static final int MAGIC = 0x456c5331; // "ElS1"
+    private static final int VERSION = 1;
+
+    private static final String DIRECTORY = "snapshots";
+
+    private static final Executor sExecutor = Executors.newSingleThreadExecutor(r -> {
+        final Thread thread = new Thread(r, TAG);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    /**
+     * Writes and reads one kind of item
+     */
+    public interface Codec<T> {
+        void write(DataOutputStream out, T item) throws IOException;
+
+        T read(ByteBuffer in);
+
+        /**
+         * @return the id telling whether two items are the same item
+         */
+        long getId(T item);
+    }
+
+    public static final Codec<Song> SONGS = new Codec<Song>() {
+        @Override
+        public void write(DataOutputStream out, Song item) throws IOException {
+            out.writeLong(item.mSongId);
+            writeString(out, item.mSongName);
+            writeString(out, item.mArtistName);
+            writeString(out, item.mAlbumName);
+            out.writeLong(item.mAlbumId);
+            out.writeInt(item.mDuration);
+            out.writeInt(item.mYear);
+            writeString(out, item.mBucketLabel);
+        }
+
+        @Override
+        public Song read(ByteBuffer in) {
+            final Song song = new Song(in.getLong(), readString(in), readString(in),
+                    readString(in), in.getLong(), in.getInt(), in.getInt());
+            song.mBucketLabel = readString(in);
+            return song;
+        }
+
+        @Override
+        public long getId(Song item) {
+            return item.mSongId;
+        }
+    };
+
+    public static final Codec<Album> ALBUMS = new Codec<Album>() {
+        @Override
+        public void write(DataOutputStream out, Album item) throws IOException {
+            out.writeLong(item.mAlbumId);
+            writeString(out, item.mAlbumName);
+            writeString(out, item.mArtistName);
+            out.writeInt(item.mSongNumber);
+            writeString(out, item.mYear);
+        }
+
+        @Override
+        public Album read(ByteBuffer in) {
+            return new Album(in.getLong(), readString(in), readString(in), in.getInt(),
+                    readString(in));
+        }
+
+        @Override
+        public long getId(Album item) {
+            return item.mAlbumId;
+        }
+    };
+
+    public static final Codec<Artist> ARTISTS = new Codec<Artist>() {
+        @Override
+        public void write(DataOutputStream out, Artist item) throws IOException {
+            out.writeLong(item.mArtistId);
+            writeString(out, item.mArtistName);
+            out.writeInt(item.mSongNumber);
+            out.writeInt(item.mAlbumNumber);
+            writeString(out, item.mBucketLabel);
+        }
+
+        @Override
+        public Artist read(ByteBuffer in) {
+            final Artist artist = new Artist(in.getLong(), readString(in), in.getInt(),
+                    in.getInt());
+            artist.mBucketLabel = readString(in);
+            return artist;
+        }
+
+        @Override
+        public long getId(Artist item) {
+            return item.mArtistId;
+        }
+    };
+
+    private final AtomicFile mFile;
+    private final Codec<T> mCodec;
+
+    /**
+     * @param context The {@link Context} to use
+     * @param name    The name of the list, used as the file name
+     * @param codec   Writes and reads the items of the list
+     */
+    public SectionListSnapshot(final Context context, final String name, final Codec<T> codec) {
+        mFile = new AtomicFile(new File(new File(context.getCacheDir(), DIRECTORY), name));
+        mCodec = codec;
+    }
+
+    /**
+     * Reads the snapshot. This is meant to run on the main thread, the file is mapped rather
+     * than streamed so it only costs decoding the items.
+     *
+     * @param sortOrder the sort order the list is wanted in
+     * @return the list, or null if there is none for this sort order and locale
+     */
+    @Nullable
+    public SectionListContainer<T> read(final String sortOrder) {
+        final File file = mFile.getBaseFile();
+        if (!file.exists()) {
+            return null;
+        }
+
+        final long start = SystemClock.elapsedRealtime();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+            if (in.getInt() != MAGIC || in.getInt() != VERSION
+                    || !makeKey(sortOrder).equals(readString(in))) {
+                return null;
+            }
+
+            final int count = in.getInt();
+            final List<T> items = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                items.add(mCodec.read(in));
+            }
+
+            TreeMap<Integer, SectionCreatorUtils.Section> sections = null;
+            final int sectionCount = in.getInt();
+            if (sectionCount >= 0) {
+                sections = new TreeMap<>();
+                for (int i = 0; i < sectionCount; i++) {
+                    final int position = in.getInt();
+                    final SectionCreatorUtils.SectionType type =
+                            SectionCreatorUtils.SectionType.values()[in.get()];
+                    sections.put(position, new SectionCreatorUtils.Section(type,
+                            readString(in)));
+                }
+            }
+
+            if (DEBUG) {
+                Log.d(TAG, "Read " + count + " items from " + file.getName() + " in "
+                        + (SystemClock.elapsedRealtime() - start) + "ms");
+            }
+            return new SectionListContainer<>(sections, items);
+        } catch (IOException | RuntimeException e) {
+            // a snapshot we can't read is just a slower start
+            Log.w(TAG, "Unable to read " + file.getName(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the snapshot in the background
+     *
+     * @param data      the list as shown
+     * @param sortOrder the sort order the list is in
+     */
+    public void save(final SectionListContainer<T> data, final String sortOrder) {
+        final String key = makeKey(sortOrder);
+        sExecutor.execute(() -> write(data, key));
+    }
+
+    private void write(final SectionListContainer<T> data, final String key) {
+        final File directory = mFile.getBaseFile().getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            return;
+        }
+
+        FileOutputStream stream = null;
+        try {
+            stream = mFile.startWrite();
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, key);
+
+            out.writeInt(data.mListResults.size());
+            for (T item : data.mListResults) {
+                mCodec.write(out, item);
+            }
+
+            if (data.mSections == null) {
+                out.writeInt(-1);
+            } else {
+                out.writeInt(data.mSections.size());
+                for (Map.Entry<Integer, SectionCreatorUtils.Section> entry
+                        : data.mSections.entrySet()) {
+                    out.writeInt(entry.getKey());
+                    out.writeByte(entry.getValue().mType.ordinal());
+                    writeString(out, entry.getValue().mIdentifier);
+                }
+            }
+
+            out.flush();
+            mFile.finishWrite(stream);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to write " + mFile.getBaseFile().getName(), e);
+            if (stream != null) {
+                mFile.failWrite(stream);
+            }
+        }
+    }
+
+    /**
+     * @return true if the live result shows exactly what the snapshot showed
+     */
+    public static <T> boolean isSame(final SectionListContainer<T> snapshot,
+                                     final SectionListContainer<T> live) {
+        if (!snapshot.mListResults.equals(live.mListResults)) {
+            return false;
+        }
+        if (snapshot.mSections == null || live.mSections == null) {
+            return snapshot.mSections == live.mSections;
+        }
+        if (!snapshot.mSections.keySet().equals(live.mSections.keySet())) {
+            return false;
+        }
+        for (Map.Entry<Integer, SectionCreatorUtils.Section> entry
+                : snapshot.mSections.entrySet()) {
+            final SectionCreatorUtils.Section other = live.mSections.get(entry.getKey());
+            if (other == null || entry.getValue().mType != other.mType
+                    || !Objects.equals(entry.getValue().mIdentifier, other.mIdentifier)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Works out the item changes that turn the list shown from the snapshot into the live one
+     */
+    public DiffUtil.DiffResult diff(final List<T> snapshot, final List<T> live) {
+        return DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return snapshot.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return live.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                return mCodec.getId(snapshot.get(oldItemPosition))
+                        == mCodec.getId(live.get(newItemPosition));
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                return snapshot.get(oldItemPosition).equals(live.get(newItemPosition));
+            }
+        }, false);
+    }
+
+    /**
+     * Bucket labels and section headers depend on the locale as well as the sort order
+     */
+    @NonNull
+    private static String makeKey(final String sortOrder) {
+        return sortOrder + "|" + Locale.getDefault().toLanguageTag();
+    }
+
+    private static void writeString(final DataOutputStream out, final String value)
+            throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(final ByteBuffer in) {
+        final int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
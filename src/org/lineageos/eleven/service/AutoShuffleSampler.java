@@ -0,0 +1,310 @@
+/*
+ * SPDX-FileCopyrightText: 2026 The LineageOS Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.lineageos.eleven.service;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.MediaStore;
+import android.provider.MediaStore.Audio.AudioColumns;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+
+/**
+ * Draws the tracks of party mode. The music ids of the library are kept in a single array
+ * that is shuffled lazily: the front holds the tracks not drawn yet in the current round,
+ * and each draw swaps a random one of them behind that boundary. No track repeats until
+ * the whole library has been played, and MediaStore changes are applied to the array in
+ * place instead of reloading it.
+ * <p>
+ * Not thread safe, callers have to synchronize.
+ */
+public class AutoShuffleSampler {
+    private static final String TAG = AutoShuffleSampler.class.getSimpleName();
+
+    private static final String MUSIC_SELECTION = AudioColumns.IS_MUSIC + "=1";
+
+    /**
+     * Above this many changed uris the whole library is compared instead of checking each
+     */
+    private static final int MAX_SINGLE_CHANGES = 32;
+
+    private final Random mRandom = new Random();
+
+    private long[] mIds = new long[0];
+    private int mSize;
+
+    /**
+     * The ids in [0, mRemaining) haven't been drawn in the current round
+     */
+    private int mRemaining;
+
+    private long mLastId = -1;
+
+    /**
+     * Loads the music ids of the library. If ids were loaded before, the current round is
+     * kept and only the differences are applied.
+     *
+     * @return false if there is no music to shuffle
+     */
+    public boolean load(final ContentResolver resolver) {
+        return load(queryLibrary(resolver));
+    }
+
+    /**
+     * Loads music ids read by {@link #queryLibrary(ContentResolver)}. If ids were loaded
+     * before, the current round is kept and only the differences are applied.
+     *
+     * @param ids the music ids, or null if they couldn't be read
+     * @return false if there is no music to shuffle
+     */
+    public boolean load(final long[] ids) {
+        if (ids == null) {
+            // keep what we have, the next change will try again
+            return mSize > 0;
+        }
+        if (ids.length == 0) {
+            clear();
+            return false;
+        }
+
+        if (mSize == 0) {
+            mIds = Arrays.copyOf(ids, ids.length);
+            mSize = ids.length;
+            mRemaining = mSize;
+        } else {
+            sync(ids);
+        }
+        return true;
+    }
+
+    public void clear() {
+        mIds = new long[0];
+        mSize = 0;
+        mRemaining = 0;
+        mLastId = -1;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * @return The next track to play or -1 if there is none
+     */
+    public long next() {
+        if (mSize == 0) {
+            return -1;
+        }
+
+        if (mRemaining == 0) {
+            // start a new round, but keep the track drawn last out of it so that it can't
+            // come up twice in a row
+            mRemaining = mSize;
+            final int last = indexOf(mLastId);
+            if (last >= 0 && mSize > 1) {
+                swap(last, mSize - 1);
+                mRemaining--;
+            }
+        }
+
+        final int index = mRandom.nextInt(mRemaining);
+        mRemaining--;
+        swap(index, mRemaining);
+        mLastId = mIds[mRemaining];
+        return mLastId;
+    }
+
+    /**
+     * Applies MediaStore changes read by {@link #queryChanges(ContentResolver, Collection)}
+     * to the loaded ids
+     */
+    public void applyChanges(final Changes changes) {
+        if (mSize == 0) {
+            return;
+        }
+        if (changes.mLibrary != null) {
+            load(changes.mLibrary);
+            return;
+        }
+
+        for (long id : changes.mFound) {
+            if (indexOf(id) < 0) {
+                add(id);
+            }
+        }
+        for (long id : changes.mMissing) {
+            final int index = indexOf(id);
+            if (index >= 0) {
+                removeAt(index);
+            }
+        }
+    }
+
+    /**
+     * Adds and removes ids so that exactly the given ones are loaded
+     */
+    private void sync(final long[] ids) {
+        final long[] wanted = Arrays.copyOf(ids, ids.length);
+        Arrays.sort(wanted);
+        // removeAt only moves ids from higher indices, so walking backwards visits each once
+        for (int i = mSize - 1; i >= 0; i--) {
+            if (Arrays.binarySearch(wanted, mIds[i]) < 0) {
+                removeAt(i);
+            }
+        }
+
+        final long[] loaded = Arrays.copyOf(mIds, mSize);
+        Arrays.sort(loaded);
+        for (long id : ids) {
+            if (Arrays.binarySearch(loaded, id) < 0) {
+                add(id);
+            }
+        }
+    }
+
+    /**
+     * Adds a track to the ones not drawn yet in this round
+     */
+    private void add(final long id) {
+        if (mSize == mIds.length) {
+            mIds = Arrays.copyOf(mIds, Math.max(16, mSize * 2));
+        }
+        mIds[mSize] = id;
+        swap(mSize, mRemaining);
+        mSize++;
+        mRemaining++;
+    }
+
+    private void removeAt(final int index) {
+        if (index < mRemaining) {
+            // fill the hole with the last undrawn id, and that one's slot with the last id
+            mRemaining--;
+            mIds[index] = mIds[mRemaining];
+            mIds[mRemaining] = mIds[mSize - 1];
+        } else {
+            mIds[index] = mIds[mSize - 1];
+        }
+        mSize--;
+    }
+
+    private int indexOf(final long id) {
+        for (int i = 0; i < mSize; i++) {
+            if (mIds[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void swap(final int i, final int j) {
+        final long tmp = mIds[i];
+        mIds[i] = mIds[j];
+        mIds[j] = tmp;
+    }
+
+    /**
+     * Reads the music ids of the library. Doesn't touch any sampler, so it can run without
+     * holding the lock the sampler is guarded by.
+     *
+     * @return the ids, or null if they couldn't be read
+     */
+    public static long[] queryLibrary(final ContentResolver resolver) {
+        return queryIds(resolver, MUSIC_SELECTION);
+    }
+
+    /**
+     * Reads which of the changed tracks are music. Doesn't touch any sampler, so it can run
+     * without holding the lock the sampler is guarded by.
+     *
+     * @param resolver the resolver to query the changed tracks with
+     * @param uris     the changed uris, or an empty collection if anything might have changed
+     */
+    public static Changes queryChanges(final ContentResolver resolver,
+                                       final Collection<Uri> uris) {
+        if (uris.isEmpty() || uris.size() > MAX_SINGLE_CHANGES) {
+            return Changes.ofLibrary(queryLibrary(resolver));
+        }
+
+        final long[] found = new long[uris.size()];
+        final long[] missing = new long[uris.size()];
+        int foundCount = 0;
+        int missingCount = 0;
+        for (Uri uri : uris) {
+            final long id;
+            try {
+                id = ContentUris.parseId(uri);
+            } catch (NumberFormatException | UnsupportedOperationException e) {
+                // not a single track
+                return Changes.ofLibrary(queryLibrary(resolver));
+            }
+            if (id < 0) {
+                return Changes.ofLibrary(queryLibrary(resolver));
+            }
+
+            final long[] ids = queryIds(resolver,
+                    AudioColumns._ID + "=" + id + " AND " + MUSIC_SELECTION);
+            if (ids == null) {
+                continue;
+            }
+            if (ids.length > 0) {
+                found[foundCount++] = id;
+            } else {
+                missing[missingCount++] = id;
+            }
+        }
+        return new Changes(null, Arrays.copyOf(found, foundCount),
+                Arrays.copyOf(missing, missingCount));
+    }
+
+    private static long[] queryIds(final ContentResolver resolver, final String selection) {
+        try (Cursor cursor = resolver.query(
+                MediaStore.Audio.Media.getContentUri(MediaStore.VOLUME_EXTERNAL),
+                new String[]{AudioColumns._ID}, selection, null, null)) {
+            if (cursor == null) {
+                return null;
+            }
+            final long[] ids = new long[cursor.getCount()];
+            int count = 0;
+            while (cursor.moveToNext() && count < ids.length) {
+                ids[count++] = cursor.getLong(0);
+            }
+            return count == ids.length ? ids : Arrays.copyOf(ids, count);
+        } catch (final RuntimeException e) {
+            Log.w(TAG, "Could not query music ids", e);
+            return null;
+        }
+    }
+
+    /**
+     * MediaStore changes read ahead of applying them to a sampler
+     */
+    public static final class Changes {
+        /**
+         * The whole library if too much changed to check single tracks, otherwise null
+         */
+        private final long[] mLibrary;
+        private final long[] mFound;
+        private final long[] mMissing;
+
+        private Changes(final long[] library, final long[] found, final long[] missing) {
+            mLibrary = library;
+            mFound = found;
+            mMissing = missing;
+        }
+
+        private static Changes ofLibrary(final long[] library) {
+            if (library == null) {
+                // nothing could be read, keep what the sampler has
+                return new Changes(null, new long[0], new long[0]);
+            }
+            return new Changes(library, null, null);
+        }
+    }
+}
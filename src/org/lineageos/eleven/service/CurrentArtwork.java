@@ -0,0 +1,125 @@
+/*
+ * SPDX-FileCopyrightText: 2026 The LineageOS Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.lineageos.eleven.service;
+
+import android.graphics.Bitmap;
+import android.util.SparseArray;
+
+import org.lineageos.eleven.cache.ImageFetcher;
+import org.lineageos.eleven.utils.colors.BitmapWithColors;
+
+import java.util.Objects;
+
+/**
+ * The artwork of the current album in every form the service hands out: the full and small
+ * artwork, the copy given to the media session and copies scaled for the widgets. Everything
+ * is keyed by the album, so it is only loaded or scaled once no matter how often the track,
+ * queue or play state changes, and all consumers get the same bitmaps.
+ */
+public class CurrentArtwork {
+    private final ImageFetcher mImageFetcher;
+
+    private String mKey;
+    private String mAlbumName;
+    private long mAlbumId;
+
+    private BitmapWithColors mFull;
+    private BitmapWithColors mSmall;
+    private Bitmap mSessionBitmap;
+
+    /**
+     * The small artwork scaled down, keyed by the longest edge in pixels
+     */
+    private final SparseArray<Bitmap> mScaled = new SparseArray<>();
+
+    public CurrentArtwork(final ImageFetcher imageFetcher) {
+        mImageFetcher = imageFetcher;
+    }
+
+    /**
+     * Sets the current album, dropping the artwork of the previous one if it is different
+     */
+    public synchronized void setAlbum(final String albumName, final String artistName,
+                                      final long albumId) {
+        final String key = albumName + "_" + artistName + "_" + albumId;
+        if (key.equals(mKey)) {
+            return;
+        }
+        mKey = key;
+        mAlbumName = albumName;
+        mAlbumId = albumId;
+        mFull = null;
+        mSmall = null;
+        mSessionBitmap = null;
+        mScaled.clear();
+    }
+
+    /**
+     * @return The key of the current album, changes whenever the artwork does
+     */
+    public synchronized String getKey() {
+        return mKey;
+    }
+
+    /**
+     * @param small true to return a smaller version of the default artwork image
+     * @return The artwork of the current album, or the default artwork
+     */
+    public synchronized BitmapWithColors get(final boolean small) {
+        if (small) {
+            if (mSmall == null) {
+                mSmall = mImageFetcher.getArtwork(mAlbumName, mAlbumId, true);
+            }
+            return mSmall;
+        }
+        if (mFull == null) {
+            mFull = mImageFetcher.getArtwork(mAlbumName, mAlbumId, false);
+        }
+        return mFull;
+    }
+
+    /**
+     * MediaSession wants to recycle the bitmaps thrown at it, so it gets its own copy of the
+     * artwork instead of the cached one. The copy is made once per album.
+     *
+     * @return The copy for the media session, or null if there is no artwork
+     */
+    public synchronized Bitmap getSessionBitmap() {
+        if (mSessionBitmap == null) {
+            final Bitmap artwork = get(false).getBitmap();
+            if (artwork != null) {
+                mSessionBitmap = artwork.copy(
+                        Objects.requireNonNullElse(artwork.getConfig(), Bitmap.Config.ARGB_8888),
+                        false);
+            }
+        }
+        return mSessionBitmap;
+    }
+
+    /**
+     * @param size the longest edge the artwork may have, in pixels
+     * @return The small artwork scaled to fit the size, or null if there is no artwork
+     */
+    public synchronized Bitmap getScaledBitmap(final int size) {
+        final Bitmap source = get(true).getBitmap();
+        if (source == null) {
+            return null;
+        }
+        final int width = source.getWidth();
+        final int height = source.getHeight();
+        if (size <= 0 || (width <= size && height <= size)) {
+            return source;
+        }
+
+        Bitmap scaled = mScaled.get(size);
+        if (scaled == null) {
+            final float scale = Math.min((float) size / width, (float) size / height);
+            scaled = Bitmap.createScaledBitmap(source, Math.max(1, Math.round(width * scale)),
+                    Math.max(1, Math.round(height * scale)), true);
+            mScaled.put(size, scaled);
+        }
+        return scaled;
+    }
+}
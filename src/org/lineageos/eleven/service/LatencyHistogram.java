@@ -0,0 +1,61 @@
+/*
+ * SPDX-FileCopyrightText: 2026 The LineageOS Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.lineageos.eleven.service;
+
+import java.io.PrintWriter;
+
+/**
+ * Counts latencies in exponentially growing buckets so they can be dumped with
+ * {@code dumpsys activity service}
+ */
+public class LatencyHistogram {
+    /**
+     * Upper bounds of the buckets in milliseconds, anything above the last one goes into an
+     * overflow bucket
+     */
+    private static final long[] BUCKET_LIMITS_MS = {25, 50, 100, 200, 400, 800, 1600};
+
+    private final String mName;
+    private final int[] mCounts = new int[BUCKET_LIMITS_MS.length + 1];
+    private int mSamples;
+    private long mTotalMs;
+    private long mMaxMs;
+
+    public LatencyHistogram(final String name) {
+        mName = name;
+    }
+
+    public synchronized void record(final long latencyMs) {
+        int bucket = 0;
+        while (bucket < BUCKET_LIMITS_MS.length && latencyMs > BUCKET_LIMITS_MS[bucket]) {
+            bucket++;
+        }
+        mCounts[bucket]++;
+        mSamples++;
+        mTotalMs += latencyMs;
+        mMaxMs = Math.max(mMaxMs, latencyMs);
+    }
+
+    public synchronized void dump(final PrintWriter writer) {
+        writer.print(mName);
+        writer.print(": samples=");
+        writer.print(mSamples);
+        if (mSamples > 0) {
+            writer.print(" avg=");
+            writer.print(mTotalMs / mSamples);
+            writer.print("ms max=");
+            writer.print(mMaxMs);
+            writer.print("ms");
+        }
+        writer.println();
+
+        for (int i = 0; i < mCounts.length; i++) {
+            writer.print(i < BUCKET_LIMITS_MS.length
+                    ? "  <=" + BUCKET_LIMITS_MS[i] + "ms: "
+                    : "  >" + BUCKET_LIMITS_MS[BUCKET_LIMITS_MS.length - 1] + "ms: ");
+            writer.println(mCounts[i]);
+        }
+    }
+}
@@ -0,0 +1,493 @@
+/*
+ * SPDX-FileCopyrightText: 2026 The LineageOS Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.lineageos.eleven.service;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.Cursor;
+import android.media.MediaDescription;
+import android.media.browse.MediaBrowser;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.MediaStore;
+import android.provider.MediaStore.Audio.AudioColumns;
+import android.service.media.MediaBrowserService;
+import android.util.Log;
+import android.util.LongSparseArray;
+import android.util.LruCache;
+
+import org.lineageos.eleven.BuildConstants;
+import org.lineageos.eleven.R;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Content tree exposed through {@link MediaBrowserService}, only used by Android Auto.
+ * <p>
+ * Children are queried from MediaStore on a background thread, one page at a time, and
+ * reference album art by uri instead of carrying bitmaps. Loaded pages are cached until
+ * MediaStore reports a change to one of the songs they contain. The album and artist lists
+ * are grouped once and pages are cut out of them, they are only reloaded when songs are
+ * added, removed or moved to another album or artist.
+ */
+public class MediaBrowserTree {
+    private static final String TAG = MediaBrowserTree.class.getSimpleName();
+
+    public static final String ROOT = "root";
+
+    private static final String ALBUMS = "eleven_albums";
+
+    private static final String ARTISTS = "eleven_artists";
+
+    private static final String PLAYLISTS = "eleven_playlists";
+
+    private static final String SONGS = "eleven_songs";
+
+    private static final String ALBUM_PREFIX = "album_";
+
+    private static final String ARTIST_PREFIX = "artist_";
+
+    private static final String RESOURCE_URI =
+            "android.resource://" + BuildConstants.PACKAGE_NAME + "/drawable/";
+
+    private static final Uri ALBUM_ART_URI = Uri.parse("content://media/external/audio/albumart");
+
+    private static final String MUSIC_SELECTION = AudioColumns.IS_MUSIC + " != 0";
+
+    private static final int CACHE_SIZE_MAX = 32;
+
+    /**
+     * Above this many changed uris the whole tree is reloaded instead of checking each song
+     */
+    private static final int MAX_SINGLE_CHANGES = 32;
+
+    private static final String[] SONG_PROJECTION = new String[]{
+            AudioColumns._ID, AudioColumns.TITLE, AudioColumns.ALBUM, AudioColumns.ALBUM_ID,
+            AudioColumns.ARTIST
+    };
+
+    public interface Callback {
+        /**
+         * Called on the main thread when the children of a node changed
+         */
+        void onChildrenChanged(String parentId);
+
+        /**
+         * Called on the main thread once the list to play for a media id has been resolved
+         */
+        void onPlayListResolved(long[] list, int position);
+    }
+
+    private final Context mContext;
+    private final Callback mCallback;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    private final List<MediaBrowser.MediaItem> mRootItems;
+
+    /**
+     * Loaded pages keyed by page, page size and parent id. Only touched on mExecutor
+     */
+    private final LruCache<String, List<MediaBrowser.MediaItem>> mCache =
+            new LruCache<>(CACHE_SIZE_MAX);
+
+    /**
+     * Album and artist node of every song that was loaded. Only touched on mExecutor
+     */
+    private final LongSparseArray<String[]> mSongParents = new LongSparseArray<>();
+
+    /**
+     * Every album and every artist, null until loaded. Only touched on mExecutor
+     */
+    private List<MediaBrowser.MediaItem> mAlbums;
+    private List<MediaBrowser.MediaItem> mArtists;
+
+    public MediaBrowserTree(final Context context, final Callback callback) {
+        mContext = context;
+        mCallback = callback;
+        mRootItems = createRootItems();
+    }
+
+    /**
+     * Loads the children of the given node in the background. The result is detached and
+     * sent once the page has been read from MediaStore.
+     *
+     * @param parentId the node to load
+     * @param result   the result to send the children to
+     * @param options  optional paging options
+     */
+    public void loadChildren(final String parentId,
+                             final MediaBrowserService.Result<List<MediaBrowser.MediaItem>> result,
+                             final Bundle options) {
+        final int page = options != null ? options.getInt(MediaBrowser.EXTRA_PAGE, -1) : -1;
+        final int pageSize = options != null
+                ? options.getInt(MediaBrowser.EXTRA_PAGE_SIZE, -1) : -1;
+
+        result.detach();
+        mExecutor.execute(() -> {
+            List<MediaBrowser.MediaItem> items;
+            try {
+                items = getChildren(parentId, page, pageSize);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to load children of " + parentId, e);
+                items = null;
+            }
+
+            final List<MediaBrowser.MediaItem> children = items;
+            mMainHandler.post(() -> result.sendResult(children));
+        });
+    }
+
+    /**
+     * Resolves the list to play when a song is picked from the tree
+     *
+     * @param mediaId the media id of the song
+     */
+    public void resolvePlayList(final String mediaId) {
+        final long songId;
+        try {
+            songId = Long.parseLong(mediaId);
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Not a playable media id: " + mediaId);
+            return;
+        }
+
+        mExecutor.execute(() -> {
+            // TODO: Detect when played from playlist, album, or artist
+            final long[] list;
+            try (Cursor c = mContext.getContentResolver().query(
+                    MediaStore.Audio.Media.getContentUri(MediaStore.VOLUME_EXTERNAL),
+                    new String[]{AudioColumns._ID}, MUSIC_SELECTION, null,
+                    MediaStore.Audio.Media.DEFAULT_SORT_ORDER)) {
+                if (c == null) {
+                    return;
+                }
+                list = new long[c.getCount()];
+                for (int i = 0; c.moveToNext(); i++) {
+                    list[i] = c.getLong(0);
+                }
+            }
+
+            int position = -1;
+            for (int i = 0; i < list.length; i++) {
+                if (list[i] == songId) {
+                    position = i;
+                    break;
+                }
+            }
+
+            final int finalPosition = position;
+            mMainHandler.post(() -> mCallback.onPlayListResolved(list, finalPosition));
+        });
+    }
+
+    /**
+     * Drops the cached nodes affected by the given MediaStore changes and lets the browser
+     * know which nodes need to be reloaded
+     *
+     * @param uris the uris reported by the MediaStore observer
+     */
+    public void onMediaStoreChanged(final Collection<Uri> uris) {
+        final Collection<Uri> changes = new ArrayList<>(uris);
+        mExecutor.execute(() -> {
+            final Set<String> changed = new HashSet<>();
+            boolean invalidateAll = changes.isEmpty() || changes.size() > MAX_SINGLE_CHANGES;
+            if (!invalidateAll) {
+                for (Uri uri : changes) {
+                    final long songId = getSongId(uri);
+                    if (songId < 0) {
+                        // a bulk change or something we can't map to a song
+                        invalidateAll = true;
+                        break;
+                    }
+                    addChangedNodes(songId, changed);
+                }
+            }
+            if (invalidateAll) {
+                changed.add(ALBUMS);
+                changed.add(ARTISTS);
+                changed.add(SONGS);
+            }
+
+            for (String key : mCache.snapshot().keySet()) {
+                final String parentId = getParentId(key);
+                if (invalidateAll) {
+                    changed.add(parentId);
+                    mCache.remove(key);
+                } else if (changed.contains(parentId)) {
+                    mCache.remove(key);
+                }
+            }
+            if (invalidateAll) {
+                mSongParents.clear();
+            }
+            if (changed.contains(ALBUMS)) {
+                mAlbums = null;
+            }
+            if (changed.contains(ARTISTS)) {
+                mArtists = null;
+            }
+
+            mMainHandler.post(() -> {
+                for (String parentId : changed) {
+                    mCallback.onChildrenChanged(parentId);
+                }
+            });
+        });
+    }
+
+    /**
+     * Compares a changed song with what was loaded of it and collects the nodes to reload
+     */
+    private void addChangedNodes(final long songId, final Set<String> changed) {
+        final String[] loaded = mSongParents.get(songId);
+        final String[] current = querySongParents(songId);
+        if (loaded == null && current == null) {
+            // neither loaded nor music, nothing cached can contain it
+            return;
+        }
+
+        // the song itself is listed in the songs list
+        changed.add(SONGS);
+        if (loaded != null) {
+            Collections.addAll(changed, loaded);
+        }
+        if (current != null) {
+            Collections.addAll(changed, current);
+        }
+
+        if (loaded == null || current == null || !Arrays.equals(loaded, current)) {
+            // added, removed or moved, which can change which albums and artists exist
+            changed.add(ALBUMS);
+            changed.add(ARTISTS);
+        }
+        if (loaded != null) {
+            if (current != null) {
+                mSongParents.put(songId, current);
+            } else {
+                mSongParents.remove(songId);
+            }
+        }
+    }
+
+    /**
+     * @return the album and artist node of the song, or null if it isn't music (anymore)
+     */
+    private String[] querySongParents(final long songId) {
+        try (Cursor c = mContext.getContentResolver().query(
+                MediaStore.Audio.Media.getContentUri(MediaStore.VOLUME_EXTERNAL),
+                new String[]{AudioColumns.ALBUM_ID, AudioColumns.ARTIST},
+                MUSIC_SELECTION + " AND " + AudioColumns._ID + "=" + songId, null, null)) {
+            if (c == null || !c.moveToFirst()) {
+                return null;
+            }
+            return new String[]{ALBUM_PREFIX + c.getLong(0), ARTIST_PREFIX + c.getString(1)};
+        }
+    }
+
+    public void release() {
+        mExecutor.shutdownNow();
+        mMainHandler.removeCallbacksAndMessages(null);
+    }
+
+    private List<MediaBrowser.MediaItem> getChildren(final String parentId, final int page,
+                                                     final int pageSize) {
+        if (ROOT.equals(parentId)) {
+            return mRootItems;
+        }
+
+        final String key = page + ":" + pageSize + ":" + parentId;
+        List<MediaBrowser.MediaItem> items = mCache.get(key);
+        if (items != null) {
+            return items;
+        }
+
+        final Bundle queryArgs = new Bundle();
+        if (page >= 0 && pageSize > 0) {
+            queryArgs.putInt(ContentResolver.QUERY_ARG_LIMIT, pageSize);
+            queryArgs.putInt(ContentResolver.QUERY_ARG_OFFSET, page * pageSize);
+        }
+
+        final boolean paged = page >= 0 && pageSize > 0;
+        if (ALBUMS.equals(parentId)) {
+            if (mAlbums == null) {
+                mAlbums = queryAlbums();
+            }
+            items = paged ? getPage(mAlbums, page, pageSize) : mAlbums;
+        } else if (ARTISTS.equals(parentId)) {
+            if (mArtists == null) {
+                mArtists = queryArtists();
+            }
+            items = paged ? getPage(mArtists, page, pageSize) : mArtists;
+        } else if (SONGS.equals(parentId)) {
+            items = querySongs(queryArgs, MUSIC_SELECTION, null);
+        } else if (PLAYLISTS.equals(parentId)) {
+            // TODO: Build playlist root
+            items = new ArrayList<>();
+        } else if (parentId.startsWith(ALBUM_PREFIX)) {
+            items = querySongs(queryArgs, MUSIC_SELECTION + " AND " + AudioColumns.ALBUM_ID
+                    + "=?", new String[]{parentId.substring(ALBUM_PREFIX.length())});
+        } else if (parentId.startsWith(ARTIST_PREFIX)) {
+            items = querySongs(queryArgs, MUSIC_SELECTION + " AND " + AudioColumns.ARTIST
+                    + "=?", new String[]{parentId.substring(ARTIST_PREFIX.length())});
+        } else {
+            return null;
+        }
+
+        mCache.put(key, items);
+        return items;
+    }
+
+    /**
+     * Albums and artists are read from the songs instead of their own tables, which also
+     * count podcasts, ringtones and the like. Rows are grouped here, so the whole list is
+     * loaded and kept for the pages to be cut out of it.
+     */
+    private List<MediaBrowser.MediaItem> queryAlbums() {
+        final List<MediaBrowser.MediaItem> result = new ArrayList<>();
+        final Set<Long> seen = new HashSet<>();
+        try (Cursor c = queryMusic(new String[]{AudioColumns.ALBUM_ID, AudioColumns.ALBUM},
+                MediaStore.Audio.Albums.DEFAULT_SORT_ORDER)) {
+            if (c == null) {
+                return result;
+            }
+
+            while (c.moveToNext()) {
+                final long albumId = c.getLong(0);
+                if (!seen.add(albumId)) {
+                    continue;
+                }
+                final MediaDescription description = new MediaDescription.Builder()
+                        .setMediaId(ALBUM_PREFIX + albumId)
+                        .setTitle(c.getString(1))
+                        .setIconUri(ContentUris.withAppendedId(ALBUM_ART_URI, albumId))
+                        .build();
+                result.add(new MediaBrowser.MediaItem(description,
+                        MediaBrowser.MediaItem.FLAG_BROWSABLE));
+            }
+        }
+        return result;
+    }
+
+    private List<MediaBrowser.MediaItem> queryArtists() {
+        final List<MediaBrowser.MediaItem> result = new ArrayList<>();
+        final Set<String> seen = new HashSet<>();
+        try (Cursor c = queryMusic(new String[]{AudioColumns.ARTIST},
+                MediaStore.Audio.Artists.DEFAULT_SORT_ORDER)) {
+            if (c == null) {
+                return result;
+            }
+
+            while (c.moveToNext()) {
+                final String artistName = c.getString(0);
+                if (!seen.add(artistName)) {
+                    continue;
+                }
+                // TODO: Get artist bitmap
+                final MediaDescription description = new MediaDescription.Builder()
+                        .setMediaId(ARTIST_PREFIX + artistName)
+                        .setTitle(artistName)
+                        .build();
+                result.add(new MediaBrowser.MediaItem(description,
+                        MediaBrowser.MediaItem.FLAG_BROWSABLE));
+            }
+        }
+        return result;
+    }
+
+    private Cursor queryMusic(final String[] projection, final String sortOrder) {
+        return mContext.getContentResolver().query(
+                MediaStore.Audio.Media.getContentUri(MediaStore.VOLUME_EXTERNAL),
+                projection, MUSIC_SELECTION, null, sortOrder);
+    }
+
+    private List<MediaBrowser.MediaItem> querySongs(final Bundle queryArgs,
+                                                    final String selection,
+                                                    final String[] selectionArgs) {
+        queryArgs.putString(ContentResolver.QUERY_ARG_SQL_SELECTION, selection);
+        queryArgs.putStringArray(ContentResolver.QUERY_ARG_SQL_SELECTION_ARGS, selectionArgs);
+        queryArgs.putString(ContentResolver.QUERY_ARG_SQL_SORT_ORDER,
+                MediaStore.Audio.Media.DEFAULT_SORT_ORDER);
+
+        final Uri mediaUri = MediaStore.Audio.Media.getContentUri(MediaStore.VOLUME_EXTERNAL);
+        final List<MediaBrowser.MediaItem> result = new ArrayList<>();
+        try (Cursor c = mContext.getContentResolver().query(mediaUri, SONG_PROJECTION,
+                queryArgs, null)) {
+            if (c == null) {
+                return result;
+            }
+
+            while (c.moveToNext()) {
+                final long songId = c.getLong(0);
+                final long albumId = c.getLong(3);
+                final String artistName = c.getString(4);
+                final MediaDescription description = new MediaDescription.Builder()
+                        .setMediaId(String.valueOf(songId))
+                        .setTitle(c.getString(1))
+                        .setSubtitle(c.getString(2))
+                        .setMediaUri(ContentUris.withAppendedId(mediaUri, songId))
+                        .setIconUri(ContentUris.withAppendedId(ALBUM_ART_URI, albumId))
+                        .build();
+                result.add(new MediaBrowser.MediaItem(description,
+                        MediaBrowser.MediaItem.FLAG_PLAYABLE));
+
+                mSongParents.put(songId, new String[]{
+                        ALBUM_PREFIX + albumId, ARTIST_PREFIX + artistName});
+            }
+        }
+        return result;
+    }
+
+    private List<MediaBrowser.MediaItem> createRootItems() {
+        final List<MediaBrowser.MediaItem> result = new ArrayList<>();
+        result.add(createRootItem(ALBUMS, "Albums", R.drawable.ic_album));
+        result.add(createRootItem(ARTISTS, "Artists", R.drawable.ic_artist));
+        result.add(createRootItem(PLAYLISTS, "Playlists", R.drawable.ic_playlist));
+        result.add(createRootItem(SONGS, "Songs", R.drawable.ic_playlist));
+        return result;
+    }
+
+    private MediaBrowser.MediaItem createRootItem(final String mediaId, final String title,
+                                                  final int iconResId) {
+        final MediaDescription description = new MediaDescription.Builder()
+                .setMediaId(mediaId)
+                .setTitle(title)
+                .setIconUri(Uri.parse(RESOURCE_URI
+                        + mContext.getResources().getResourceEntryName(iconResId)))
+                .build();
+        return new MediaBrowser.MediaItem(description, MediaBrowser.MediaItem.FLAG_BROWSABLE);
+    }
+
+    private static List<MediaBrowser.MediaItem> getPage(final List<MediaBrowser.MediaItem> items,
+                                                        final int page, final int pageSize) {
+        final int start = Math.min(items.size(), page * pageSize);
+        final int end = Math.min(items.size(), start + pageSize);
+        return new ArrayList<>(items.subList(start, end));
+    }
+
+    private static String getParentId(final String cacheKey) {
+        // skip the page and page size, the parent id itself can contain anything
+        return cacheKey.substring(cacheKey.indexOf(':', cacheKey.indexOf(':') + 1) + 1);
+    }
+
+    private static long getSongId(final Uri uri) {
+        try {
+            return ContentUris.parseId(uri);
+        } catch (NumberFormatException | UnsupportedOperationException e) {
+            return -1;
+        }
+    }
+}
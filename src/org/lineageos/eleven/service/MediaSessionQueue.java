@@ -0,0 +1,135 @@
+/*
+ * SPDX-FileCopyrightText: 2026 The LineageOS Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.lineageos.eleven.service;
+
+import android.media.MediaDescription;
+import android.media.session.MediaSession;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Publishes the play queue to a {@link MediaSession}. Only a window around the current
+ * position is published, so huge queues cost the same as small ones. The window is only
+ * moved once the position gets close to one of its edges, and the items keep their queue
+ * position as id so skipping to one of them still works.
+ */
+public class MediaSessionQueue {
+    private static final String TAG = MediaSessionQueue.class.getSimpleName();
+
+    /**
+     * Number of tracks published on each side of the current one
+     */
+    private static final int WINDOW_RADIUS = 50;
+
+    /**
+     * How close the position may get to an edge of the window before it is moved
+     */
+    private static final int WINDOW_MARGIN = WINDOW_RADIUS / 2;
+
+    private final MediaSession mSession;
+    private final TrackDescriptionCache mDescriptionCache;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Bumped for every new window, lets stale loads bail out
+     */
+    private final AtomicInteger mGeneration = new AtomicInteger();
+
+    /**
+     * The last requested window, only touched by the caller of {@link #update}
+     */
+    private int mWindowStart = -1;
+    private int mWindowEnd = -1;
+    private int mQueueSize = -1;
+
+    public MediaSessionQueue(final MediaSession session,
+                             final TrackDescriptionCache descriptionCache) {
+        mSession = session;
+        mDescriptionCache = descriptionCache;
+    }
+
+    /**
+     * Publishes the window around the given position if needed. The ids of the window are
+     * copied right away, the caller must hold whatever lock guards the queue.
+     *
+     * @param queue        the play queue
+     * @param position     the current queue position
+     * @param queueChanged true if the contents of the queue changed, false if only the
+     *                     position moved
+     */
+    public void update(final List<MusicPlaybackTrack> queue, final int position,
+                       final boolean queueChanged) {
+        final int size = queue != null ? queue.size() : 0;
+        final int current = Math.max(position, 0);
+        if (!queueChanged && size == mQueueSize && !needsMove(current, size)) {
+            return;
+        }
+
+        final int span = 2 * WINDOW_RADIUS + 1;
+        final int start = Math.max(0, Math.min(current - WINDOW_RADIUS, size - span));
+        final int end = Math.min(size, start + span);
+        mWindowStart = start;
+        mWindowEnd = end;
+        mQueueSize = size;
+
+        final long[] ids = new long[end - start];
+        for (int i = start; i < end; i++) {
+            ids[i - start] = queue.get(i).mId;
+        }
+
+        final int generation = mGeneration.incrementAndGet();
+        mExecutor.execute(() -> {
+            if (generation != mGeneration.get()) {
+                return;
+            }
+
+            List<MediaSession.QueueItem> items = null;
+            if (ids.length > 0) {
+                try {
+                    final MediaDescription[] descriptions = mDescriptionCache.resolve(ids);
+                    items = new ArrayList<>(ids.length);
+                    for (int i = 0; i < descriptions.length; i++) {
+                        items.add(new MediaSession.QueueItem(descriptions[i], start + i));
+                    }
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Could not load the queue window", e);
+                    return;
+                }
+            }
+
+            final List<MediaSession.QueueItem> result = items;
+            mMainHandler.post(() -> {
+                if (generation == mGeneration.get()) {
+                    mSession.setQueue(result);
+                }
+            });
+        });
+    }
+
+    public void release() {
+        mGeneration.incrementAndGet();
+        mExecutor.shutdownNow();
+        mMainHandler.removeCallbacksAndMessages(null);
+    }
+
+    private boolean needsMove(final int position, final int size) {
+        if (size == 0) {
+            return false;
+        }
+        if (position < mWindowStart || position >= mWindowEnd) {
+            return true;
+        }
+        return (mWindowStart > 0 && position < mWindowStart + WINDOW_MARGIN)
+                || (mWindowEnd < size && position >= mWindowEnd - WINDOW_MARGIN);
+    }
+}
@@ -16,11 +16,14 @@
  */
 package org.lineageos.eleven.service;
 
+import android.database.Cursor;
 import android.os.Parcel;
 import android.os.Parcelable;
 
 import org.lineageos.eleven.Config;
 
+import java.util.ArrayList;
+
 /**
  * This is used by the music playback service to track the music tracks it is playing
  * It has extra meta data to determine where the track came from so that we can show the appropriate
@@ -78,6 +81,33 @@ public class MusicPlaybackTrack implements Parcelable {
         mSourcePosition = in.readInt();
     }
 
+    /**
+     * Reads the songs of a cursor into a queue, without copying the ids anywhere else first
+     *
+     * @param cursor     The songs, read from the current row, or the first one if the cursor
+     *                   wasn't moved yet, to the end
+     * @param idColumn   The index of the column holding the song ids
+     * @param sourceId   Where the songs come from
+     * @param sourceType What kind of source the songs come from
+     * @return The tracks, their source position is their position in the cursor
+     */
+    public static ArrayList<MusicPlaybackTrack> fromCursor(final Cursor cursor,
+                                                           final int idColumn,
+                                                           final long sourceId,
+                                                           final Config.IdType sourceType) {
+        if (cursor.isBeforeFirst()) {
+            cursor.moveToNext();
+        }
+        final ArrayList<MusicPlaybackTrack> tracks =
+                new ArrayList<>(Math.max(cursor.getCount() - cursor.getPosition(), 0));
+        while (!cursor.isAfterLast()) {
+            tracks.add(new MusicPlaybackTrack(cursor.getLong(idColumn), sourceId, sourceType,
+                    tracks.size()));
+            cursor.moveToNext();
+        }
+        return tracks;
+    }
+
     @Override
     public int describeContents() {
         return 0;
@@ -0,0 +1,187 @@
+/*
+ * SPDX-FileCopyrightText: 2026 The LineageOS Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.lineageos.eleven.service;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.os.SystemClock;
+
+/**
+ * Immutable copy of the playback state, published by the music playback service on every
+ * state change so clients can read everything they show in a single binder call without
+ * contending for the service lock
+ */
+public class PlaybackSnapshot implements Parcelable {
+    /**
+     * Snapshot used before anything has been published
+     */
+    public static final PlaybackSnapshot EMPTY = new PlaybackSnapshot(-1, -1, -1, null, null,
+            null, false, -1, -1, 0, 0f, -1, 0, 0, 0, 0, 0);
+
+    /**
+     * The current track, album and artist ids, -1 if there's no track
+     */
+    public final long mAudioId;
+    public final long mAlbumId;
+    public final long mArtistId;
+
+    public final String mTrackName;
+    public final String mArtistName;
+    public final String mAlbumName;
+
+    public final boolean mIsPlaying;
+
+    /**
+     * Duration of the current track in milliseconds, 0 while it is preparing
+     */
+    public final long mDuration;
+
+    /**
+     * Playback position in milliseconds at {@link #mPositionTime}
+     */
+    public final long mPosition;
+
+    /**
+     * {@link android.os.SystemClock#elapsedRealtime()} when the position was read
+     */
+    public final long mPositionTime;
+
+    /**
+     * How fast the position moves from {@link #mPosition} on, 0 while paused or while the
+     * track is still preparing
+     */
+    public final float mPlaybackSpeed;
+
+    public final int mQueuePosition;
+    public final int mQueueSize;
+    public final int mQueueHistorySize;
+
+    /**
+     * Incremented every time the queue changes, so clients can tell whether they need to
+     * fetch it again
+     */
+    public final int mQueueVersion;
+
+    public final int mShuffleMode;
+    public final int mRepeatMode;
+
+    /**
+     * Parcelable creator
+     */
+    public static final Creator<PlaybackSnapshot> CREATOR = new Creator<PlaybackSnapshot>() {
+        @Override
+        public PlaybackSnapshot createFromParcel(Parcel source) {
+            return new PlaybackSnapshot(source);
+        }
+
+        @Override
+        public PlaybackSnapshot[] newArray(int size) {
+            return new PlaybackSnapshot[size];
+        }
+    };
+
+    public PlaybackSnapshot(long audioId, long albumId, long artistId, String trackName,
+                            String artistName, String albumName, boolean isPlaying,
+                            long duration, long position, long positionTime,
+                            float playbackSpeed, int queuePosition, int queueSize,
+                            int queueHistorySize, int queueVersion, int shuffleMode,
+                            int repeatMode) {
+        mAudioId = audioId;
+        mAlbumId = albumId;
+        mArtistId = artistId;
+        mTrackName = trackName;
+        mArtistName = artistName;
+        mAlbumName = albumName;
+        mIsPlaying = isPlaying;
+        mDuration = duration;
+        mPosition = position;
+        mPositionTime = positionTime;
+        mPlaybackSpeed = playbackSpeed;
+        mQueuePosition = queuePosition;
+        mQueueSize = queueSize;
+        mQueueHistorySize = queueHistorySize;
+        mQueueVersion = queueVersion;
+        mShuffleMode = shuffleMode;
+        mRepeatMode = repeatMode;
+    }
+
+    public PlaybackSnapshot(Parcel in) {
+        mAudioId = in.readLong();
+        mAlbumId = in.readLong();
+        mArtistId = in.readLong();
+        mTrackName = in.readString();
+        mArtistName = in.readString();
+        mAlbumName = in.readString();
+        mIsPlaying = in.readInt() != 0;
+        mDuration = in.readLong();
+        mPosition = in.readLong();
+        mPositionTime = in.readLong();
+        mPlaybackSpeed = in.readFloat();
+        mQueuePosition = in.readInt();
+        mQueueSize = in.readInt();
+        mQueueHistorySize = in.readInt();
+        mQueueVersion = in.readInt();
+        mShuffleMode = in.readInt();
+        mRepeatMode = in.readInt();
+    }
+
+    /**
+     * @return true if the position moves on its own, so it needs refreshing while shown
+     */
+    public boolean isAdvancing() {
+        return mPosition >= 0 && mPlaybackSpeed != 0f;
+    }
+
+    /**
+     * @return the playback position extrapolated to now
+     */
+    public long getPosition() {
+        return getPosition(SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * Extrapolates the playback position from the anchor, so clients don't need to ask the
+     * service while playback simply moves on. The service publishes a new snapshot whenever
+     * the position jumps.
+     *
+     * @param elapsedRealtime the time to extrapolate to, in the
+     *                        {@link SystemClock#elapsedRealtime()} time base
+     * @return the position in milliseconds, or -1 if there is none
+     */
+    public long getPosition(final long elapsedRealtime) {
+        if (!isAdvancing()) {
+            return mPosition;
+        }
+        final long elapsed = Math.max(0, elapsedRealtime - mPositionTime);
+        final long position = mPosition + (long) (elapsed * mPlaybackSpeed);
+        return mDuration > 0 ? Math.min(position, mDuration) : position;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeLong(mAudioId);
+        dest.writeLong(mAlbumId);
+        dest.writeLong(mArtistId);
+        dest.writeString(mTrackName);
+        dest.writeString(mArtistName);
+        dest.writeString(mAlbumName);
+        dest.writeInt(mIsPlaying ? 1 : 0);
+        dest.writeLong(mDuration);
+        dest.writeLong(mPosition);
+        dest.writeLong(mPositionTime);
+        dest.writeFloat(mPlaybackSpeed);
+        dest.writeInt(mQueuePosition);
+        dest.writeInt(mQueueSize);
+        dest.writeInt(mQueueHistorySize);
+        dest.writeInt(mQueueVersion);
+        dest.writeInt(mShuffleMode);
+        dest.writeInt(mRepeatMode);
+    }
+}
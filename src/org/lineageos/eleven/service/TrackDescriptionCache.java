@@ -0,0 +1,132 @@
+/*
+ * SPDX-FileCopyrightText: 2026 The LineageOS Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.lineageos.eleven.service;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.Cursor;
+import android.media.MediaDescription;
+import android.net.Uri;
+import android.provider.MediaStore;
+import android.provider.MediaStore.Audio.AudioColumns;
+import android.util.LongSparseArray;
+import android.util.LruCache;
+
+import java.util.Collection;
+
+/**
+ * Title and artist of recently used tracks, keyed by audio id. Missing tracks are looked up
+ * in MediaStore in bounded batches so a lookup never builds an arbitrarily long selection.
+ */
+public class TrackDescriptionCache {
+    private static final int CACHE_SIZE = 512;
+
+    /**
+     * Most ids put into a single IN clause
+     */
+    private static final int MAX_SELECTION_IDS = 200;
+
+    private static final String[] PROJECTION = new String[]{
+            AudioColumns._ID, AudioColumns.TITLE, AudioColumns.ARTIST
+    };
+
+    /**
+     * Used for tracks that are gone, e.g. deleted while the queue still referenced them
+     */
+    private static final MediaDescription EMPTY = new MediaDescription.Builder().build();
+
+    private final ContentResolver mResolver;
+
+    private final LruCache<Long, MediaDescription> mCache = new LruCache<>(CACHE_SIZE);
+
+    public TrackDescriptionCache(final Context context) {
+        mResolver = context.getContentResolver();
+    }
+
+    /**
+     * Looks up the given tracks, querying MediaStore for the ones that aren't cached. This
+     * blocks, don't call it on the main thread.
+     *
+     * @param ids the audio ids to look up
+     * @return the descriptions in the same order as ids, never null
+     */
+    public MediaDescription[] resolve(final long[] ids) {
+        final MediaDescription[] result = new MediaDescription[ids.length];
+        final long[] missing = new long[ids.length];
+        int missingCount = 0;
+        for (int i = 0; i < ids.length; i++) {
+            result[i] = mCache.get(ids[i]);
+            if (result[i] == null) {
+                missing[missingCount++] = ids[i];
+            }
+        }
+        if (missingCount == 0) {
+            return result;
+        }
+
+        final LongSparseArray<MediaDescription> loaded = new LongSparseArray<>(missingCount);
+        for (int start = 0; start < missingCount; start += MAX_SELECTION_IDS) {
+            query(missing, start, Math.min(missingCount, start + MAX_SELECTION_IDS), loaded);
+        }
+        for (int i = 0; i < ids.length; i++) {
+            if (result[i] == null) {
+                result[i] = loaded.get(ids[i], EMPTY);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Drops the tracks behind the given MediaStore uris
+     *
+     * @param uris the changed uris, or an empty collection to drop everything
+     */
+    public void invalidate(final Collection<Uri> uris) {
+        if (uris.isEmpty()) {
+            mCache.evictAll();
+            return;
+        }
+        for (Uri uri : uris) {
+            try {
+                mCache.remove(ContentUris.parseId(uri));
+            } catch (NumberFormatException | UnsupportedOperationException e) {
+                // not a single track, the change may affect any of them
+                mCache.evictAll();
+                return;
+            }
+        }
+    }
+
+    private void query(final long[] ids, final int start, final int end,
+                       final LongSparseArray<MediaDescription> loaded) {
+        final StringBuilder selection = new StringBuilder();
+        selection.append(AudioColumns._ID).append(" IN (");
+        for (int i = start; i < end; i++) {
+            if (i != start) {
+                selection.append(",");
+            }
+            selection.append(ids[i]);
+        }
+        selection.append(")");
+
+        try (Cursor c = mResolver.query(
+                MediaStore.Audio.Media.getContentUri(MediaStore.VOLUME_EXTERNAL),
+                PROJECTION, selection.toString(), null, null)) {
+            if (c == null) {
+                return;
+            }
+            while (c.moveToNext()) {
+                final long id = c.getLong(0);
+                final MediaDescription description = new MediaDescription.Builder()
+                        .setTitle(c.getString(1))
+                        .setSubtitle(c.getString(2))
+                        .build();
+                mCache.put(id, description);
+                loaded.put(id, description);
+            }
+        }
+    }
+}
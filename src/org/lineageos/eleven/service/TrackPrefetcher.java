@@ -0,0 +1,132 @@
+/*
+ * SPDX-FileCopyrightText: 2026 The LineageOS Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.lineageos.eleven.service;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.provider.MediaStore;
+import android.provider.MediaStore.Audio.AudioColumns;
+import android.util.Log;
+import android.util.LruCache;
+
+import org.lineageos.eleven.cache.ImageFetcher;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Warms the tracks coming up in the queue on a low priority thread: their album artwork is
+ * decoded into the memory cache and the start of each file is read so the container headers
+ * are in the page cache by the time the player opens it.
+ */
+public class TrackPrefetcher {
+    private static final String TAG = "TrackPrefetcher";
+
+    /**
+     * How much of the start of each file to read
+     */
+    private static final int HEADER_SIZE = 128 * 1024;
+
+    private static final String[] PROJECTION = new String[]{
+            AudioColumns.ALBUM,
+            AudioColumns.ALBUM_ID,
+    };
+
+    private final ContentResolver mResolver;
+    private final ImageFetcher mImageFetcher;
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(r -> {
+        final Thread thread = new Thread(r, TAG);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    /**
+     * The latest ids to warm. Only the latest request matters, older ones are dropped.
+     */
+    private final AtomicReference<long[]> mRequest = new AtomicReference<>();
+
+    /**
+     * Tracks warmed recently, so moving through the queue only touches new ones
+     */
+    private final LruCache<Long, Boolean> mWarmed = new LruCache<>(32);
+
+    private final byte[] mBuffer = new byte[16 * 1024];
+
+    public TrackPrefetcher(final Context context, final ImageFetcher imageFetcher) {
+        mResolver = context.getContentResolver();
+        mImageFetcher = imageFetcher;
+    }
+
+    /**
+     * Warms the given tracks, in order, replacing any request that hasn't finished yet
+     */
+    public void prefetch(final long[] ids) {
+        if (mRequest.getAndSet(ids) == null && !mExecutor.isShutdown()) {
+            mExecutor.execute(this::drain);
+        }
+    }
+
+    public void release() {
+        mExecutor.shutdownNow();
+    }
+
+    private void drain() {
+        long[] ids;
+        while ((ids = mRequest.getAndSet(null)) != null) {
+            for (final long id : ids) {
+                if (mRequest.get() != null || Thread.currentThread().isInterrupted()) {
+                    // a newer request supersedes this one
+                    break;
+                }
+                warm(id);
+            }
+        }
+    }
+
+    private void warm(final long id) {
+        if (id < 0 || mWarmed.get(id) != null) {
+            return;
+        }
+
+        final Uri uri = ContentUris.withAppendedId(
+                MediaStore.Audio.Media.getContentUri(MediaStore.VOLUME_EXTERNAL), id);
+        try (Cursor cursor = mResolver.query(uri, PROJECTION, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                mImageFetcher.prefetchArtwork(cursor.getString(0), cursor.getLong(1));
+            }
+        } catch (final RuntimeException e) {
+            Log.w(TAG, "Could not resolve track " + id, e);
+            return;
+        }
+
+        readHeader(uri);
+        mWarmed.put(id, Boolean.TRUE);
+    }
+
+    private void readHeader(final Uri uri) {
+        try (ParcelFileDescriptor pfd = mResolver.openFileDescriptor(uri, "r")) {
+            if (pfd == null) {
+                return;
+            }
+            try (FileInputStream in = new FileInputStream(pfd.getFileDescriptor())) {
+                int total = 0;
+                int read;
+                while (total < HEADER_SIZE && (read = in.read(mBuffer)) > 0) {
+                    total += read;
+                }
+            }
+        } catch (final IOException | SecurityException | IllegalArgumentException e) {
+            Log.w(TAG, "Could not read " + uri, e);
+        }
+    }
+}
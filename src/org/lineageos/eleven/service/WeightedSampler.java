@@ -0,0 +1,113 @@
+/*
+ * SPDX-FileCopyrightText: 2026 The LineageOS Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.lineageos.eleven.service;
+
+import java.util.Random;
+
+/**
+ * Picks indices with a probability proportional to their weight. The weights are kept in a
+ * Fenwick tree, so both drawing an index and changing a single weight are O(log n).
+ * <p>
+ * The source of randomness is passed in, so a sampler built with a seeded {@link Random}
+ * draws a reproducible sequence. Not thread safe, callers have to synchronize.
+ */
+public class WeightedSampler {
+    private final Random mRandom;
+    private final double[] mWeights;
+
+    /**
+     * 1-based Fenwick tree over mWeights
+     */
+    private final double[] mTree;
+
+    public WeightedSampler(final double[] weights, final Random random) {
+        mRandom = random;
+        mWeights = new double[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            mWeights[i] = Math.max(0, weights[i]);
+        }
+        mTree = new double[weights.length + 1];
+        buildTree();
+    }
+
+    public int size() {
+        return mWeights.length;
+    }
+
+    public double getWeight(final int index) {
+        return mWeights[index];
+    }
+
+    /**
+     * @param index  the index to change
+     * @param weight the new weight, negative weights count as 0
+     */
+    public void setWeight(final int index, final double weight) {
+        final double newWeight = Math.max(0, weight);
+        final double delta = newWeight - mWeights[index];
+        mWeights[index] = newWeight;
+        for (int i = index + 1; i < mTree.length; i += i & -i) {
+            mTree[i] += delta;
+        }
+    }
+
+    public double getTotalWeight() {
+        double sum = 0;
+        for (int i = mWeights.length; i > 0; i -= i & -i) {
+            sum += mTree[i];
+        }
+        return sum;
+    }
+
+    /**
+     * @return A random index, or -1 if every weight is 0
+     */
+    public int sample() {
+        final int index = find(mRandom.nextDouble() * getTotalWeight());
+        if (index >= 0) {
+            return index;
+        }
+
+        // rounding errors from many weight updates can make the tree drift a little,
+        // rebuild it from the exact weights and try once more
+        buildTree();
+        return find(mRandom.nextDouble() * getTotalWeight());
+    }
+
+    /**
+     * Finds the index whose cumulative weight range contains target
+     *
+     * @return the index, or -1 if the tree points at an index without weight
+     */
+    private int find(double target) {
+        final int size = mWeights.length;
+        if (size == 0 || getTotalWeight() <= 0) {
+            return -1;
+        }
+
+        int position = 0;
+        for (int step = Integer.highestOneBit(size); step > 0; step >>= 1) {
+            final int next = position + step;
+            if (next <= size && mTree[next] <= target) {
+                position = next;
+                target -= mTree[next];
+            }
+        }
+        return position < size && mWeights[position] > 0 ? position : -1;
+    }
+
+    private void buildTree() {
+        final int size = mWeights.length;
+        for (int i = 1; i <= size; i++) {
+            mTree[i] = mWeights[i - 1];
+        }
+        for (int i = 1; i <= size; i++) {
+            final int parent = i + (i & -i);
+            if (parent <= size) {
+                mTree[parent] += mTree[i];
+            }
+        }
+    }
+}
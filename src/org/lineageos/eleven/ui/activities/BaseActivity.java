@@ -45,6 +45,7 @@ import androidx.fragment.app.FragmentActivity;
 import org.lineageos.eleven.MusicPlaybackService;
 import org.lineageos.eleven.MusicStateListener;
 import org.lineageos.eleven.R;
+import org.lineageos.eleven.service.PlaybackSnapshot;
 import org.lineageos.eleven.utils.ElevenUtils;
 import org.lineageos.eleven.utils.Lists;
 import org.lineageos.eleven.utils.MusicUtils;
@@ -215,6 +216,8 @@ public abstract class BaseActivity extends AppCompatActivity implements ServiceC
         filter.addAction(MusicPlaybackService.PLAYSTATE_CHANGED);
         // Track changes
         filter.addAction(MusicPlaybackService.META_CHANGED);
+        // Seeks, and the track becoming ready to play
+        filter.addAction(MusicPlaybackService.POSITION_CHANGED);
         // Update a list, probably the playlist fragment's
         filter.addAction(MusicPlaybackService.REFRESH);
         // If a playlist has changed, notify us
@@ -304,10 +307,11 @@ public abstract class BaseActivity extends AppCompatActivity implements ServiceC
      * Sets the track name, album name, and album art.
      */
     private void updateBottomActionBarInfo() {
+        final PlaybackSnapshot snapshot = MusicUtils.getPlaybackSnapshot();
         // Set the track name
-        mTrackName.setText(MusicUtils.getTrackName());
+        mTrackName.setText(snapshot.mTrackName);
         // Set the artist name
-        mArtistName.setText(MusicUtils.getArtistName());
+        mArtistName.setText(snapshot.mArtistName);
         // Set the album art
         ElevenUtils.getImageFetcher(this).loadCurrentArtwork(mAlbumArt);
     }
@@ -360,9 +364,12 @@ public abstract class BaseActivity extends AppCompatActivity implements ServiceC
             }
             if (MusicPlaybackService.META_CHANGED.equals(action)) {
                 baseActivity.onMetaChanged();
+                baseActivity.mPlayPauseProgressButton.updateState();
             } else if (MusicPlaybackService.PLAYSTATE_CHANGED.equals(action)) {
                 baseActivity.mPlayPauseButtonContainer.updateState();
                 baseActivity.mPlayPauseProgressButton.updateState();
+            } else if (MusicPlaybackService.POSITION_CHANGED.equals(action)) {
+                baseActivity.mPlayPauseProgressButton.updateState();
             } else if (MusicPlaybackService.REFRESH.equals(action)) {
                 baseActivity.restartLoader();
             } else if (MusicPlaybackService.PLAYLIST_CHANGED.equals(action)) {
@@ -36,6 +36,7 @@ import android.util.Log;
 import android.util.TypedValue;
 import android.view.MenuItem;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.view.Window;
 
 import androidx.annotation.NonNull;
@@ -55,12 +56,14 @@ import org.lineageos.eleven.ui.fragments.AudioPlayerFragment;
 import org.lineageos.eleven.ui.fragments.ISetupActionBar;
 import org.lineageos.eleven.ui.fragments.PlaylistDetailFragment;
 import org.lineageos.eleven.ui.fragments.RecentFragment;
+import org.lineageos.eleven.ui.fragments.SearchFragment;
 import org.lineageos.eleven.ui.fragments.phone.MusicBrowserPhoneFragment;
 import org.lineageos.eleven.ui.fragments.profile.LastAddedFragment;
 import org.lineageos.eleven.ui.fragments.profile.TopTracksFragment;
 import org.lineageos.eleven.utils.AnimatorEndListener;
 import org.lineageos.eleven.utils.ElevenUtils;
 import org.lineageos.eleven.utils.MusicUtils;
+import org.lineageos.eleven.utils.StartupTrace;
 import org.lineageos.eleven.utils.colors.BitmapWithColors;
 
 import java.util.ArrayList;
@@ -93,6 +96,11 @@ public class HomeActivity extends SlidingPanelActivity implements
 
     private View mRootView;
 
+    /**
+     * Started with the activity, finished once its first frame is drawn
+     */
+    private final StartupTrace mStartupTrace = new StartupTrace(TAG);
+
     /**
      * Used by the up action to determine how to handle this
      */
@@ -100,6 +108,7 @@ public class HomeActivity extends SlidingPanelActivity implements
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        mStartupTrace.phase("onCreate");
         super.onCreate(savedInstanceState);
 
         mSavedInstanceState = savedInstanceState;
@@ -108,11 +117,24 @@ public class HomeActivity extends SlidingPanelActivity implements
         if (!needRequestStoragePermission()) {
             init(savedInstanceState);
         }
+
+        mStartupTrace.asyncPhase("firstFrame");
+        mRootView.getViewTreeObserver().addOnPreDrawListener(
+                new ViewTreeObserver.OnPreDrawListener() {
+                    @Override
+                    public boolean onPreDraw() {
+                        mRootView.getViewTreeObserver().removeOnPreDrawListener(this);
+                        mStartupTrace.finish(HomeActivity.this);
+                        return true;
+                    }
+                });
     }
 
     @Override
     protected void init(Bundle savedInstanceState) {
+        mStartupTrace.phase("baseInit");
         super.init(savedInstanceState);
+        mStartupTrace.phase("browseFragment");
 
         // if we've been launched by an intent, parse it
         Intent launchIntent = getIntent();
@@ -343,6 +365,32 @@ public class HomeActivity extends SlidingPanelActivity implements
         return handled;
     }
 
+    /**
+     * Shows the library search on top of the current fragment
+     */
+    public void showSearch() {
+        final Fragment oldTop = getTopFragment();
+        if (oldTop instanceof SearchFragment) {
+            return;
+        }
+
+        // the current top fragment is about to be hidden by the search -- so tell that
+        // fragment not to make its action bar menu items visible
+        if (oldTop != null) {
+            oldTop.setMenuVisibility(false);
+        }
+
+        getSupportFragmentManager().beginTransaction()
+                .setCustomAnimations(
+                        androidx.fragment.R.animator.fragment_open_enter,
+                        androidx.fragment.R.animator.fragment_open_exit,
+                        androidx.fragment.R.animator.fragment_fade_enter,
+                        androidx.fragment.R.animator.fragment_fade_exit)
+                .add(R.id.activity_base_content, new SearchFragment())
+                .addToBackStack(null)
+                .commit();
+    }
+
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
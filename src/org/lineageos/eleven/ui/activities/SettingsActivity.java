@@ -26,7 +26,6 @@ import android.content.ComponentName;
 import android.content.ServiceConnection;
 import android.content.SharedPreferences;
 import android.Manifest.permission;
-import android.os.Build;
 import android.os.Bundle;
 import android.os.IBinder;
 import android.os.RemoteException;
@@ -98,11 +97,6 @@ public class SettingsActivity extends AppCompatActivity {
                 });
             }
 
-            // Since we use RenderEffect, we need to make sure we run >= Android S
-            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.S) {
-                getPreferenceScreen().removePreference(findPreference(PreferenceUtils.USE_BLUR));
-            }
-
             PreferenceUtils prefUtils = PreferenceUtils.getInstance(getContext());
             prefUtils.setOnSharedPreferenceChangeListener(this);
 
@@ -41,12 +41,14 @@ import org.lineageos.eleven.loaders.AlbumLoader;
 import org.lineageos.eleven.model.Album;
 import org.lineageos.eleven.sectionadapter.SectionCreator;
 import org.lineageos.eleven.sectionadapter.SectionListContainer;
+import org.lineageos.eleven.sectionadapter.SectionListSnapshot;
 import org.lineageos.eleven.ui.activities.BaseActivity;
 import org.lineageos.eleven.ui.fragments.phone.MusicBrowserFragment;
 import org.lineageos.eleven.utils.AlbumPopupMenuHelper;
 import org.lineageos.eleven.utils.ElevenUtils;
 import org.lineageos.eleven.utils.NavUtils;
 import org.lineageos.eleven.utils.PopupMenuHelper;
+import org.lineageos.eleven.utils.PreferenceUtils;
 import org.lineageos.eleven.widgets.LoadingEmptyContainer;
 
 /**
@@ -82,6 +84,16 @@ public class AlbumFragment extends MusicBrowserFragment implements
      */
     private LoadingEmptyContainer mLoadingEmptyContainer;
 
+    /**
+     * The last loaded list, shown until the loader is done
+     */
+    private SectionListSnapshot<Album> mSnapshot;
+
+    /**
+     * What the snapshot put on screen, null once the loader replaced it
+     */
+    private SectionListContainer<Album> mShownSnapshot;
+
     @Override
     public int getLoaderId() {
         return PagerAdapter.MusicFragments.ALBUM.ordinal();
@@ -102,6 +114,9 @@ public class AlbumFragment extends MusicBrowserFragment implements
         mAdapter = new AlbumAdapter(requireActivity(), layout, this::onItemClick);
         mAdapter.setPopupMenuClickedListener((v, position) ->
                 mPopupMenuHelper.showPopupMenu(v, position));
+
+        mSnapshot = new SectionListSnapshot<>(requireContext(), "albums",
+                SectionListSnapshot.ALBUMS);
     }
 
     @Override
@@ -124,6 +139,10 @@ public class AlbumFragment extends MusicBrowserFragment implements
         super.onViewCreated(view, savedInstanceState);
         // Enable the options menu
         setHasOptionsMenu(true);
+        // Show the last loaded list while the loader runs
+        if (mAdapter.getItemCount() == 0) {
+            showSnapshot();
+        }
         // Start the loader
         initLoader(this);
     }
@@ -157,17 +176,30 @@ public class AlbumFragment extends MusicBrowserFragment implements
     public void onLoadFinished(@NonNull final Loader<SectionListContainer<Album>> loader,
                                final SectionListContainer<Album> data) {
         Handler handler = new Handler(requireActivity().getMainLooper());
+        final SectionListContainer<Album> shown = mShownSnapshot;
+        mShownSnapshot = null;
+        if (shown != null && SectionListSnapshot.isSame(shown, data)) {
+            // the snapshot was right, nothing to update or write back
+            return;
+        }
+        mSnapshot.save(data, getSortOrder());
 
         if (data.mListResults.isEmpty()) {
             // Do on UI thread: https://issuetracker.google.com/issues/37030377
             handler.post(() -> mAdapter.unload());
+            mLoadingEmptyContainer.setVisibility(View.VISIBLE);
             mLoadingEmptyContainer.showNoResults();
             return;
         }
 
         mLoadingEmptyContainer.setVisibility(View.GONE);
         // Do on UI thread: https://issuetracker.google.com/issues/37030377
-        handler.post(() -> mAdapter.setData(data.mListResults));
+        if (shown != null && !shown.mListResults.isEmpty()) {
+            handler.post(() -> mAdapter.setData(data.mListResults,
+                    mSnapshot.diff(shown.mListResults, data.mListResults)));
+        } else {
+            handler.post(() -> mAdapter.setData(data.mListResults));
+        }
     }
 
     @Override
@@ -201,6 +233,21 @@ public class AlbumFragment extends MusicBrowserFragment implements
         // Nothing to do
     }
 
+    private String getSortOrder() {
+        return PreferenceUtils.getInstance(requireContext()).getAlbumSortOrder();
+    }
+
+    private void showSnapshot() {
+        mShownSnapshot = mSnapshot.read(getSortOrder());
+        if (mShownSnapshot == null || mShownSnapshot.mListResults.isEmpty()) {
+            mShownSnapshot = null;
+            return;
+        }
+
+        mLoadingEmptyContainer.setVisibility(View.GONE);
+        mAdapter.setData(mShownSnapshot.mListResults);
+    }
+
     /**
      * Sets up the grid view
      */
@@ -43,11 +43,13 @@ import org.lineageos.eleven.loaders.ArtistLoader;
 import org.lineageos.eleven.model.Artist;
 import org.lineageos.eleven.sectionadapter.SectionCreator;
 import org.lineageos.eleven.sectionadapter.SectionListContainer;
+import org.lineageos.eleven.sectionadapter.SectionListSnapshot;
 import org.lineageos.eleven.ui.activities.BaseActivity;
 import org.lineageos.eleven.ui.fragments.phone.MusicBrowserFragment;
 import org.lineageos.eleven.utils.ArtistPopupMenuHelper;
 import org.lineageos.eleven.utils.NavUtils;
 import org.lineageos.eleven.utils.PopupMenuHelper;
+import org.lineageos.eleven.utils.PreferenceUtils;
 import org.lineageos.eleven.utils.SectionCreatorUtils;
 import org.lineageos.eleven.utils.SectionCreatorUtils.IItemCompare;
 import org.lineageos.eleven.widgets.LoadingEmptyContainer;
@@ -87,6 +89,16 @@ public class ArtistFragment extends MusicBrowserFragment implements
      */
     private RecyclerView mListView;
 
+    /**
+     * The last loaded list, shown until the loader is done
+     */
+    private SectionListSnapshot<Artist> mSnapshot;
+
+    /**
+     * What the snapshot put on screen, null once the loader replaced it
+     */
+    private SectionListContainer<Artist> mShownSnapshot;
+
     /**
      * Empty constructor as per the {@link Fragment} documentation
      */
@@ -114,6 +126,9 @@ public class ArtistFragment extends MusicBrowserFragment implements
         mAdapter = new ArtistAdapter(requireActivity(), layout, this::onItemClick);
         mAdapter.setPopupMenuClickedListener((v, position) ->
                 mPopupMenuHelper.showPopupMenu(v, position));
+
+        mSnapshot = new SectionListSnapshot<>(requireContext(), "artists",
+                SectionListSnapshot.ARTISTS);
     }
 
     @Override
@@ -147,6 +162,10 @@ public class ArtistFragment extends MusicBrowserFragment implements
         super.onViewCreated(view, savedInstanceState);
         // Enable the options menu
         setHasOptionsMenu(true);
+        // Show the last loaded list while the loader runs
+        if (mAdapter.getItemCount() == 0) {
+            showSnapshot();
+        }
         // Start the loader
         initLoader(this);
     }
@@ -175,15 +194,29 @@ public class ArtistFragment extends MusicBrowserFragment implements
     public void onLoadFinished(@NonNull final Loader<SectionListContainer<Artist>> loader,
                                final SectionListContainer<Artist> data) {
         Handler handler = new Handler(requireActivity().getMainLooper());
+        final SectionListContainer<Artist> shown = mShownSnapshot;
+        mShownSnapshot = null;
+        if (shown != null && SectionListSnapshot.isSame(shown, data)) {
+            // the snapshot was right, nothing to update or write back
+            return;
+        }
+        mSnapshot.save(data, getSortOrder());
+
         if (data.mListResults.isEmpty()) {
             handler.post(() -> mAdapter.unload());
+            mLoadingEmptyContainer.setVisibility(View.VISIBLE);
             mLoadingEmptyContainer.showNoResults();
             return;
         }
 
         mLoadingEmptyContainer.setVisibility(View.GONE);
 
-        handler.post(() -> mAdapter.setData(data.mListResults));
+        if (shown != null && !shown.mListResults.isEmpty()) {
+            handler.post(() -> mAdapter.setData(data.mListResults,
+                    mSnapshot.diff(shown.mListResults, data.mListResults)));
+        } else {
+            handler.post(() -> mAdapter.setData(data.mListResults));
+        }
         setHeaders(data.mSections);
     }
 
@@ -218,6 +251,22 @@ public class ArtistFragment extends MusicBrowserFragment implements
         // Nothing to do
     }
 
+    private String getSortOrder() {
+        return PreferenceUtils.getInstance(requireContext()).getArtistSortOrder();
+    }
+
+    private void showSnapshot() {
+        mShownSnapshot = mSnapshot.read(getSortOrder());
+        if (mShownSnapshot == null || mShownSnapshot.mListResults.isEmpty()) {
+            mShownSnapshot = null;
+            return;
+        }
+
+        mLoadingEmptyContainer.setVisibility(View.GONE);
+        mAdapter.setData(mShownSnapshot.mListResults);
+        setHeaders(mShownSnapshot.mSections);
+    }
+
     private void setHeaders(TreeMap<Integer, SectionCreatorUtils.Section> sections) {
         for (int i = 0; i < mListView.getItemDecorationCount(); i++) {
             mListView.removeItemDecorationAt(i);
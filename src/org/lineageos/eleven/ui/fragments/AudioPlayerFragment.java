@@ -25,16 +25,14 @@ import android.content.IntentFilter;
 import android.content.ServiceConnection;
 import android.media.AudioManager;
 import android.os.Bundle;
-import android.os.Handler;
 import android.os.IBinder;
-import android.os.Looper;
-import android.os.Message;
 import android.os.PowerManager;
 import android.text.Html;
 import android.text.Spanned;
 import android.text.TextUtils;
 import android.util.Log;
 import android.util.TypedValue;
+import android.view.Choreographer;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -60,6 +58,7 @@ import org.lineageos.eleven.loaders.NowPlayingCursor;
 import org.lineageos.eleven.loaders.QueueLoader;
 import org.lineageos.eleven.menu.CreateNewPlaylist;
 import org.lineageos.eleven.menu.DeleteDialog;
+import org.lineageos.eleven.service.PlaybackSnapshot;
 import org.lineageos.eleven.ui.activities.HomeActivity;
 import org.lineageos.eleven.utils.ElevenUtils;
 import org.lineageos.eleven.utils.MusicUtils;
@@ -87,9 +86,6 @@ public class AudioPlayerFragment extends Fragment implements ServiceConnection {
     private TextView mSongTitle;
     private TextView mArtistName;
 
-    // Message to refresh the time
-    private static final int REFRESH_TIME = 1;
-
     // The service token
     private MusicUtils.ServiceToken mToken;
 
@@ -105,8 +101,17 @@ public class AudioPlayerFragment extends Fragment implements ServiceConnection {
     // Broadcast receiver
     private PlaybackStatus mPlaybackStatus;
 
-    // Handler used to update the current time
-    private TimeHandler mTimeHandler;
+    // The last playback state from the service, the position is extrapolated from it
+    private PlaybackSnapshot mSnapshot = PlaybackSnapshot.EMPTY;
+
+    // Updates the current time every frame while playing
+    private boolean mRefreshTimeScheduled;
+    private final Choreographer.FrameCallback mRefreshTimeCallback = frameTimeNanos -> {
+        mRefreshTimeScheduled = false;
+        if (refreshCurrentTime()) {
+            scheduleRefreshTime();
+        }
+    };
 
     // Image cache
     private ImageFetcher mImageFetcher;
@@ -151,10 +156,6 @@ public class AudioPlayerFragment extends Fragment implements ServiceConnection {
         // Initialize the image fetcher/cache
         mImageFetcher = ElevenUtils.getImageFetcher(getActivity());
 
-        // Initialize the handler used to update the current time
-        mTimeHandler = new TimeHandler(Looper.getMainLooper());
-        mTimeHandler.setFragment(this);
-
         // Initialize the broadcast receiver
         mPlaybackStatus = new PlaybackStatus(this);
     }
@@ -193,6 +194,7 @@ public class AudioPlayerFragment extends Fragment implements ServiceConnection {
         playerMenu.findItem(R.id.menu_audio_player_ringtone).setVisible(false);
         playerMenu.findItem(R.id.menu_audio_player_more_by_artist).setVisible(false);
         playerMenu.findItem(R.id.menu_audio_player_delete).setVisible(false);
+        playerMenu.findItem(R.id.menu_audio_player_smart_shuffle).setVisible(false);
 
         // Remove R.menu.queue by default
         playerMenu.findItem(R.id.menu_save_queue).setVisible(false);
@@ -208,6 +210,9 @@ public class AudioPlayerFragment extends Fragment implements ServiceConnection {
             playerMenu.findItem(R.id.menu_audio_player_ringtone).setVisible(true);
             playerMenu.findItem(R.id.menu_audio_player_more_by_artist).setVisible(true);
             playerMenu.findItem(R.id.menu_audio_player_delete).setVisible(true);
+            playerMenu.findItem(R.id.menu_audio_player_smart_shuffle).setVisible(true)
+                    .setChecked(MusicUtils.getShuffleMode()
+                            == MusicPlaybackService.SHUFFLE_SMART);
             playerMenu.findItem(R.id.menu_save_queue).setVisible(true);
             playerMenu.findItem(R.id.menu_clear_queue).setVisible(true);
         }
@@ -266,6 +271,9 @@ public class AudioPlayerFragment extends Fragment implements ServiceConnection {
                     null
             ).show(getActivity().getSupportFragmentManager(), "DeleteDialog");
             return true;
+        } else if (id == R.id.menu_audio_player_smart_shuffle) {
+            MusicUtils.toggleSmartShuffle();
+            mMainPlaybackControls.updateShuffleState();
         } else if (id == R.id.menu_save_queue) {
             NowPlayingCursor queue = (NowPlayingCursor) QueueLoader
                     .makeQueueCursor(activity);
@@ -313,6 +321,8 @@ public class AudioPlayerFragment extends Fragment implements ServiceConnection {
         filter.addAction(MusicPlaybackService.REPEATMODE_CHANGED);
         // Track changes
         filter.addAction(MusicPlaybackService.META_CHANGED);
+        // Seeks, and the track becoming ready to play
+        filter.addAction(MusicPlaybackService.POSITION_CHANGED);
         // Update a list, probably the playlist fragment's
         filter.addAction(MusicPlaybackService.REFRESH);
         // Listen to changes to the entire queue
@@ -328,16 +338,15 @@ public class AudioPlayerFragment extends Fragment implements ServiceConnection {
             activity.registerReceiver(mPlaybackStatus, filter, Context.RECEIVER_EXPORTED);
         }
         // Refresh the current time
-        final long next = refreshCurrentTime();
-        queueNextRefresh(next);
+        syncPlaybackState();
     }
 
     @Override
     public void onStop() {
         super.onStop();
 
-        // pause the update callback for the play pause progress button
-        mTimeHandler.removeMessages(REFRESH_TIME);
+        // pause the update callback for the current time
+        cancelRefreshTime();
 
         if (mAlertDialog != null) {
             mAlertDialog.dismiss();
@@ -426,25 +435,29 @@ public class AudioPlayerFragment extends Fragment implements ServiceConnection {
      * Sets the track name, album name, and album art.
      */
     private void updateNowPlayingInfo() {
+        final PlaybackSnapshot snapshot = MusicUtils.getPlaybackSnapshot();
+        mSnapshot = snapshot;
+
         // Set the track name
-        mSongTitle.setText(MusicUtils.getTrackName());
-        mArtistName.setText(MusicUtils.getArtistName());
+        mSongTitle.setText(snapshot.mTrackName);
+        mArtistName.setText(snapshot.mArtistName);
 
-        mMainPlaybackControls.updateNowPlayingInfo();
+        mMainPlaybackControls.updateNowPlayingInfo(snapshot.mDuration);
 
-        if (MusicUtils.getRepeatMode() == MusicPlaybackService.REPEAT_CURRENT) {
+        if (snapshot.mRepeatMode == MusicPlaybackService.REPEAT_CURRENT) {
             // we are repeating 1 so just jump to the 1st and only item
             mAlbumArtViewPager.setCurrentItem(0, false);
-        } else if (MusicUtils.getShuffleMode() == MusicPlaybackService.SHUFFLE_NONE) {
+        } else if (snapshot.mShuffleMode == MusicPlaybackService.SHUFFLE_NONE) {
             // we are playing in-order, base the position on the queue position
-            mAlbumArtViewPager.setCurrentItem(MusicUtils.getQueuePosition(), true);
+            mAlbumArtViewPager.setCurrentItem(snapshot.mQueuePosition, true);
         } else {
             // if we are shuffling, just based our index based on the history
-            mAlbumArtViewPager.setCurrentItem(MusicUtils.getQueueHistorySize(), true);
+            mAlbumArtViewPager.setCurrentItem(snapshot.mQueueHistorySize, true);
         }
 
         // Update the current time
-        queueNextRefresh(1);
+        refreshCurrentTime();
+        scheduleRefreshTime();
     }
 
     /**
@@ -491,31 +504,41 @@ public class AudioPlayerFragment extends Fragment implements ServiceConnection {
     }
 
     /**
-     * @param delay When to update
+     * Fetches a new anchor for the current time. Only called on playback state changes,
+     * in between the time is extrapolated locally.
      */
-    private void queueNextRefresh(final long delay) {
-        final Message message = mTimeHandler.obtainMessage(REFRESH_TIME);
-        mTimeHandler.removeMessages(REFRESH_TIME);
-        mTimeHandler.sendMessageDelayed(message, delay);
+    private void syncPlaybackState() {
+        if (!MusicUtils.isPlaybackServiceConnected()) {
+            // onServiceConnected syncs once we are bound
+            return;
+        }
+        mSnapshot = MusicUtils.getPlaybackSnapshot();
+        refreshCurrentTime();
+        scheduleRefreshTime();
     }
 
-    /* Used to update the current time string */
-    private long refreshCurrentTime() {
-        if (!MusicUtils.isPlaybackServiceConnected()) {
-            return MusicUtils.UPDATE_FREQUENCY_MS;
+    private void scheduleRefreshTime() {
+        if (!mRefreshTimeScheduled && mSnapshot.isAdvancing()) {
+            mRefreshTimeScheduled = true;
+            Choreographer.getInstance().postFrameCallback(mRefreshTimeCallback);
         }
+    }
 
-        final long position = MusicUtils.position();
-        final long duration = MusicUtils.duration();
-        final boolean isPlaying = MusicUtils.isPlaying();
-        mMainPlaybackControls.refreshCurrentTime(position, duration, isPlaying);
+    private void cancelRefreshTime() {
+        Choreographer.getInstance().removeFrameCallback(mRefreshTimeCallback);
+        mRefreshTimeScheduled = false;
+    }
 
-        if (position >= 0 && duration > 0 && isPlaying) {
-            // calculate the number of milliseconds until the next full second,
-            // so the counter can be updated at just the right time
-            return Math.max(20, 1000 - position % 1000);
-        }
-        return MusicUtils.UPDATE_FREQUENCY_MS;
+    /**
+     * Used to update the current time string
+     *
+     * @return true if the time is still moving and should be updated on the next frame
+     */
+    private boolean refreshCurrentTime() {
+        final PlaybackSnapshot snapshot = mSnapshot;
+        mMainPlaybackControls.refreshCurrentTime(snapshot.getPosition(), snapshot.mDuration,
+                snapshot.mIsPlaying);
+        return snapshot.isAdvancing();
     }
 
     public void onLyrics(String lyrics) {
@@ -564,30 +587,6 @@ public class AudioPlayerFragment extends Fragment implements ServiceConnection {
         mVisualizerView.setColor(color);
     }
 
-    /**
-     * Used to update the current time string
-     */
-    private static final class TimeHandler extends Handler {
-
-        private WeakReference<AudioPlayerFragment> mAudioPlayer;
-
-        public TimeHandler(@NonNull Looper looper) {
-            super(looper);
-        }
-
-        public void setFragment(final AudioPlayerFragment player) {
-            mAudioPlayer = new WeakReference<>(player);
-        }
-
-        @Override
-        public void handleMessage(final Message msg) {
-            if (msg.what == REFRESH_TIME) {
-                final long next = mAudioPlayer.get().refreshCurrentTime();
-                mAudioPlayer.get().queueNextRefresh(next);
-            }
-        }
-    }
-
     /**
      * Used to monitor the state of playback
      */
@@ -620,7 +619,11 @@ public class AudioPlayerFragment extends Fragment implements ServiceConnection {
                 audioPlayerFragment.updateNowPlayingInfo();
             } else if (MusicPlaybackService.PLAYSTATE_CHANGED.equals(action)) {
                 audioPlayerFragment.mMainPlaybackControls.updatePlayPauseState();
-                audioPlayerFragment.mVisualizerView.setPlaying(MusicUtils.isPlaying());
+                audioPlayerFragment.syncPlaybackState();
+                audioPlayerFragment.mVisualizerView.setPlaying(
+                        audioPlayerFragment.mSnapshot.mIsPlaying);
+            } else if (MusicPlaybackService.POSITION_CHANGED.equals(action)) {
+                audioPlayerFragment.syncPlaybackState();
             } else if (MusicPlaybackService.REPEATMODE_CHANGED.equals(action) ||
                     MusicPlaybackService.SHUFFLEMODE_CHANGED.equals(action)) {
                 // Set the repeat image
@@ -83,6 +83,13 @@ public class PlaylistDetailFragment extends DetailFragment implements
      */
     private ItemTouchHelper mDragSortHelper;
 
+    /**
+     * Where the item being dragged started and where it is now, the playlist itself is only
+     * updated once the item is dropped
+     */
+    private int mDragStartPosition = -1;
+    private int mDragEndPosition = -1;
+
     /**
      * Pop up menu helper
      */
@@ -356,10 +363,24 @@ public class PlaylistDetailFragment extends DetailFragment implements
         Handler handler = new Handler(requireActivity().getMainLooper());
         handler.post(() -> mAdapter.move(startPosition, endPosition));
 
+        if (mDragStartPosition < 0) {
+            mDragStartPosition = startPosition;
+        }
+        mDragEndPosition = endPosition;
+    }
+
+    @Override
+    public void onItemDropped() {
+        final int from = mDragStartPosition;
+        final int to = mDragEndPosition;
+        mDragStartPosition = -1;
+        mDragEndPosition = -1;
+
+        // all the steps of a drag add up to a single move from where it started
         final FragmentActivity activity = getActivity();
-        if (activity != null) {
+        if (activity != null && from >= 0 && from != to) {
             MediaStore.Audio.Playlists.Members.moveItem(activity.getContentResolver(),
-                    mPlaylistId, startPosition, endPosition);
+                    mPlaylistId, from, to);
         }
     }
 }
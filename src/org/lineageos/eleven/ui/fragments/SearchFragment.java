@@ -0,0 +1,149 @@
+/*
+ * SPDX-FileCopyrightText: 2026 The LineageOS Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.lineageos.eleven.ui.fragments;
+
+import android.view.View;
+
+import androidx.appcompat.widget.SearchView;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import org.lineageos.eleven.Config;
+import org.lineageos.eleven.R;
+import org.lineageos.eleven.adapters.SearchAdapter;
+import org.lineageos.eleven.loaders.LibrarySearcher;
+import org.lineageos.eleven.model.Album;
+import org.lineageos.eleven.model.Artist;
+import org.lineageos.eleven.model.Song;
+import org.lineageos.eleven.utils.MusicUtils;
+import org.lineageos.eleven.utils.NavUtils;
+import org.lineageos.eleven.widgets.LoadingEmptyContainer;
+import org.lineageos.eleven.widgets.NoResultsContainer;
+import org.lineageos.eleven.widgets.SectionSeparatorItemDecoration;
+
+/**
+ * Searches the library as the user types and shows the matching artists, albums and songs.
+ */
+public class SearchFragment extends BaseFragment implements LibrarySearcher.Callback {
+
+    private RecyclerView mListView;
+    private SearchAdapter mAdapter;
+    private LoadingEmptyContainer mLoadingEmptyContainer;
+    private SearchView mSearchView;
+
+    /**
+     * Kept across configuration changes, like the fragment itself
+     */
+    private LibrarySearcher mSearcher;
+    private String mQuery = "";
+
+    @Override
+    protected String getTitle() {
+        return getString(R.string.menu_search);
+    }
+
+    @Override
+    protected int getLayoutToInflate() {
+        return R.layout.fragment_search;
+    }
+
+    @Override
+    protected void onViewCreated() {
+        super.onViewCreated();
+
+        if (mSearcher == null) {
+            mSearcher = new LibrarySearcher(requireContext(), this);
+        }
+
+        mAdapter = new SearchAdapter(requireActivity(), this::onItemClick);
+        mListView = mRootView.findViewById(R.id.list_base);
+        mListView.setLayoutManager(new LinearLayoutManager(requireActivity()));
+        mListView.setAdapter(mAdapter);
+
+        mLoadingEmptyContainer = mRootView.findViewById(R.id.loading_empty_container);
+        final NoResultsContainer empty = mLoadingEmptyContainer.getNoResultsContainer();
+        empty.setMainText(R.string.empty_search_main);
+        empty.setSecondaryText(R.string.empty_search_secondary);
+        mLoadingEmptyContainer.setVisibility(View.GONE);
+
+        mSearchView = mRootView.findViewById(R.id.search_view);
+        mSearchView.setQuery(mQuery, false);
+        mSearchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                // results are already there, just get the keyboard out of the way
+                mSearchView.clearFocus();
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                onQueryChanged(newText);
+                return true;
+            }
+        });
+        mSearchView.requestFocus();
+
+        // the views are new, so fill them in again for the query we already had
+        onQueryChanged(mQuery);
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        if (mSearcher != null) {
+            mSearcher.release();
+            mSearcher = null;
+        }
+    }
+
+    private void onQueryChanged(final String query) {
+        mQuery = query == null ? "" : query;
+        if (mQuery.trim().isEmpty()) {
+            mSearcher.cancel();
+            mListView.setVisibility(View.GONE);
+            mLoadingEmptyContainer.setVisibility(View.GONE);
+            return;
+        }
+
+        mSearcher.search(mQuery);
+    }
+
+    @Override
+    public void onSearchResults(final LibrarySearcher.Results results) {
+        if (mListView == null || !results.mQuery.equals(mQuery)) {
+            return;
+        }
+
+        for (int i = mListView.getItemDecorationCount() - 1; i >= 0; i--) {
+            mListView.removeItemDecorationAt(i);
+        }
+        mListView.addItemDecoration(new SectionSeparatorItemDecoration(requireContext(),
+                mAdapter.setResults(results)));
+
+        if (!results.isEmpty()) {
+            mLoadingEmptyContainer.setVisibility(View.GONE);
+            mListView.setVisibility(View.VISIBLE);
+        } else if (results.mComplete) {
+            mListView.setVisibility(View.GONE);
+            mLoadingEmptyContainer.showNoResults();
+            mLoadingEmptyContainer.setVisibility(View.VISIBLE);
+        }
+    }
+
+    private void onItemClick(final Object item) {
+        mSearchView.clearFocus();
+        if (item instanceof Artist) {
+            NavUtils.openArtistProfile(requireActivity(), ((Artist) item).mArtistName);
+        } else if (item instanceof Album) {
+            final Album album = (Album) item;
+            NavUtils.openAlbumProfile(requireActivity(), album.mAlbumName, album.mArtistName,
+                    album.mAlbumId);
+        } else if (item instanceof Song) {
+            MusicUtils.playAll(mAdapter.getSongIds(), mAdapter.getSongPosition((Song) item),
+                    -1, Config.IdType.NA, false);
+        }
+    }
+}
@@ -31,8 +31,10 @@ import org.lineageos.eleven.loaders.SongLoader;
 import org.lineageos.eleven.model.Song;
 import org.lineageos.eleven.sectionadapter.SectionCreator;
 import org.lineageos.eleven.sectionadapter.SectionListContainer;
+import org.lineageos.eleven.sectionadapter.SectionListSnapshot;
 import org.lineageos.eleven.ui.fragments.profile.BasicSongFragment;
 import org.lineageos.eleven.utils.MusicUtils;
+import org.lineageos.eleven.utils.PreferenceUtils;
 import org.lineageos.eleven.utils.SectionCreatorUtils;
 
 /**
@@ -70,6 +72,16 @@ public class SongFragment extends BasicSongFragment {
     }
 
 
+    @Override
+    protected SectionListSnapshot<Song> createSnapshot() {
+        return new SectionListSnapshot<>(requireContext(), "songs", SectionListSnapshot.SONGS);
+    }
+
+    @Override
+    protected String getSnapshotSortOrder() {
+        return PreferenceUtils.getInstance(requireContext()).getSongSortOrder();
+    }
+
     @Override
     public int getLoaderId() {
         return PagerAdapter.MusicFragments.SONG.ordinal();
@@ -217,6 +217,7 @@ public class MusicBrowserPhoneFragment extends BaseFragment {
                                     @NonNull final MenuInflater inflater) {
         super.onCreateOptionsMenu(menu, inflater);
 
+        inflater.inflate(R.menu.search, menu);
         inflater.inflate(R.menu.shuffle_all, menu);
         if (isArtistPage()) {
             inflater.inflate(R.menu.artist_sort_by, menu);
@@ -232,7 +233,9 @@ public class MusicBrowserPhoneFragment extends BaseFragment {
     @Override
     public boolean onOptionsItemSelected(final MenuItem item) {
         final int id = item.getItemId();
-        if (id == R.id.menu_shuffle_all) {
+        if (id == R.id.menu_search) {
+            getContainingActivity().showSearch();
+        } else if (id == R.id.menu_shuffle_all) {
             // Shuffle all the songs
             MusicUtils.shuffleAll(getActivity());
         } else if (id == R.id.menu_sort_by_az) {
@@ -44,6 +44,7 @@ import org.lineageos.eleven.R;
 import org.lineageos.eleven.adapters.SongListAdapter;
 import org.lineageos.eleven.model.Song;
 import org.lineageos.eleven.sectionadapter.SectionListContainer;
+import org.lineageos.eleven.sectionadapter.SectionListSnapshot;
 import org.lineageos.eleven.service.MusicPlaybackTrack;
 import org.lineageos.eleven.ui.activities.BaseActivity;
 import org.lineageos.eleven.utils.MusicUtils;
@@ -90,6 +91,16 @@ public abstract class BasicSongFragment extends Fragment implements
      */
     protected LoadingEmptyContainer mLoadingEmptyContainer;
 
+    /**
+     * The last loaded list, shown until the loader is done, if the subclass keeps one
+     */
+    private SectionListSnapshot<Song> mSnapshot;
+
+    /**
+     * What the snapshot put on screen, null once the loader replaced it
+     */
+    private SectionListContainer<Song> mShownSnapshot;
+
     /**
      * Empty constructor as per the {@link Fragment} documentation
      */
@@ -126,6 +137,8 @@ public abstract class BasicSongFragment extends Fragment implements
         mAdapter = createAdapter();
         mAdapter.setPopupMenuClickedListener((v, position) ->
                 mPopupMenuHelper.showPopupMenu(v, position));
+
+        mSnapshot = createSnapshot();
     }
 
     protected long getFragmentSourceId() {
@@ -195,6 +208,10 @@ public abstract class BasicSongFragment extends Fragment implements
     @Override
     public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
+        // Show the last loaded list while the loader runs
+        if (mSnapshot != null && mAdapter.getItemCount() == 0) {
+            showSnapshot();
+        }
         // Start the loader
         getFragmentLoaderManager().initLoader(getLoaderId(), null, this);
     }
@@ -207,6 +224,16 @@ public abstract class BasicSongFragment extends Fragment implements
     public void onLoadFinished(@NonNull final Loader<SectionListContainer<Song>> loader,
                                final SectionListContainer<Song> data) {
         Handler handler = new Handler(requireActivity().getMainLooper());
+        final SectionListContainer<Song> shown = mShownSnapshot;
+        mShownSnapshot = null;
+        if (shown != null && SectionListSnapshot.isSame(shown, data)) {
+            // the snapshot was right, nothing to update or write back
+            return;
+        }
+        if (mSnapshot != null) {
+            mSnapshot.save(data, getSnapshotSortOrder());
+        }
+
         if (data.mListResults.isEmpty()) {
             handler.post(() -> mAdapter.unload());
             mLoadingEmptyContainer.setVisibility(View.VISIBLE);
@@ -217,11 +244,28 @@ public abstract class BasicSongFragment extends Fragment implements
         mLoadingEmptyContainer.setVisibility(View.GONE);
 
         handler.post(() -> {
-            mAdapter.setData(data.mListResults);
+            if (shown != null && !shown.mListResults.isEmpty()) {
+                mAdapter.setData(data.mListResults,
+                        mSnapshot.diff(shown.mListResults, data.mListResults));
+            } else {
+                mAdapter.setData(data.mListResults);
+            }
             setHeaders(data.mSections);
         });
     }
 
+    private void showSnapshot() {
+        mShownSnapshot = mSnapshot.read(getSnapshotSortOrder());
+        if (mShownSnapshot == null || mShownSnapshot.mListResults.isEmpty()) {
+            mShownSnapshot = null;
+            return;
+        }
+
+        mLoadingEmptyContainer.setVisibility(View.GONE);
+        mAdapter.setData(mShownSnapshot.mListResults);
+        setHeaders(mShownSnapshot.mSections);
+    }
+
     /**
      * @return Gets the list of song ids from the adapter, or null if none
      */
@@ -269,6 +313,23 @@ public abstract class BasicSongFragment extends Fragment implements
         );
     }
 
+    /**
+     * Subclasses showing a list that is worth showing again right away on the next start
+     * can keep a snapshot of it
+     *
+     * @return the snapshot to use, or null for none
+     */
+    protected SectionListSnapshot<Song> createSnapshot() {
+        return null;
+    }
+
+    /**
+     * @return the sort order the loaded list is in, used when there is a snapshot
+     */
+    protected String getSnapshotSortOrder() {
+        return null;
+    }
+
     /**
      * Allow subclasses to specify a different loader manager
      *
@@ -0,0 +1,138 @@
+/*
+ * SPDX-FileCopyrightText: 2026 The LineageOS Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.lineageos.eleven.utils;
+
+import android.graphics.Bitmap;
+
+/**
+ * CPU blur used for the now playing background. The source is first scaled down so the
+ * blur only touches a few thousand pixels, then a separable box blur is run a few times
+ * (which approximates a gaussian) on scratch buffers that are kept around between calls.
+ */
+public final class BitmapBlur {
+
+    /**
+     * Longest edge of the downsampled bitmap that gets blurred
+     */
+    private static final int DOWNSAMPLED_SIZE = 96;
+
+    /**
+     * Radius of each box blur pass, in downsampled pixels
+     */
+    private static final int BLUR_RADIUS = 4;
+
+    /**
+     * Number of box blur passes, three passes are close enough to a gaussian
+     */
+    private static final int BLUR_PASSES = 3;
+
+    private static final Object sLock = new Object();
+
+    /**
+     * Scratch buffers, only grown when a larger bitmap comes in
+     */
+    private static int[] sPixels = new int[0];
+    private static int[] sScratch = new int[0];
+
+    private BitmapBlur() {
+    }
+
+    /**
+     * Scales down and blurs the given bitmap. The source bitmap is left untouched.
+     *
+     * @param src the bitmap to blur
+     * @return a new, small, blurred bitmap or null if src is null or empty
+     */
+    public static Bitmap blur(final Bitmap src) {
+        if (src == null || src.getWidth() <= 0 || src.getHeight() <= 0) {
+            return null;
+        }
+
+        final int srcWidth = src.getWidth();
+        final int srcHeight = src.getHeight();
+        final float scale = Math.min(1f,
+                (float) DOWNSAMPLED_SIZE / Math.max(srcWidth, srcHeight));
+        final int width = Math.max(1, Math.round(srcWidth * scale));
+        final int height = Math.max(1, Math.round(srcHeight * scale));
+
+        // createScaledBitmap hands back the source itself when no scaling is needed,
+        // so make sure we never blur the cached original in place
+        Bitmap output = Bitmap.createScaledBitmap(src, width, height, true);
+        if (output == src || !output.isMutable()
+                || output.getConfig() != Bitmap.Config.ARGB_8888) {
+            final Bitmap copy = output.copy(Bitmap.Config.ARGB_8888, true);
+            if (output != src) {
+                output.recycle();
+            }
+            output = copy;
+        }
+        if (output == null) {
+            return null;
+        }
+
+        synchronized (sLock) {
+            final int size = width * height;
+            if (sPixels.length < size) {
+                sPixels = new int[size];
+                sScratch = new int[size];
+            }
+
+            output.getPixels(sPixels, 0, width, 0, 0, width, height);
+            for (int i = 0; i < BLUR_PASSES; i++) {
+                // each pass writes its result transposed, so running it twice covers
+                // both axes and lands back in the original orientation
+                blurTransposed(sPixels, sScratch, width, height, BLUR_RADIUS);
+                blurTransposed(sScratch, sPixels, height, width, BLUR_RADIUS);
+            }
+            output.setPixels(sPixels, 0, width, 0, 0, width, height);
+        }
+
+        return output;
+    }
+
+    /**
+     * Runs a horizontal box blur over in and writes the transposed result to out
+     *
+     * @param in     source pixels, width * height
+     * @param out    destination pixels, height * width
+     * @param width  width of the source
+     * @param height height of the source
+     * @param radius blur radius in pixels
+     */
+    private static void blurTransposed(final int[] in, final int[] out, final int width,
+                                       final int height, final int radius) {
+        final int div = radius * 2 + 1;
+        final int last = width - 1;
+
+        for (int y = 0; y < height; y++) {
+            final int row = y * width;
+            int sumA = 0, sumR = 0, sumG = 0, sumB = 0;
+
+            // prime the window, clamping to the edge pixels
+            for (int i = -radius; i <= radius; i++) {
+                final int p = in[row + Math.min(last, Math.max(i, 0))];
+                sumA += p >>> 24;
+                sumR += (p >> 16) & 0xff;
+                sumG += (p >> 8) & 0xff;
+                sumB += p & 0xff;
+            }
+
+            int outIndex = y;
+            for (int x = 0; x < width; x++) {
+                out[outIndex] = ((sumA / div) << 24) | ((sumR / div) << 16)
+                        | ((sumG / div) << 8) | (sumB / div);
+                outIndex += height;
+
+                // slide the window one pixel to the right
+                final int enter = in[row + Math.min(x + radius + 1, last)];
+                final int leave = in[row + Math.max(x - radius, 0)];
+                sumA += (enter >>> 24) - (leave >>> 24);
+                sumR += ((enter >> 16) & 0xff) - ((leave >> 16) & 0xff);
+                sumG += ((enter >> 8) & 0xff) - ((leave >> 8) & 0xff);
+                sumB += (enter & 0xff) - (leave & 0xff);
+            }
+        }
+    }
+}
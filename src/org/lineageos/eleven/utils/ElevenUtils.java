@@ -22,6 +22,7 @@ import android.content.Context;
 import android.content.res.Configuration;
 import android.graphics.Rect;
 import android.os.AsyncTask;
+import android.os.Process;
 import android.util.TypedValue;
 import android.view.Gravity;
 import android.view.View;
@@ -32,6 +33,9 @@ import androidx.fragment.app.FragmentActivity;
 import org.lineageos.eleven.cache.ImageCache;
 import org.lineageos.eleven.cache.ImageFetcher;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
 /**
  * Mostly general and UI helpers.
  *
@@ -39,6 +43,16 @@ import org.lineageos.eleven.cache.ImageFetcher;
  */
 public final class ElevenUtils {
 
+    /**
+     * Runs work that should never compete with what is on screen, such as artwork for search
+     * results that may be gone a keystroke later
+     */
+    private static final Executor sLowPriorityExecutor = Executors.newFixedThreadPool(2, r ->
+            new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+                r.run();
+            }, "ElevenLowPriority"));
+
     /**
      * Used to determine if the device is currently in landscape mode
      *
@@ -63,6 +77,19 @@ public final class ElevenUtils {
         task.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, args);
     }
 
+    /**
+     * Execute an {@link AsyncTask} on a small pool of lowest priority threads
+     *
+     * @param <T>         Task argument type
+     * @param task        Task to execute
+     * @param args        Optional arguments to pass to
+     *                    {@link AsyncTask#execute(Object[])}
+     */
+    @SafeVarargs
+    public static <T> void executeLowPriority(final AsyncTask<T, ?, ?> task, final T... args) {
+        task.executeOnExecutor(sLowPriorityExecutor, args);
+    }
+
     /**
      * Display a {@link Toast} letting the user know what an item does when long
      * pressed.
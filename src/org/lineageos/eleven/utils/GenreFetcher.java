@@ -17,64 +17,72 @@
 package org.lineageos.eleven.utils;
 
 import android.content.Context;
-import android.database.Cursor;
-import android.os.Bundle;
-import android.provider.MediaStore;
+import android.os.AsyncTask;
 import android.view.View;
 import android.widget.TextView;
 
-import androidx.annotation.NonNull;
 import androidx.fragment.app.FragmentActivity;
-import androidx.loader.app.LoaderManager;
-import androidx.loader.content.CursorLoader;
-import androidx.loader.content.Loader;
 
-public class GenreFetcher implements LoaderManager.LoaderCallbacks<Cursor> {
-    private static final String[] GENRE_PROJECTION = new String[]{MediaStore.Audio.Genres.NAME};
+import org.lineageos.eleven.provider.LibraryStatsStore;
 
-    private final Context mContext;
+import java.lang.ref.WeakReference;
+
+/**
+ * Shows the genre of a song, looked up in the genres kept by {@link LibraryStatsStore}
+ */
+public class GenreFetcher extends AsyncTask<Void, Void, String> {
+    private final LibraryStatsStore mStore;
     private final int mSongId;
-    private final TextView mTextView;
+    private final WeakReference<TextView> mTextView;
 
     public static void fetch(FragmentActivity activity, int songId, TextView textView) {
-        LoaderManager lm = LoaderManager.getInstance(activity);
-        lm.restartLoader(0, null, new GenreFetcher(activity, songId, textView));
+        if (textView == null) {
+            return;
+        }
+        final LibraryStatsStore store = LibraryStatsStore.getInstance(activity);
+        textView.setTag(songId);
+
+        // no need for a background thread once the genres are in memory
+        final String genre = store.getGenreName(songId);
+        if (genre != null) {
+            showGenre(textView, genre);
+        } else {
+            ElevenUtils.execute(new GenreFetcher(activity, songId, textView));
+        }
     }
 
     private GenreFetcher(Context context, int songId, TextView textView) {
-        mContext = context;
+        mStore = LibraryStatsStore.getInstance(context);
         mSongId = songId;
-        mTextView = textView;
+        mTextView = new WeakReference<>(textView);
     }
 
-    @NonNull
     @Override
-    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
-        return new CursorLoader(mContext,
-                MediaStore.Audio.Genres.getContentUriForAudioId("external", mSongId),
-                GENRE_PROJECTION, null, null, null);
+    protected String doInBackground(Void... params) {
+        return mStore.loadGenreName(mSongId);
     }
 
     @Override
-    public void onLoadFinished(@NonNull Loader<Cursor> loader, Cursor cursor) {
-        if (mTextView == null) {
+    protected void onPostExecute(String genre) {
+        final TextView textView = mTextView.get();
+        // the view may have been asked for another song in the meantime
+        if (textView == null || !Integer.valueOf(mSongId).equals(textView.getTag())) {
             return;
         }
-        if (!cursor.moveToFirst()) {
+        showGenre(textView, genre);
+    }
+
+    private static void showGenre(TextView textView, String genre) {
+        if (genre == null) {
             // no displayable genre found
-            mTextView.setVisibility(View.GONE);
+            textView.setVisibility(View.GONE);
             return;
         }
-        String genre = cursor.getString(0);
         if (MusicUtils.isBlank(genre)) {
-            mTextView.setText(genre);
-            mTextView.setVisibility(View.VISIBLE);
+            textView.setText(genre);
+            textView.setVisibility(View.VISIBLE);
         } else {
-            mTextView.setText(genre);
+            textView.setText(genre);
         }
     }
-
-    @Override
-    public void onLoaderReset(@NonNull Loader<Cursor> loader) {
-    }
 }
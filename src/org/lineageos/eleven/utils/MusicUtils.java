@@ -61,14 +61,14 @@ import org.lineageos.eleven.loaders.SongLoader;
 import org.lineageos.eleven.loaders.TopTracksLoader;
 import org.lineageos.eleven.locale.LocaleUtils;
 import org.lineageos.eleven.model.AlbumArtistDetails;
+import org.lineageos.eleven.provider.ListenHistoryStore;
 import org.lineageos.eleven.provider.RecentStore;
 import org.lineageos.eleven.provider.SongPlayCount;
 import org.lineageos.eleven.service.MusicPlaybackTrack;
+import org.lineageos.eleven.service.PlaybackSnapshot;
 
-import java.io.File;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -392,9 +392,7 @@ public final class MusicUtils {
                 if (service.getRepeatMode() == MusicPlaybackService.REPEAT_CURRENT) {
                     service.setRepeatMode(MusicPlaybackService.REPEAT_ALL);
                 }
-            } else if (shuffleMode == MusicPlaybackService.SHUFFLE_NORMAL) {
-                service.setShuffleMode(MusicPlaybackService.SHUFFLE_NONE);
-            } else if (shuffleMode == MusicPlaybackService.SHUFFLE_AUTO) {
+            } else {
                 service.setShuffleMode(MusicPlaybackService.SHUFFLE_NONE);
             }
         } catch (final RemoteException exc) {
@@ -402,6 +400,48 @@ public final class MusicUtils {
         }
     }
 
+    /**
+     * Turns smart shuffle on, or back to normal shuffle if it is on already.
+     */
+    public static void toggleSmartShuffle() {
+        try {
+            IElevenService service = getService();
+            if (service == null) {
+                return;
+            }
+            if (service.getShuffleMode() == MusicPlaybackService.SHUFFLE_SMART) {
+                service.setShuffleMode(MusicPlaybackService.SHUFFLE_NORMAL);
+            } else {
+                service.setShuffleMode(MusicPlaybackService.SHUFFLE_SMART);
+                if (service.getRepeatMode() == MusicPlaybackService.REPEAT_CURRENT) {
+                    service.setRepeatMode(MusicPlaybackService.REPEAT_ALL);
+                }
+            }
+        } catch (final RemoteException exc) {
+            Log.e(TAG, "toggleSmartShuffle()", exc);
+        }
+    }
+
+    /**
+     * @return The whole playback state in a single call, or
+     * {@link PlaybackSnapshot#EMPTY} if the service isn't connected
+     */
+    @NonNull
+    public static PlaybackSnapshot getPlaybackSnapshot() {
+        IElevenService service = getService();
+        if (service != null) {
+            try {
+                final PlaybackSnapshot snapshot = service.getPlaybackSnapshot();
+                if (snapshot != null) {
+                    return snapshot;
+                }
+            } catch (final RemoteException exc) {
+                Log.e(TAG, "getPlaybackSnapshot()", exc);
+            }
+        }
+        return PlaybackSnapshot.EMPTY;
+    }
+
     /**
      * @return True if we're playing music, false otherwise.
      */
@@ -688,6 +728,22 @@ public final class MusicUtils {
         return 0;
     }
 
+    /**
+     * @param ids The IDs of the tracks to remove.
+     * @return how many tracks were removed from the queue.
+     */
+    public static int removeTracks(final long[] ids) {
+        IElevenService service = getService();
+        try {
+            if (service != null) {
+                return service.removeTracksById(ids);
+            }
+        } catch (final RemoteException exc) {
+            Log.e(TAG, "removeTracks(" + ids.length + " ids)", exc);
+        }
+        return 0;
+    }
+
     /**
      * Remove song at a specified position in the list
      *
@@ -718,12 +774,7 @@ public final class MusicUtils {
         final int len = cursor.getCount();
         final long[] list = new long[len];
         cursor.moveToFirst();
-        int columnIndex;
-        try {
-            columnIndex = cursor.getColumnIndexOrThrow(MediaStore.Audio.Playlists.Members.AUDIO_ID);
-        } catch (final IllegalArgumentException notaplaylist) {
-            columnIndex = cursor.getColumnIndexOrThrow(BaseColumns._ID);
-        }
+        final int columnIndex = getSongIdColumnIndex(cursor);
         try {
             for (int i = 0; i < len; i++) {
                 list[i] = cursor.getLong(columnIndex);
@@ -735,15 +786,83 @@ public final class MusicUtils {
         return list;
     }
 
+    /**
+     * @param cursor A song cursor, either of songs or of playlist members
+     * @return The index of the column holding the song ids
+     */
+    public static int getSongIdColumnIndex(final Cursor cursor) {
+        final int columnIndex = cursor.getColumnIndex(Playlists.Members.AUDIO_ID);
+        return columnIndex >= 0 ? columnIndex : cursor.getColumnIndexOrThrow(BaseColumns._ID);
+    }
+
+    /**
+     * @param context    The {@link Context} to use.
+     * @param sourceType The kind of source, {@link IdType#NA} for all songs
+     * @return The sort order the user picked for the songs of that kind of source, or null
+     * if the source has a fixed order
+     */
+    public static String getSourceSortOrder(final Context context, final IdType sourceType) {
+        switch (sourceType) {
+            case Album:
+                return PreferenceUtils.getInstance(context).getAlbumSongSortOrder();
+            case Playlist:
+                return null;
+            case Artist:
+            case NA:
+            default:
+                return PreferenceUtils.getInstance(context).getSongSortOrder();
+        }
+    }
+
+    /**
+     * Opens the songs of a source in the order the library shows them, using the sort order
+     * the user picked for that kind of list
+     *
+     * @param context    The {@link Context} to use.
+     * @param sourceType The kind of source, {@link IdType#NA} for all songs
+     * @param sourceId   The ID of the artist, album or playlist, ignored for all songs
+     * @return The cursor, or null if the query failed
+     */
+    @WorkerThread
+    public static Cursor makeSourceSongCursor(final Context context, final IdType sourceType,
+                                              final long sourceId) {
+        return makeSourceSongCursor(context, sourceType, sourceId,
+                getSourceSortOrder(context, sourceType));
+    }
+
+    /**
+     * Opens the songs of a source in the given order
+     *
+     * @param context    The {@link Context} to use.
+     * @param sourceType The kind of source, {@link IdType#NA} for all songs
+     * @param sourceId   The ID of the artist, album or playlist, ignored for all songs
+     * @param sortOrder  One of the song sort orders of {@link SortOrder}, ignored for playlists
+     * @return The cursor, or null if the query failed
+     */
+    @WorkerThread
+    public static Cursor makeSourceSongCursor(final Context context, final IdType sourceType,
+                                              final long sourceId, final String sortOrder) {
+        switch (sourceType) {
+            case Artist:
+                return SongLoader.makeSongCursor(context, AudioColumns.ARTIST_ID + "="
+                        + sourceId + " AND " + AudioColumns.IS_MUSIC + "=1", true, sortOrder);
+            case Album:
+                return AlbumSongLoader.makeAlbumSongCursor(context, sourceId, sortOrder);
+            case Playlist:
+                return PlaylistSongLoader.makePlaylistSongCursor(context, sourceId);
+            case NA:
+            default:
+                return SongLoader.makeSongCursor(context, null, true, sortOrder);
+        }
+    }
+
     /**
      * @param context The {@link Context} to use.
      * @param id      The ID of the artist.
      * @return The song list for an artist.
      */
     public static long[] getSongListForArtist(final Context context, final long id) {
-        final String selection = AudioColumns.ARTIST_ID + "=" + id + " AND "
-                + AudioColumns.IS_MUSIC + "=1";
-        try (Cursor cursor = SongLoader.makeSongCursor(context, selection)) {
+        try (Cursor cursor = makeSourceSongCursor(context, IdType.Artist, id)) {
             if (cursor != null) {
                 return getSongListForCursor(cursor);
             }
@@ -774,9 +893,33 @@ public final class MusicUtils {
      */
     public static void playArtist(final Context context, final long artistId, int position,
                                   boolean shuffle) {
-        final long[] artistList = getSongListForArtist(context, artistId);
-        if (artistList != null) {
-            playAll(artistList, position, artistId, IdType.Artist, shuffle);
+        playSource(context, IdType.Artist, artistId, position, shuffle);
+    }
+
+    /**
+     * Plays all songs of an artist, album, playlist or the whole library. Only the source and
+     * its sort order are sent to the service, which loads the songs itself, so this stays
+     * cheap no matter how many songs there are. The sort order is read here, since the
+     * preferences the service process sees can lag behind the ones of the UI.
+     *
+     * @param context    The {@link Context} to use.
+     * @param sourceType The kind of source, {@link IdType#NA} for all songs
+     * @param sourceId   The ID of the artist, album or playlist, -1 for all songs
+     * @param position   Specify where to start.
+     * @param shuffle    True to shuffle the songs
+     */
+    public static void playSource(final Context context, final IdType sourceType,
+                                  final long sourceId, final int position,
+                                  final boolean shuffle) {
+        IElevenService service = getService();
+        if (service == null) {
+            return;
+        }
+        try {
+            service.openSource(sourceType.mId, sourceId,
+                    getSourceSortOrder(context, sourceType), Math.max(position, 0), shuffle);
+        } catch (final RemoteException exc) {
+            Log.e(TAG, "playSource(" + sourceType + ", " + sourceId + ")", exc);
         }
     }
 
@@ -826,33 +969,7 @@ public final class MusicUtils {
      * @param context The {@link Context} to use.
      */
     public static void shuffleAll(final Context context) {
-        long[] mTrackListTmp;
-        try (Cursor cursor = SongLoader.makeSongCursor(context, null)) {
-            mTrackListTmp = getSongListForCursor(cursor);
-        }
-
-        final long[] mTrackList = mTrackListTmp;
-        IElevenService service = getService();
-        if (mTrackList.length == 0 || service == null) {
-            return;
-        }
-
-        try {
-            service.setShuffleMode(MusicPlaybackService.SHUFFLE_NORMAL);
-            final long mCurrentId = service.getAudioId();
-            final int mCurrentQueuePosition = getQueuePosition();
-            if (mCurrentQueuePosition == 0 && mCurrentId == mTrackList[0]) {
-                final long[] mPlaylist = getQueue();
-                if (Arrays.equals(mTrackList, mPlaylist)) {
-                    service.play();
-                    return;
-                }
-            }
-            service.open(mTrackList, -1, -1, IdType.NA.mId);
-            service.play();
-        } catch (final RemoteException exc) {
-            Log.e(TAG, "shuffleAll()", exc);
-        }
+        playSource(context, IdType.NA, -1, -1, true);
     }
 
     /**
@@ -938,10 +1055,7 @@ public final class MusicUtils {
      */
     public static void playAlbum(final Context context, final long albumId, int position,
                                  boolean shuffle) {
-        final long[] albumList = getSongListForAlbum(context, albumId);
-        if (albumList != null) {
-            playAll(albumList, position, albumId, IdType.Album, shuffle);
-        }
+        playSource(context, IdType.Album, albumId, position, shuffle);
     }
 
     public static void makeInsertItems(final long[] ids, final int offset, int len,
@@ -1008,6 +1122,8 @@ public final class MusicUtils {
      */
     public static void clearTopTracks(Context context) {
         SongPlayCount.getInstance(context).deleteAll();
+        // the listen history feeds the listen ratio of the play counts, drop it as well
+        ListenHistoryStore.getInstance(context).deleteAll();
     }
 
     /**
@@ -1279,10 +1395,7 @@ public final class MusicUtils {
      * @param playlistId The playlist Id.
      */
     public static void playPlaylist(final Context context, final long playlistId, boolean shuffle) {
-        final long[] playlistList = getSongListForPlaylist(context, playlistId);
-        if (playlistList != null) {
-            playAll(playlistList, -1, playlistId, IdType.Playlist, shuffle);
-        }
+        playSource(context, IdType.Playlist, playlistId, -1, shuffle);
     }
 
     /**
@@ -1464,75 +1577,46 @@ public final class MusicUtils {
     }
 
     /**
-     * Perminately deletes item(s) from the user's device
+     * Perminately deletes item(s) from the user's device. The work is done in the
+     * background, a toast is shown and the lists are refreshed once it is done.
      *
      * @param context The {@link Context} to use.
      * @param list    The item(s) to delete.
      */
     public static void deleteTracks(final Context context, final long[] list) {
-        final String[] projection = new String[]{
-                BaseColumns._ID, MediaColumns.DATA, AudioColumns.ALBUM_ID
-        };
-        final StringBuilder selection = new StringBuilder();
-        selection.append(BaseColumns._ID + " IN (");
-        for (int i = 0; i < list.length; i++) {
-            selection.append(list[i]);
-            if (i < list.length - 1) {
-                selection.append(",");
-            }
-        }
-        selection.append(")");
-        try (Cursor c = context.getContentResolver().query(
-                MediaStore.Audio.Media.getContentUri(MediaStore.VOLUME_EXTERNAL),
-                projection, selection.toString(), null, null)) {
-            if (c != null) {
-                // Step 1: Remove selected tracks from the current playlist, as well
-                // as from the album art cache
-                c.moveToFirst();
-                while (!c.isAfterLast()) {
-                    // Remove from current playlist
-                    final long id = c.getLong(0);
-                    removeTrack(id);
-                    // Remove the track from the play count
-                    SongPlayCount.getInstance(context).removeItem(id);
-                    // Remove any items in the recents database
-                    RecentStore.getInstance(context).removeItem(id);
-                    c.moveToNext();
-                }
+        deleteTracks(context, list, null);
+    }
 
-                // Step 2: Remove selected tracks from the database
-                context.getContentResolver().delete(
-                        MediaStore.Audio.Media.getContentUri(MediaStore.VOLUME_EXTERNAL),
-                        selection.toString(), null);
-
-                // Step 3: Remove files from card
-                c.moveToFirst();
-                while (!c.isAfterLast()) {
-                    final String name = c.getString(1);
-                    final File f = new File(name);
-                    try { // File.delete can throw a security exception
-                        if (!f.delete()) {
-                            // I'm not sure if we'd ever get here (deletion would
-                            // have to fail, but no exception thrown)
-                            Log.e("MusicUtils", "Failed to delete file " + name);
-                        }
-                        c.moveToNext();
-                    } catch (final SecurityException ex) {
-                        c.moveToNext();
-                    }
+    /**
+     * Permanently deletes item(s) from the user's device.
+     *
+     * @param context  The {@link Context} to use.
+     * @param list     The item(s) to delete.
+     * @param listener Told about the progress and once the items are deleted, may be null
+     */
+    public static void deleteTracks(final Context context, final long[] list,
+                                    final TrackDeleter.Listener listener) {
+        final Context appContext = context.getApplicationContext();
+        TrackDeleter.delete(appContext, list, new TrackDeleter.Listener() {
+            @Override
+            public void onProgress(final int done, final int total) {
+                if (listener != null) {
+                    listener.onProgress(done, total);
                 }
             }
-        }
 
-        final String message = makeLabel(context, R.plurals.NNNtracksdeleted, list.length);
-
-        Toast.makeText(context, message, Toast.LENGTH_SHORT).show();
-        // We deleted a number of tracks, which could affect any number of
-        // things
-        // in the media content domain, so update everything.
-        context.getContentResolver().notifyChange(Uri.parse("content://media"), null);
-        // Notify the lists to update
-        refresh();
+            @Override
+            public void onFinished(final int deleted) {
+                final String message = makeLabel(appContext, R.plurals.NNNtracksdeleted,
+                        deleted);
+                Toast.makeText(appContext, message, Toast.LENGTH_SHORT).show();
+                // Notify the lists to update
+                refresh();
+                if (listener != null) {
+                    listener.onFinished(deleted);
+                }
+            }
+        });
     }
 
     /**
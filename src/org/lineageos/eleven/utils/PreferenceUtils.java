@@ -23,7 +23,6 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
 import android.content.pm.PackageManager;
-import android.os.Build;
 
 import androidx.preference.PreferenceManager;
 
@@ -238,8 +237,7 @@ public final class PreferenceUtils {
     }
 
     public boolean getUseBlur() {
-        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.S &&
-                mPreferences.getBoolean(USE_BLUR, false);
+        return mPreferences.getBoolean(USE_BLUR, false);
     }
 
     public boolean getShakeToPlay() {
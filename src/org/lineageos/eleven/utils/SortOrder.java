@@ -97,4 +97,23 @@ public final class SortOrder {
         String SONG_TRACK_LIST = String.format("CAST(%s as int), %s",
                 MediaStore.Audio.Media.TRACK, MediaStore.Audio.Media.DEFAULT_SORT_ORDER);
     }
+
+    /**
+     * @param sortOrder The sort order to check
+     * @return True if it is one of the song or album song sort orders above
+     */
+    public static boolean isSongSortOrder(final String sortOrder) {
+        switch (sortOrder != null ? sortOrder : "") {
+            case SongSortOrder.SONG_A_Z:
+            case SongSortOrder.SONG_Z_A:
+            case SongSortOrder.SONG_ARTIST:
+            case SongSortOrder.SONG_ALBUM:
+            case SongSortOrder.SONG_YEAR:
+            case SongSortOrder.SONG_DURATION:
+            case SongSortOrder.SONG_FILENAME:
+                return true;
+            default:
+                return AlbumSongSortOrder.SONG_TRACK_LIST.equals(sortOrder);
+        }
+    }
 }
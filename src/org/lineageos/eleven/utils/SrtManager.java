@@ -23,7 +23,6 @@ import android.os.Message;
 import android.util.Log;
 
 import java.io.File;
-import java.util.ArrayList;
 
 /**
  * Class that helps signal when srt text comes and goes
@@ -33,7 +32,7 @@ public abstract class SrtManager implements Handler.Callback {
     private static final boolean DEBUG = false;
     private static final int POST_TEXT_MSG = 0;
 
-    private ArrayList<SrtParser.SrtEntry> mEntries;
+    private SrtTimeline mEntries;
     private Handler mHandler;
     private HandlerThread mHandlerThread;
 
@@ -87,7 +86,7 @@ public abstract class SrtManager implements Handler.Callback {
         mLoader = new Runnable() {
             @Override
             public void run() {
-                onLoaded(this, SrtParser.getSrtEntries(f));
+                onLoaded(this, SrtParser.getSrtTimeline(f));
             }
         };
 
@@ -104,13 +103,8 @@ public abstract class SrtManager implements Handler.Callback {
                 Log.d(TAG, "Seeking to: " + timeMs);
             }
 
-            // find the first entry after the current time and set mNextIndex to the one before that
-            for (int i = 0; i < mEntries.size(); i++) {
-                mNextIndex = i;
-                if (i + 1 < mEntries.size() && mEntries.get(i + 1).mStartTimeMs > timeMs) {
-                    break;
-                }
-            }
+            // find the last entry starting before the current time
+            mNextIndex = mEntries.indexForTime(timeMs);
 
             postNextTimedText();
         }
@@ -124,7 +118,7 @@ public abstract class SrtManager implements Handler.Callback {
         postNextTimedText();
     }
 
-    private synchronized void onLoaded(Runnable r, ArrayList<SrtParser.SrtEntry> entries) {
+    private synchronized void onLoaded(Runnable r, SrtTimeline entries) {
         // if this is the same loader
         if (r == mLoader) {
             mEntries = entries;
@@ -158,21 +152,21 @@ public abstract class SrtManager implements Handler.Callback {
             long targetTime = -1;
 
             // shift mNextIndex until it hits the next item we want
-            while (mNextIndex < mEntries.size() && mEntries.get(mNextIndex).mStartTimeMs < timeMs) {
+            while (mNextIndex < mEntries.size() && mEntries.getStartTimeMs(mNextIndex) < timeMs) {
                 mNextIndex++;
             }
 
             // if the previous entry is valid, set the message and target time
-            if (mNextIndex > 0 && entrySurroundsTime(mEntries.get(mNextIndex - 1), timeMs)) {
-                currentMessage = mEntries.get(mNextIndex - 1).mLine;
-                targetTime = mEntries.get(mNextIndex - 1).mEndTimeMs;
+            if (mNextIndex > 0 && mEntries.surroundsTime(mNextIndex - 1, timeMs)) {
+                currentMessage = mEntries.getLine(mNextIndex - 1);
+                targetTime = mEntries.getEndTimeMs(mNextIndex - 1);
             }
 
             onTimedText(currentMessage);
 
             // if our next index is valid, and we don't have a target time, set it
             if (mNextIndex < mEntries.size() && targetTime == -1) {
-                targetTime = mEntries.get(mNextIndex).mStartTimeMs;
+                targetTime = mEntries.getStartTimeMs(mNextIndex);
             }
 
             // if we have a targeted time entry and we are playing, then queue up a delayed message
@@ -184,7 +178,7 @@ public abstract class SrtManager implements Handler.Callback {
 
                 if (DEBUG && mNextIndex < mEntries.size()) {
                     Log.d(TAG, "Preparing next message: " + delay + "ms from now with msg: " +
-                            mEntries.get(mNextIndex).mLine);
+                            mEntries.getLine(mNextIndex));
                 }
             }
         }
@@ -200,9 +194,5 @@ public abstract class SrtManager implements Handler.Callback {
         return false;
     }
 
-    private static boolean entrySurroundsTime(SrtParser.SrtEntry entry, long time) {
-        return entry.mStartTimeMs <= time && entry.mEndTimeMs >= time;
-    }
-
     public abstract void onTimedText(String txt);
 }
@@ -18,20 +18,47 @@ package org.lineageos.eleven.utils;
 
 import android.text.TextUtils;
 import android.util.Log;
+import android.util.LruCache;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.ArrayList;
 
 public class SrtParser {
     private static final String TAG = SrtParser.class.getSimpleName();
 
-    public static class SrtEntry {
-        public long mStartTimeMs;
-        public long mEndTimeMs;
-        String mLine;
+    private static final int CACHE_SIZE_MAX = 8;
+
+    /**
+     * Parsed timelines keyed by file path, checked against the file's last modified time
+     */
+    private static final LruCache<String, SrtTimeline> sCachedTimelines =
+            new LruCache<>(CACHE_SIZE_MAX);
+
+    /**
+     * Returns the timeline of the given srt file, only parsing it if it isn't cached yet or
+     * if the file changed since it was parsed.
+     *
+     * @param f the srt file
+     * @return the timeline or null if the file couldn't be parsed
+     */
+    public static SrtTimeline getSrtTimeline(File f) {
+        final String path = f.getAbsolutePath();
+        final long lastModified = f.lastModified();
+
+        final SrtTimeline cached = sCachedTimelines.get(path);
+        if (cached != null && cached.getLastModified() == lastModified) {
+            return cached;
+        }
+
+        final SrtTimeline timeline = parseSrtTimeline(f, lastModified);
+        if (timeline != null) {
+            sCachedTimelines.put(path, timeline);
+        } else {
+            sCachedTimelines.remove(path);
+        }
+        return timeline;
     }
 
     /**
@@ -46,15 +73,10 @@ public class SrtParser {
      * The timecode format should be hours:minutes:seconds,milliseconds with time units fixed to two
      * zero-padded digits and fractions fixed to three zero-padded digits (00:00:00,000).
      */
-    public static ArrayList<SrtEntry> getSrtEntries(File f) {
-        ArrayList<SrtEntry> ret = null;
-        FileReader reader = null;
-        BufferedReader br = null;
-
-        try {
-            reader = new FileReader(f);
-            br = new BufferedReader(reader);
+    private static SrtTimeline parseSrtTimeline(File f, long lastModified) {
+        final SrtTimeline.Builder builder = new SrtTimeline.Builder();
 
+        try (BufferedReader br = new BufferedReader(new FileReader(f))) {
             String header;
             // since we don't really care about the 1st line of each entry (the # val) then read
             // and discard it
@@ -66,11 +88,9 @@ public class SrtParser {
                     break;
                 }
 
-                SrtEntry entry = new SrtEntry();
-
-                String[] startEnd = header.split("-->");
-                entry.mStartTimeMs = parseMs(startEnd[0]);
-                entry.mEndTimeMs = parseMs(startEnd[1]);
+                final int separator = header.indexOf("-->");
+                final long startTimeMs = parseMs(header.substring(0, separator));
+                final long endTimeMs = parseMs(header.substring(separator + 3));
 
                 StringBuilder subtitleBuilder = new StringBuilder();
                 String s = br.readLine();
@@ -83,38 +103,16 @@ public class SrtParser {
                     }
                 }
 
-                entry.mLine = subtitleBuilder.toString();
-
-                if (ret == null) {
-                    ret = new ArrayList<>();
-                }
-
-                ret.add(entry);
+                builder.add(startTimeMs, endTimeMs, subtitleBuilder.toString());
             }
-        } catch (ArrayIndexOutOfBoundsException | IOException | NumberFormatException nfe) {
+        } catch (IndexOutOfBoundsException | IOException | NumberFormatException nfe) {
             // The file isn't a valid srt format
             // or the time is malformed
             Log.e(TAG, nfe.getMessage(), nfe);
-            ret = null;
-        } finally {
-            if (br != null) {
-                try {
-                    br.close();
-                } catch (IOException e) {
-                    Log.e(TAG, "Failed to close", e);
-                }
-            }
-
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (IOException e) {
-                    Log.e(TAG, "Failed to close reader", e);
-                }
-            }
+            return null;
         }
 
-        return ret;
+        return builder.isEmpty() ? null : builder.build(lastModified);
     }
 
     private static long parseMs(String in) {
@@ -0,0 +1,150 @@
+/*
+ * SPDX-FileCopyrightText: 2026 The LineageOS Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.lineageos.eleven.utils;
+
+import java.util.Arrays;
+
+/**
+ * Immutable, compact index of the entries of a srt file. Start and end times are kept in
+ * parallel primitive arrays sorted by start time so that seeking is a binary search.
+ */
+public final class SrtTimeline {
+    private final long[] mStartTimesMs;
+    private final long[] mEndTimesMs;
+    private final String[] mLines;
+    private final int mSize;
+
+    /**
+     * Last modified time of the file this timeline was parsed from
+     */
+    private final long mLastModified;
+
+    SrtTimeline(final long[] startTimesMs, final long[] endTimesMs, final String[] lines,
+                final int size, final long lastModified) {
+        mStartTimesMs = startTimesMs;
+        mEndTimesMs = endTimesMs;
+        mLines = lines;
+        mSize = size;
+        mLastModified = lastModified;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public long getStartTimeMs(final int index) {
+        return mStartTimesMs[index];
+    }
+
+    public long getEndTimeMs(final int index) {
+        return mEndTimesMs[index];
+    }
+
+    public String getLine(final int index) {
+        return mLines[index];
+    }
+
+    public long getLastModified() {
+        return mLastModified;
+    }
+
+    /**
+     * @return true if the entry at index is showing at the given time
+     */
+    public boolean surroundsTime(final int index, final long timeMs) {
+        return mStartTimesMs[index] <= timeMs && mEndTimesMs[index] >= timeMs;
+    }
+
+    /**
+     * Finds the last entry that starts at or before the given time
+     *
+     * @param timeMs the time to look for
+     * @return the index of that entry, or 0 if every entry starts after timeMs
+     */
+    public int indexForTime(final long timeMs) {
+        int low = 0;
+        int high = mSize - 1;
+        int result = 0;
+
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (mStartTimesMs[mid] <= timeMs) {
+                result = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Collects parsed entries into growing primitive arrays
+     */
+    static final class Builder {
+        private long[] mStartTimesMs = new long[64];
+        private long[] mEndTimesMs = new long[64];
+        private String[] mLines = new String[64];
+        private int mSize;
+        private boolean mSorted = true;
+
+        void add(final long startTimeMs, final long endTimeMs, final String line) {
+            if (mSize == mStartTimesMs.length) {
+                final int capacity = mSize * 2;
+                mStartTimesMs = Arrays.copyOf(mStartTimesMs, capacity);
+                mEndTimesMs = Arrays.copyOf(mEndTimesMs, capacity);
+                mLines = Arrays.copyOf(mLines, capacity);
+            }
+
+            if (mSize > 0 && startTimeMs < mStartTimesMs[mSize - 1]) {
+                mSorted = false;
+            }
+
+            mStartTimesMs[mSize] = startTimeMs;
+            mEndTimesMs[mSize] = endTimeMs;
+            mLines[mSize] = line;
+            mSize++;
+        }
+
+        boolean isEmpty() {
+            return mSize == 0;
+        }
+
+        SrtTimeline build(final long lastModified) {
+            if (!mSorted) {
+                sortByStartTime();
+            }
+
+            return new SrtTimeline(Arrays.copyOf(mStartTimesMs, mSize),
+                    Arrays.copyOf(mEndTimesMs, mSize), Arrays.copyOf(mLines, mSize), mSize,
+                    lastModified);
+        }
+
+        /**
+         * Files are normally in order already, but binary search depends on it so handle the
+         * odd file that isn't
+         */
+        private void sortByStartTime() {
+            for (int i = 1; i < mSize; i++) {
+                final long start = mStartTimesMs[i];
+                final long end = mEndTimesMs[i];
+                final String line = mLines[i];
+
+                int j = i - 1;
+                while (j >= 0 && mStartTimesMs[j] > start) {
+                    mStartTimesMs[j + 1] = mStartTimesMs[j];
+                    mEndTimesMs[j + 1] = mEndTimesMs[j];
+                    mLines[j + 1] = mLines[j];
+                    j--;
+                }
+
+                mStartTimesMs[j + 1] = start;
+                mEndTimesMs[j + 1] = end;
+                mLines[j + 1] = line;
+            }
+        }
+    }
+}
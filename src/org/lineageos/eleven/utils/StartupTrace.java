@@ -0,0 +1,159 @@
+/*
+ * SPDX-FileCopyrightText: 2026 The LineageOS Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.lineageos.eleven.utils;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Times the phases of a component's startup. Each phase is a {@link Trace} section, so it
+ * shows up in systrace and perfetto, and once the startup is over one line with the duration
+ * of every phase is appended to {@link #LOG_FILE} in the cache directory. Phases are meant to
+ * be started and ended on the same thread and within the same message, except the ones started
+ * with {@link #asyncPhase(String)}.
+ */
+public final class StartupTrace {
+    private static final String TAG = StartupTrace.class.getSimpleName();
+    private static final boolean DEBUG = false;
+
+    /**
+     * File the timing records are appended to, read by tools/measure_cold_start.sh
+     */
+    public static final String LOG_FILE = "startup_trace.log";
+
+    /**
+     * Number of records kept in the file
+     */
+    private static final int MAX_RECORDS = 50;
+
+    private static final Executor sExecutor = Executors.newSingleThreadExecutor(r -> {
+        final Thread thread = new Thread(r, TAG);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    private static final AtomicInteger sNextCookie = new AtomicInteger();
+
+    private final String mName;
+    private final int mCookie = sNextCookie.incrementAndGet();
+    private final long mStartTime;
+    private final List<String> mPhases = new ArrayList<>();
+
+    private String mPhase;
+    private long mPhaseStartTime;
+    private boolean mPhaseAsync;
+    private boolean mFinished;
+
+    /**
+     * @param name the component starting up, used as the prefix of the sections
+     */
+    public StartupTrace(final String name) {
+        mName = name;
+        mStartTime = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Ends the current phase, if any, and starts the next one. Does nothing once the startup
+     * is finished.
+     */
+    public void phase(final String phase) {
+        if (mFinished) {
+            return;
+        }
+        endPhase();
+        mPhase = phase;
+        mPhaseAsync = false;
+        mPhaseStartTime = SystemClock.elapsedRealtime();
+        Trace.beginSection(mName + ":" + phase);
+    }
+
+    /**
+     * Like {@link #phase(String)}, for a phase that ends in a later message, such as waiting
+     * for the first frame. It is traced as an async section, which doesn't have to be nested
+     * within the other sections of the thread.
+     */
+    public void asyncPhase(final String phase) {
+        if (mFinished) {
+            return;
+        }
+        endPhase();
+        mPhase = phase;
+        mPhaseAsync = true;
+        mPhaseStartTime = SystemClock.elapsedRealtime();
+        Trace.beginAsyncSection(mName + ":" + phase, mCookie);
+    }
+
+    /**
+     * Ends the current phase, if any
+     */
+    public void endPhase() {
+        if (mPhase == null) {
+            return;
+        }
+        if (mPhaseAsync) {
+            Trace.endAsyncSection(mName + ":" + mPhase, mCookie);
+        } else {
+            Trace.endSection();
+        }
+        mPhases.add(mPhase + "=" + (SystemClock.elapsedRealtime() - mPhaseStartTime));
+        mPhase = null;
+    }
+
+    /**
+     * Ends the startup and writes its record in the background. Only the first call counts.
+     *
+     * @param context The {@link Context} to use
+     */
+    public void finish(final Context context) {
+        if (mFinished) {
+            return;
+        }
+        mFinished = true;
+        endPhase();
+
+        final String record = System.currentTimeMillis() + " " + mName + " total="
+                + (SystemClock.elapsedRealtime() - mStartTime) + " " + String.join(" ", mPhases);
+        if (DEBUG) {
+            Log.d(TAG, record);
+        }
+
+        final File file = new File(context.getCacheDir(), LOG_FILE);
+        sExecutor.execute(() -> append(file, record));
+    }
+
+    private static void append(final File file, final String record) {
+        try {
+            final List<String> records = file.exists()
+                    ? new ArrayList<>(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8))
+                    : new ArrayList<>();
+            records.add(record);
+            final int first = Math.max(0, records.size() - MAX_RECORDS);
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(file),
+                    StandardCharsets.UTF_8)) {
+                for (int i = first; i < records.size(); i++) {
+                    writer.write(records.get(i));
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to write " + file, e);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * SPDX-FileCopyrightText: 2026 The LineageOS Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.lineageos.eleven.utils;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.BaseColumns;
+import android.provider.MediaStore;
+import android.provider.MediaStore.MediaColumns;
+import android.util.Log;
+
+import org.lineageos.eleven.provider.RecentStore;
+import org.lineageos.eleven.provider.SongPlayCount;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Deletes tracks from the device on a background thread. The ids are handled in chunks so
+ * that every step (the media store query and delete, the queue update and the cleanup of
+ * the local stores) is one bounded call per chunk instead of one call per track.
+ */
+public final class TrackDeleter {
+    private static final String TAG = TrackDeleter.class.getSimpleName();
+
+    /**
+     * Number of tracks handled per chunk
+     */
+    private static final int CHUNK_SIZE = 500;
+
+    private static final String[] PROJECTION = new String[]{
+            BaseColumns._ID, MediaColumns.DATA
+    };
+
+    private static final Executor sExecutor = Executors.newSingleThreadExecutor(r -> {
+        final Thread thread = new Thread(r, TAG);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    public interface Listener {
+        /**
+         * Called on the main thread after each chunk
+         *
+         * @param done  number of tracks handled so far
+         * @param total number of tracks to handle
+         */
+        void onProgress(int done, int total);
+
+        /**
+         * Called on the main thread once all chunks are done
+         *
+         * @param deleted number of tracks that were removed from the media store
+         */
+        void onFinished(int deleted);
+    }
+
+    private TrackDeleter() {
+    }
+
+    /**
+     * Queues the deletion of the given tracks
+     *
+     * @param context  The {@link Context} to use
+     * @param ids      The ids of the tracks to delete
+     * @param listener Told on the main thread after each chunk and once the tracks are
+     *                 deleted, may be null
+     */
+    public static void delete(final Context context, final long[] ids, final Listener listener) {
+        final Context appContext = context.getApplicationContext();
+        final long[] list = ids.clone();
+        final Handler handler = new Handler(Looper.getMainLooper());
+        sExecutor.execute(() -> {
+            int deleted = 0;
+            for (int start = 0; start < list.length; start += CHUNK_SIZE) {
+                final int end = Math.min(list.length, start + CHUNK_SIZE);
+                deleted += deleteChunk(appContext, Arrays.copyOfRange(list, start, end));
+                if (listener != null) {
+                    handler.post(() -> listener.onProgress(end, list.length));
+                }
+            }
+
+            // the media store already tells its own observers, this only covers the
+            // audio lists for anyone listening on the collection
+            appContext.getContentResolver().notifyChange(
+                    MediaStore.Audio.Media.getContentUri(MediaStore.VOLUME_EXTERNAL), null);
+
+            if (listener != null) {
+                final int result = deleted;
+                handler.post(() -> listener.onFinished(result));
+            }
+        });
+    }
+
+    private static int deleteChunk(final Context context, final long[] ids) {
+        final ContentResolver resolver = context.getContentResolver();
+        final Uri uri = MediaStore.Audio.Media.getContentUri(MediaStore.VOLUME_EXTERNAL);
+        final StringBuilder selection = new StringBuilder(BaseColumns._ID + " IN (");
+        for (int i = 0; i < ids.length; i++) {
+            if (i > 0) {
+                selection.append(',');
+            }
+            selection.append(ids[i]);
+        }
+        selection.append(')');
+
+        final long[] found;
+        final String[] paths;
+        try (Cursor c = resolver.query(uri, PROJECTION, selection.toString(), null, null)) {
+            if (c == null || !c.moveToFirst()) {
+                return 0;
+            }
+            found = new long[c.getCount()];
+            paths = new String[found.length];
+            int i = 0;
+            do {
+                found[i] = c.getLong(0);
+                paths[i] = c.getString(1);
+                i++;
+            } while (c.moveToNext() && i < found.length);
+        }
+
+        // Step 1: Remove the tracks from the queue and the local stores
+        MusicUtils.removeTracks(found);
+        SongPlayCount.getInstance(context).removeItems(found);
+        RecentStore.getInstance(context).removeItems(found);
+
+        // Step 2: Remove the tracks from the media store
+        final int deleted = resolver.delete(uri, selection.toString(), null);
+
+        // Step 3: Remove the files
+        for (final String path : paths) {
+            if (path == null) {
+                continue;
+            }
+            try { // File.delete can throw a security exception
+                if (!new File(path).delete()) {
+                    Log.e(TAG, "Failed to delete file " + path);
+                }
+            } catch (final SecurityException ex) {
+                Log.e(TAG, "Not allowed to delete file " + path, ex);
+            }
+        }
+
+        return deleted;
+    }
+}
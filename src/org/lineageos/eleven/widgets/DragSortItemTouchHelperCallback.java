@@ -51,6 +51,13 @@ public class DragSortItemTouchHelperCallback extends ItemTouchHelper.Callback {
         return true;
     }
 
+    @Override
+    public void clearView(@NonNull RecyclerView recyclerView,
+                          @NonNull RecyclerView.ViewHolder viewHolder) {
+        super.clearView(recyclerView, viewHolder);
+        mListener.onItemDropped();
+    }
+
     @Override
     public void onSwiped(@NonNull RecyclerView.ViewHolder viewHolder, int i) {
 
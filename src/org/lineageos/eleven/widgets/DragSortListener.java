@@ -18,4 +18,10 @@ package org.lineageos.eleven.widgets;
 public interface DragSortListener {
 
     void onItemMove(int startPosition, int endPosition);
+
+    /**
+     * Called once the user lets go of the dragged item
+     */
+    default void onItemDropped() {
+    }
 }
@@ -28,6 +28,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import org.lineageos.eleven.R;
+import org.lineageos.eleven.service.PlaybackSnapshot;
 import org.lineageos.eleven.utils.MusicUtils;
 
 public class MainPlaybackControls extends FrameLayout {
@@ -41,6 +42,11 @@ public class MainPlaybackControls extends FrameLayout {
     private final PlayPauseButtonContainer mPlayPauseButtonContainer;
     private final RepeatButton mRepeatButton;
 
+    /**
+     * The time shown by mCurrentTime, so it is only formatted when the second changes
+     */
+    private long mCurrentTimeInSeconds = -1;
+
     public MainPlaybackControls(@NonNull Context context) {
         this(context, null);
     }
@@ -74,7 +80,7 @@ public class MainPlaybackControls extends FrameLayout {
             @Override
             public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
                 if (fromUser) {
-                    refreshCurrentTimeText(progress);
+                    refreshCurrentTimeText(progress / 1000);
                 }
             }
 
@@ -85,8 +91,7 @@ public class MainPlaybackControls extends FrameLayout {
 
             @Override
             public void onStopTrackingTouch(SeekBar seekBar) {
-                final long wantedDurationInMs = seekBar.getProgress() * 1000L;
-                MusicUtils.seek(wantedDurationInMs);
+                MusicUtils.seek(seekBar.getProgress());
             }
         });
 
@@ -98,11 +103,11 @@ public class MainPlaybackControls extends FrameLayout {
         mPlayPauseButtonContainer.enableAndShow();
     }
 
-    public void updateNowPlayingInfo() {
-        final int durationInSeconds = MusicUtils.durationInSeconds();
-        mSeeker.setMax(durationInSeconds);
+    public void updateNowPlayingInfo(final long duration) {
+        // the seek bar works in milliseconds so it can move smoothly
+        mSeeker.setMax((int) Math.max(duration, 0));
 
-        final String totalTime = MusicUtils.makeShortTimeString(getContext(), durationInSeconds);
+        final String totalTime = MusicUtils.makeShortTimeString(getContext(), duration / 1000);
         if (!totalTime.contentEquals(mTotalTime.getText())) {
             mTotalTime.setText(totalTime);
         }
@@ -128,27 +133,32 @@ public class MainPlaybackControls extends FrameLayout {
 
     // region refresh time
     public void refreshCurrentTime() {
-        final long position = MusicUtils.position();
-        final long duration = MusicUtils.duration();
-        final boolean isPlaying = MusicUtils.isPlaying();
-        refreshCurrentTime(position, duration, isPlaying);
+        final PlaybackSnapshot snapshot = MusicUtils.getPlaybackSnapshot();
+        refreshCurrentTime(snapshot.getPosition(), snapshot.mDuration, snapshot.mIsPlaying);
     }
 
     public void refreshCurrentTime(long position, long duration, boolean isPlaying) {
         if (position >= 0 && duration > 0) {
-            final int posInSeconds = ((int) (position / 1000));
-            refreshCurrentTimeText(posInSeconds);
-            mSeeker.setProgress(posInSeconds);
+            if (mSeeker.getMax() != duration) {
+                updateNowPlayingInfo(duration);
+            }
+            final long posInSeconds = position / 1000;
+            if (posInSeconds != mCurrentTimeInSeconds) {
+                refreshCurrentTimeText(posInSeconds);
+            }
+            mSeeker.setProgress((int) position);
 
             if (isPlaying) {
                 mCurrentTime.setVisibility(View.VISIBLE);
             }
         } else {
             mCurrentTime.setText(TIME_WHICH_LOOKS_LIKE_UNAMUSED_FACE);
+            mCurrentTimeInSeconds = -1;
         }
     }
 
     private void refreshCurrentTimeText(final long posInSeconds) {
+        mCurrentTimeInSeconds = posInSeconds;
         final String currentDuration = MusicUtils.makeShortTimeString(getContext(), posInSeconds);
         mCurrentTime.setText(currentDuration);
     }
@@ -23,6 +23,7 @@ import android.widget.FrameLayout;
 import android.widget.ProgressBar;
 
 import org.lineageos.eleven.R;
+import org.lineageos.eleven.service.PlaybackSnapshot;
 import org.lineageos.eleven.utils.MusicUtils;
 
 /**
@@ -35,6 +36,7 @@ public class PlayPauseProgressButton extends FrameLayout {
     private ProgressBar mProgressBar;
     private PlayPauseButton mPlayPauseButton;
     private Runnable mUpdateProgress;
+    private PlaybackSnapshot mSnapshot = PlaybackSnapshot.EMPTY;
     private boolean mPaused;
 
     public PlayPauseProgressButton(Context context, AttributeSet attrs) {
@@ -132,8 +134,17 @@ public class PlayPauseProgressButton extends FrameLayout {
      * Updates the state of the progress bar and the play pause button
      */
     public void updateState() {
-        long currentSongDuration = MusicUtils.duration();
-        long currentSongProgress = MusicUtils.position();
+        mSnapshot = MusicUtils.getPlaybackSnapshot();
+        updateProgress();
+        mPlayPauseButton.updateState();
+    }
+
+    /**
+     * Updates the progress bar from the last known playback state, without asking the service
+     */
+    private void updateProgress() {
+        final long currentSongDuration = mSnapshot.mDuration;
+        final long currentSongProgress = mSnapshot.getPosition();
 
         int progress = 0;
         if (currentSongDuration > 0) {
@@ -141,7 +152,6 @@ public class PlayPauseProgressButton extends FrameLayout {
         }
 
         mProgressBar.setProgress(progress);
-        mPlayPauseButton.updateState();
     }
 
     /**
@@ -150,7 +160,7 @@ public class PlayPauseProgressButton extends FrameLayout {
     private void postUpdate() {
         if (mUpdateProgress == null) {
             mUpdateProgress = () -> {
-                updateState();
+                updateProgress();
                 postDelayed(mUpdateProgress, MusicUtils.UPDATE_FREQUENCY_MS);
             };
         }
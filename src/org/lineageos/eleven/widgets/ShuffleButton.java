@@ -46,10 +46,18 @@ public class ShuffleButton extends AudioButton {
             case MusicPlaybackService.SHUFFLE_NORMAL:
             case MusicPlaybackService.SHUFFLE_AUTO:
                 setContentDescription(getResources().getString(R.string.accessibility_shuffle_all));
+                setImageResource(R.drawable.btn_playback_shuffle_all);
+                setAlpha(ACTIVE_ALPHA);
+                break;
+            case MusicPlaybackService.SHUFFLE_SMART:
+                setContentDescription(
+                        getResources().getString(R.string.accessibility_shuffle_smart));
+                setImageResource(R.drawable.btn_playback_shuffle_smart);
                 setAlpha(ACTIVE_ALPHA);
                 break;
             case MusicPlaybackService.SHUFFLE_NONE:
                 setContentDescription(getResources().getString(R.string.accessibility_shuffle));
+                setImageResource(R.drawable.btn_playback_shuffle_all);
                 setAlpha(INACTIVE_ALPHA);
                 break;
             default:
@@ -16,8 +16,6 @@
  */
 package org.lineageos.eleven.widgets;
 
-import android.animation.ObjectAnimator;
-import android.animation.ValueAnimator;
 import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Color;
@@ -26,11 +24,12 @@ import android.media.audiofx.Visualizer;
 import android.os.AsyncTask;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.View;
 
 import androidx.core.content.ContextCompat;
 
-import org.lineageos.eleven.R;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class VisualizerView extends View {
     private static final String TAG = VisualizerView.class.getSimpleName();
@@ -40,25 +39,72 @@ public class VisualizerView extends View {
     private static final long DURATION_LINK = 800;
     private static final long DURATION_UNLINK = 600;
 
+    private static final long COLOR_START_DELAY_NANOS = 600_000_000L;
+    private static final long COLOR_DURATION_NANOS = 1_200_000_000L;
+
+    private static final int BAR_COUNT = 32;
+    private static final float BAR_HEIGHT_PER_DB = 16f;
+
+    /**
+     * Time constant used to ease the bars towards the latest capture
+     */
+    private static final float SMOOTHING_TIME_CONSTANT_NANOS = 40_000_000f;
+
+    /**
+     * The capture rate is divided by this while the view isn't shown on screen
+     */
+    private static final int HIDDEN_CAPTURE_RATE_DIVIDER = 8;
+
+    /**
+     * 10 * log10(magnitude) for every squared magnitude a byte sized fft bin can have,
+     * so the capture callback doesn't need to do any floating point math
+     */
+    private static final byte[] DB_TABLE = new byte[2 * 128 * 128 + 1];
+
+    static {
+        for (int i = 1; i < DB_TABLE.length; i++) {
+            DB_TABLE[i] = (byte) (10 * Math.log10(i));
+        }
+    }
+
+    private static final int SNAPSHOT_INDEX_MASK = 0x3;
+    private static final int SNAPSHOT_DIRTY = 0x4;
+
     private Paint mPaint;
     private Visualizer mVisualizer;
-    private ObjectAnimator mVisualizerColorAnimator;
 
-    private final ValueAnimator[] mValueAnimators = new ValueAnimator[32];
-    private final float[] mFFTPoints = new float[128];
+    private final float[] mFFTPoints = new float[BAR_COUNT * 4];
+
+    /**
+     * Bar values in dB. The capture thread and the render loop each own one buffer and
+     * swap it with the ready one, so neither side ever waits on the other
+     */
+    private final int[][] mSnapshots = new int[3][BAR_COUNT];
+    private final AtomicInteger mReadySnapshot = new AtomicInteger(0);
+    private int mCaptureSnapshot = 1;
+    private int mRenderSnapshot = 2;
 
     private boolean mVisible = false;
     private boolean mPlaying = false;
     private boolean mPowerSaveMode = false;
     private boolean mDisplaying = false; // the state we're animating to
+    private volatile boolean mShown = true;
+
+    private boolean mSmoothing = true;
+    private boolean mRendering = false;
+    private long mLastFrameTimeNanos;
 
     private int mColor;
+    private int mColorFrom;
+    private long mColorStartNanos = -1;
+
+    private long mFrameCount;
+    private long mTotalFrameTimeNanos;
+    private long mMaxFrameTimeNanos;
 
     private final Visualizer.OnDataCaptureListener mVisualizerListener =
             new Visualizer.OnDataCaptureListener() {
                 byte rfk, ifk;
-                int dbValue;
-                float magnitude;
 
                 @Override
                 public void onWaveFormDataCapture(Visualizer visualizer, byte[] bytes,
@@ -69,19 +115,42 @@ public class VisualizerView extends View {
                 @Override
                 public void onFftDataCapture(Visualizer visualizer, byte[] fft,
                                              int samplingRate) {
-                    for (int i = 0; i < 32; i++) {
-                        mValueAnimators[i].cancel();
-
+                    final int[] bars = mSnapshots[mCaptureSnapshot];
+                    for (int i = 0; i < BAR_COUNT; i++) {
                         rfk = fft[i * 2 + 2];
                         ifk = fft[i * 2 + 3];
-                        magnitude = rfk * rfk + ifk * ifk;
-                        dbValue = magnitude > 0 ? (int) (10 * Math.log10(magnitude)) : 0;
+                        bars[i] = DB_TABLE[rfk * rfk + ifk * ifk];
+                    }
+
+                    // publish the new values and take back whatever the renderer didn't pick up
+                    mCaptureSnapshot = mReadySnapshot.getAndSet(
+                            mCaptureSnapshot | SNAPSHOT_DIRTY) & SNAPSHOT_INDEX_MASK;
+                }
+            };
+
+    private final Choreographer.FrameCallback mFrameCallback =
+            new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    if (!mRendering) {
+                        return;
+                    }
+
+                    if (mLastFrameTimeNanos != 0) {
+                        final long frameTime = frameTimeNanos - mLastFrameTimeNanos;
+                        mFrameCount++;
+                        mTotalFrameTimeNanos += frameTime;
+                        mMaxFrameTimeNanos = Math.max(mMaxFrameTimeNanos, frameTime);
 
-                        mValueAnimators[i].setFloatValues(
-                                mFFTPoints[i * 4 + 1],
-                                mFFTPoints[3] - (dbValue * 16f));
-                        mValueAnimators[i].start();
+                        consumeSnapshot();
+                        updateBars(frameTime);
                     }
+                    mLastFrameTimeNanos = frameTimeNanos;
+
+                    updateColor(frameTimeNanos);
+                    invalidate();
+
+                    Choreographer.getInstance().postFrameCallback(this);
                 }
             };
 
@@ -97,15 +166,35 @@ public class VisualizerView extends View {
 
             mVisualizer.setEnabled(false);
             mVisualizer.setCaptureSize(66);
-            mVisualizer.setDataCaptureListener(mVisualizerListener, Visualizer.getMaxCaptureRate(),
+            mVisualizer.setDataCaptureListener(mVisualizerListener, getCaptureRate(),
                     false, true);
             mVisualizer.setEnabled(true);
         }
     };
 
+    private final Runnable mUpdateCaptureRate = new Runnable() {
+        @Override
+        public void run() {
+            if (mVisualizer == null) {
+                return;
+            }
+
+            // the capture rate can only be changed while the visualizer is disabled
+            try {
+                mVisualizer.setEnabled(false);
+                mVisualizer.setDataCaptureListener(mVisualizerListener, getCaptureRate(),
+                        false, true);
+                mVisualizer.setEnabled(true);
+            } catch (IllegalStateException e) {
+                Log.e(TAG, "error updating visualizer capture rate", e);
+            }
+        }
+    };
+
     private final Runnable mAsyncUnlinkVisualizer = new Runnable() {
         @Override
         public void run() {
+            stopRendering();
             AsyncTask.execute(mUnlinkVisualizer);
         }
     };
@@ -145,12 +234,12 @@ public class VisualizerView extends View {
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
 
-        float barUnit = w / 32f;
+        float barUnit = w / (float) BAR_COUNT;
         float barWidth = barUnit * 8f / 9f;
-        barUnit = barWidth + (barUnit - barWidth) * 32f / 31f;
+        barUnit = barWidth + (barUnit - barWidth) * BAR_COUNT / (BAR_COUNT - 1f);
         mPaint.setStrokeWidth(barWidth);
 
-        for (int i = 0; i < 32; i++) {
+        for (int i = 0; i < BAR_COUNT; i++) {
             mFFTPoints[i * 4] = mFFTPoints[i * 4 + 2] = i * barUnit + (barWidth / 2);
             mFFTPoints[i * 4 + 1] = h;
             mFFTPoints[i * 4 + 3] = h;
@@ -166,22 +255,31 @@ public class VisualizerView extends View {
         }
     }
 
+    @Override
+    public void onVisibilityAggregated(boolean isVisible) {
+        super.onVisibilityAggregated(isVisible);
+
+        if (mShown != isVisible) {
+            mShown = isVisible;
+            // keep the visualizer linked so it comes back instantly, but capture less often
+            // and don't render anything while nobody can see it
+            AsyncTask.execute(mUpdateCaptureRate);
+            updateRendering();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        stopRendering();
+    }
+
     public void initialize(Context context) {
         mColor = ContextCompat.getColor(context, android.R.color.white);
 
         mPaint = new Paint();
         mPaint.setAntiAlias(true);
         mPaint.setColor(mColor);
-
-        for (int i = 0; i < 32; i++) {
-            final int j = i * 4 + 1;
-            mValueAnimators[i] = new ValueAnimator();
-            mValueAnimators[i].setDuration(128);
-            mValueAnimators[i].addUpdateListener(animation ->
-                    mFFTPoints[j] = (float) animation.getAnimatedValue());
-        }
-
-        mValueAnimators[31].addUpdateListener(animation -> postInvalidate());
     }
 
     public void setVisible(boolean visible) {
@@ -205,6 +303,13 @@ public class VisualizerView extends View {
         }
     }
 
+    /**
+     * @param smoothing true to ease the bars towards new values, false to jump to them
+     */
+    public void setSmoothing(boolean smoothing) {
+        mSmoothing = smoothing;
+    }
+
     public void setColor(int color) {
         if (color == Color.TRANSPARENT) {
             color = Color.WHITE;
@@ -215,17 +320,113 @@ public class VisualizerView extends View {
         if (mColor != color) {
             mColor = color;
 
-            if (mVisualizer != null) {
-                if (mVisualizerColorAnimator != null) {
-                    mVisualizerColorAnimator.cancel();
-                }
-
-                mVisualizerColorAnimator = ObjectAnimator.ofArgb(mPaint, "color",
-                        mPaint.getColor(), mColor);
-                mVisualizerColorAnimator.setStartDelay(600);
-                mVisualizerColorAnimator.setDuration(1200);
-                mVisualizerColorAnimator.start();
+            if (mRendering) {
+                // the render loop takes care of fading to the new color
+                mColorFrom = mPaint.getColor();
+                mColorStartNanos = System.nanoTime() + COLOR_START_DELAY_NANOS;
             } else {
+                mColorStartNanos = -1;
+                mPaint.setColor(mColor);
+            }
+        }
+    }
+
+    /**
+     * @return the number of frames rendered since the last reset
+     */
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * @return the average time between two rendered frames in ns, or 0 if none were rendered
+     */
+    public long getAverageFrameTimeNanos() {
+        return mFrameCount == 0 ? 0 : mTotalFrameTimeNanos / mFrameCount;
+    }
+
+    /**
+     * @return the longest time between two rendered frames in ns
+     */
+    public long getMaxFrameTimeNanos() {
+        return mMaxFrameTimeNanos;
+    }
+
+    public void resetFrameStats() {
+        mFrameCount = 0;
+        mTotalFrameTimeNanos = 0;
+        mMaxFrameTimeNanos = 0;
+    }
+
+    private int getCaptureRate() {
+        final int maxRate = Visualizer.getMaxCaptureRate();
+        return mShown ? maxRate : maxRate / HIDDEN_CAPTURE_RATE_DIVIDER;
+    }
+
+    private void consumeSnapshot() {
+        if ((mReadySnapshot.get() & SNAPSHOT_DIRTY) != 0) {
+            mRenderSnapshot = mReadySnapshot.getAndSet(mRenderSnapshot) & SNAPSHOT_INDEX_MASK;
+        }
+    }
+
+    private void updateBars(long frameTimeNanos) {
+        final float factor = mSmoothing
+                ? 1f - (float) Math.exp(-frameTimeNanos / SMOOTHING_TIME_CONSTANT_NANOS)
+                : 1f;
+        final int[] bars = mSnapshots[mRenderSnapshot];
+        final float bottom = mFFTPoints[3];
+
+        for (int i = 0; i < BAR_COUNT; i++) {
+            final float current = mFFTPoints[i * 4 + 1];
+            final float target = bottom - bars[i] * BAR_HEIGHT_PER_DB;
+            mFFTPoints[i * 4 + 1] = current + (target - current) * factor;
+        }
+    }
+
+    private void updateColor(long frameTimeNanos) {
+        if (mColorStartNanos < 0 || frameTimeNanos < mColorStartNanos) {
+            return;
+        }
+
+        final float fraction = Math.min(1f,
+                (frameTimeNanos - mColorStartNanos) / (float) COLOR_DURATION_NANOS);
+        final int from = mColorFrom;
+        final int to = mColor;
+        mPaint.setColor(Color.argb(
+                (int) (Color.alpha(from) + (Color.alpha(to) - Color.alpha(from)) * fraction),
+                (int) (Color.red(from) + (Color.red(to) - Color.red(from)) * fraction),
+                (int) (Color.green(from) + (Color.green(to) - Color.green(from)) * fraction),
+                (int) (Color.blue(from) + (Color.blue(to) - Color.blue(from)) * fraction)));
+
+        if (fraction >= 1f) {
+            mColorStartNanos = -1;
+        }
+    }
+
+    private void updateRendering() {
+        if (mDisplaying && mShown) {
+            startRendering();
+        } else {
+            stopRendering();
+        }
+    }
+
+    private void startRendering() {
+        if (!mRendering) {
+            mRendering = true;
+            mLastFrameTimeNanos = 0;
+            Choreographer.getInstance().postFrameCallback(mFrameCallback);
+        }
+    }
+
+    private void stopRendering() {
+        if (mRendering) {
+            mRendering = false;
+            Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+
+            // finish any pending color fade right away
+            if (mColorStartNanos >= 0) {
+                mColorStartNanos = -1;
                 mPaint.setColor(mColor);
             }
         }
@@ -237,6 +438,7 @@ public class VisualizerView extends View {
                 mDisplaying = true;
 
                 AsyncTask.execute(mLinkVisualizer);
+                updateRendering();
                 animate()
                         .alpha(1f)
                         .setDuration(DURATION_LINK);
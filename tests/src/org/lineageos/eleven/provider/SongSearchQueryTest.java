@@ -0,0 +1,57 @@
+/*
+ * SPDX-FileCopyrightText: 2026 The LineageOS Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.lineageos.eleven.provider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class SongSearchQueryTest {
+
+    @Test
+    public void splitsOnAnythingButLettersAndDigits() {
+        assertEquals(Arrays.asList("AC", "DC", "Back", "in", "Black"),
+                SongSearchQuery.getWords("  AC/DC - Back in Black! "));
+        assertEquals(Arrays.asList("Sigur", "Rós", "Ágætis", "byrjun"),
+                SongSearchQuery.getWords("Sigur Rós: Ágætis byrjun"));
+        assertEquals(Arrays.asList("1999"), SongSearchQuery.getWords("\"1999\""));
+    }
+
+    @Test
+    public void hasNoWordsForBlankQueries() {
+        assertTrue(SongSearchQuery.getWords(null).isEmpty());
+        assertTrue(SongSearchQuery.getWords("").isEmpty());
+        assertTrue(SongSearchQuery.getWords("   ").isEmpty());
+        assertTrue(SongSearchQuery.getWords("-*\"()").isEmpty());
+    }
+
+    @Test
+    public void dropsSearchOperators() {
+        // quotes, stars, parentheses and column filters would change the meaning of the match
+        assertEquals(Arrays.asList("title", "foo", "bar", "baz"),
+                SongSearchQuery.getWords("title:foo* (\"bar\" -baz)"));
+    }
+
+    @Test
+    public void matchesEveryWordAsPrefixInAnyColumn() {
+        assertEquals("hey* jude*",
+                SongSearchQuery.makeMatch(Arrays.asList("hey", "jude"), null));
+    }
+
+    @Test
+    public void matchesEveryWordAsPrefixInOneColumn() {
+        assertEquals("artist:pink* artist:floyd*",
+                SongSearchQuery.makeMatch(Arrays.asList("pink", "floyd"), "artist"));
+    }
+
+    @Test
+    public void matchesNothingWithoutWords() {
+        assertEquals("", SongSearchQuery.makeMatch(Collections.emptyList(), "title"));
+    }
+}
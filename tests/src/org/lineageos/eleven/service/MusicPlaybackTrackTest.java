@@ -0,0 +1,135 @@
+/*
+ * SPDX-FileCopyrightText: 2026 The LineageOS Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.lineageos.eleven.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.database.Cursor;
+
+import org.junit.Test;
+import org.lineageos.eleven.Config.IdType;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+
+public class MusicPlaybackTrackTest {
+    /**
+     * The size of a very large library, the case opening sources in the service is meant for
+     */
+    private static final int LIBRARY_SIZE = 100_000;
+
+    private static final long SOURCE_ID = 42;
+
+    @Test
+    public void readsLargeLibraryInCursorOrder() {
+        final SyntheticCursor rows = new SyntheticCursor(LIBRARY_SIZE);
+        final Cursor cursor = rows.asCursor();
+        assertTrue(cursor.moveToFirst());
+
+        final ArrayList<MusicPlaybackTrack> tracks =
+                MusicPlaybackTrack.fromCursor(cursor, 0, SOURCE_ID, IdType.Artist);
+
+        assertEquals(LIBRARY_SIZE, tracks.size());
+        for (int i = 0; i < LIBRARY_SIZE; i++) {
+            final MusicPlaybackTrack track = tracks.get(i);
+            assertEquals(SyntheticCursor.idAt(i), track.mId);
+            assertEquals(SOURCE_ID, track.mSourceId);
+            assertEquals(IdType.Artist, track.mSourceType);
+            assertEquals(i, track.mSourcePosition);
+        }
+        // every row is read exactly once, straight from the cursor
+        assertEquals(LIBRARY_SIZE, rows.mRowsRead);
+        assertTrue(cursor.isAfterLast());
+    }
+
+    @Test
+    public void startsAtFirstRowOfUnmovedCursor() {
+        final ArrayList<MusicPlaybackTrack> tracks = MusicPlaybackTrack.fromCursor(
+                new SyntheticCursor(3).asCursor(), 0, -1, IdType.NA);
+
+        assertEquals(3, tracks.size());
+        assertEquals(SyntheticCursor.idAt(0), tracks.get(0).mId);
+    }
+
+    @Test
+    public void startsAtCurrentRow() {
+        final Cursor cursor = new SyntheticCursor(10).asCursor();
+        assertTrue(cursor.moveToPosition(4));
+
+        final ArrayList<MusicPlaybackTrack> tracks =
+                MusicPlaybackTrack.fromCursor(cursor, 0, -1, IdType.NA);
+
+        assertEquals(6, tracks.size());
+        assertEquals(SyntheticCursor.idAt(4), tracks.get(0).mId);
+        assertEquals(0, tracks.get(0).mSourcePosition);
+    }
+
+    @Test
+    public void readsNothingFromEmptyCursor() {
+        assertEquals(0, MusicPlaybackTrack.fromCursor(new SyntheticCursor(0).asCursor(), 0,
+                -1, IdType.NA).size());
+    }
+
+    /**
+     * A single column cursor of song ids that only implements what reading it forward needs
+     */
+    private static class SyntheticCursor implements InvocationHandler {
+        private final int mCount;
+        private int mPosition = -1;
+        private int mRowsRead;
+
+        SyntheticCursor(final int count) {
+            mCount = count;
+        }
+
+        static long idAt(final int position) {
+            // not sorted, so the order of the result is checked as well
+            return (position * 7919L) % 1_000_003L;
+        }
+
+        Cursor asCursor() {
+            return (Cursor) Proxy.newProxyInstance(Cursor.class.getClassLoader(),
+                    new Class<?>[]{Cursor.class}, this);
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) {
+            switch (method.getName()) {
+                case "getCount":
+                    return mCount;
+                case "getPosition":
+                    return mPosition;
+                case "isBeforeFirst":
+                    return mCount == 0 || mPosition < 0;
+                case "isAfterLast":
+                    return mCount == 0 || mPosition >= mCount;
+                case "moveToFirst":
+                    return moveTo(0);
+                case "moveToNext":
+                    return moveTo(mPosition + 1);
+                case "moveToPosition":
+                    return moveTo((Integer) args[0]);
+                case "getLong":
+                    if ((Integer) args[0] != 0 || mPosition < 0 || mPosition >= mCount) {
+                        throw new IllegalStateException("No row or column " + args[0]);
+                    }
+                    mRowsRead++;
+                    return idAt(mPosition);
+                case "close":
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        }
+
+        private boolean moveTo(final int position) {
+            mPosition = Math.max(-1, Math.min(position, mCount));
+            return mPosition >= 0 && mPosition < mCount;
+        }
+    }
+}
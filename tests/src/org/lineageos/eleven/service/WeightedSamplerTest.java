@@ -0,0 +1,107 @@
+/*
+ * SPDX-FileCopyrightText: 2026 The LineageOS Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.lineageos.eleven.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class WeightedSamplerTest {
+    private static final long SEED = 0x5eedL;
+    private static final int DRAWS = 200_000;
+
+    /**
+     * Largest allowed difference between the drawn and the expected share of an index
+     */
+    private static final double TOLERANCE = 0.005;
+
+    @Test
+    public void drawsProportionallyToWeights() {
+        final double[] weights = {1, 2, 3, 4, 0, 10};
+        final WeightedSampler sampler = new WeightedSampler(weights, new Random(SEED));
+
+        assertFrequencies(weights, draw(sampler));
+    }
+
+    @Test
+    public void followsWeightUpdates() {
+        final double[] weights = {5, 5, 5, 5, 5, 5, 5};
+        final WeightedSampler sampler = new WeightedSampler(weights, new Random(SEED));
+        weights[0] = 0;
+        weights[3] = 20;
+        weights[6] = 0.5;
+        sampler.setWeight(0, weights[0]);
+        sampler.setWeight(3, weights[3]);
+        sampler.setWeight(6, weights[6]);
+
+        assertEquals(40.5, sampler.getTotalWeight(), 1e-9);
+        assertFrequencies(weights, draw(sampler));
+    }
+
+    @Test
+    public void staysAccurateAfterManyUpdates() {
+        final Random random = new Random(SEED);
+        final double[] weights = new double[100];
+        final WeightedSampler sampler = new WeightedSampler(weights, new Random(SEED));
+        // the same kind of updates smart shuffle makes: weights shrinking as tracks play
+        for (int i = 0; i < 10_000; i++) {
+            final int index = random.nextInt(weights.length);
+            weights[index] = i % 3 == 0 ? weights[index] * 0.1 : random.nextDouble() * 2;
+            sampler.setWeight(index, weights[index]);
+        }
+
+        assertFrequencies(weights, draw(sampler));
+    }
+
+    @Test
+    public void sameSeedDrawsSameSequence() {
+        final double[] weights = {1, 2, 3, 4, 5};
+        final WeightedSampler first = new WeightedSampler(weights, new Random(SEED));
+        final WeightedSampler second = new WeightedSampler(weights, new Random(SEED));
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(first.sample(), second.sample());
+        }
+    }
+
+    @Test
+    public void returnsNoIndexWithoutWeight() {
+        assertEquals(-1, new WeightedSampler(new double[0], new Random(SEED)).sample());
+        assertEquals(-1, new WeightedSampler(new double[]{0, 0, 0}, new Random(SEED)).sample());
+
+        final WeightedSampler sampler = new WeightedSampler(new double[]{1}, new Random(SEED));
+        sampler.setWeight(0, -1);
+        assertEquals(-1, sampler.sample());
+    }
+
+    private static int[] draw(final WeightedSampler sampler) {
+        final int[] counts = new int[sampler.size()];
+        for (int i = 0; i < DRAWS; i++) {
+            counts[sampler.sample()]++;
+        }
+        return counts;
+    }
+
+    private static void assertFrequencies(final double[] weights, final int[] counts) {
+        double total = 0;
+        for (double weight : weights) {
+            total += weight;
+        }
+
+        final double[] expected = new double[weights.length];
+        final double[] actual = new double[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            expected[i] = weights[i] / total;
+            actual[i] = (double) counts[i] / DRAWS;
+            if (weights[i] == 0) {
+                assertEquals("index " + i + " has no weight", 0, counts[i]);
+            }
+        }
+        assertArrayEquals(expected, actual, TOLERANCE);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * SPDX-FileCopyrightText: 2026 The LineageOS Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.lineageos.eleven.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class SrtTimelineTest {
+    private static final long SEED = 0x5eedL;
+
+    @Test
+    public void keepsEntriesPastTheInitialCapacity() {
+        final SrtTimeline.Builder builder = new SrtTimeline.Builder();
+        for (int i = 0; i < 1000; i++) {
+            builder.add(i * 1000L, i * 1000L + 500, "line " + i);
+        }
+        final SrtTimeline timeline = builder.build(42);
+
+        assertEquals(1000, timeline.size());
+        assertEquals(42, timeline.getLastModified());
+        assertEquals(999_000, timeline.getStartTimeMs(999));
+        assertEquals(999_500, timeline.getEndTimeMs(999));
+        assertEquals("line 999", timeline.getLine(999));
+    }
+
+    @Test
+    public void sortsEntriesByStartTime() {
+        final SrtTimeline.Builder builder = new SrtTimeline.Builder();
+        builder.add(3000, 3500, "third");
+        builder.add(1000, 1500, "first");
+        builder.add(2000, 2500, "second");
+        final SrtTimeline timeline = builder.build(0);
+
+        assertEquals("first", timeline.getLine(0));
+        assertEquals(1500, timeline.getEndTimeMs(0));
+        assertEquals("second", timeline.getLine(1));
+        assertEquals(2500, timeline.getEndTimeMs(1));
+        assertEquals("third", timeline.getLine(2));
+        assertEquals(3500, timeline.getEndTimeMs(2));
+    }
+
+    @Test
+    public void findsTheLastEntryStartedAtOrBeforeTime() {
+        final Random random = new Random(SEED);
+        final SrtTimeline.Builder builder = new SrtTimeline.Builder();
+        for (int i = 0; i < 500; i++) {
+            // unsorted and with duplicate start times, like a badly made file
+            final long start = random.nextInt(100) * 100L;
+            builder.add(start, start + 50, "line " + i);
+        }
+        final SrtTimeline timeline = builder.build(0);
+
+        for (long timeMs = -100; timeMs <= 10_100; timeMs += 25) {
+            assertEquals("time " + timeMs, findLinearly(timeline, timeMs),
+                    timeline.indexForTime(timeMs));
+        }
+    }
+
+    @Test
+    public void tellsWhetherAnEntryIsShowing() {
+        final SrtTimeline.Builder builder = new SrtTimeline.Builder();
+        builder.add(1000, 2000, "line");
+        final SrtTimeline timeline = builder.build(0);
+
+        assertFalse(timeline.surroundsTime(0, 999));
+        assertTrue(timeline.surroundsTime(0, 1000));
+        assertTrue(timeline.surroundsTime(0, 2000));
+        assertFalse(timeline.surroundsTime(0, 2001));
+    }
+
+    @Test
+    public void findsTheFirstEntryInAnEmptyTimeline() {
+        final SrtTimeline.Builder builder = new SrtTimeline.Builder();
+        assertTrue(builder.isEmpty());
+
+        final SrtTimeline timeline = builder.build(0);
+        assertEquals(0, timeline.size());
+        assertEquals(0, timeline.indexForTime(1000));
+    }
+
+    private static int findLinearly(final SrtTimeline timeline, final long timeMs) {
+        int result = 0;
+        for (int i = 0; i < timeline.size(); i++) {
+            if (timeline.getStartTimeMs(i) <= timeMs) {
+                result = i;
+            }
+        }
+        return result;
+    }
+}
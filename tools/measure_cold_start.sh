@@ -0,0 +1,44 @@
+#!/bin/sh
+#
+# SPDX-FileCopyrightText: 2026 The LineageOS Project
+# SPDX-License-Identifier: Apache-2.0
+#
+# Measures cold starts of Eleven on a connected device.
+#
+# Every run force stops the app, drops the page cache when the device allows it, starts
+# HomeActivity with "am start -W" and records the time the activity manager reports.
+# Afterwards the records written by StartupTrace (one line per startup with the duration
+# of each phase) are printed, so both the system and the per-phase view are available.
+#
+# Usage: tools/measure_cold_start.sh [runs]
+
+set -e
+
+PACKAGE=org.lineageos.eleven
+ACTIVITY=$PACKAGE/.ui.activities.HomeActivity
+TRACE_LOG=cache/startup_trace.log
+RUNS=${1:-10}
+
+adb wait-for-device
+adb shell run-as $PACKAGE rm -f $TRACE_LOG || true
+
+total=0
+run=1
+while [ "$run" -le "$RUNS" ]; do
+    adb shell am force-stop $PACKAGE
+    adb shell "sync; echo 3 > /proc/sys/vm/drop_caches" 2>/dev/null || true
+    sleep 1
+
+    time=$(adb shell am start -W -n $ACTIVITY | tr -d '\r' | sed -n 's/^TotalTime: //p')
+    echo "run $run: ${time}ms"
+    total=$((total + time))
+    run=$((run + 1))
+
+    # give the background writers time to record the startup
+    sleep 3
+done
+
+echo "average: $((total / RUNS))ms over $RUNS runs"
+echo
+echo "startup phases (ms):"
+adb shell run-as $PACKAGE cat $TRACE_LOG